@@ -119,4 +119,11 @@ public class JdbcSplit
     {
         return this;
     }
+
+    @Override
+    public boolean isBlockingIo()
+    {
+        // the rows are fetched from the remote database by synchronous JDBC calls
+        return true;
+    }
 }
@@ -70,6 +70,15 @@ public class RuntimeMetricName
     // Size of the data retrieved by read call to storage
     public static final String STORAGE_READ_DATA_BYTES = "storageReadDataBytes";
     public static final String WRITTEN_FILES_COUNT = "writtenFilesCount";
+    // Number of times a nested loop join operator read the spilled build side from disk
+    public static final String NESTED_LOOP_JOIN_BUILD_RESCAN_COUNT = "nestedLoopJoinBuildRescanCount";
+    // Number of times adaptive partial aggregation was disabled, or re-enabled, by a hash aggregation operator
+    public static final String PARTIAL_AGGREGATION_DISABLED_COUNT = "partialAggregationDisabledCount";
+    public static final String PARTIAL_AGGREGATION_REENABLED_COUNT = "partialAggregationReEnabledCount";
+    // Number of rows dropped by the Bloom filters of dynamic filters after they were read from a page source
+    public static final String DYNAMIC_FILTER_BLOOM_FILTER_FILTERED_ROWS = "dynamicFilterBloomFilterFilteredRows";
+    // Number of rows dropped by a table scan because they sort after the rows kept by the top N operator of the driver
+    public static final String DYNAMIC_FILTER_TOP_N_FILTERED_ROWS = "dynamicFilterTopNFilteredRows";
     public static final String HISTORY_OPTIMIZER_QUERY_REGISTRATION_GET_PLAN_NODE_HASHES = "historyOptimizerQueryRegistrationGetPlanNodeHashes";
     public static final String HISTORY_OPTIMIZER_QUERY_REGISTRATION_GET_STATISTICS = "historyOptimizerQueryRegistrationGetStatistics";
     public static final String DIRECTORY_LISTING_CACHE_HIT = "directoryListingCacheHit";
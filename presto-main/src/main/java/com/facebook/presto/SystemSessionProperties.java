@@ -19,6 +19,7 @@ import com.facebook.presto.cost.HistoryBasedOptimizationConfig;
 import com.facebook.presto.execution.QueryManagerConfig;
 import com.facebook.presto.execution.QueryManagerConfig.ExchangeMaterializationStrategy;
 import com.facebook.presto.execution.TaskManagerConfig;
+import com.facebook.presto.execution.buffer.ExchangeCompressionCodec;
 import com.facebook.presto.execution.scheduler.NodeSchedulerConfig;
 import com.facebook.presto.execution.scheduler.NodeSchedulerConfig.ResourceAwareSchedulingStrategy;
 import com.facebook.presto.execution.warnings.WarningCollectorConfig;
@@ -132,6 +133,7 @@ public final class SystemSessionProperties
     public static final String PUSH_TABLE_WRITE_THROUGH_UNION = "push_table_write_through_union";
     public static final String EXECUTION_POLICY = "execution_policy";
     public static final String DICTIONARY_AGGREGATION = "dictionary_aggregation";
+    public static final String FLAT_GROUP_BY_HASH_ENABLED = "flat_group_by_hash_enabled";
     public static final String PLAN_WITH_TABLE_NODE_PARTITIONING = "plan_with_table_node_partitioning";
     public static final String SPATIAL_JOIN = "spatial_join";
     public static final String SPATIAL_PARTITIONING_TABLE_NAME = "spatial_partitioning_table_name";
@@ -147,6 +149,7 @@ public final class SystemSessionProperties
     public static final String OPTIMIZE_METADATA_QUERIES_IGNORE_STATS = "optimize_metadata_queries_ignore_stats";
     public static final String OPTIMIZE_METADATA_QUERIES_CALL_THRESHOLD = "optimize_metadata_queries_call_threshold";
     public static final String FAST_INEQUALITY_JOINS = "fast_inequality_joins";
+    public static final String BIGINT_JOIN_HASH_ENABLED = "bigint_join_hash_enabled";
     public static final String QUERY_PRIORITY = "query_priority";
     public static final String CONFIDENCE_BASED_BROADCAST_ENABLED = "confidence_based_broadcast_enabled";
     public static final String TREAT_LOW_CONFIDENCE_ZERO_ESTIMATION_AS_UNKNOWN_ENABLED = "treat_low_confidence_zero_estimation_unknown_enabled";
@@ -160,11 +163,15 @@ public final class SystemSessionProperties
     public static final String DISTINCT_AGGREGATION_LARGE_BLOCK_SIZE_THRESHOLD = "distinct_aggregation_large_block_size_threshold";
     public static final String ORDER_BY_AGGREGATION_SPILL_ENABLED = "order_by_aggregation_spill_enabled";
     public static final String WINDOW_SPILL_ENABLED = "window_spill_enabled";
+    public static final String SEMI_JOIN_SPILL_ENABLED = "semi_join_spill_enabled";
+    public static final String MARK_DISTINCT_SPILL_ENABLED = "mark_distinct_spill_enabled";
     public static final String ORDER_BY_SPILL_ENABLED = "order_by_spill_enabled";
     public static final String AGGREGATION_OPERATOR_UNSPILL_MEMORY_LIMIT = "aggregation_operator_unspill_memory_limit";
     public static final String TOPN_OPERATOR_UNSPILL_MEMORY_LIMIT = "topn_operator_unspill_memory_limit";
+    public static final String NESTED_LOOP_JOIN_SPILL_PROBE_BLOCK_SIZE = "nested_loop_join_spill_probe_block_size";
     public static final String QUERY_MAX_REVOCABLE_MEMORY_PER_NODE = "query_max_revocable_memory_per_node";
     public static final String TEMP_STORAGE_SPILLER_BUFFER_SIZE = "temp_storage_spiller_buffer_size";
+    public static final String SPILL_MEMORY_MAPPED_READ_ENABLED = "spill_memory_mapped_read_enabled";
     public static final String OPTIMIZE_DISTINCT_AGGREGATIONS = "optimize_mixed_distinct_aggregations";
     public static final String LEGACY_ROW_FIELD_ORDINAL_ACCESS = "legacy_row_field_ordinal_access";
     public static final String LEGACY_MAP_SUBSCRIPT = "do_not_use_legacy_map_subscript";
@@ -174,6 +181,9 @@ public final class SystemSessionProperties
     public static final String RUNTIME_OPTIMIZER_ENABLED = "runtime_optimizer_enabled";
     public static final String EXCHANGE_COMPRESSION = "exchange_compression";
     public static final String EXCHANGE_CHECKSUM = "exchange_checksum";
+    public static final String EXCHANGE_COMPRESSION_CODEC = "exchange_compression_codec";
+    public static final String EXCHANGE_ADAPTIVE_COMPRESSION_NETWORK_THROUGHPUT = "exchange_adaptive_compression_network_throughput";
+    public static final String LOCAL_EXCHANGE_PARTITION_VIEWS_ENABLED = "local_exchange_partition_views_enabled";
     public static final String LEGACY_TIMESTAMP = "legacy_timestamp";
     public static final String ENABLE_INTERMEDIATE_AGGREGATIONS = "enable_intermediate_aggregations";
     public static final String PUSH_AGGREGATION_THROUGH_JOIN = "push_aggregation_through_join";
@@ -183,6 +193,8 @@ public final class SystemSessionProperties
     public static final String FILTER_AND_PROJECT_MIN_OUTPUT_PAGE_SIZE = "filter_and_project_min_output_page_size";
     public static final String FILTER_AND_PROJECT_MIN_OUTPUT_PAGE_ROW_COUNT = "filter_and_project_min_output_page_row_count";
     public static final String DISTRIBUTED_SORT = "distributed_sort";
+    public static final String LOCAL_PARALLEL_SORT = "local_parallel_sort";
+    public static final String TOP_N_SCAN_FILTER_ENABLED = "top_n_scan_filter_enabled";
     public static final String USE_MARK_DISTINCT = "use_mark_distinct";
     public static final String EXPLOIT_CONSTRAINTS = "exploit_constraints";
     public static final String PREFER_PARTIAL_AGGREGATION = "prefer_partial_aggregation";
@@ -190,6 +202,7 @@ public final class SystemSessionProperties
     public static final String PARTIAL_AGGREGATION_BYTE_REDUCTION_THRESHOLD = "partial_aggregation_byte_reduction_threshold";
     public static final String ADAPTIVE_PARTIAL_AGGREGATION = "adaptive_partial_aggregation";
     public static final String ADAPTIVE_PARTIAL_AGGREGATION_ROWS_REDUCTION_RATIO_THRESHOLD = "adaptive_partial_aggregation_unique_rows_ratio_threshold";
+    public static final String ADAPTIVE_PARTIAL_AGGREGATION_CONTINUOUS_TRACKING = "adaptive_partial_aggregation_continuous_tracking";
     public static final String OPTIMIZE_TOP_N_ROW_NUMBER = "optimize_top_n_row_number";
     public static final String OPTIMIZE_CASE_EXPRESSION_PREDICATE = "optimize_case_expression_predicate";
     public static final String MAX_GROUPING_SETS = "max_grouping_sets";
@@ -214,6 +227,7 @@ public final class SystemSessionProperties
     public static final String TABLE_WRITER_MERGE_OPERATOR_ENABLED = "table_writer_merge_operator_enabled";
     public static final String INDEX_LOADER_TIMEOUT = "index_loader_timeout";
     public static final String OPTIMIZED_REPARTITIONING_ENABLED = "optimized_repartitioning";
+    public static final String OPTIMIZED_REPARTITIONING_DICTIONARY_ENCODING_ENABLED = "optimized_repartitioning_dictionary_encoding_enabled";
     public static final String AGGREGATION_PARTITIONING_MERGING_STRATEGY = "aggregation_partitioning_merging_strategy";
     public static final String LIST_BUILT_IN_FUNCTIONS_ONLY = "list_built_in_functions_only";
     public static final String PARTITIONING_PRECISION_STRATEGY = "partitioning_precision_strategy";
@@ -229,6 +243,7 @@ public final class SystemSessionProperties
     public static final String DYNAMIC_FILTERING_MAX_PER_DRIVER_ROW_COUNT = "dynamic_filtering_max_per_driver_row_count";
     public static final String DYNAMIC_FILTERING_MAX_PER_DRIVER_SIZE = "dynamic_filtering_max_per_driver_size";
     public static final String DYNAMIC_FILTERING_RANGE_ROW_LIMIT_PER_DRIVER = "dynamic_filtering_range_row_limit_per_driver";
+    public static final String DYNAMIC_FILTERING_BLOOM_FILTER_SIZE_PER_DRIVER = "dynamic_filtering_bloom_filter_size_per_driver";
     public static final String FRAGMENT_RESULT_CACHING_ENABLED = "fragment_result_caching_enabled";
     public static final String INLINE_SQL_FUNCTIONS = "inline_sql_functions";
     public static final String REMOTE_FUNCTIONS_ENABLED = "remote_functions_enabled";
@@ -248,6 +263,12 @@ public final class SystemSessionProperties
     public static final String PARTIAL_RESULTS_ENABLED = "partial_results_enabled";
     public static final String PARTIAL_RESULTS_COMPLETION_RATIO_THRESHOLD = "partial_results_completion_ratio_threshold";
     public static final String PARTIAL_RESULTS_MAX_EXECUTION_TIME_MULTIPLIER = "partial_results_max_execution_time_multiplier";
+    public static final String SPECULATIVE_EXECUTION_ENABLED = "speculative_execution_enabled";
+    public static final String SPECULATIVE_EXECUTION_STRAGGLER_MULTIPLIER = "speculative_execution_straggler_multiplier";
+    public static final String ADAPTIVE_PARTITION_COUNT_ENABLED = "adaptive_partition_count_enabled";
+    public static final String MIN_HASH_PARTITION_COUNT = "min_hash_partition_count";
+    public static final String TARGET_PARTITION_INPUT_SIZE = "target_partition_input_size";
+    public static final String ADAPTIVE_JOIN_DISTRIBUTION_ENABLED = "adaptive_join_distribution_enabled";
     public static final String OFFSET_CLAUSE_ENABLED = "offset_clause_enabled";
     public static final String VERBOSE_EXCEEDED_MEMORY_LIMIT_ERRORS_ENABLED = "verbose_exceeded_memory_limit_errors_enabled";
     public static final String MATERIALIZED_VIEW_DATA_CONSISTENCY_ENABLED = "materialized_view_data_consistency_enabled";
@@ -289,6 +310,7 @@ public final class SystemSessionProperties
     public static final String RANDOMIZE_OUTER_JOIN_NULL_KEY_NULL_RATIO_THRESHOLD = "randomize_outer_join_null_key_null_ratio_threshold";
     public static final String SHARDED_JOINS_STRATEGY = "sharded_joins_strategy";
     public static final String JOIN_SHARD_COUNT = "join_shard_count";
+    public static final String JOIN_SHARD_HOT_KEY_MIN_FREQUENCY = "join_shard_hot_key_min_frequency";
     public static final String IN_PREDICATES_AS_INNER_JOINS_ENABLED = "in_predicates_as_inner_joins_enabled";
     public static final String PUSH_AGGREGATION_BELOW_JOIN_BYTE_REDUCTION_THRESHOLD = "push_aggregation_below_join_byte_reduction_threshold";
     public static final String KEY_BASED_SAMPLING_ENABLED = "key_based_sampling_enabled";
@@ -676,6 +698,11 @@ public final class SystemSessionProperties
                         "Enable optimization for aggregations on dictionaries",
                         featuresConfig.isDictionaryAggregation(),
                         false),
+                booleanProperty(
+                        FLAT_GROUP_BY_HASH_ENABLED,
+                        "Use the flat row-oriented group by hash for multi-channel keys of fixed-width and short varchar types",
+                        featuresConfig.isFlatGroupByHashEnabled(),
+                        false),
                 integerProperty(
                         INITIAL_SPLITS_PER_NODE,
                         "The number of splits each node will run per task, initially",
@@ -764,6 +791,11 @@ public final class SystemSessionProperties
                         "Use faster handling of inequality join if it is possible",
                         featuresConfig.isFastInequalityJoins(),
                         false),
+                booleanProperty(
+                        BIGINT_JOIN_HASH_ENABLED,
+                        "Use a specialized lookup source for joins on a single BIGINT, INTEGER or DATE key",
+                        featuresConfig.isBigintJoinHashEnabled(),
+                        false),
                 booleanProperty(
                         COLOCATED_JOIN,
                         "Experimental: Use a colocated join when possible",
@@ -852,6 +884,16 @@ public final class SystemSessionProperties
                         "Enable window spilling if spill_enabled",
                         featuresConfig.isWindowSpillEnabled(),
                         false),
+                booleanProperty(
+                        SEMI_JOIN_SPILL_ENABLED,
+                        "Enable semi join spilling if spill_enabled",
+                        featuresConfig.isSemiJoinSpillEnabled(),
+                        false),
+                booleanProperty(
+                        MARK_DISTINCT_SPILL_ENABLED,
+                        "Enable mark distinct spilling if spill_enabled",
+                        featuresConfig.isMarkDistinctSpillEnabled(),
+                        false),
                 booleanProperty(
                         ORDER_BY_SPILL_ENABLED,
                         "Enable order by spilling if spill_enabled",
@@ -875,6 +917,15 @@ public final class SystemSessionProperties
                         false,
                         value -> DataSize.valueOf((String) value),
                         DataSize::toString),
+                new PropertyMetadata<>(
+                        NESTED_LOOP_JOIN_SPILL_PROBE_BLOCK_SIZE,
+                        "Size of the block of probe pages joined with every scan of the spilled build side of a nested loop join",
+                        VARCHAR,
+                        DataSize.class,
+                        featuresConfig.getNestedLoopJoinSpillProbeBlockSize(),
+                        false,
+                        value -> DataSize.valueOf((String) value),
+                        DataSize::toString),
                 new PropertyMetadata<>(
                         QUERY_MAX_REVOCABLE_MEMORY_PER_NODE,
                         "Maximum amount of revocable memory a query can use",
@@ -893,6 +944,11 @@ public final class SystemSessionProperties
                         false,
                         value -> DataSize.valueOf((String) value),
                         DataSize::toString),
+                booleanProperty(
+                        SPILL_MEMORY_MAPPED_READ_ENABLED,
+                        "Experimental: Read local spill files back by memory mapping them",
+                        nodeSpillConfig.isSpillMemoryMappedReadEnabled(),
+                        false),
                 booleanProperty(
                         OPTIMIZE_DISTINCT_AGGREGATIONS,
                         "Optimize mixed non-distinct and distinct aggregations",
@@ -946,6 +1002,28 @@ public final class SystemSessionProperties
                         "Enable checksum in exchanges",
                         featuresConfig.isExchangeChecksumEnabled(),
                         false),
+                new PropertyMetadata<>(
+                        EXCHANGE_COMPRESSION_CODEC,
+                        format("Codec used to compress the pages sent through exchanges. Options are %s",
+                                Stream.of(ExchangeCompressionCodec.values())
+                                        .map(ExchangeCompressionCodec::name)
+                                        .collect(joining(","))),
+                        VARCHAR,
+                        ExchangeCompressionCodec.class,
+                        featuresConfig.getExchangeCompressionCodec(),
+                        false,
+                        value -> ExchangeCompressionCodec.valueOf(((String) value).toUpperCase()),
+                        ExchangeCompressionCodec::name),
+                dataSizeProperty(
+                        EXCHANGE_ADAPTIVE_COMPRESSION_NETWORK_THROUGHPUT,
+                        "Expected throughput per second of a single exchange, used to weigh the compression cost against the transfer time with the ADAPTIVE codec",
+                        featuresConfig.getExchangeAdaptiveCompressionNetworkThroughput(),
+                        false),
+                booleanProperty(
+                        LOCAL_EXCHANGE_PARTITION_VIEWS_ENABLED,
+                        "Send views over the input page to the partitions of a local exchange instead of copying their rows",
+                        featuresConfig.isLocalExchangePartitionViewsEnabled(),
+                        false),
                 booleanProperty(
                         LEGACY_TIMESTAMP,
                         "Use legacy TIME & TIMESTAMP semantics (warning: this will be removed)",
@@ -995,6 +1073,16 @@ public final class SystemSessionProperties
                         "Parallelize sort across multiple nodes",
                         featuresConfig.isDistributedSortEnabled(),
                         false),
+                booleanProperty(
+                        LOCAL_PARALLEL_SORT,
+                        "Parallelize sort across multiple drivers of a task",
+                        featuresConfig.isLocalParallelSortEnabled(),
+                        false),
+                booleanProperty(
+                        TOP_N_SCAN_FILTER_ENABLED,
+                        "Filter the rows read by a table scan on the boundary of the top N operator of the same driver",
+                        featuresConfig.isTopNScanFilterEnabled(),
+                        false),
                 booleanProperty(
                         USE_MARK_DISTINCT,
                         "Implement DISTINCT aggregations using MarkDistinct",
@@ -1037,6 +1125,11 @@ public final class SystemSessionProperties
                         "Rows reduction ratio threshold at which to adaptively disable partial aggregation",
                         featuresConfig.getAdaptivePartialAggregationRowsReductionRatioThreshold(),
                         false),
+                booleanProperty(
+                        ADAPTIVE_PARTIAL_AGGREGATION_CONTINUOUS_TRACKING,
+                        "Keep tracking the rows reduction ratio of adaptive partial aggregation, and re-enable it as soon as the skipped rows become clustered",
+                        featuresConfig.isAdaptivePartialAggregationContinuousTrackingEnabled(),
+                        false),
                 booleanProperty(
                         OPTIMIZE_TOP_N_ROW_NUMBER,
                         "Use top N row number optimization",
@@ -1186,6 +1279,11 @@ public final class SystemSessionProperties
                         "Experimental: Use optimized repartitioning",
                         featuresConfig.isOptimizedRepartitioningEnabled(),
                         false),
+                booleanProperty(
+                        OPTIMIZED_REPARTITIONING_DICTIONARY_ENCODING_ENABLED,
+                        "Experimental: Send the referenced dictionary entries and the ids of dictionary encoded columns in optimized repartitioning",
+                        featuresConfig.isOptimizedRepartitioningDictionaryEncodingEnabled(),
+                        false),
                 new PropertyMetadata<>(
                         AGGREGATION_PARTITIONING_MERGING_STRATEGY,
                         format("Strategy to merge partition preference in aggregation node. Options are %s",
@@ -1285,6 +1383,11 @@ public final class SystemSessionProperties
                         "Maximum number of build-side rows per driver up to which min and max values will be collected for dynamic filtering",
                         featuresConfig.getDynamicFilteringRangeRowLimitPerDriver(),
                         false),
+                dataSizeProperty(
+                        DYNAMIC_FILTERING_BLOOM_FILTER_SIZE_PER_DRIVER,
+                        "Size of the Bloom filter built per driver and dynamic filter once the build-side values exceed the limits of the exact filter, 0 to disable Bloom filters",
+                        featuresConfig.getDynamicFilteringBloomFilterSizePerDriver(),
+                        false),
                 booleanProperty(
                         FRAGMENT_RESULT_CACHING_ENABLED,
                         "Enable fragment result caching and read/write leaf fragment result pages from/to cache when applicable",
@@ -1397,6 +1500,36 @@ public final class SystemSessionProperties
                         "This value is multiplied by the time taken to reach the completion ratio threshold and is set as max task end time",
                         featuresConfig.getPartialResultsMaxExecutionTimeMultiplier(),
                         false),
+                booleanProperty(
+                        SPECULATIVE_EXECUTION_ENABLED,
+                        "Run a copy of the straggler tasks of leaf stages reading from deterministic connectors on another node",
+                        featuresConfig.isSpeculativeExecutionEnabled(),
+                        false),
+                doubleProperty(
+                        SPECULATIVE_EXECUTION_STRAGGLER_MULTIPLIER,
+                        "A task is a straggler when it runs longer than this multiple of the median time of the finished tasks of its stage",
+                        featuresConfig.getSpeculativeExecutionStragglerMultiplier(),
+                        false),
+                booleanProperty(
+                        ADAPTIVE_PARTITION_COUNT_ENABLED,
+                        "Choose the partition count of each hash partitioned stage from the estimated size of its input, up to hash_partition_count",
+                        featuresConfig.isAdaptivePartitionCountEnabled(),
+                        false),
+                integerProperty(
+                        MIN_HASH_PARTITION_COUNT,
+                        "Minimum partition count of a hash partitioned stage when the partition count is chosen from the estimated input size",
+                        featuresConfig.getMinHashPartitionCount(),
+                        false),
+                dataSizeProperty(
+                        TARGET_PARTITION_INPUT_SIZE,
+                        "Estimated input size of each partition of a hash partitioned stage when the partition count is chosen from the estimated input size",
+                        featuresConfig.getTargetPartitionInputSize(),
+                        false),
+                booleanProperty(
+                        ADAPTIVE_JOIN_DISTRIBUTION_ENABLED,
+                        "With materialized exchanges only, repartition a broadcast join whose materialized build side is larger than join_max_broadcast_table_size. Joins over streaming exchanges are not changed",
+                        featuresConfig.isAdaptiveJoinDistributionEnabled(),
+                        false),
                 booleanProperty(
                         VERBOSE_EXCEEDED_MEMORY_LIMIT_ERRORS_ENABLED,
                         "When enabled the error message for exceeded memory limit errors will contain additional operator memory allocation details",
@@ -1774,6 +1907,15 @@ public final class SystemSessionProperties
                         "Number of shards to use in sharded joins optimization",
                         featuresConfig.getJoinShardCount(),
                         true),
+                new PropertyMetadata<>(
+                        JOIN_SHARD_HOT_KEY_MIN_FREQUENCY,
+                        "Minimum fraction of the probe rows that share a join key for the key to be sharded by the HOT_KEYS sharded joins strategy",
+                        DOUBLE,
+                        Double.class,
+                        featuresConfig.getJoinShardHotKeyMinFrequency(),
+                        false,
+                        value -> validateJoinShardHotKeyMinFrequency(value),
+                        object -> object),
                 booleanProperty(
                         OPTIMIZE_CONDITIONAL_AGGREGATION_ENABLED,
                         "Enable rewriting IF(condition, AGG(x)) to AGG(x) with condition included in mask",
@@ -2213,6 +2355,11 @@ public final class SystemSessionProperties
         return session.getSystemProperty(DICTIONARY_AGGREGATION, Boolean.class);
     }
 
+    public static boolean isFlatGroupByHashEnabled(Session session)
+    {
+        return session.getSystemProperty(FLAT_GROUP_BY_HASH_ENABLED, Boolean.class);
+    }
+
     public static boolean isOptimizeMetadataQueries(Session session)
     {
         return session.getSystemProperty(OPTIMIZE_METADATA_QUERIES, Boolean.class);
@@ -2283,6 +2430,11 @@ public final class SystemSessionProperties
         return session.getSystemProperty(FAST_INEQUALITY_JOINS, Boolean.class);
     }
 
+    public static boolean isBigintJoinHashEnabled(Session session)
+    {
+        return session.getSystemProperty(BIGINT_JOIN_HASH_ENABLED, Boolean.class);
+    }
+
     public static JoinReorderingStrategy getJoinReorderingStrategy(Session session)
     {
         Boolean reorderJoins = session.getSystemProperty(REORDER_JOINS, Boolean.class);
@@ -2424,6 +2576,16 @@ public final class SystemSessionProperties
         return session.getSystemProperty(WINDOW_SPILL_ENABLED, Boolean.class) && isSpillEnabled(session);
     }
 
+    public static boolean isSemiJoinSpillEnabled(Session session)
+    {
+        return session.getSystemProperty(SEMI_JOIN_SPILL_ENABLED, Boolean.class) && isSpillEnabled(session);
+    }
+
+    public static boolean isMarkDistinctSpillEnabled(Session session)
+    {
+        return session.getSystemProperty(MARK_DISTINCT_SPILL_ENABLED, Boolean.class) && isSpillEnabled(session);
+    }
+
     public static boolean isOrderBySpillEnabled(Session session)
     {
         return session.getSystemProperty(ORDER_BY_SPILL_ENABLED, Boolean.class) && isSpillEnabled(session);
@@ -2443,6 +2605,13 @@ public final class SystemSessionProperties
         return unspillMemoryLimit;
     }
 
+    public static DataSize getNestedLoopJoinSpillProbeBlockSize(Session session)
+    {
+        DataSize probeBlockSize = session.getSystemProperty(NESTED_LOOP_JOIN_SPILL_PROBE_BLOCK_SIZE, DataSize.class);
+        checkArgument(probeBlockSize.toBytes() > 0, "%s must be positive", NESTED_LOOP_JOIN_SPILL_PROBE_BLOCK_SIZE);
+        return probeBlockSize;
+    }
+
     public static DataSize getQueryMaxRevocableMemoryPerNode(Session session)
     {
         return session.getSystemProperty(QUERY_MAX_REVOCABLE_MEMORY_PER_NODE, DataSize.class);
@@ -2455,6 +2624,11 @@ public final class SystemSessionProperties
         return tempStorageSpillerBufferSize;
     }
 
+    public static boolean isSpillMemoryMappedReadEnabled(Session session)
+    {
+        return session.getSystemProperty(SPILL_MEMORY_MAPPED_READ_ENABLED, Boolean.class);
+    }
+
     public static boolean isOptimizeDistinctAggregationEnabled(Session session)
     {
         return session.getSystemProperty(OPTIMIZE_DISTINCT_AGGREGATIONS, Boolean.class);
@@ -2506,6 +2680,21 @@ public final class SystemSessionProperties
         return session.getSystemProperty(EXCHANGE_CHECKSUM, Boolean.class);
     }
 
+    public static ExchangeCompressionCodec getExchangeCompressionCodec(Session session)
+    {
+        return session.getSystemProperty(EXCHANGE_COMPRESSION_CODEC, ExchangeCompressionCodec.class);
+    }
+
+    public static DataSize getExchangeAdaptiveCompressionNetworkThroughput(Session session)
+    {
+        return session.getSystemProperty(EXCHANGE_ADAPTIVE_COMPRESSION_NETWORK_THROUGHPUT, DataSize.class);
+    }
+
+    public static boolean isLocalExchangePartitionViewsEnabled(Session session)
+    {
+        return session.getSystemProperty(LOCAL_EXCHANGE_PARTITION_VIEWS_ENABLED, Boolean.class);
+    }
+
     public static boolean isEnableIntermediateAggregations(Session session)
     {
         return session.getSystemProperty(ENABLE_INTERMEDIATE_AGGREGATIONS, Boolean.class);
@@ -2598,6 +2787,11 @@ public final class SystemSessionProperties
         return session.getSystemProperty(ADAPTIVE_PARTIAL_AGGREGATION_ROWS_REDUCTION_RATIO_THRESHOLD, Double.class);
     }
 
+    public static boolean isAdaptivePartialAggregationContinuousTrackingEnabled(Session session)
+    {
+        return session.getSystemProperty(ADAPTIVE_PARTIAL_AGGREGATION_CONTINUOUS_TRACKING, Boolean.class);
+    }
+
     public static boolean isOptimizeTopNRowNumber(Session session)
     {
         return session.getSystemProperty(OPTIMIZE_TOP_N_ROW_NUMBER, Boolean.class);
@@ -2613,6 +2807,16 @@ public final class SystemSessionProperties
         return session.getSystemProperty(DISTRIBUTED_SORT, Boolean.class);
     }
 
+    public static boolean isLocalParallelSortEnabled(Session session)
+    {
+        return session.getSystemProperty(LOCAL_PARALLEL_SORT, Boolean.class);
+    }
+
+    public static boolean isTopNScanFilterEnabled(Session session)
+    {
+        return session.getSystemProperty(TOP_N_SCAN_FILTER_ENABLED, Boolean.class);
+    }
+
     public static int getMaxGroupingSets(Session session)
     {
         return session.getSystemProperty(MAX_GROUPING_SETS, Integer.class);
@@ -2689,6 +2893,18 @@ public final class SystemSessionProperties
         return doubleValue;
     }
 
+    private static Double validateJoinShardHotKeyMinFrequency(Object value)
+    {
+        double doubleValue = (Double) value;
+        // each hot key is probed in the histogram and listed in the shard expressions, so the keys must stay few
+        if (doubleValue < 0.001 || doubleValue > 1) {
+            throw new PrestoException(
+                    INVALID_SESSION_PROPERTY,
+                    format("%s must be within the range of 0.001 and 1.0: %s", JOIN_SHARD_HOT_KEY_MIN_FREQUENCY, doubleValue));
+        }
+        return doubleValue;
+    }
+
     public static boolean isStatisticsCpuTimerEnabled(Session session)
     {
         return session.getSystemProperty(STATISTICS_CPU_TIMER_ENABLED, Boolean.class);
@@ -2769,6 +2985,11 @@ public final class SystemSessionProperties
         return session.getSystemProperty(OPTIMIZED_REPARTITIONING_ENABLED, Boolean.class);
     }
 
+    public static boolean isOptimizedRepartitioningDictionaryEncodingEnabled(Session session)
+    {
+        return session.getSystemProperty(OPTIMIZED_REPARTITIONING_DICTIONARY_ENCODING_ENABLED, Boolean.class);
+    }
+
     public static AggregationPartitioningMergingStrategy getAggregationPartitioningMergingStrategy(Session session)
     {
         return session.getSystemProperty(AGGREGATION_PARTITIONING_MERGING_STRATEGY, AggregationPartitioningMergingStrategy.class);
@@ -2843,6 +3064,11 @@ public final class SystemSessionProperties
         return session.getSystemProperty(DYNAMIC_FILTERING_RANGE_ROW_LIMIT_PER_DRIVER, Integer.class);
     }
 
+    public static DataSize getDynamicFilteringBloomFilterSizePerDriver(Session session)
+    {
+        return session.getSystemProperty(DYNAMIC_FILTERING_BLOOM_FILTER_SIZE_PER_DRIVER, DataSize.class);
+    }
+
     public static boolean isFragmentResultCachingEnabled(Session session)
     {
         return session.getSystemProperty(FRAGMENT_RESULT_CACHING_ENABLED, Boolean.class);
@@ -2918,6 +3144,36 @@ public final class SystemSessionProperties
         return session.getSystemProperty(PARTIAL_RESULTS_MAX_EXECUTION_TIME_MULTIPLIER, Double.class);
     }
 
+    public static boolean isSpeculativeExecutionEnabled(Session session)
+    {
+        return session.getSystemProperty(SPECULATIVE_EXECUTION_ENABLED, Boolean.class);
+    }
+
+    public static double getSpeculativeExecutionStragglerMultiplier(Session session)
+    {
+        return session.getSystemProperty(SPECULATIVE_EXECUTION_STRAGGLER_MULTIPLIER, Double.class);
+    }
+
+    public static boolean isAdaptivePartitionCountEnabled(Session session)
+    {
+        return session.getSystemProperty(ADAPTIVE_PARTITION_COUNT_ENABLED, Boolean.class);
+    }
+
+    public static int getMinHashPartitionCount(Session session)
+    {
+        return session.getSystemProperty(MIN_HASH_PARTITION_COUNT, Integer.class);
+    }
+
+    public static DataSize getTargetPartitionInputSize(Session session)
+    {
+        return session.getSystemProperty(TARGET_PARTITION_INPUT_SIZE, DataSize.class);
+    }
+
+    public static boolean isAdaptiveJoinDistributionEnabled(Session session)
+    {
+        return session.getSystemProperty(ADAPTIVE_JOIN_DISTRIBUTION_ENABLED, Boolean.class);
+    }
+
     public static boolean isOffsetClauseEnabled(Session session)
     {
         return session.getSystemProperty(OFFSET_CLAUSE_ENABLED, Boolean.class);
@@ -3146,6 +3402,11 @@ public final class SystemSessionProperties
         return session.getSystemProperty(JOIN_SHARD_COUNT, Integer.class);
     }
 
+    public static double getJoinShardHotKeyMinFrequency(Session session)
+    {
+        return session.getSystemProperty(JOIN_SHARD_HOT_KEY_MIN_FREQUENCY, Double.class);
+    }
+
     public static boolean isOptimizeConditionalAggregationEnabled(Session session)
     {
         return session.getSystemProperty(OPTIMIZE_CONDITIONAL_AGGREGATION_ENABLED, Boolean.class);
@@ -17,6 +17,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.units.Duration;
 
 import java.io.Closeable;
+import java.util.OptionalInt;
 
 public interface SplitRunner
         extends Closeable
@@ -27,6 +28,30 @@ public interface SplitRunner
 
     String getInfo();
 
+    /**
+     * Whether this split mostly waits on synchronous remote reads, see {@link com.facebook.presto.spi.ConnectorSplit#isBlockingIo()}.
+     */
+    default boolean isBlockingIo()
+    {
+        return false;
+    }
+
+    /**
+     * The partition of the local exchange this split reads, if any.
+     */
+    default OptionalInt getLocalPartition()
+    {
+        return OptionalInt.empty();
+    }
+
+    /**
+     * The memory currently reserved by this split.
+     */
+    default long getReservedBytes()
+    {
+        return 0;
+    }
+
     @Override
     void close();
 }
@@ -31,6 +31,7 @@ import com.facebook.presto.split.RemoteSplit;
 import com.facebook.presto.sql.planner.PlanFragment;
 import com.facebook.presto.sql.planner.plan.PlanFragmentId;
 import com.facebook.presto.sql.planner.plan.RemoteSourceNode;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
@@ -46,6 +47,7 @@ import javax.annotation.concurrent.ThreadSafe;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -141,6 +143,14 @@ public final class SqlStageExecution
     @GuardedBy("this")
     private Optional<StageTaskRecoveryCallback> stageTaskRecoveryCallback = Optional.empty();
 
+    @GuardedBy("this")
+    private boolean speculativeExecutionEnabled;
+    // splits assigned to each task, which a speculative attempt of the task runs again
+    @GuardedBy("this")
+    private final Map<TaskId, Multimap<PlanNodeId, Split>> taskSplits = new HashMap<>();
+    // speculative attempt of each straggler task, keyed by the first attempt
+    private final Map<TaskId, TaskId> speculativeTasks = new ConcurrentHashMap<>();
+
     public static SqlStageExecution createSqlStageExecution(
             StageExecutionId stageExecutionId,
             PlanFragment fragment,
@@ -215,7 +225,11 @@ public final class SqlStageExecution
     private void initialize()
     {
         stateMachine.addStateChangeListener(newState -> {
+            if (newState == StageExecutionState.FINISHED) {
+                cancelLosingAttempts();
+            }
             if (newState.isDone()) {
+                releaseTaskSplits();
                 checkAllTaskFinal();
             }
         });
@@ -263,6 +277,17 @@ public final class SqlStageExecution
         this.stageTaskRecoveryCallback = Optional.of(requireNonNull(stageTaskRecoveryCallback, "stageTaskRecoveryCallback is null"));
     }
 
+    /**
+     * Records the splits of the tasks, so that a straggler task can be run again with {@link #scheduleSpeculativeTask}.
+     * The output of the fragment must only depend on its splits.
+     */
+    public synchronized void enableSpeculativeExecution()
+    {
+        checkState(!splitsScheduled.get(), "speculative execution must be enabled before splits are scheduled");
+        checkState(planFragment.getRemoteSourceNodes().isEmpty(), "speculative execution is only supported for leaf stages");
+        speculativeExecutionEnabled = true;
+    }
+
     public PlanFragment getFragment()
     {
         return planFragment;
@@ -507,9 +532,42 @@ public final class SqlStageExecution
         for (Entry<PlanNodeId, Lifespan> entry : noMoreSplitsNotification.entries()) {
             task.noMoreSplits(entry.getKey(), entry.getValue());
         }
+        if (speculativeExecutionEnabled) {
+            taskSplits.computeIfAbsent(task.getTaskId(), taskId -> ArrayListMultimap.create()).putAll(splits);
+        }
         return newTasks.build();
     }
 
+    /**
+     * Runs another attempt of the task with the same splits on the given node, once all the splits of the stage are scheduled.
+     * The consumers use the output of the attempt that first delivers pages to them. The task is finished when one of its
+     * attempts finishes, unless the consumers read the output of the other attempt, which must then finish too, and the
+     * attempts still running when the stage finishes are canceled. A task only has one speculative attempt.
+     */
+    public synchronized Optional<RemoteTask> scheduleSpeculativeTask(TaskId taskId, InternalNode node)
+    {
+        requireNonNull(taskId, "taskId is null");
+        requireNonNull(node, "node is null");
+        checkState(speculativeExecutionEnabled, "speculative execution is not enabled");
+        checkArgument(allTasks.contains(taskId), "Unknown task %s", taskId);
+
+        if (stateMachine.getState().isDone() ||
+                !completeSources.containsAll(planFragment.getTableScanSchedulingOrder()) ||
+                finishedTasks.contains(taskId) ||
+                speculativeTasks.containsKey(taskId)) {
+            return Optional.empty();
+        }
+
+        TaskId speculativeTaskId = taskId.withAttemptNumber(taskId.getAttemptNumber() + 1);
+        speculativeTasks.put(taskId, speculativeTaskId);
+        return Optional.of(scheduleTask(node, speculativeTaskId, taskSplits.getOrDefault(taskId, ImmutableMultimap.of())));
+    }
+
+    public Map<TaskId, TaskId> getSpeculativeTasks()
+    {
+        return ImmutableMap.copyOf(speculativeTasks);
+    }
+
     private synchronized RemoteTask scheduleTask(InternalNode node, TaskId taskId, Multimap<PlanNodeId, Split> sourceSplits)
     {
         checkArgument(!allTasks.contains(taskId), "A task with id %s already exists", taskId);
@@ -541,7 +599,9 @@ public final class SqlStageExecution
 
         completeSources.forEach(task::noMoreSplits);
 
-        allTasks.add(taskId);
+        if (taskId.getAttemptNumber() == DEFAULT_TASK_ATTEMPT_NUMBER) {
+            allTasks.add(taskId);
+        }
         runningTasks.add(taskId);
 
         tasks.computeIfAbsent(node, key -> newConcurrentHashSet()).add(task);
@@ -606,6 +666,11 @@ public final class SqlStageExecution
             // no matter if it is possible to recover - the task is failed
             failedTasks.add(taskId);
 
+            if (hasRemainingAttempt(taskId) && !isOutputConsumed(taskId)) {
+                // the other attempt of the task still produces its output, and no consumer read the output of this one
+                return;
+            }
+
             RuntimeException failure = taskStatus.getFailures().stream()
                     .findFirst()
                     .map(this::rewriteTransportFailure)
@@ -633,7 +698,11 @@ public final class SqlStageExecution
             stateMachine.transitionToFailed(new PrestoException(GENERIC_INTERNAL_ERROR, "A task is in the ABORTED state but stage is " + stageExecutionState));
         }
         else if (taskState == TaskState.FINISHED) {
-            finishedTasks.add(taskId);
+            // the first attempt of a task to finish finishes the task, unless the consumers read the output of the other attempt
+            Optional<TaskId> otherAttemptTaskId = getOtherAttempt(taskId);
+            if (!otherAttemptTaskId.isPresent() || isDone(otherAttemptTaskId.get()) || !isOutputConsumed(otherAttemptTaskId.get())) {
+                finishedTasks.add(taskId.withAttemptNumber(DEFAULT_TASK_ATTEMPT_NUMBER));
+            }
         }
 
         // The finishedTasks.add(taskStatus.getTaskId()) must happen before the getState() (see schedulingComplete)
@@ -648,6 +717,64 @@ public final class SqlStageExecution
         }
     }
 
+    private boolean hasRemainingAttempt(TaskId taskId)
+    {
+        TaskId firstAttemptTaskId = taskId.withAttemptNumber(DEFAULT_TASK_ATTEMPT_NUMBER);
+        TaskId speculativeTaskId = speculativeTasks.get(firstAttemptTaskId);
+        return speculativeTaskId != null && !(failedTasks.contains(firstAttemptTaskId) && failedTasks.contains(speculativeTaskId));
+    }
+
+    private Optional<TaskId> getOtherAttempt(TaskId taskId)
+    {
+        TaskId firstAttemptTaskId = taskId.withAttemptNumber(DEFAULT_TASK_ATTEMPT_NUMBER);
+        TaskId speculativeTaskId = speculativeTasks.get(firstAttemptTaskId);
+        if (speculativeTaskId == null) {
+            return Optional.empty();
+        }
+        return Optional.of(taskId.equals(firstAttemptTaskId) ? speculativeTaskId : firstAttemptTaskId);
+    }
+
+    private boolean isDone(TaskId taskId)
+    {
+        return getTask(taskId)
+                .map(task -> task.getTaskStatus().getState().isDone())
+                .orElse(true);
+    }
+
+    /**
+     * Whether the attempt sent pages to its consumers, as of its latest task info. A consumer only reads the attempt
+     * of a task that first delivers pages to it, so the output of the attempt cannot be replaced by the other attempt.
+     */
+    private boolean isOutputConsumed(TaskId taskId)
+    {
+        return getTask(taskId)
+                .map(task -> task.getTaskInfo().getOutputBuffers().getTotalPagesSent() > 0)
+                .orElse(false);
+    }
+
+    private Optional<RemoteTask> getTask(TaskId taskId)
+    {
+        return getAllTasks().stream()
+                .filter(task -> task.getTaskId().equals(taskId))
+                .findFirst();
+    }
+
+    private void cancelLosingAttempts()
+    {
+        // every task of a finished stage has a finished attempt whose output the consumers read,
+        // so the attempts still running lost to their other attempt
+        for (RemoteTask task : getAllTasks()) {
+            if (!task.getTaskStatus().getState().isDone()) {
+                task.cancel();
+            }
+        }
+    }
+
+    private synchronized void releaseTaskSplits()
+    {
+        taskSplits.clear();
+    }
+
     private boolean isRecoverable(List<ExecutionFailureInfo> failures)
     {
         for (ExecutionFailureInfo failure : failures) {
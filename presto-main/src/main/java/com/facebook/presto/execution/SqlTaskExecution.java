@@ -1085,6 +1085,24 @@ public class SqlTaskExecution
             return (partitionedSplit == null) ? "" : partitionedSplit.getSplit().getInfo().toString();
         }
 
+        @Override
+        public boolean isBlockingIo()
+        {
+            return partitionedSplit != null && partitionedSplit.getSplit().getConnectorSplit().isBlockingIo();
+        }
+
+        @Override
+        public OptionalInt getLocalPartition()
+        {
+            return driverContext.getLocalPartition();
+        }
+
+        @Override
+        public long getReservedBytes()
+        {
+            return driverContext.getMemoryUsage() + driverContext.getSystemMemoryUsage() + driverContext.getRevocableMemoryUsage();
+        }
+
         @Override
         public void close()
         {
@@ -79,6 +79,11 @@ public class TaskId
         return stageExecutionId.getStageId().getQueryId();
     }
 
+    public TaskId withAttemptNumber(int attemptNumber)
+    {
+        return new TaskId(stageExecutionId, id, attemptNumber);
+    }
+
     @Override
     @JsonValue
     public String toString()
@@ -56,6 +56,7 @@ public class TaskManagerConfig
     private DataSize maxIndexMemoryUsage = new DataSize(64, Unit.MEGABYTE);
     private boolean shareIndexLoading;
     private int maxWorkerThreads = Runtime.getRuntime().availableProcessors() * 2;
+    private int blockingIoThreads;
     private Integer minDrivers;
     private Integer initialSplitsPerNode;
     private int minDriversPerTask = 3;
@@ -85,6 +86,8 @@ public class TaskManagerConfig
     private int taskYieldThreads = 3;
 
     private BigDecimal levelTimeMultiplier = new BigDecimal(2.0);
+    private int splitQueueShards = 1;
+    private int numaNodeCount = 1;
 
     private boolean legacyLifespanCompletionCondition;
     private TaskPriorityTracking taskPriorityTracking = TaskPriorityTracking.TASK_FAIR;
@@ -273,6 +276,34 @@ public class TaskManagerConfig
         return this;
     }
 
+    @Min(1)
+    public int getSplitQueueShards()
+    {
+        return splitQueueShards;
+    }
+
+    @Config("task.split-queue-shards")
+    @ConfigDescription("Number of shards of the queue of waiting splits. Runner threads take splits from their own shard and steal from the others when it is empty")
+    public TaskManagerConfig setSplitQueueShards(int splitQueueShards)
+    {
+        this.splitQueueShards = splitQueueShards;
+        return this;
+    }
+
+    @Min(1)
+    public int getNumaNodeCount()
+    {
+        return numaNodeCount;
+    }
+
+    @Config("task.numa-node-count")
+    @ConfigDescription("Number of NUMA nodes of the worker. When greater than one, the runner threads are pinned to the nodes and the drivers of a local partition run on the same node")
+    public TaskManagerConfig setNumaNodeCount(int numaNodeCount)
+    {
+        this.numaNodeCount = numaNodeCount;
+        return this;
+    }
+
     @Min(1)
     public int getMaxWorkerThreads()
     {
@@ -287,6 +318,20 @@ public class TaskManagerConfig
         return this;
     }
 
+    @Min(0)
+    public int getBlockingIoThreads()
+    {
+        return blockingIoThreads;
+    }
+
+    @Config("task.blocking-io-threads")
+    @ConfigDescription("Number of threads running the splits of connectors that block on remote reads, in addition to the worker threads. Zero runs these splits on the worker threads")
+    public TaskManagerConfig setBlockingIoThreads(int blockingIoThreads)
+    {
+        this.blockingIoThreads = blockingIoThreads;
+        return this;
+    }
+
     @Min(1)
     public int getInitialSplitsPerNode()
     {
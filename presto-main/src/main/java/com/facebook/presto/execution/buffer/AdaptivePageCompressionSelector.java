@@ -0,0 +1,132 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution.buffer;
+
+import com.facebook.presto.spi.page.PageCompressionCodec;
+import com.facebook.presto.spi.page.PageCompressionSelector;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.List;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Chooses, for the pages of a single serde, the codec minimizing the time spent sending a byte of page:
+ * the time to compress it plus the time to transfer what remains of it at the expected network throughput.
+ * The cost of each codec is estimated from the pages it compressed, and every few pages one of the codecs
+ * that are not in use is tried again, so that the choice follows changes of the data.
+ */
+@NotThreadSafe
+public class AdaptivePageCompressionSelector
+        implements PageCompressionSelector
+{
+    @VisibleForTesting
+    static final int EXPLORATION_INTERVAL = 32;
+
+    private static final List<PageCompressionCodec> CODECS = ImmutableList.of(PageCompressionCodec.LZ4, PageCompressionCodec.ZSTD);
+    private static final double ALPHA = 0.25;
+
+    private final double networkNanosPerByte;
+    private final double[] serializedRatios = new double[CODECS.size()];
+    private final double[] compressionNanosPerByte = new double[CODECS.size()];
+    private final boolean[] sampled = new boolean[CODECS.size()];
+
+    // index in CODECS of the selected codec, or -1 for no compression
+    private int selected = -1;
+    private int pageCount;
+    private int nextExploredCodec;
+
+    public AdaptivePageCompressionSelector(long networkBytesPerSecond)
+    {
+        checkArgument(networkBytesPerSecond > 0, "networkBytesPerSecond must be positive");
+        this.networkNanosPerByte = 1_000_000_000.0 / networkBytesPerSecond;
+    }
+
+    @Override
+    public Optional<PageCompressionCodec> selectCodec(int uncompressedSize)
+    {
+        pageCount++;
+        for (int codec = 0; codec < CODECS.size(); codec++) {
+            if (!sampled[codec]) {
+                return Optional.of(CODECS.get(codec));
+            }
+        }
+
+        if (pageCount % EXPLORATION_INTERVAL == 0) {
+            // try a codec other than the selected one
+            nextExploredCodec = (nextExploredCodec + 1) % CODECS.size();
+            if (nextExploredCodec == selected) {
+                nextExploredCodec = (nextExploredCodec + 1) % CODECS.size();
+            }
+            return Optional.of(CODECS.get(nextExploredCodec));
+        }
+
+        if (selected < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(CODECS.get(selected));
+    }
+
+    @Override
+    public void recordCompression(PageCompressionCodec codec, int uncompressedSize, int serializedSize, long compressionNanos)
+    {
+        if (uncompressedSize == 0) {
+            return;
+        }
+        int index = CODECS.indexOf(codec);
+        checkArgument(index >= 0, "Unexpected codec: %s", codec);
+
+        double serializedRatio = 1.0 * serializedSize / uncompressedSize;
+        double nanosPerByte = 1.0 * compressionNanos / uncompressedSize;
+        if (sampled[index]) {
+            serializedRatios[index] += ALPHA * (serializedRatio - serializedRatios[index]);
+            compressionNanosPerByte[index] += ALPHA * (nanosPerByte - compressionNanosPerByte[index]);
+        }
+        else {
+            serializedRatios[index] = serializedRatio;
+            compressionNanosPerByte[index] = nanosPerByte;
+            sampled[index] = true;
+        }
+
+        updateSelection();
+    }
+
+    @VisibleForTesting
+    Optional<PageCompressionCodec> getSelectedCodec()
+    {
+        return selected < 0 ? Optional.empty() : Optional.of(CODECS.get(selected));
+    }
+
+    private void updateSelection()
+    {
+        // sending the page uncompressed costs only its transfer
+        double bestCost = networkNanosPerByte;
+        int best = -1;
+        for (int codec = 0; codec < CODECS.size(); codec++) {
+            if (!sampled[codec]) {
+                continue;
+            }
+            double cost = compressionNanosPerByte[codec] + serializedRatios[codec] * networkNanosPerByte;
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = codec;
+            }
+        }
+        selected = best;
+    }
+}
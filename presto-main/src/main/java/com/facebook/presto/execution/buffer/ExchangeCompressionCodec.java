@@ -0,0 +1,43 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution.buffer;
+
+import com.facebook.presto.spi.page.PageCompressionCodec;
+
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+public enum ExchangeCompressionCodec
+{
+    LZ4(Optional.of(PageCompressionCodec.LZ4)),
+    ZSTD(Optional.of(PageCompressionCodec.ZSTD)),
+    SNAPPY(Optional.of(PageCompressionCodec.SNAPPY)),
+    /**
+     * Chooses between no compression, LZ4 and ZSTD for each serde from the observed compression ratio and cost
+     */
+    ADAPTIVE(Optional.empty());
+
+    private final Optional<PageCompressionCodec> fixedCodec;
+
+    ExchangeCompressionCodec(Optional<PageCompressionCodec> fixedCodec)
+    {
+        this.fixedCodec = requireNonNull(fixedCodec, "fixedCodec is null");
+    }
+
+    public Optional<PageCompressionCodec> getFixedCodec()
+    {
+        return fixedCodec;
+    }
+}
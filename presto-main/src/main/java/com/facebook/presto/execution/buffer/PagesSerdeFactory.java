@@ -14,25 +14,40 @@
 package com.facebook.presto.execution.buffer;
 
 import com.facebook.presto.common.block.BlockEncodingSerde;
+import com.facebook.presto.spi.page.PageCompressionCodec;
+import com.facebook.presto.spi.page.PageCompressionSelector;
 import com.facebook.presto.spi.page.PageCompressor;
 import com.facebook.presto.spi.page.PageDecompressor;
 import com.facebook.presto.spi.page.PagesSerde;
 import com.facebook.presto.spi.spiller.SpillCipher;
+import com.google.common.collect.ImmutableMap;
 import io.airlift.compress.Compressor;
 import io.airlift.compress.Decompressor;
 import io.airlift.compress.lz4.Lz4Compressor;
 import io.airlift.compress.lz4.Lz4Decompressor;
+import io.airlift.compress.snappy.SnappyCompressor;
+import io.airlift.compress.snappy.SnappyDecompressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import io.airlift.units.DataSize;
 
 import java.nio.ByteBuffer;
+import java.util.Map;
 import java.util.Optional;
 
+import static com.facebook.presto.execution.buffer.ExchangeCompressionCodec.LZ4;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static java.util.Objects.requireNonNull;
 
 public class PagesSerdeFactory
 {
+    private static final DataSize DEFAULT_NETWORK_THROUGHPUT = new DataSize(128, MEGABYTE);
+
     private final BlockEncodingSerde blockEncodingSerde;
     private final boolean compressionEnabled;
     private final boolean checksumEnabled;
+    private final ExchangeCompressionCodec compressionCodec;
+    private final DataSize networkThroughput;
 
     public PagesSerdeFactory(BlockEncodingSerde blockEncodingSerde, boolean compressionEnabled)
     {
@@ -40,10 +55,26 @@ public class PagesSerdeFactory
     }
 
     public PagesSerdeFactory(BlockEncodingSerde blockEncodingSerde, boolean compressionEnabled, boolean checksumEnabled)
+    {
+        this(blockEncodingSerde, compressionEnabled, checksumEnabled, LZ4, DEFAULT_NETWORK_THROUGHPUT);
+    }
+
+    /**
+     * @param networkThroughput bytes per second the serialized pages are expected to be sent at, used to weigh
+     * the compression cost against the transfer time with {@link ExchangeCompressionCodec#ADAPTIVE}
+     */
+    public PagesSerdeFactory(
+            BlockEncodingSerde blockEncodingSerde,
+            boolean compressionEnabled,
+            boolean checksumEnabled,
+            ExchangeCompressionCodec compressionCodec,
+            DataSize networkThroughput)
     {
         this.blockEncodingSerde = requireNonNull(blockEncodingSerde, "blockEncodingSerde is null");
         this.compressionEnabled = compressionEnabled;
         this.checksumEnabled = checksumEnabled;
+        this.compressionCodec = requireNonNull(compressionCodec, "compressionCodec is null");
+        this.networkThroughput = requireNonNull(networkThroughput, "networkThroughput is null");
     }
 
     public PagesSerde createPagesSerde()
@@ -59,59 +90,85 @@ public class PagesSerdeFactory
     private PagesSerde createPagesSerdeInternal(Optional<SpillCipher> spillCipher)
     {
         if (compressionEnabled) {
-            return new PagesSerde(
-                    blockEncodingSerde,
-                    Optional.of(new PageCompressor()
-                    {
-                        Compressor compressor = new Lz4Compressor();
-                        @Override
-                        public int maxCompressedLength(int uncompressedSize)
-                        {
-                            return compressor.maxCompressedLength(uncompressedSize);
-                        }
-
-                        @Override
-                        public int compress(
-                                byte[] input,
-                                int inputOffset,
-                                int inputLength,
-                                byte[] output,
-                                int outputOffset,
-                                int maxOutputLength)
-                        {
-                            return compressor.compress(input, inputOffset, inputLength, output, outputOffset, maxOutputLength);
-                        }
-
-                        @Override
-                        public void compress(ByteBuffer input, ByteBuffer output)
-                        {
-                            compressor.compress(input, output);
-                        }
-                    }),
-                    Optional.of(new PageDecompressor()
-                    {
-                        Decompressor decompressor = new Lz4Decompressor();
-                        @Override
-                        public int decompress(
-                                byte[] input,
-                                int inputOffset,
-                                int inputLength,
-                                byte[] output,
-                                int outputOffset,
-                                int maxOutputLength)
-                        {
-                            return decompressor.decompress(input, inputOffset, inputLength, output, outputOffset, maxOutputLength);
-                        }
-
-                        @Override
-                        public void decompress(ByteBuffer input, ByteBuffer output)
-                        {
-                            decompressor.decompress(input, output);
-                        }
-                    }),
-                    spillCipher, checksumEnabled);
+            Map<PageCompressionCodec, PageCompressor> compressors = ImmutableMap.of(
+                    PageCompressionCodec.LZ4, new AirliftPageCompressor(new Lz4Compressor()),
+                    PageCompressionCodec.ZSTD, new AirliftPageCompressor(new ZstdCompressor()),
+                    PageCompressionCodec.SNAPPY, new AirliftPageCompressor(new SnappyCompressor()));
+            // the codec is chosen by the writer, the reader must be able to decompress all of them
+            Map<PageCompressionCodec, PageDecompressor> decompressors = ImmutableMap.of(
+                    PageCompressionCodec.LZ4, new AirliftPageDecompressor(new Lz4Decompressor()),
+                    PageCompressionCodec.ZSTD, new AirliftPageDecompressor(new ZstdDecompressor()),
+                    PageCompressionCodec.SNAPPY, new AirliftPageDecompressor(new SnappyDecompressor()));
+            PageCompressionSelector compressionSelector = compressionCodec.getFixedCodec()
+                    .map(PageCompressionSelector::fixed)
+                    .orElseGet(() -> new AdaptivePageCompressionSelector(networkThroughput.toBytes()));
+            return new PagesSerde(blockEncodingSerde, compressors, decompressors, Optional.of(compressionSelector), spillCipher, checksumEnabled);
         }
 
         return new PagesSerde(blockEncodingSerde, Optional.empty(), Optional.empty(), spillCipher, checksumEnabled);
     }
+
+    private static class AirliftPageCompressor
+            implements PageCompressor
+    {
+        private final Compressor compressor;
+
+        public AirliftPageCompressor(Compressor compressor)
+        {
+            this.compressor = requireNonNull(compressor, "compressor is null");
+        }
+
+        @Override
+        public int maxCompressedLength(int uncompressedSize)
+        {
+            return compressor.maxCompressedLength(uncompressedSize);
+        }
+
+        @Override
+        public int compress(
+                byte[] input,
+                int inputOffset,
+                int inputLength,
+                byte[] output,
+                int outputOffset,
+                int maxOutputLength)
+        {
+            return compressor.compress(input, inputOffset, inputLength, output, outputOffset, maxOutputLength);
+        }
+
+        @Override
+        public void compress(ByteBuffer input, ByteBuffer output)
+        {
+            compressor.compress(input, output);
+        }
+    }
+
+    private static class AirliftPageDecompressor
+            implements PageDecompressor
+    {
+        private final Decompressor decompressor;
+
+        public AirliftPageDecompressor(Decompressor decompressor)
+        {
+            this.decompressor = requireNonNull(decompressor, "decompressor is null");
+        }
+
+        @Override
+        public int decompress(
+                byte[] input,
+                int inputOffset,
+                int inputLength,
+                byte[] output,
+                int outputOffset,
+                int maxOutputLength)
+        {
+            return decompressor.decompress(input, inputOffset, inputLength, output, outputOffset, maxOutputLength);
+        }
+
+        @Override
+        public void decompress(ByteBuffer input, ByteBuffer output)
+        {
+            decompressor.decompress(input, output);
+        }
+    }
 }
@@ -24,67 +24,181 @@ import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static java.lang.Math.floorMod;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
+/**
+ * Queue of the splits waiting for a runner thread, divided in levels by the scheduled time of their task.
+ * <p>
+ * The queue can be divided in shards, each of them guarded by its own lock, to avoid contention between
+ * the runner threads. Each runner thread takes splits from its own shard and puts back the splits it ran into it,
+ * and steals splits from the other shards when its shard is empty. The splits enqueued by other threads are
+ * spread over the shards. The scheduled time of the levels is shared by all shards, so a shard selects the level
+ * to run like the whole queue would, but only among its own splits: the fair share between levels is only
+ * maintained approximately when the queue has more than one shard.
+ * <p>
+ * On workers with several NUMA nodes, the shards are assigned to the nodes in a round robin fashion. A runner thread
+ * steals from the other shards of its node before stealing from the shards of the other nodes.
+ */
 @ThreadSafe
 public class MultilevelSplitQueue
 {
     static final int[] LEVEL_THRESHOLD_SECONDS = {0, 1, 10, 60, 300};
     static final long LEVEL_CONTRIBUTION_CAP = SECONDS.toNanos(30);
 
-    @GuardedBy("lock")
-    private final List<PriorityQueue<PrioritizedSplitRunner>> levelWaitingSplits;
+    private final List<Shard> shards;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final int nodeCount;
+    // the order in which the runner threads of each shard steal from the other shards
+    private final int[][] stealOrder;
 
     private final AtomicLong[] levelScheduledTime = new AtomicLong[LEVEL_THRESHOLD_SECONDS.length];
+    private final AtomicInteger[] levelWaitingSplitCount = new AtomicInteger[LEVEL_THRESHOLD_SECONDS.length];
+    private final AtomicInteger waitingSplitCount = new AtomicInteger();
 
     private final AtomicLong[] levelMinPriority;
     private final List<CounterStat> selectedLevelCounters;
+    private final CounterStat stolenSplits = new CounterStat();
+    private final CounterStat contendedShardLocks = new CounterStat();
 
-    private final ReentrantLock lock = new ReentrantLock();
-    private final Condition notEmpty = lock.newCondition();
+    // Runner threads wait for splits on this lock when all shards are empty
+    private final ReentrantLock idleLock = new ReentrantLock();
+    private final Condition notEmpty = idleLock.newCondition();
+    private final AtomicInteger idleRunners = new AtomicInteger();
 
     private final double levelTimeMultiplier;
 
     @Inject
     public MultilevelSplitQueue(TaskManagerConfig taskManagerConfig)
     {
-        this(taskManagerConfig.getLevelTimeMultiplier().doubleValue());
+        this(
+                taskManagerConfig.getLevelTimeMultiplier().doubleValue(),
+                // every node needs the same number of shards
+                roundUp(taskManagerConfig.getSplitQueueShards(), taskManagerConfig.getNumaNodeCount()),
+                taskManagerConfig.getNumaNodeCount());
     }
 
     public MultilevelSplitQueue(double levelTimeMultiplier)
     {
+        this(levelTimeMultiplier, 1);
+    }
+
+    public MultilevelSplitQueue(double levelTimeMultiplier, int shardCount)
+    {
+        this(levelTimeMultiplier, shardCount, 1);
+    }
+
+    public MultilevelSplitQueue(double levelTimeMultiplier, int shardCount, int nodeCount)
+    {
+        checkArgument(shardCount > 0, "shardCount must be at least 1");
+        checkArgument(nodeCount > 0, "nodeCount must be at least 1");
+        checkArgument(shardCount % nodeCount == 0, "shardCount must be a multiple of nodeCount");
         this.levelMinPriority = new AtomicLong[LEVEL_THRESHOLD_SECONDS.length];
-        this.levelWaitingSplits = new ArrayList<>(LEVEL_THRESHOLD_SECONDS.length);
         ImmutableList.Builder<CounterStat> counters = ImmutableList.builder();
 
         for (int i = 0; i < LEVEL_THRESHOLD_SECONDS.length; i++) {
             levelScheduledTime[i] = new AtomicLong();
+            levelWaitingSplitCount[i] = new AtomicInteger();
             levelMinPriority[i] = new AtomicLong(-1);
-            levelWaitingSplits.add(new PriorityQueue<>());
             counters.add(new CounterStat());
         }
 
         this.selectedLevelCounters = counters.build();
 
+        ImmutableList.Builder<Shard> shards = ImmutableList.builder();
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new Shard());
+        }
+        this.shards = shards.build();
+        this.nodeCount = nodeCount;
+        this.stealOrder = new int[shardCount][];
+        for (int shard = 0; shard < shardCount; shard++) {
+            stealOrder[shard] = computeStealOrder(shard, shardCount, nodeCount);
+        }
+
         this.levelTimeMultiplier = levelTimeMultiplier;
     }
 
+    private static int[] computeStealOrder(int shard, int shardCount, int nodeCount)
+    {
+        int[] order = new int[shardCount - 1];
+        int index = 0;
+        // the shards of the same node are every nodeCount shards
+        for (int offset = nodeCount; offset < shardCount; offset += nodeCount) {
+            order[index++] = (shard + offset) % shardCount;
+        }
+        for (int offset = 1; offset < shardCount; offset++) {
+            if (offset % nodeCount != 0) {
+                order[index++] = (shard + offset) % shardCount;
+            }
+        }
+        return order;
+    }
+
+    private static int roundUp(int value, int factor)
+    {
+        return (value + factor - 1) / factor * factor;
+    }
+
+    public int getShardCount()
+    {
+        return shards.size();
+    }
+
+    public double getLevelTimeMultiplier()
+    {
+        return levelTimeMultiplier;
+    }
+
+    public int getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the NUMA node of the shard.
+     */
+    public int getNode(int shard)
+    {
+        return shard % nodeCount;
+    }
+
     private void addLevelTime(int level, long nanos)
     {
         levelScheduledTime[level].addAndGet(nanos);
     }
 
+    /**
+     * Adds the split to one of the shards, chosen in a round robin fashion.
+     */
+    public void offer(PrioritizedSplitRunner split)
+    {
+        checkArgument(split != null, "split is null");
+        offer(split, floorMod(nextShard.getAndIncrement(), shards.size()));
+    }
+
+    /**
+     * Adds the split to one of the shards of the node, chosen in a round robin fashion.
+     */
+    public void offerToNode(PrioritizedSplitRunner split, int node)
+    {
+        checkArgument(split != null, "split is null");
+        checkArgument(node >= 0 && node < nodeCount, "invalid node %s", node);
+        int shardsPerNode = shards.size() / nodeCount;
+        offer(split, node + nodeCount * floorMod(nextShard.getAndIncrement(), shardsPerNode));
+    }
+
     /**
      * During periods of time when a level has no waiting splits, it will not accumulate
      * scheduled time and will fall behind relative to other levels.
@@ -95,59 +209,113 @@ public class MultilevelSplitQueue
      * To prevent this we set the scheduled time for levels which were empty to the expected
      * scheduled time.
      */
-    public void offer(PrioritizedSplitRunner split)
+    public void offer(PrioritizedSplitRunner split, int shard)
     {
         checkArgument(split != null, "split is null");
 
         split.setReady();
         int level = split.getPriority().getLevel();
-        lock.lock();
-        try {
-            if (levelWaitingSplits.get(level).isEmpty()) {
-                // Accesses to levelScheduledTime are not synchronized, so we have a data race
-                // here - our level time math will be off. However, the staleness is bounded by
-                // the fact that only running splits that complete during this computation
-                // can update the level time. Therefore, this is benign.
-                long level0Time = getLevel0TargetTime();
-                long levelExpectedTime = (long) (level0Time / Math.pow(levelTimeMultiplier, level));
-                long delta = levelExpectedTime - levelScheduledTime[level].get();
-                levelScheduledTime[level].addAndGet(delta);
-            }
+        if (levelWaitingSplitCount[level].getAndIncrement() == 0) {
+            // Accesses to levelScheduledTime are not synchronized, so we have a data race
+            // here - our level time math will be off. However, the staleness is bounded by
+            // the fact that only running splits that complete during this computation
+            // can update the level time. Therefore, this is benign.
+            long level0Time = getLevel0TargetTime();
+            long levelExpectedTime = (long) (level0Time / Math.pow(levelTimeMultiplier, level));
+            long delta = levelExpectedTime - levelScheduledTime[level].get();
+            levelScheduledTime[level].addAndGet(delta);
+        }
 
-            levelWaitingSplits.get(level).offer(split);
-            notEmpty.signal();
+        Shard target = shards.get(shard);
+        lockShard(target);
+        try {
+            target.levelWaitingSplits.get(level).offer(split);
         }
         finally {
-            lock.unlock();
+            target.lock.unlock();
+        }
+
+        // The runner threads check waitingSplitCount after registering as idle, so either they see this split, or this thread sees them idle
+        waitingSplitCount.incrementAndGet();
+        if (idleRunners.get() > 0) {
+            idleLock.lock();
+            try {
+                notEmpty.signal();
+            }
+            finally {
+                idleLock.unlock();
+            }
         }
     }
 
     public PrioritizedSplitRunner take()
             throws InterruptedException
+    {
+        return take(0);
+    }
+
+    /**
+     * Takes the next split of the shard, or steals one from the other shards when the shard is empty.
+     * Waits when all shards are empty.
+     */
+    public PrioritizedSplitRunner take(int shard)
+            throws InterruptedException
     {
         while (true) {
-            lock.lockInterruptibly();
+            PrioritizedSplitRunner result = pollSplit(shard);
+            if (result == null) {
+                awaitSplits();
+                continue;
+            }
+
+            if (result.updateLevelPriority()) {
+                offer(result, shard);
+                continue;
+            }
+
+            int selectedLevel = result.getPriority().getLevel();
+            levelMinPriority[selectedLevel].set(result.getPriority().getLevelPriority());
+            selectedLevelCounters.get(selectedLevel).update(1);
+
+            return result;
+        }
+    }
+
+    private void awaitSplits()
+            throws InterruptedException
+    {
+        idleLock.lockInterruptibly();
+        try {
+            idleRunners.incrementAndGet();
             try {
-                PrioritizedSplitRunner result;
-                while ((result = pollSplit()) == null) {
+                if (waitingSplitCount.get() == 0) {
                     notEmpty.await();
                 }
+            }
+            finally {
+                idleRunners.decrementAndGet();
+            }
+        }
+        finally {
+            idleLock.unlock();
+        }
+    }
 
-                if (result.updateLevelPriority()) {
-                    offer(result);
-                    continue;
-                }
-
-                int selectedLevel = result.getPriority().getLevel();
-                levelMinPriority[selectedLevel].set(result.getPriority().getLevelPriority());
-                selectedLevelCounters.get(selectedLevel).update(1);
+    private PrioritizedSplitRunner pollSplit(int shard)
+    {
+        PrioritizedSplitRunner result = pollSplit(shards.get(shard));
+        if (result != null) {
+            return result;
+        }
 
+        for (int victim : stealOrder[shard]) {
+            result = pollSplit(shards.get(victim));
+            if (result != null) {
+                stolenSplits.update(1);
                 return result;
             }
-            finally {
-                lock.unlock();
-            }
         }
+        return null;
     }
 
     /**
@@ -158,36 +326,45 @@ public class MultilevelSplitQueue
      * with the objective of minimizing deviation from the target scheduled time. From this level,
      * we pick the split with the lowest priority.
      */
-    @GuardedBy("lock")
-    private PrioritizedSplitRunner pollSplit()
+    private PrioritizedSplitRunner pollSplit(Shard shard)
     {
-        long targetScheduledTime = getLevel0TargetTime();
-        double worstRatio = 1;
-        int selectedLevel = -1;
-        for (int level = 0; level < LEVEL_THRESHOLD_SECONDS.length; level++) {
-            if (!levelWaitingSplits.get(level).isEmpty()) {
-                long levelTime = levelScheduledTime[level].get();
-                double ratio = levelTime == 0 ? 0 : targetScheduledTime / (1.0 * levelTime);
-                if (selectedLevel == -1 || ratio > worstRatio) {
-                    worstRatio = ratio;
-                    selectedLevel = level;
+        if (waitingSplitCount.get() == 0) {
+            return null;
+        }
+
+        lockShard(shard);
+        try {
+            long targetScheduledTime = getLevel0TargetTime();
+            double worstRatio = 1;
+            int selectedLevel = -1;
+            for (int level = 0; level < LEVEL_THRESHOLD_SECONDS.length; level++) {
+                if (!shard.levelWaitingSplits.get(level).isEmpty()) {
+                    long levelTime = levelScheduledTime[level].get();
+                    double ratio = levelTime == 0 ? 0 : targetScheduledTime / (1.0 * levelTime);
+                    if (selectedLevel == -1 || ratio > worstRatio) {
+                        worstRatio = ratio;
+                        selectedLevel = level;
+                    }
                 }
-            }
 
-            targetScheduledTime /= levelTimeMultiplier;
-        }
+                targetScheduledTime /= levelTimeMultiplier;
+            }
 
-        if (selectedLevel == -1) {
-            return null;
-        }
+            if (selectedLevel == -1) {
+                return null;
+            }
 
-        PrioritizedSplitRunner result = levelWaitingSplits.get(selectedLevel).poll();
-        checkState(result != null, "pollSplit cannot return null");
+            PrioritizedSplitRunner result = shard.levelWaitingSplits.get(selectedLevel).poll();
+            checkState(result != null, "pollSplit cannot return null");
+            splitRemoved(selectedLevel, 1);
 
-        return result;
+            return result;
+        }
+        finally {
+            shard.lock.unlock();
+        }
     }
 
-    @GuardedBy("lock")
     private long getLevel0TargetTime()
     {
         long level0TargetTime = levelScheduledTime[0].get();
@@ -247,27 +424,36 @@ public class MultilevelSplitQueue
     public void remove(PrioritizedSplitRunner split)
     {
         checkArgument(split != null, "split is null");
-        lock.lock();
-        try {
-            for (PriorityQueue<PrioritizedSplitRunner> level : levelWaitingSplits) {
-                level.remove(split);
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                for (int level = 0; level < LEVEL_THRESHOLD_SECONDS.length; level++) {
+                    if (shard.levelWaitingSplits.get(level).remove(split)) {
+                        splitRemoved(level, 1);
+                    }
+                }
+            }
+            finally {
+                shard.lock.unlock();
             }
-        }
-        finally {
-            lock.unlock();
         }
     }
 
     public void removeAll(Collection<PrioritizedSplitRunner> splits)
     {
-        lock.lock();
-        try {
-            for (PriorityQueue<PrioritizedSplitRunner> level : levelWaitingSplits) {
-                level.removeAll(splits);
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                for (int level = 0; level < LEVEL_THRESHOLD_SECONDS.length; level++) {
+                    PriorityQueue<PrioritizedSplitRunner> levelSplits = shard.levelWaitingSplits.get(level);
+                    int sizeBefore = levelSplits.size();
+                    levelSplits.removeAll(splits);
+                    splitRemoved(level, sizeBefore - levelSplits.size());
+                }
+            }
+            finally {
+                shard.lock.unlock();
             }
-        }
-        finally {
-            lock.unlock();
         }
     }
 
@@ -279,17 +465,7 @@ public class MultilevelSplitQueue
 
     public int size()
     {
-        lock.lock();
-        try {
-            int total = 0;
-            for (PriorityQueue<PrioritizedSplitRunner> level : levelWaitingSplits) {
-                total += level.size();
-            }
-            return total;
-        }
-        finally {
-            lock.unlock();
-        }
+        return waitingSplitCount.get();
     }
 
     public static int computeLevel(long threadUsageNanos)
@@ -374,4 +550,63 @@ public class MultilevelSplitQueue
     {
         return selectedLevelCounters.get(4);
     }
+
+    @Managed
+    public int getShards()
+    {
+        return shards.size();
+    }
+
+    @Managed
+    public int getNumaNodes()
+    {
+        return nodeCount;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getStolenSplits()
+    {
+        return stolenSplits;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getContendedShardLocks()
+    {
+        return contendedShardLocks;
+    }
+
+    private void lockShard(Shard shard)
+    {
+        if (!shard.lock.tryLock()) {
+            contendedShardLocks.update(1);
+            shard.lock.lock();
+        }
+    }
+
+    private void splitRemoved(int level, int count)
+    {
+        if (count > 0) {
+            levelWaitingSplitCount[level].addAndGet(-count);
+            waitingSplitCount.addAndGet(-count);
+        }
+    }
+
+    private static class Shard
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        @GuardedBy("lock")
+        private final List<PriorityQueue<PrioritizedSplitRunner>> levelWaitingSplits;
+
+        public Shard()
+        {
+            ImmutableList.Builder<PriorityQueue<PrioritizedSplitRunner>> levelWaitingSplits = ImmutableList.builder();
+            for (int i = 0; i < LEVEL_THRESHOLD_SECONDS.length; i++) {
+                levelWaitingSplits.add(new PriorityQueue<>());
+            }
+            this.levelWaitingSplits = levelWaitingSplits.build();
+        }
+    }
 }
@@ -17,13 +17,17 @@ import com.facebook.airlift.log.Logger;
 import com.facebook.airlift.stats.CounterStat;
 import com.facebook.airlift.stats.TimeStat;
 import com.facebook.presto.execution.SplitRunner;
+import com.facebook.presto.memory.NumaNodeMemoryTracker;
 import com.google.common.base.Ticker;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.airlift.units.Duration;
 
+import javax.annotation.concurrent.GuardedBy;
+
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
+import java.util.OptionalInt;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -50,6 +54,7 @@ public class PrioritizedSplitRunner
     private final int splitId;
     private final long workerId;
     private final SplitRunner splitRunner;
+    private final boolean blockingIo;
 
     private final Ticker ticker;
 
@@ -74,6 +79,12 @@ public class PrioritizedSplitRunner
     private final TimeStat blockedQuantaWallTime;
     private final TimeStat unblockedQuantaWallTime;
 
+    // the NUMA node the memory of the split is accounted to, and the accounted bytes
+    @GuardedBy("this")
+    private int memoryNumaNode = -1;
+    @GuardedBy("this")
+    private long memoryNumaNodeBytes;
+
     PrioritizedSplitRunner(
             TaskHandle taskHandle,
             SplitRunner splitRunner,
@@ -86,6 +97,7 @@ public class PrioritizedSplitRunner
         this.taskHandle = taskHandle;
         this.splitId = taskHandle.getNextSplitId();
         this.splitRunner = splitRunner;
+        this.blockingIo = splitRunner.isBlockingIo();
         this.ticker = ticker;
         this.workerId = NEXT_WORKER_ID.getAndIncrement();
         this.globalCpuTimeMicros = globalCpuTimeMicros;
@@ -122,6 +134,45 @@ public class PrioritizedSplitRunner
         }
     }
 
+    public boolean isBlockingIo()
+    {
+        return blockingIo;
+    }
+
+    public OptionalInt getLocalPartition()
+    {
+        return splitRunner.getLocalPartition();
+    }
+
+    /**
+     * Accounts the memory currently reserved by the split to the node, and releases it from the node it was accounted to.
+     */
+    public synchronized void updateNumaNodeMemory(NumaNodeMemoryTracker tracker, int node)
+    {
+        if (destroyed.get()) {
+            return;
+        }
+        long bytes = splitRunner.getReservedBytes();
+        if (memoryNumaNode >= 0) {
+            tracker.update(memoryNumaNode, -memoryNumaNodeBytes);
+        }
+        tracker.update(node, bytes);
+        memoryNumaNode = node;
+        memoryNumaNodeBytes = bytes;
+    }
+
+    /**
+     * Releases the memory accounted to a node. Must be called after the split is destroyed.
+     */
+    public synchronized void releaseNumaNodeMemory(NumaNodeMemoryTracker tracker)
+    {
+        if (memoryNumaNode >= 0) {
+            tracker.update(memoryNumaNode, -memoryNumaNodeBytes);
+            memoryNumaNode = -1;
+            memoryNumaNodeBytes = 0;
+        }
+    }
+
     public long getCreatedNanos()
     {
         return createdNanos;
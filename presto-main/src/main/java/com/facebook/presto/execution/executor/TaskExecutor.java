@@ -23,6 +23,7 @@ import com.facebook.presto.execution.SplitRunner;
 import com.facebook.presto.execution.TaskId;
 import com.facebook.presto.execution.TaskManagerConfig;
 import com.facebook.presto.execution.TaskManagerConfig.TaskPriorityTracking;
+import com.facebook.presto.memory.NumaNodeMemoryTracker;
 import com.facebook.presto.operator.scalar.JoniRegexpFunctions;
 import com.facebook.presto.server.ServerConfig;
 import com.facebook.presto.spi.PrestoException;
@@ -104,7 +105,11 @@ public class TaskExecutor
     private final ThreadPoolExecutorMBean executorMBean;
 
     private final int runnerThreads;
+    private final int blockingIoThreads;
     private final int minimumNumberOfDrivers;
+    private final int minimumNumberOfBlockingIoDrivers;
+    private final int numaNodeCount;
+    private final NumaNodeMemoryTracker numaNodeMemoryTracker;
     private final int guaranteedNumberOfDriversPerTask;
     private final int maximumNumberOfDriversPerTask;
     private final EmbedVersion embedVersion;
@@ -133,11 +138,23 @@ public class TaskExecutor
     @GuardedBy("this")
     private final Set<PrioritizedSplitRunner> intermediateSplits = new HashSet<>();
 
+    /**
+     * Leaf splits of connectors that block on remote reads, when they run on the blocking I/O threads.
+     */
+    @GuardedBy("this")
+    private final Set<PrioritizedSplitRunner> blockingIoSplits = new HashSet<>();
+
     /**
      * Splits waiting for a runner thread.
      */
     private final MultilevelSplitQueue waitingSplits;
 
+    /**
+     * Splits waiting for a blocking I/O runner thread. The levels of these splits only order them in this queue,
+     * their scheduled time is accounted in the levels of {@link #waitingSplits}.
+     */
+    private final MultilevelSplitQueue waitingBlockingIoSplits;
+
     /**
      * Per query priority trackers
      */
@@ -184,9 +201,10 @@ public class TaskExecutor
     private volatile boolean lowMemory;
 
     @Inject
-    public TaskExecutor(TaskManagerConfig config, EmbedVersion embedVersion, MultilevelSplitQueue splitQueue)
+    public TaskExecutor(TaskManagerConfig config, EmbedVersion embedVersion, MultilevelSplitQueue splitQueue, NumaNodeMemoryTracker numaNodeMemoryTracker)
     {
         this(requireNonNull(config, "config is null").getMaxWorkerThreads(),
+                config.getBlockingIoThreads(),
                 config.getMinDrivers(),
                 config.getMinDriversPerTask(),
                 config.getMaxDriversPerTask(),
@@ -196,6 +214,7 @@ public class TaskExecutor
                 DEFAULT_INTERRUPT_SPLIT_INTERVAL,
                 embedVersion,
                 splitQueue,
+                numaNodeMemoryTracker,
                 Ticker.systemTicker());
     }
 
@@ -210,6 +229,7 @@ public class TaskExecutor
     {
         this(
                 runnerThreads,
+                0,
                 minDrivers,
                 guaranteedNumberOfDriversPerTask,
                 maximumNumberOfDriversPerTask,
@@ -218,7 +238,9 @@ public class TaskExecutor
                 DEFAULT_INTERRUPTIBLE_SPLIT_PREDICATE,
                 DEFAULT_INTERRUPT_SPLIT_INTERVAL,
                 new EmbedVersion(new ServerConfig()),
-                new MultilevelSplitQueue(2), ticker);
+                new MultilevelSplitQueue(2),
+                new NumaNodeMemoryTracker(1),
+                ticker);
     }
 
     @VisibleForTesting
@@ -233,6 +255,7 @@ public class TaskExecutor
     {
         this(
                 runnerThreads,
+                0,
                 minDrivers,
                 guaranteedNumberOfDriversPerTask,
                 maximumNumberOfDriversPerTask,
@@ -242,12 +265,14 @@ public class TaskExecutor
                 DEFAULT_INTERRUPT_SPLIT_INTERVAL,
                 new EmbedVersion(new ServerConfig()),
                 splitQueue,
+                new NumaNodeMemoryTracker(splitQueue.getNodeCount()),
                 ticker);
     }
 
     @VisibleForTesting
     public TaskExecutor(
             int runnerThreads,
+            int blockingIoThreads,
             int minDrivers,
             int guaranteedNumberOfDriversPerTask,
             int maximumNumberOfDriversPerTask,
@@ -257,27 +282,36 @@ public class TaskExecutor
             Duration interruptSplitInterval,
             EmbedVersion embedVersion,
             MultilevelSplitQueue splitQueue,
+            NumaNodeMemoryTracker numaNodeMemoryTracker,
             Ticker ticker)
     {
         checkArgument(runnerThreads > 0, "runnerThreads must be at least 1");
+        checkArgument(blockingIoThreads >= 0, "blockingIoThreads is negative");
         checkArgument(guaranteedNumberOfDriversPerTask > 0, "guaranteedNumberOfDriversPerTask must be at least 1");
         checkArgument(maximumNumberOfDriversPerTask > 0, "maximumNumberOfDriversPerTask must be at least 1");
         checkArgument(guaranteedNumberOfDriversPerTask <= maximumNumberOfDriversPerTask, "guaranteedNumberOfDriversPerTask cannot be greater than maximumNumberOfDriversPerTask");
         checkArgument(interruptRunawaySplitsTimeout.getValue(SECONDS) >= 1.0, "interruptRunawaySplitsTimeout must be at least 1 second");
         checkArgument(interruptSplitInterval.getValue(SECONDS) >= 1.0, "interruptSplitInterval must be at least 1 second");
+        checkArgument(numaNodeMemoryTracker.getNodeCount() == splitQueue.getNodeCount(), "numaNodeMemoryTracker and splitQueue have different numbers of NUMA nodes");
 
         // we manage thread pool size directly, so create an unlimited pool
         this.executor = newCachedThreadPool(threadsNamed("task-processor-%s"));
         this.executorMBean = new ThreadPoolExecutorMBean((ThreadPoolExecutor) executor);
         this.runnerThreads = runnerThreads;
+        this.blockingIoThreads = blockingIoThreads;
         this.embedVersion = requireNonNull(embedVersion, "embedVersion is null");
 
         this.ticker = requireNonNull(ticker, "ticker is null");
 
         this.minimumNumberOfDrivers = minDrivers;
+        // the blocking I/O splits mostly wait, keep as many splits per thread ready as the default minimum drivers does
+        this.minimumNumberOfBlockingIoDrivers = 2 * blockingIoThreads;
         this.guaranteedNumberOfDriversPerTask = guaranteedNumberOfDriversPerTask;
         this.maximumNumberOfDriversPerTask = maximumNumberOfDriversPerTask;
         this.waitingSplits = requireNonNull(splitQueue, "splitQueue is null");
+        this.numaNodeCount = splitQueue.getNodeCount();
+        this.numaNodeMemoryTracker = numaNodeMemoryTracker;
+        this.waitingBlockingIoSplits = new MultilevelSplitQueue(splitQueue.getLevelTimeMultiplier(), numaNodeCount, numaNodeCount);
         Function<QueryId, TaskPriorityTracker> taskPriorityTrackerFactory;
         switch (taskPriorityTracking) {
             case TASK_FAIR:
@@ -304,7 +338,10 @@ public class TaskExecutor
     {
         checkState(!closed, "TaskExecutor is closed");
         for (int i = 0; i < runnerThreads; i++) {
-            addRunnerThread();
+            addRunnerThread(waitingSplits);
+        }
+        for (int i = 0; i < blockingIoThreads; i++) {
+            addRunnerThread(waitingBlockingIoSplits);
         }
         if (interruptRunawaySplitsTimeout != null) {
             long interval = (long) interruptSplitInterval.getValue(SECONDS);
@@ -325,18 +362,21 @@ public class TaskExecutor
     {
         return toStringHelper(this)
                 .add("runnerThreads", runnerThreads)
+                .add("blockingIoThreads", blockingIoThreads)
                 .add("allSplits", allSplits.size())
                 .add("intermediateSplits", intermediateSplits.size())
+                .add("blockingIoSplits", blockingIoSplits.size())
                 .add("waitingSplits", waitingSplits.size())
+                .add("waitingBlockingIoSplits", waitingBlockingIoSplits.size())
                 .add("runningSplits", runningSplits.size())
                 .add("blockedSplits", blockedSplits.size())
                 .toString();
     }
 
-    private synchronized void addRunnerThread()
+    private synchronized void addRunnerThread(MultilevelSplitQueue splitQueue)
     {
         try {
-            executor.execute(embedVersion.embedVersion(new TaskRunner()));
+            executor.execute(embedVersion.embedVersion(new TaskRunner(splitQueue)));
         }
         catch (RejectedExecutionException ignored) {
         }
@@ -388,13 +428,16 @@ public class TaskExecutor
             // stop tracking splits (especially blocked splits which may never unblock)
             allSplits.removeAll(splits);
             intermediateSplits.removeAll(splits);
+            blockingIoSplits.removeAll(splits);
             blockedSplits.keySet().removeAll(splits);
             waitingSplits.removeAll(splits);
+            waitingBlockingIoSplits.removeAll(splits);
         }
 
         // call destroy outside of synchronized block as it is expensive and doesn't need a lock on the task executor
         for (PrioritizedSplitRunner split : splits) {
             split.destroy();
+            split.releaseNumaNodeMemory(numaNodeMemoryTracker);
         }
 
         // record completed stats
@@ -456,6 +499,7 @@ public class TaskExecutor
         completedSplitsPerLevel.incrementAndGet(split.getPriority().getLevel());
         synchronized (this) {
             allSplits.remove(split);
+            blockingIoSplits.remove(split);
 
             long wallNanos = System.nanoTime() - split.getCreatedNanos();
             splitWallTime.add(Duration.succinctNanos(wallNanos));
@@ -482,6 +526,7 @@ public class TaskExecutor
         }
         // call destroy outside of synchronized block as it is expensive and doesn't need a lock on the task executor
         split.destroy();
+        split.releaseNumaNodeMemory(numaNodeMemoryTracker);
     }
 
     private synchronized void scheduleTaskIfNecessary(TaskHandle taskHandle)
@@ -522,31 +567,76 @@ public class TaskExecutor
         // simultaneously running splits may vary. If leaf splits start first, there will
         // be 300 running splits. If intermediate splits start first, there will be only
         // 200 running splits.
-        int running = allSplits.size() - intermediateSplits.size();
-        for (int i = 0; i < minimumNumberOfDrivers - running; i++) {
-            PrioritizedSplitRunner split = pollNextSplitWorker();
+        // The blocking I/O splits run on their own threads, so they are started up to their own minimum.
+        int running = allSplits.size() - intermediateSplits.size() - blockingIoSplits.size();
+        int runningBlockingIo = blockingIoSplits.size();
+        while (running < minimumNumberOfDrivers || runningBlockingIo < minimumNumberOfBlockingIoDrivers) {
+            boolean acceptSplits = running < minimumNumberOfDrivers;
+            boolean acceptBlockingIoSplits = runningBlockingIo < minimumNumberOfBlockingIoDrivers;
+            PrioritizedSplitRunner split = pollNextSplitWorker(candidate -> isRunOnBlockingIoThreads(candidate) ? acceptBlockingIoSplits : acceptSplits);
             if (split == null) {
                 break;
             }
 
             splitQueuedTime.add(Duration.nanosSince(split.getCreatedNanos()));
             startSplit(split);
+            if (isRunOnBlockingIoThreads(split)) {
+                runningBlockingIo++;
+            }
+            else {
+                running++;
+            }
         }
     }
 
     private synchronized void startIntermediateSplit(PrioritizedSplitRunner split)
     {
-        startSplit(split);
         intermediateSplits.add(split);
+        startSplit(split);
     }
 
     private synchronized void startSplit(PrioritizedSplitRunner split)
     {
         allSplits.add(split);
-        waitingSplits.offer(split);
+        if (isRunOnBlockingIoThreads(split) && !intermediateSplits.contains(split)) {
+            blockingIoSplits.add(split);
+            waitingBlockingIoSplits.offer(split);
+        }
+        else {
+            waitingSplits.offer(split);
+        }
+    }
+
+    private boolean isRunOnBlockingIoThreads(PrioritizedSplitRunner split)
+    {
+        return blockingIoThreads > 0 && split.isBlockingIo();
+    }
+
+    /**
+     * Returns the NUMA node the split should run on, or -1 if it can run on any node.
+     */
+    private int getPreferredNode(PrioritizedSplitRunner split)
+    {
+        if (numaNodeCount == 1) {
+            return -1;
+        }
+        // run all the drivers of a local partition on the same node, e.g. the build of a partition of a hash table
+        OptionalInt localPartition = split.getLocalPartition();
+        return localPartition.isPresent() ? localPartition.getAsInt() % numaNodeCount : -1;
+    }
+
+    private void offerToPreferredNode(MultilevelSplitQueue splitQueue, PrioritizedSplitRunner split)
+    {
+        int node = getPreferredNode(split);
+        if (node < 0) {
+            splitQueue.offer(split);
+        }
+        else {
+            splitQueue.offerToNode(split, node);
+        }
     }
 
-    private synchronized PrioritizedSplitRunner pollNextSplitWorker()
+    private synchronized PrioritizedSplitRunner pollNextSplitWorker(Predicate<PrioritizedSplitRunner> accepted)
     {
         // todo find a better algorithm for this
         // find the first task that produces a split, then move that task to the
@@ -557,7 +647,7 @@ public class TaskExecutor
             if (task.getRunningLeafSplits() >= task.getMaxDriversPerTask().orElse(maximumNumberOfDriversPerTask)) {
                 continue;
             }
-            PrioritizedSplitRunner split = task.pollNextSplit();
+            PrioritizedSplitRunner split = task.pollNextSplit(accepted);
             if (split != null) {
                 // move task to end of list
                 iterator.remove();
@@ -594,16 +684,30 @@ public class TaskExecutor
             implements Runnable
     {
         private final long runnerId = NEXT_RUNNER_ID.getAndIncrement();
+        private final MultilevelSplitQueue splitQueue;
+        // the shard of the split queue this runner takes splits from and returns them to
+        private final int shard;
+        private final int node;
+
+        private TaskRunner(MultilevelSplitQueue splitQueue)
+        {
+            this.splitQueue = requireNonNull(splitQueue, "splitQueue is null");
+            this.shard = (int) (runnerId % splitQueue.getShardCount());
+            this.node = splitQueue.getNode(shard);
+        }
 
         @Override
         public void run()
         {
             try (SetThreadName runnerName = new SetThreadName("SplitRunner-%s", runnerId)) {
+                if (numaNodeCount > 1) {
+                    ThreadAffinity.system().pinCurrentThread(node);
+                }
                 while (!closed && !Thread.currentThread().isInterrupted()) {
                     // select next worker
                     final PrioritizedSplitRunner split;
                     try {
-                        split = waitingSplits.take();
+                        split = splitQueue.take(shard);
                     }
                     catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
@@ -625,6 +729,10 @@ public class TaskExecutor
                             runningSplits.remove(split);
                         }
 
+                        if (numaNodeCount > 1) {
+                            split.updateNumaNodeMemory(numaNodeMemoryTracker, node);
+                        }
+
                         if (split.isFinished()) {
                             // Avoid calling split.getInfo() when debug logging is not enabled
                             if (log.isDebugEnabled()) {
@@ -634,7 +742,13 @@ public class TaskExecutor
                         }
                         else {
                             if (blocked.isDone()) {
-                                waitingSplits.offer(split);
+                                int preferredNode = getPreferredNode(split);
+                                if (preferredNode < 0 || preferredNode == node) {
+                                    splitQueue.offer(split, shard);
+                                }
+                                else {
+                                    splitQueue.offerToNode(split, preferredNode);
+                                }
                             }
                             else {
                                 blockedSplits.put(split, blocked);
@@ -642,7 +756,7 @@ public class TaskExecutor
                                     blockedSplits.remove(split);
                                     // reset the level priority to prevent previously-blocked splits from starving existing splits
                                     split.resetLevelPriority();
-                                    waitingSplits.offer(split);
+                                    offerToPreferredNode(splitQueue, split);
                                 }, executor);
                             }
                         }
@@ -676,7 +790,7 @@ public class TaskExecutor
             finally {
                 // unless we have been closed, we need to replace this thread
                 if (!closed) {
-                    addRunnerThread();
+                    addRunnerThread(splitQueue);
                 }
             }
         }
@@ -698,6 +812,12 @@ public class TaskExecutor
         return runnerThreads;
     }
 
+    @Managed
+    public int getBlockingIoThreads()
+    {
+        return blockingIoThreads;
+    }
+
     @Managed
     public int getMinimumNumberOfDrivers()
     {
@@ -716,12 +836,24 @@ public class TaskExecutor
         return intermediateSplits.size();
     }
 
+    @Managed
+    public synchronized int getBlockingIoSplits()
+    {
+        return blockingIoSplits.size();
+    }
+
     @Managed
     public int getWaitingSplits()
     {
         return waitingSplits.size();
     }
 
+    @Managed
+    public int getWaitingBlockingIoSplits()
+    {
+        return waitingBlockingIoSplits.size();
+    }
+
     @Managed
     public int getRunningSplits()
     {
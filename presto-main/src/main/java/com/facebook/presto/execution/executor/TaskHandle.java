@@ -28,6 +28,7 @@ import java.util.OptionalInt;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.DoubleSupplier;
+import java.util.function.Predicate;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static java.util.Objects.requireNonNull;
@@ -144,6 +145,14 @@ public class TaskHandle
     }
 
     public synchronized PrioritizedSplitRunner pollNextSplit()
+    {
+        return pollNextSplit(split -> true);
+    }
+
+    /**
+     * Polls the next queued split unless it does not match {@code accepted}, in which case the split stays first in the queue.
+     */
+    public synchronized PrioritizedSplitRunner pollNextSplit(Predicate<PrioritizedSplitRunner> accepted)
     {
         if (destroyed) {
             return null;
@@ -153,10 +162,12 @@ public class TaskHandle
             return null;
         }
 
-        PrioritizedSplitRunner split = queuedLeafSplits.poll();
-        if (split != null) {
-            runningLeafSplits.add(split);
+        PrioritizedSplitRunner split = queuedLeafSplits.peek();
+        if (split == null || !accepted.test(split)) {
+            return null;
         }
+        queuedLeafSplits.remove();
+        runningLeafSplits.add(split);
         return split;
     }
 
@@ -0,0 +1,132 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution.executor;
+
+import com.facebook.airlift.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Suppliers.memoize;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pins threads to the CPUs of a NUMA node. The JVM has no API for the affinity of a thread, so the
+ * thread is pinned with taskset on Linux. Whether pinning is supported is checked once, without running
+ * any process, and once it is known to fail, no further thread is pinned.
+ * Pinning is best effort: the threads keep running unpinned where this is not supported.
+ */
+final class ThreadAffinity
+{
+    private static final Logger log = Logger.get(ThreadAffinity.class);
+
+    private static final ThreadAffinity SYSTEM = new ThreadAffinity(
+            Paths.get("/sys/devices/system/node"),
+            // links to <pid>/task/<tid> for the calling thread
+            Paths.get("/proc/thread-self"),
+            Optional.ofNullable(System.getenv("PATH")).orElse(""));
+
+    private final Path nodesDirectory;
+    private final Path threadSelf;
+    private final String executablePath;
+    // the reason pinning is not supported, computed once
+    private final Supplier<Optional<String>> unsupportedReason = memoize(this::checkSupported);
+    private final AtomicBoolean disabled = new AtomicBoolean();
+
+    @VisibleForTesting
+    ThreadAffinity(Path nodesDirectory, Path threadSelf, String executablePath)
+    {
+        this.nodesDirectory = requireNonNull(nodesDirectory, "nodesDirectory is null");
+        this.threadSelf = requireNonNull(threadSelf, "threadSelf is null");
+        this.executablePath = requireNonNull(executablePath, "executablePath is null");
+    }
+
+    public static ThreadAffinity system()
+    {
+        return SYSTEM;
+    }
+
+    public boolean isSupported()
+    {
+        Optional<String> reason = unsupportedReason.get();
+        reason.ifPresent(this::disable);
+        return !reason.isPresent() && !disabled.get();
+    }
+
+    public boolean pinCurrentThread(int numaNode)
+    {
+        if (!isSupported()) {
+            return false;
+        }
+        try {
+            String cpus = new String(Files.readAllBytes(nodesDirectory.resolve(format("node%s/cpulist", numaNode))), UTF_8).trim();
+            String threadId = Files.readSymbolicLink(threadSelf).getFileName().toString();
+            Process process = new ProcessBuilder("taskset", "-p", "-c", cpus, threadId)
+                    .redirectErrorStream(true)
+                    .start();
+            try (InputStream output = process.getInputStream()) {
+                ByteStreams.exhaust(output);
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                disable(format("taskset exited with code %s", exitCode));
+                return false;
+            }
+            return true;
+        }
+        catch (IOException e) {
+            disable(e.getMessage());
+            return false;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Optional<String> checkSupported()
+    {
+        if (!Files.isDirectory(nodesDirectory)) {
+            return Optional.of(format("%s does not exist", nodesDirectory));
+        }
+        if (!Files.exists(threadSelf)) {
+            return Optional.of(format("%s does not exist", threadSelf));
+        }
+        for (String directory : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(executablePath)) {
+            if (Files.isExecutable(Paths.get(directory, "taskset"))) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of("taskset is not found");
+    }
+
+    private void disable(String reason)
+    {
+        if (!disabled.getAndSet(true)) {
+            log.warn("Runner threads cannot be pinned to NUMA nodes: %s", reason);
+        }
+    }
+}
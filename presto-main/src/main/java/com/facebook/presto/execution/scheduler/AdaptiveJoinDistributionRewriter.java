@@ -0,0 +1,376 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution.scheduler;
+
+import com.facebook.airlift.log.Logger;
+import com.facebook.presto.Session;
+import com.facebook.presto.common.QualifiedObjectName;
+import com.facebook.presto.cost.StatsAndCosts;
+import com.facebook.presto.metadata.FunctionAndTypeManager;
+import com.facebook.presto.metadata.Metadata;
+import com.facebook.presto.spi.Constraint;
+import com.facebook.presto.spi.SchemaTableName;
+import com.facebook.presto.spi.TableHandle;
+import com.facebook.presto.spi.plan.AggregationNode;
+import com.facebook.presto.spi.plan.EquiJoinClause;
+import com.facebook.presto.spi.plan.FilterNode;
+import com.facebook.presto.spi.plan.PlanNode;
+import com.facebook.presto.spi.plan.PlanNodeId;
+import com.facebook.presto.spi.plan.PlanNodeIdAllocator;
+import com.facebook.presto.spi.plan.ProjectNode;
+import com.facebook.presto.spi.plan.TableScanNode;
+import com.facebook.presto.spi.relation.VariableReferenceExpression;
+import com.facebook.presto.spi.statistics.Estimate;
+import com.facebook.presto.sql.planner.Partitioning;
+import com.facebook.presto.sql.planner.PartitioningScheme;
+import com.facebook.presto.sql.planner.PlanFragment;
+import com.facebook.presto.sql.planner.plan.ExchangeNode;
+import com.facebook.presto.sql.planner.plan.JoinNode;
+import com.facebook.presto.sql.planner.plan.PlanFragmentId;
+import com.facebook.presto.sql.planner.plan.RemoteSourceNode;
+import com.facebook.presto.sql.planner.plan.SemiJoinNode;
+import com.facebook.presto.sql.planner.plan.TableFinishNode;
+import com.facebook.presto.sql.planner.plan.TableWriterNode.WriterTarget;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static com.facebook.presto.SystemSessionProperties.getJoinMaxBroadcastTableSize;
+import static com.facebook.presto.spi.plan.AggregationNode.Step.PARTIAL;
+import static com.facebook.presto.spi.plan.JoinDistributionType.PARTITIONED;
+import static com.facebook.presto.spi.plan.JoinDistributionType.REPLICATED;
+import static com.facebook.presto.spi.plan.JoinType.INNER;
+import static com.facebook.presto.spi.plan.JoinType.LEFT;
+import static com.facebook.presto.sql.planner.SchedulingOrderVisitor.scheduleOrder;
+import static com.facebook.presto.sql.planner.SystemPartitioningHandle.FIXED_HASH_DISTRIBUTION;
+import static com.facebook.presto.sql.planner.VariablesExtractor.extractOutputVariables;
+import static com.facebook.presto.sql.planner.optimizations.PlanNodeSearcher.searchFrom;
+import static com.facebook.presto.sql.planner.plan.ExchangeNode.Type.REPARTITION;
+import static com.facebook.presto.sql.planner.plan.ExchangeNode.Type.REPLICATE;
+import static com.facebook.presto.sql.planner.planPrinter.PlanPrinter.jsonFragmentPlan;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.google.common.collect.Streams.stream;
+import static com.google.common.graph.Traverser.forTree;
+import static java.util.Objects.requireNonNull;
+import static java.util.function.Function.identity;
+
+/**
+ * Repartitions a broadcast join once the sections that its build side reads from finished. The planner chooses the
+ * distribution of a join from the estimated size of its build side, so a join whose build side has no statistics is
+ * broadcast even when the build side is too large to be copied to every task. When the build fragment of such a join
+ * only reads tables materialized by the finished children of the section, the size of these tables is the actual size
+ * of the build input, and the join is switched to a partitioned join if it exceeds join_max_broadcast_table_size.
+ * <p>
+ * The probe side of the join moves to a new fragment that partitions its output on the join keys, the build fragment
+ * partitions its output on the join keys instead of replicating it, and the fragment of the join reads both sides from
+ * hash partitioned exchanges. A partitioned join is never switched to a broadcast join, as the tables materialized for
+ * it are already partitioned on the join keys, so replicating the build side would not save any data transfer.
+ * <p>
+ * Joins over streaming exchanges are left alone: their build and probe sides are scheduled together, so the size of
+ * the build side is only known after the join has started.
+ */
+public class AdaptiveJoinDistributionRewriter
+{
+    private static final Logger log = Logger.get(AdaptiveJoinDistributionRewriter.class);
+
+    private final Metadata metadata;
+    private final FunctionAndTypeManager functionAndTypeManager;
+    private final PlanNodeIdAllocator idAllocator;
+
+    public AdaptiveJoinDistributionRewriter(Metadata metadata, FunctionAndTypeManager functionAndTypeManager, PlanNodeIdAllocator idAllocator)
+    {
+        this.metadata = requireNonNull(metadata, "metadata is null");
+        this.functionAndTypeManager = requireNonNull(functionAndTypeManager, "functionAndTypeManager is null");
+        this.idAllocator = requireNonNull(idAllocator, "idAllocator is null");
+    }
+
+    /**
+     * Returns the plan of the section with the broadcast joins over a too large build input repartitioned, or empty
+     * if no join is repartitioned. The fragments created for the probe sides take their ids from fragmentIdAllocator.
+     */
+    public Optional<StreamingSubPlan> rewrite(Session session, StreamingPlanSection section, Supplier<PlanFragmentId> fragmentIdAllocator)
+    {
+        Set<QualifiedObjectName> materializedTables = section.getChildren().stream()
+                .flatMap(child -> stream(forTree(StreamingSubPlan::getChildren).depthFirstPreOrder(child.getPlan())))
+                .flatMap(subPlan -> searchFrom(subPlan.getFragment().getRoot())
+                        .where(TableFinishNode.class::isInstance)
+                        .<TableFinishNode>findAll()
+                        .stream())
+                .map(TableFinishNode::getTarget)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .map(AdaptiveJoinDistributionRewriter::getTableName)
+                .collect(toImmutableSet());
+        if (materializedTables.isEmpty()) {
+            return Optional.empty();
+        }
+        return rewrite(session, section.getPlan(), materializedTables, fragmentIdAllocator);
+    }
+
+    private Optional<StreamingSubPlan> rewrite(Session session, StreamingSubPlan subPlan, Set<QualifiedObjectName> materializedTables, Supplier<PlanFragmentId> fragmentIdAllocator)
+    {
+        // the build fragments are rewritten first, as repartitioning the parent join changes their output partitioning
+        boolean childrenChanged = false;
+        ImmutableList.Builder<StreamingSubPlan> children = ImmutableList.builder();
+        for (StreamingSubPlan child : subPlan.getChildren()) {
+            Optional<StreamingSubPlan> newChild = rewrite(session, child, materializedTables, fragmentIdAllocator);
+            childrenChanged |= newChild.isPresent();
+            children.add(newChild.orElse(child));
+        }
+        StreamingSubPlan current = childrenChanged ? new StreamingSubPlan(subPlan.getFragment(), children.build()) : subPlan;
+
+        Optional<StreamingSubPlan> repartitioned = repartitionBroadcastJoin(session, current, materializedTables, fragmentIdAllocator);
+        if (repartitioned.isPresent()) {
+            return repartitioned;
+        }
+        return childrenChanged ? Optional.of(current) : Optional.empty();
+    }
+
+    private Optional<StreamingSubPlan> repartitionBroadcastJoin(Session session, StreamingSubPlan subPlan, Set<QualifiedObjectName> materializedTables, Supplier<PlanFragmentId> fragmentIdAllocator)
+    {
+        PlanFragment fragment = subPlan.getFragment();
+        if (fragment.getPartitioning().isSingleNode() || fragment.getStageExecutionDescriptor().isStageGroupedExecution()) {
+            return Optional.empty();
+        }
+
+        Map<PlanFragmentId, StreamingSubPlan> children = subPlan.getChildren().stream()
+                .collect(toImmutableMap(child -> child.getFragment().getId(), identity()));
+        long maxBroadcastTableSize = getJoinMaxBroadcastTableSize(session).toBytes();
+        List<JoinNode> joins = searchFrom(fragment.getRoot())
+                .where(JoinNode.class::isInstance)
+                .findAll();
+        for (JoinNode join : joins) {
+            Optional<RemoteSourceNode> buildSource = getReplicatedBuildSource(fragment, join);
+            if (!buildSource.isPresent()) {
+                continue;
+            }
+            StreamingSubPlan build = children.get(getOnlyElement(buildSource.get().getSourceFragmentIds()));
+            if (build == null) {
+                continue;
+            }
+            OptionalDouble buildSizeInBytes = getMaterializedInputSize(session, build.getFragment(), materializedTables);
+            if (buildSizeInBytes.isPresent() && buildSizeInBytes.getAsDouble() > maxBroadcastTableSize) {
+                log.debug("Build size %.0f of broadcast join %s exceeds %s bytes, repartitioning the join", buildSizeInBytes.getAsDouble(), join.getId(), maxBroadcastTableSize);
+                return Optional.of(repartition(session, subPlan, join, buildSource.get(), build, fragmentIdAllocator.get()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the only remote source of the build side of a broadcast join that can be repartitioned. The probe side must
+     * read all the tables of the fragment, so that it can become a fragment of its own, and the nodes of the fragment
+     * outside of the join must not depend on the partitioning of the fragment.
+     */
+    private static Optional<RemoteSourceNode> getReplicatedBuildSource(PlanFragment fragment, JoinNode join)
+    {
+        if (!join.getDistributionType().equals(Optional.of(REPLICATED)) ||
+                (join.getType() != INNER && join.getType() != LEFT) ||
+                join.getCriteria().isEmpty() ||
+                !join.getDynamicFilters().isEmpty()) {
+            return Optional.empty();
+        }
+
+        if (searchFrom(join.getLeft()).where(RemoteSourceNode.class::isInstance).matches()) {
+            return Optional.empty();
+        }
+        Set<PlanNodeId> probeTableScans = searchFrom(join.getLeft())
+                .where(TableScanNode.class::isInstance)
+                .findAll()
+                .stream()
+                .map(PlanNode::getId)
+                .collect(toImmutableSet());
+        if (probeTableScans.isEmpty() || !probeTableScans.containsAll(fragment.getTableScanSchedulingOrder())) {
+            return Optional.empty();
+        }
+
+        if (searchFrom(fragment.getRoot())
+                .recurseOnlyWhen(node -> node != join)
+                .where(node -> node != join && !isIndependentOfPartitioning(node))
+                .matches()) {
+            return Optional.empty();
+        }
+
+        List<RemoteSourceNode> buildSources = searchFrom(join.getRight())
+                .where(RemoteSourceNode.class::isInstance)
+                .findAll();
+        if (buildSources.size() != 1) {
+            return Optional.empty();
+        }
+        RemoteSourceNode buildSource = getOnlyElement(buildSources);
+        List<VariableReferenceExpression> buildKeys = join.getCriteria().stream()
+                .map(EquiJoinClause::getRight)
+                .collect(toImmutableList());
+        if (buildSource.getExchangeType() != REPLICATE ||
+                buildSource.getSourceFragmentIds().size() != 1 ||
+                !buildSource.getOutputVariables().containsAll(buildKeys)) {
+            return Optional.empty();
+        }
+        return Optional.of(buildSource);
+    }
+
+    private static boolean isIndependentOfPartitioning(PlanNode node)
+    {
+        if (node instanceof ProjectNode || node instanceof FilterNode || node instanceof ExchangeNode) {
+            return true;
+        }
+        if (node instanceof AggregationNode) {
+            return ((AggregationNode) node).getStep() == PARTIAL;
+        }
+        if (node instanceof JoinNode) {
+            return ((JoinNode) node).getDistributionType().equals(Optional.of(REPLICATED));
+        }
+        if (node instanceof SemiJoinNode) {
+            return ((SemiJoinNode) node).getDistributionType().equals(Optional.of(SemiJoinNode.DistributionType.REPLICATED));
+        }
+        if (node instanceof RemoteSourceNode) {
+            return ((RemoteSourceNode) node).getExchangeType() == REPLICATE;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the total size of the tables read by a fragment, or empty if the fragment reads other sources than the
+     * tables materialized by the children of the section, or if the size of a table is unknown.
+     */
+    private OptionalDouble getMaterializedInputSize(Session session, PlanFragment fragment, Set<QualifiedObjectName> materializedTables)
+    {
+        // filters and projections do not make the output larger than the tables
+        if (searchFrom(fragment.getRoot())
+                .where(node -> !(node instanceof TableScanNode) && !(node instanceof ProjectNode) && !(node instanceof FilterNode) && !(node instanceof ExchangeNode))
+                .matches()) {
+            return OptionalDouble.empty();
+        }
+
+        double sizeInBytes = 0;
+        List<TableScanNode> tableScans = searchFrom(fragment.getRoot())
+                .where(TableScanNode.class::isInstance)
+                .findAll();
+        for (TableScanNode tableScan : tableScans) {
+            TableHandle table = tableScan.getTable();
+            SchemaTableName tableName = metadata.getTableMetadata(session, table).getTable();
+            if (!materializedTables.contains(new QualifiedObjectName(table.getConnectorId().getCatalogName(), tableName.getSchemaName(), tableName.getTableName()))) {
+                return OptionalDouble.empty();
+            }
+            Estimate totalSize = metadata.getTableStatistics(session, table, ImmutableList.copyOf(tableScan.getAssignments().values()), Constraint.alwaysTrue()).getTotalSize();
+            if (totalSize.isUnknown()) {
+                return OptionalDouble.empty();
+            }
+            sizeInBytes += totalSize.getValue();
+        }
+        return tableScans.isEmpty() ? OptionalDouble.empty() : OptionalDouble.of(sizeInBytes);
+    }
+
+    private StreamingSubPlan repartition(Session session, StreamingSubPlan subPlan, JoinNode join, RemoteSourceNode buildSource, StreamingSubPlan build, PlanFragmentId probeFragmentId)
+    {
+        PlanFragment fragment = subPlan.getFragment();
+        PlanNode probe = join.getLeft();
+        List<VariableReferenceExpression> probeKeys = join.getCriteria().stream()
+                .map(EquiJoinClause::getLeft)
+                .collect(toImmutableList());
+        List<VariableReferenceExpression> buildKeys = join.getCriteria().stream()
+                .map(EquiJoinClause::getRight)
+                .collect(toImmutableList());
+
+        // the probe side reads the splits of the fragment and partitions its output on the probe keys
+        Optional<StatsAndCosts> probeStatsAndCosts = fragment.getStatsAndCosts().map(statsAndCosts -> statsAndCosts.getForSubplan(probe));
+        Set<VariableReferenceExpression> probeVariables = extractOutputVariables(probe);
+        PlanFragment probeFragment = new PlanFragment(
+                probeFragmentId,
+                probe,
+                probeVariables,
+                fragment.getPartitioning(),
+                fragment.getTableScanSchedulingOrder(),
+                new PartitioningScheme(Partitioning.create(FIXED_HASH_DISTRIBUTION, probeKeys), probe.getOutputVariables()),
+                fragment.getStageExecutionDescriptor(),
+                false,
+                probeStatsAndCosts,
+                Optional.of(jsonFragmentPlan(probe, probeVariables, probeStatsAndCosts.orElse(StatsAndCosts.empty()), functionAndTypeManager, session)));
+
+        // the output layout of the build fragment matches the outputs of the remote source by position
+        PlanFragment buildFragment = build.getFragment();
+        List<VariableReferenceExpression> buildOutputLayout = buildFragment.getPartitioningScheme().getOutputLayout();
+        List<VariableReferenceExpression> buildPartitioningKeys = buildKeys.stream()
+                .map(key -> buildOutputLayout.get(buildSource.getOutputVariables().indexOf(key)))
+                .collect(toImmutableList());
+        PlanFragment partitionedBuildFragment = new PlanFragment(
+                buildFragment.getId(),
+                buildFragment.getRoot(),
+                buildFragment.getVariables(),
+                buildFragment.getPartitioning(),
+                buildFragment.getTableScanSchedulingOrder(),
+                new PartitioningScheme(Partitioning.create(FIXED_HASH_DISTRIBUTION, buildPartitioningKeys), buildOutputLayout),
+                buildFragment.getStageExecutionDescriptor(),
+                buildFragment.isOutputTableWriterFragment(),
+                buildFragment.getStatsAndCosts(),
+                buildFragment.getJsonRepresentation());
+
+        RemoteSourceNode probeSource = new RemoteSourceNode(
+                probe.getSourceLocation(),
+                idAllocator.getNextId(),
+                probeFragmentId,
+                probe.getOutputVariables(),
+                false,
+                Optional.empty(),
+                REPARTITION);
+        RemoteSourceNode partitionedBuildSource = new RemoteSourceNode(
+                buildSource.getSourceLocation(),
+                buildSource.getId(),
+                buildSource.getSourceFragmentIds(),
+                buildSource.getOutputVariables(),
+                buildSource.isEnsureSourceOrdering(),
+                buildSource.getOrderingScheme(),
+                REPARTITION);
+        PlanNode partitionedBuild = searchFrom(join.getRight())
+                .where(node -> node == buildSource)
+                .replaceAll(partitionedBuildSource);
+        PlanNode partitionedJoin = join.withDistributionType(PARTITIONED).replaceChildren(ImmutableList.of(probeSource, partitionedBuild));
+        PlanNode root = searchFrom(fragment.getRoot())
+                .where(node -> node == join)
+                .replaceAll(partitionedJoin);
+
+        Optional<StatsAndCosts> statsAndCosts = fragment.getStatsAndCosts();
+        PlanFragment joinFragment = new PlanFragment(
+                fragment.getId(),
+                root,
+                fragment.getVariables(),
+                FIXED_HASH_DISTRIBUTION,
+                scheduleOrder(root),
+                fragment.getPartitioningScheme(),
+                fragment.getStageExecutionDescriptor(),
+                fragment.isOutputTableWriterFragment(),
+                statsAndCosts,
+                Optional.of(jsonFragmentPlan(root, fragment.getVariables(), statsAndCosts.orElse(StatsAndCosts.empty()), functionAndTypeManager, session)));
+
+        ImmutableList.Builder<StreamingSubPlan> children = ImmutableList.builder();
+        for (StreamingSubPlan child : subPlan.getChildren()) {
+            children.add(child == build ? new StreamingSubPlan(partitionedBuildFragment, build.getChildren()) : child);
+        }
+        children.add(new StreamingSubPlan(probeFragment, ImmutableList.of()));
+        return new StreamingSubPlan(joinFragment, children.build());
+    }
+
+    private static QualifiedObjectName getTableName(WriterTarget target)
+    {
+        return new QualifiedObjectName(target.getConnectorId().getCatalogName(), target.getSchemaTableName().getSchemaName(), target.getSchemaTableName().getTableName());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution.scheduler;
+
+import com.facebook.presto.cost.PlanNodeStatsEstimate;
+import com.facebook.presto.spi.plan.PlanNodeId;
+import com.facebook.presto.sql.planner.PlanFragment;
+import com.facebook.presto.sql.planner.plan.RemoteSourceNode;
+import com.google.common.annotations.VisibleForTesting;
+import io.airlift.units.DataSize;
+
+import java.util.Map;
+import java.util.OptionalInt;
+
+import static com.facebook.presto.sql.planner.plan.ExchangeNode.Type.REPLICATE;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Double.isNaN;
+import static java.lang.Math.ceil;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Chooses the partition count of a hash partitioned stage from the estimated size of its input, so that stages
+ * with a small input do not pay for the coordination of hash_partition_count tasks. The estimates are the stats
+ * attached to the fragment by the planner, which come from the query history when history based statistics are used.
+ */
+public final class PartitionCountEstimator
+{
+    private PartitionCountEstimator() {}
+
+    /**
+     * Returns the partition count for the estimated size of the partitioned inputs of the fragment, or empty
+     * if the size of an input is unknown.
+     */
+    public static OptionalInt estimatePartitionCount(PlanFragment fragment, int minPartitionCount, int maxPartitionCount, DataSize targetPartitionInputSize)
+    {
+        if (!fragment.getStatsAndCosts().isPresent()) {
+            return OptionalInt.empty();
+        }
+
+        Map<PlanNodeId, PlanNodeStatsEstimate> stats = fragment.getStatsAndCosts().get().getStats();
+        double inputSizeInBytes = 0;
+        for (RemoteSourceNode remoteSource : fragment.getRemoteSourceNodes()) {
+            if (remoteSource.getExchangeType() == REPLICATE) {
+                // every partition reads the whole replicated input, whatever the partition count
+                continue;
+            }
+            PlanNodeStatsEstimate estimate = stats.get(remoteSource.getId());
+            if (estimate == null) {
+                return OptionalInt.empty();
+            }
+            double outputSizeInBytes = estimate.getOutputSizeInBytes(remoteSource);
+            if (isNaN(outputSizeInBytes)) {
+                return OptionalInt.empty();
+            }
+            inputSizeInBytes += outputSizeInBytes;
+        }
+
+        return OptionalInt.of(getPartitionCount(inputSizeInBytes, minPartitionCount, maxPartitionCount, targetPartitionInputSize));
+    }
+
+    @VisibleForTesting
+    static int getPartitionCount(double inputSizeInBytes, int minPartitionCount, int maxPartitionCount, DataSize targetPartitionInputSize)
+    {
+        checkArgument(minPartitionCount > 0, "minPartitionCount must be positive");
+        checkArgument(maxPartitionCount > 0, "maxPartitionCount must be positive");
+        checkArgument(targetPartitionInputSize.toBytes() > 0, "targetPartitionInputSize must be positive");
+
+        double partitionCount = ceil(inputSizeInBytes / targetPartitionInputSize.toBytes());
+        return (int) max(min(minPartitionCount, maxPartitionCount), min(maxPartitionCount, partitionCount));
+    }
+}
@@ -41,6 +41,7 @@ import com.facebook.presto.split.SplitSource;
 import com.facebook.presto.sql.planner.NodePartitionMap;
 import com.facebook.presto.sql.planner.NodePartitioningManager;
 import com.facebook.presto.sql.planner.PartitioningHandle;
+import com.facebook.presto.sql.planner.PlanFragment;
 import com.facebook.presto.sql.planner.PlanFragmenterUtils;
 import com.facebook.presto.sql.planner.SplitSourceFactory;
 import com.facebook.presto.sql.planner.optimizations.PlanNodeSearcher;
@@ -59,6 +60,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
@@ -67,17 +69,27 @@ import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import static com.facebook.presto.SystemSessionProperties.getConcurrentLifespansPerNode;
+import static com.facebook.presto.SystemSessionProperties.getHashPartitionCount;
 import static com.facebook.presto.SystemSessionProperties.getMaxTasksPerStage;
+import static com.facebook.presto.SystemSessionProperties.getMinHashPartitionCount;
+import static com.facebook.presto.SystemSessionProperties.getSpeculativeExecutionStragglerMultiplier;
+import static com.facebook.presto.SystemSessionProperties.getTargetPartitionInputSize;
 import static com.facebook.presto.SystemSessionProperties.getWriterMinSize;
+import static com.facebook.presto.SystemSessionProperties.isAdaptivePartitionCountEnabled;
 import static com.facebook.presto.SystemSessionProperties.isOptimizedScaleWriterProducerBuffer;
+import static com.facebook.presto.SystemSessionProperties.isSpeculativeExecutionEnabled;
 import static com.facebook.presto.execution.SqlStageExecution.createSqlStageExecution;
+import static com.facebook.presto.execution.scheduler.PartitionCountEstimator.estimatePartitionCount;
 import static com.facebook.presto.execution.scheduler.SourcePartitionedScheduler.newSourcePartitionedSchedulerAsStageScheduler;
 import static com.facebook.presto.execution.scheduler.TableWriteInfo.createTableWriteInfo;
 import static com.facebook.presto.spi.ConnectorId.isInternalSystemConnector;
 import static com.facebook.presto.spi.NodePoolType.INTERMEDIATE;
 import static com.facebook.presto.spi.NodePoolType.LEAF;
 import static com.facebook.presto.spi.StandardErrorCode.NO_NODES_AVAILABLE;
+import static com.facebook.presto.spi.connector.ConnectorCapabilities.SUPPORTS_DETERMINISTIC_SPLITS;
 import static com.facebook.presto.spi.connector.NotPartitionedPartitionHandle.NOT_PARTITIONED;
+import static com.facebook.presto.sql.planner.SystemPartitioningHandle.FIXED_ARBITRARY_DISTRIBUTION;
+import static com.facebook.presto.sql.planner.SystemPartitioningHandle.FIXED_HASH_DISTRIBUTION;
 import static com.facebook.presto.sql.planner.SystemPartitioningHandle.SCALED_WRITER_DISTRIBUTION;
 import static com.facebook.presto.sql.planner.SystemPartitioningHandle.SOURCE_DISTRIBUTION;
 import static com.facebook.presto.sql.planner.plan.ExchangeNode.Type.REPLICATE;
@@ -222,8 +234,9 @@ public class SectionExecutionFactory
                 tableWriteInfo);
 
         PartitioningHandle partitioningHandle = plan.getFragment().getPartitioning();
+        Function<PartitioningHandle, NodePartitionMap> stagePartitioningCache = getStagePartitioningCache(session, plan, partitioningCache);
         List<RemoteSourceNode> remoteSourceNodes = plan.getFragment().getRemoteSourceNodes();
-        Optional<int[]> bucketToPartition = getBucketToPartition(partitioningHandle, partitioningCache, plan.getFragment().getRoot(), remoteSourceNodes);
+        Optional<int[]> bucketToPartition = getBucketToPartition(partitioningHandle, stagePartitioningCache, plan.getFragment().getRoot(), remoteSourceNodes);
 
         // create child stages
         ImmutableSet.Builder<SqlStageExecution> childStagesBuilder = ImmutableSet.builder();
@@ -249,12 +262,19 @@ public class SectionExecutionFactory
             }
         });
 
-        StageLinkage stageLinkage = new StageLinkage(fragmentId, parent, childStageExecutions);
+        ExchangeLocationsConsumer stageLinkageParent = parent;
+        if (isSpeculativeExecutionEligible(session, plan, parentStageExecution, tableWriteInfo)) {
+            stageExecution.enableSpeculativeExecution();
+            new SpeculativeTaskScheduler(stageExecution, parent, scheduledExecutor, getSpeculativeExecutionStragglerMultiplier(session)).start();
+            // the consumers must accept the locations of speculative tasks until the stage finishes
+            stageLinkageParent = (sourceFragmentId, tasks, noMoreExchangeLocations) -> parent.addExchangeLocations(sourceFragmentId, tasks, false);
+        }
+        StageLinkage stageLinkage = new StageLinkage(fragmentId, stageLinkageParent, childStageExecutions);
         StageScheduler stageScheduler = createStageScheduler(
                 splitSourceFactory,
                 session,
                 plan,
-                partitioningCache,
+                stagePartitioningCache,
                 parentStageExecution,
                 stageId,
                 stageExecution,
@@ -408,6 +428,58 @@ public class SectionExecutionFactory
         }
     }
 
+    /**
+     * Returns the partitioning cache of the stage, which assigns the stage its own nodes when its partition count is chosen
+     * from the estimated size of its input. The producers of the stage partition their output for these nodes.
+     */
+    private Function<PartitioningHandle, NodePartitionMap> getStagePartitioningCache(Session session, StreamingSubPlan plan, Function<PartitioningHandle, NodePartitionMap> partitioningCache)
+    {
+        PlanFragment fragment = plan.getFragment();
+        PartitioningHandle partitioningHandle = fragment.getPartitioning();
+        if (!isAdaptivePartitionCountEnabled(session) ||
+                !(partitioningHandle.equals(FIXED_HASH_DISTRIBUTION) || partitioningHandle.equals(FIXED_ARBITRARY_DISTRIBUTION)) ||
+                !fragment.getTableScanSchedulingOrder().isEmpty()) {
+            return partitioningCache;
+        }
+
+        int hashPartitionCount = getHashPartitionCount(session);
+        OptionalInt partitionCount = estimatePartitionCount(fragment, getMinHashPartitionCount(session), hashPartitionCount, getTargetPartitionInputSize(session));
+        if (!partitionCount.isPresent() || partitionCount.getAsInt() >= hashPartitionCount) {
+            return partitioningCache;
+        }
+
+        NodePartitionMap nodePartitionMap = nodePartitioningManager.getNodePartitioningMap(session, partitioningHandle, getNodePoolSelectionPredicate(plan), partitionCount.getAsInt());
+        return handle -> handle.equals(partitioningHandle) ? nodePartitionMap : partitioningCache.apply(handle);
+    }
+
+    private boolean isSpeculativeExecutionEligible(Session session, StreamingSubPlan plan, Optional<SqlStageExecution> parentStageExecution, TableWriteInfo tableWriteInfo)
+    {
+        PlanFragment fragment = plan.getFragment();
+        if (!isSpeculativeExecutionEnabled(session) ||
+                !fragment.getPartitioning().equals(SOURCE_DISTRIBUTION) ||
+                !fragment.getRemoteSourceNodes().isEmpty() ||
+                !parentStageExecution.isPresent() ||
+                tableWriteInfo.getWriterTarget().isPresent() ||
+                tableWriteInfo.getDeleteScanInfo().isPresent()) {
+            return false;
+        }
+
+        // a merging consumer reads every location, and would read the output of both attempts of a task
+        boolean orderedConsumer = parentStageExecution.get().getFragment().getRemoteSourceNodes().stream()
+                .filter(remoteSource -> remoteSource.getSourceFragmentIds().contains(fragment.getId()))
+                .anyMatch(remoteSource -> remoteSource.getOrderingScheme().isPresent() || remoteSource.isEnsureSourceOrdering());
+        if (orderedConsumer) {
+            return false;
+        }
+
+        return PlanNodeSearcher.searchFrom(fragment.getRoot())
+                .where(TableScanNode.class::isInstance)
+                .<TableScanNode>findAll()
+                .stream()
+                .map(tableScan -> tableScan.getTable().getConnectorId())
+                .allMatch(connectorId -> metadata.getConnectorCapabilities(session, connectorId).contains(SUPPORTS_DETERMINISTIC_SPLITS));
+    }
+
     private Optional<Predicate<Node>> getNodePoolSelectionPredicate(StreamingSubPlan plan)
     {
         if (!isEnableWorkerIsolation || plan.getFragment().getStageExecutionDescriptor().isStageGroupedExecution()) {
@@ -0,0 +1,220 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution.scheduler;
+
+import com.facebook.airlift.log.Logger;
+import com.facebook.presto.execution.RemoteTask;
+import com.facebook.presto.execution.SqlStageExecution;
+import com.facebook.presto.execution.StageExecutionState;
+import com.facebook.presto.execution.TaskId;
+import com.facebook.presto.execution.TaskInfo;
+import com.facebook.presto.execution.TaskState;
+import com.facebook.presto.metadata.InternalNode;
+import com.facebook.presto.operator.ExchangeClient;
+import com.facebook.presto.operator.TaskStats;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static com.facebook.presto.execution.SqlStageExecution.DEFAULT_TASK_ATTEMPT_NUMBER;
+import static com.facebook.presto.execution.StageExecutionState.CANCELED;
+import static com.facebook.presto.execution.StageExecutionState.FINISHED;
+import static com.facebook.presto.execution.StageExecutionState.RUNNING;
+import static com.facebook.presto.execution.StageExecutionState.SCHEDULED;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.lang.Math.max;
+import static java.util.Comparator.comparingLong;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Runs a speculative attempt of the straggler tasks of a leaf stage whose splits produce the same output when they are
+ * read again. Once half of the tasks of the stage finished, a task that has not sent any output yet and runs longer than
+ * a multiple of the median time of the finished tasks is run again with the same splits on a node that finished its own
+ * task of the stage. Each consumer only reads the attempt that first delivers pages to it, see {@link ExchangeClient},
+ * and the attempts that no consumer reads are canceled once the stage finishes. An attempt that fails after a consumer
+ * read its output fails the stage.
+ * <p>
+ * As the consumers learn about the speculative attempts from the exchange locations of the stage, the stage linkage must
+ * not signal that there are no more locations, which is done by this scheduler once the stage finished instead.
+ */
+public class SpeculativeTaskScheduler
+{
+    private static final Logger log = Logger.get(SpeculativeTaskScheduler.class);
+
+    @VisibleForTesting
+    static final double MIN_FINISHED_TASK_RATIO = 0.5;
+    @VisibleForTesting
+    static final double MAX_SPECULATIVE_TASK_RATIO = 0.1;
+    // short tasks are not worth a second attempt, whatever the time of the other tasks
+    @VisibleForTesting
+    static final long MIN_STRAGGLER_MILLIS = 1_000;
+    private static final long CHECK_INTERVAL_MILLIS = 1_000;
+
+    private final SqlStageExecution stageExecution;
+    private final ExchangeLocationsConsumer parent;
+    private final ScheduledExecutorService executor;
+    private final double stragglerMultiplier;
+
+    // nodes that run a speculative attempt, each node runs at most one
+    @GuardedBy("this")
+    private final Set<String> speculativeNodeIds = new HashSet<>();
+    @GuardedBy("this")
+    private boolean noMoreTasks;
+    @GuardedBy("this")
+    private ScheduledFuture<?> checkFuture;
+
+    public SpeculativeTaskScheduler(SqlStageExecution stageExecution, ExchangeLocationsConsumer parent, ScheduledExecutorService executor, double stragglerMultiplier)
+    {
+        this.stageExecution = requireNonNull(stageExecution, "stageExecution is null");
+        this.parent = requireNonNull(parent, "parent is null");
+        this.executor = requireNonNull(executor, "executor is null");
+        checkArgument(stragglerMultiplier >= 1, "stragglerMultiplier must be at least 1");
+        this.stragglerMultiplier = stragglerMultiplier;
+    }
+
+    public synchronized void start()
+    {
+        checkState(checkFuture == null, "already started");
+        checkFuture = executor.scheduleWithFixedDelay(this::scheduleSpeculativeTasksQuietly, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, MILLISECONDS);
+        stageExecution.addStateChangeListener(this::stageStateChanged);
+    }
+
+    private synchronized void stageStateChanged(StageExecutionState state)
+    {
+        if (!state.isDone() || noMoreTasks) {
+            return;
+        }
+        noMoreTasks = true;
+        checkFuture.cancel(false);
+        if (state == FINISHED || state == CANCELED) {
+            parent.addExchangeLocations(stageExecution.getFragment().getId(), ImmutableSet.of(), true);
+        }
+    }
+
+    private void scheduleSpeculativeTasksQuietly()
+    {
+        try {
+            scheduleSpeculativeTasks();
+        }
+        catch (Throwable t) {
+            // the stage still finishes without the speculative attempts
+            log.warn(t, "Error scheduling speculative tasks of stage %s", stageExecution.getStageExecutionId());
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void scheduleSpeculativeTasks()
+    {
+        StageExecutionState state = stageExecution.getState();
+        if (noMoreTasks || (state != SCHEDULED && state != RUNNING)) {
+            return;
+        }
+
+        Map<TaskId, TaskId> speculativeTasks = stageExecution.getSpeculativeTasks();
+        long now = System.currentTimeMillis();
+        int taskCount = 0;
+        Map<TaskId, Long> runningTaskMillis = new HashMap<>();
+        List<Long> finishedTaskMillis = new ArrayList<>();
+        Set<String> busyNodeIds = new HashSet<>();
+        Set<String> idleNodeIds = new HashSet<>();
+        for (RemoteTask task : stageExecution.getAllTasks()) {
+            TaskId taskId = task.getTaskId();
+            TaskState taskState = task.getTaskStatus().getState();
+            if (!taskState.isDone()) {
+                busyNodeIds.add(task.getNodeId());
+            }
+            if (taskId.getAttemptNumber() != DEFAULT_TASK_ATTEMPT_NUMBER) {
+                continue;
+            }
+
+            taskCount++;
+            TaskInfo taskInfo = task.getTaskInfo();
+            TaskStats taskStats = taskInfo.getStats();
+            if (taskState == TaskState.FINISHED) {
+                idleNodeIds.add(task.getNodeId());
+                if (!speculativeTasks.containsKey(taskId) && taskStats.getEndTime() != null) {
+                    finishedTaskMillis.add(taskStats.getEndTime().getMillis() - taskStats.getCreateTime().getMillis());
+                }
+            }
+            else if (!taskState.isDone() && !speculativeTasks.containsKey(taskId) && taskInfo.getOutputBuffers().getTotalPagesSent() == 0) {
+                // once the consumers read the output of the task, they would not use the output of another attempt
+                runningTaskMillis.put(taskId, now - taskStats.getCreateTime().getMillis());
+            }
+        }
+
+        List<TaskId> stragglers = selectStragglers(runningTaskMillis, finishedTaskMillis, taskCount, speculativeTasks.size(), stragglerMultiplier);
+        if (stragglers.isEmpty()) {
+            return;
+        }
+
+        // the node of a running task is busy, so a straggler is never copied to its own node
+        List<InternalNode> candidateNodes = stageExecution.getScheduledNodes().stream()
+                .filter(node -> idleNodeIds.contains(node.getNodeIdentifier()))
+                .filter(node -> !busyNodeIds.contains(node.getNodeIdentifier()))
+                .filter(node -> !speculativeNodeIds.contains(node.getNodeIdentifier()))
+                .collect(toImmutableList());
+        for (int i = 0; i < stragglers.size() && i < candidateNodes.size(); i++) {
+            TaskId straggler = stragglers.get(i);
+            InternalNode node = candidateNodes.get(i);
+            Optional<RemoteTask> speculativeTask = stageExecution.scheduleSpeculativeTask(straggler, node);
+            if (speculativeTask.isPresent()) {
+                speculativeNodeIds.add(node.getNodeIdentifier());
+                parent.addExchangeLocations(stageExecution.getFragment().getId(), ImmutableSet.of(speculativeTask.get()), false);
+            }
+        }
+    }
+
+    /**
+     * Returns the running tasks to speculate, the slowest first.
+     */
+    @VisibleForTesting
+    static List<TaskId> selectStragglers(Map<TaskId, Long> runningTaskMillis, List<Long> finishedTaskMillis, int taskCount, int speculativeTaskCount, double stragglerMultiplier)
+    {
+        if (finishedTaskMillis.isEmpty() || finishedTaskMillis.size() < taskCount * MIN_FINISHED_TASK_RATIO) {
+            return ImmutableList.of();
+        }
+        int maxSpeculativeTasks = max(1, (int) (taskCount * MAX_SPECULATIVE_TASK_RATIO)) - speculativeTaskCount;
+        if (maxSpeculativeTasks <= 0) {
+            return ImmutableList.of();
+        }
+
+        List<Long> sortedFinishedTaskMillis = new ArrayList<>(finishedTaskMillis);
+        Collections.sort(sortedFinishedTaskMillis);
+        long medianMillis = sortedFinishedTaskMillis.get(sortedFinishedTaskMillis.size() / 2);
+        double thresholdMillis = max(MIN_STRAGGLER_MILLIS, stragglerMultiplier * medianMillis);
+
+        return runningTaskMillis.entrySet().stream()
+                .filter(entry -> entry.getValue() > thresholdMillis)
+                .sorted(comparingLong((Map.Entry<TaskId, Long> entry) -> entry.getValue()).reversed())
+                .map(Map.Entry::getKey)
+                .limit(maxSpeculativeTasks)
+                .collect(toImmutableList());
+    }
+}
@@ -70,6 +70,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -79,6 +80,7 @@ import static com.facebook.airlift.http.client.HttpUriBuilder.uriBuilderFrom;
 import static com.facebook.presto.SystemSessionProperties.getMaxConcurrentMaterializations;
 import static com.facebook.presto.SystemSessionProperties.getPartialResultsCompletionRatioThreshold;
 import static com.facebook.presto.SystemSessionProperties.getPartialResultsMaxExecutionTimeMultiplier;
+import static com.facebook.presto.SystemSessionProperties.isAdaptiveJoinDistributionEnabled;
 import static com.facebook.presto.SystemSessionProperties.isPartialResultsEnabled;
 import static com.facebook.presto.SystemSessionProperties.isRuntimeOptimizerEnabled;
 import static com.facebook.presto.execution.BasicStageExecutionStats.aggregateBasicStageStats;
@@ -100,6 +102,7 @@ import static com.facebook.presto.sql.planner.planPrinter.PlanPrinter.jsonFragme
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.collect.Iterables.getOnlyElement;
 import static com.google.common.collect.Streams.stream;
 import static com.google.common.graph.Traverser.forTree;
@@ -140,8 +143,10 @@ public class SqlQueryScheduler
     private final RemoteTaskFactory remoteTaskFactory;
     private final SplitSourceFactory splitSourceFactory;
     private final Set<StageId> runtimeOptimizedStages = Collections.synchronizedSet(new HashSet<>());
+    private final Map<PlanFragmentId, StreamingPlanSection> joinDistributionAdaptedSections = new ConcurrentHashMap<>();
     private final PlanChecker planChecker;
     private final Metadata metadata;
+    private final AdaptiveJoinDistributionRewriter adaptiveJoinDistributionRewriter;
 
     private final Map<StageId, StageExecutionAndScheduler> stageExecutions = new ConcurrentHashMap<>();
     private final ExecutorService executor;
@@ -236,6 +241,7 @@ public class SqlQueryScheduler
         this.variableAllocator = requireNonNull(variableAllocator, "variableAllocator is null");
         this.planChecker = requireNonNull(planChecker, "planChecker is null");
         this.metadata = requireNonNull(metadata, "metadata is null");
+        this.adaptiveJoinDistributionRewriter = new AdaptiveJoinDistributionRewriter(metadata, functionAndTypeManager, idAllocator);
         this.sectionExecutionFactory = requireNonNull(sectionExecutionFactory, "sectionExecutionFactory is null");
         this.remoteTaskFactory = requireNonNull(remoteTaskFactory, "remoteTaskFactory is null");
         this.splitSourceFactory = requireNonNull(splitSourceFactory, "splitSourceFactory is null");
@@ -573,6 +579,7 @@ public class SqlQueryScheduler
                 .filter(this::isReadyForExecution)
                 .limit(maxConcurrentMaterializations - runningPlanSections)
                 .map(this::tryCostBasedOptimize)
+                .map(this::tryAdaptJoinDistribution)
                 .collect(toImmutableList());
     }
 
@@ -610,12 +617,63 @@ public class SqlQueryScheduler
         updatePlan(oldToNewFragment);
 
         // Rebuild and update entries of the stageExecutions map.
-        updateStageExecutions(section, oldToNewFragment);
+        StreamingPlanSection newSection = new StreamingPlanSection(rewriteStreamingSubPlan(section.getPlan(), oldToNewFragment), section.getChildren());
+        updateStageExecutions(newSection);
         log.debug("Invoked CBO during runtime, optimized stage IDs: " + oldToNewFragment.keySet().stream()
                 .map(PlanFragment::getId)
                 .map(PlanFragmentId::toString)
                 .collect(Collectors.joining(", ")));
-        return section;
+        return newSection;
+    }
+
+    /**
+     * Repartitions the broadcast joins of the section whose build side reads tables materialized by its children
+     * sections that are larger than join_max_broadcast_table_size, see {@link AdaptiveJoinDistributionRewriter}.
+     */
+    private StreamingPlanSection tryAdaptJoinDistribution(StreamingPlanSection section)
+    {
+        if (!isAdaptiveJoinDistributionEnabled(session) || section.getChildren().isEmpty()) {
+            return section;
+        }
+        // getSectionsReadyForExecution may return a section again before it is scheduled, and its stages were already replaced
+        StreamingPlanSection adaptedSection = joinDistributionAdaptedSections.get(section.getPlan().getFragment().getId());
+        if (adaptedSection != null) {
+            return adaptedSection;
+        }
+
+        AtomicInteger nextFragmentId = new AtomicInteger(stream(forTree(SubPlan::getChildren).depthFirstPreOrder(plan.get()))
+                .mapToInt(subPlan -> subPlan.getFragment().getId().getId())
+                .max()
+                .getAsInt() + 1);
+        Optional<StreamingSubPlan> rewrittenPlan = adaptiveJoinDistributionRewriter.rewrite(session, section, () -> new PlanFragmentId(nextFragmentId.getAndIncrement()));
+        if (!rewrittenPlan.isPresent()) {
+            return section;
+        }
+
+        Set<PlanFragment> oldFragments = stream(forTree(StreamingSubPlan::getChildren).depthFirstPreOrder(section.getPlan()))
+                .map(StreamingSubPlan::getFragment)
+                .collect(toImmutableSet());
+        Map<PlanFragmentId, StreamingSubPlan> newSubPlans = stream(forTree(StreamingSubPlan::getChildren).depthFirstPreOrder(rewrittenPlan.get()))
+                .collect(toImmutableMap(subPlan -> subPlan.getFragment().getId(), identity()));
+        List<PlanFragment> changedFragments = newSubPlans.values().stream()
+                .map(StreamingSubPlan::getFragment)
+                .filter(fragment -> !oldFragments.contains(fragment))
+                .collect(toImmutableList());
+        for (PlanFragment fragment : changedFragments) {
+            planChecker.validatePlanFragment(fragment.getRoot(), session, metadata, warningCollector);
+            runtimeOptimizedStages.add(getStageId(fragment.getId()));
+        }
+
+        // The stages of the new fragments must exist before getStageInfo finds them in the plan.
+        StreamingPlanSection newSection = new StreamingPlanSection(rewrittenPlan.get(), section.getChildren());
+        updateStageExecutions(newSection);
+        plan.getAndUpdate(value -> rewritePlanWithSection(value, newSubPlans));
+        joinDistributionAdaptedSections.put(section.getPlan().getFragment().getId(), newSection);
+        log.debug("Adapted join distribution during runtime, changed stage IDs: " + changedFragments.stream()
+                .map(PlanFragment::getId)
+                .map(PlanFragmentId::toString)
+                .collect(Collectors.joining(", ")));
+        return newSection;
     }
 
     private Optional<PlanFragment> performRuntimeOptimizations(StreamingSubPlan subPlan)
@@ -646,11 +704,10 @@ public class SqlQueryScheduler
     }
 
     /**
-     * Utility function that rebuild a StreamingPlanSection, re-create stageExecutionAndScheduler for each of its stage, and finally update the stageExecutions map.
+     * Utility function that re-create stageExecutionAndScheduler for each stage of a rebuilt StreamingPlanSection, and finally update the stageExecutions map.
      */
-    private void updateStageExecutions(StreamingPlanSection section, Map<PlanFragment, PlanFragment> oldToNewFragment)
+    private void updateStageExecutions(StreamingPlanSection newSection)
     {
-        StreamingPlanSection newSection = new StreamingPlanSection(rewriteStreamingSubPlan(section.getPlan(), oldToNewFragment), section.getChildren());
         PlanFragment sectionRootFragment = newSection.getPlan().getFragment();
         Optional<int[]> bucketToPartition;
         OutputBuffers outputBuffers;
@@ -706,6 +763,29 @@ public class SqlQueryScheduler
         }
     }
 
+    /**
+     * Replaces the fragments of the plan by the fragments of the rebuilt section, and adds the fragments created by the rebuild.
+     */
+    private static SubPlan rewritePlanWithSection(SubPlan root, Map<PlanFragmentId, StreamingSubPlan> newSubPlans)
+    {
+        ImmutableList.Builder<SubPlan> children = ImmutableList.builder();
+        Set<PlanFragmentId> childrenIds = new HashSet<>();
+        for (SubPlan child : root.getChildren()) {
+            children.add(rewritePlanWithSection(child, newSubPlans));
+            childrenIds.add(child.getFragment().getId());
+        }
+        StreamingSubPlan newSubPlan = newSubPlans.get(root.getFragment().getId());
+        if (newSubPlan == null) {
+            return new SubPlan(root.getFragment(), children.build());
+        }
+        for (StreamingSubPlan child : newSubPlan.getChildren()) {
+            if (!childrenIds.contains(child.getFragment().getId())) {
+                children.add(rewritePlanWithSection(new SubPlan(child.getFragment(), ImmutableList.of()), newSubPlans));
+            }
+        }
+        return new SubPlan(newSubPlan.getFragment(), children.build());
+    }
+
     // Only used for adaptive optimization, to register listeners to new stageExecutions generated in runtime.
     private void addStateChangeListeners(SectionExecution sectionExecution)
     {
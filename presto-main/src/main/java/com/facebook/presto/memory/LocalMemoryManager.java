@@ -41,19 +41,32 @@ public final class LocalMemoryManager
     public static final MemoryPoolId GENERAL_POOL = new MemoryPoolId("general");
     public static final MemoryPoolId RESERVED_POOL = new MemoryPoolId("reserved");
 
+    private final NumaNodeMemoryTracker numaNodeMemoryTracker;
     private DataSize maxMemory;
     private Map<MemoryPoolId, MemoryPool> pools;
 
-    @Inject
     public LocalMemoryManager(NodeMemoryConfig config)
     {
-        this(config, Runtime.getRuntime().maxMemory());
+        this(config, new NumaNodeMemoryTracker(1));
+    }
+
+    @Inject
+    public LocalMemoryManager(NodeMemoryConfig config, NumaNodeMemoryTracker numaNodeMemoryTracker)
+    {
+        this(config, Runtime.getRuntime().maxMemory(), numaNodeMemoryTracker);
     }
 
     @VisibleForTesting
     public LocalMemoryManager(NodeMemoryConfig config, long availableMemory)
+    {
+        this(config, availableMemory, new NumaNodeMemoryTracker(1));
+    }
+
+    @VisibleForTesting
+    public LocalMemoryManager(NodeMemoryConfig config, long availableMemory, NumaNodeMemoryTracker numaNodeMemoryTracker)
     {
         requireNonNull(config, "config is null");
+        this.numaNodeMemoryTracker = requireNonNull(numaNodeMemoryTracker, "numaNodeMemoryTracker is null");
         configureMemoryPools(config, availableMemory);
     }
 
@@ -109,7 +122,7 @@ public final class LocalMemoryManager
         for (Map.Entry<MemoryPoolId, MemoryPool> entry : pools.entrySet()) {
             builder.put(entry.getKey(), entry.getValue().getInfo());
         }
-        return new MemoryInfo(maxMemory, builder.build());
+        return new MemoryInfo(maxMemory, builder.build(), numaNodeMemoryTracker.getReservedBytesByNode());
     }
 
     public List<MemoryPool> getPools()
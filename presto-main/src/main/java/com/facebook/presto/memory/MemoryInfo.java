@@ -33,13 +33,24 @@ public class MemoryInfo
 {
     private final DataSize totalNodeMemory;
     private final Map<MemoryPoolId, MemoryPoolInfo> pools;
+    private final Map<Integer, Long> numaNodeReservedBytes;
+
+    public MemoryInfo(DataSize totalNodeMemory, Map<MemoryPoolId, MemoryPoolInfo> pools)
+    {
+        this(totalNodeMemory, pools, ImmutableMap.of());
+    }
 
     @ThriftConstructor
     @JsonCreator
-    public MemoryInfo(@JsonProperty("totalNodeMemory") DataSize totalNodeMemory, @JsonProperty("pools") Map<MemoryPoolId, MemoryPoolInfo> pools)
+    public MemoryInfo(
+            @JsonProperty("totalNodeMemory") DataSize totalNodeMemory,
+            @JsonProperty("pools") Map<MemoryPoolId, MemoryPoolInfo> pools,
+            @JsonProperty("numaNodeReservedBytes") Map<Integer, Long> numaNodeReservedBytes)
     {
         this.totalNodeMemory = requireNonNull(totalNodeMemory, "totalNodeMemory is null");
         this.pools = ImmutableMap.copyOf(requireNonNull(pools, "pools is null"));
+        // workers that do not track the NUMA nodes leave it out
+        this.numaNodeReservedBytes = numaNodeReservedBytes == null ? ImmutableMap.of() : ImmutableMap.copyOf(numaNodeReservedBytes);
     }
 
     @ThriftField(1)
@@ -56,12 +67,23 @@ public class MemoryInfo
         return pools;
     }
 
+    /**
+     * Memory reserved by the drivers running on each NUMA node, empty when the worker is not NUMA aware.
+     */
+    @ThriftField(3)
+    @JsonProperty
+    public Map<Integer, Long> getNumaNodeReservedBytes()
+    {
+        return numaNodeReservedBytes;
+    }
+
     @Override
     public String toString()
     {
         return toStringHelper(this)
                 .add("totalNodeMemory", totalNodeMemory)
                 .add("pools", pools)
+                .add("numaNodeReservedBytes", numaNodeReservedBytes)
                 .toString();
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.memory;
+
+import com.facebook.presto.execution.TaskManagerConfig;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Memory reserved by drivers, grouped by the NUMA node of the runner thread that last ran each driver.
+ * This is a scheduling attribution, not the physical placement of the memory: a driver may move between
+ * nodes, and the pages it allocated stay wherever the kernel placed them. It shows how the memory of the
+ * running drivers is spread over the runner threads of each node.
+ */
+@ThreadSafe
+public class NumaNodeMemoryTracker
+{
+    private final AtomicLongArray reservedBytes;
+
+    @Inject
+    public NumaNodeMemoryTracker(TaskManagerConfig config)
+    {
+        this(config.getNumaNodeCount());
+    }
+
+    public NumaNodeMemoryTracker(int nodeCount)
+    {
+        checkArgument(nodeCount > 0, "nodeCount must be at least 1");
+        this.reservedBytes = new AtomicLongArray(nodeCount);
+    }
+
+    public int getNodeCount()
+    {
+        return reservedBytes.length();
+    }
+
+    public void update(int node, long deltaBytes)
+    {
+        reservedBytes.addAndGet(node, deltaBytes);
+    }
+
+    public long getReservedBytes(int node)
+    {
+        return reservedBytes.get(node);
+    }
+
+    /**
+     * Returns the reserved bytes by node, or an empty map when the worker is not NUMA aware.
+     */
+    public Map<Integer, Long> getReservedBytesByNode()
+    {
+        if (reservedBytes.length() == 1) {
+            return ImmutableMap.of();
+        }
+        ImmutableMap.Builder<Integer, Long> builder = ImmutableMap.builder();
+        for (int node = 0; node < reservedBytes.length(); node++) {
+            builder.put(node, reservedBytes.get(node));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.common.PageBuilder;
+import com.facebook.presto.common.array.AdaptiveLongBigArray;
+import com.facebook.presto.common.block.Block;
+import com.facebook.presto.common.type.Type;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import it.unimi.dsi.fastutil.HashCommon;
+import org.openjdk.jol.info.ClassLayout;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static com.facebook.presto.common.type.BigintType.BIGINT;
+import static com.facebook.presto.common.type.DateType.DATE;
+import static com.facebook.presto.common.type.IntegerType.INTEGER;
+import static com.facebook.presto.operator.SyntheticAddress.decodePosition;
+import static com.facebook.presto.operator.SyntheticAddress.decodeSliceIndex;
+import static com.facebook.presto.util.HashCollisionsEstimator.estimateNumberOfHashCollisions;
+import static io.airlift.slice.SizeOf.sizeOf;
+import static it.unimi.dsi.fastutil.HashCommon.murmurHash3;
+import static java.lang.Math.toIntExact;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hash for a single BIGINT, INTEGER or DATE join key, that compares raw long values
+ * instead of going through {@link PagesHashStrategy}. When the range of build keys is
+ * dense, the keys are addressed directly by {@code key - minKey} and no hashing is done.
+ */
+// This implementation assumes arrays used in the hash are always a power of 2
+public final class BigintPagesHash
+{
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(BigintPagesHash.class).instanceSize();
+    private static final Set<Type> SUPPORTED_TYPES = ImmutableSet.of(BIGINT, INTEGER, DATE);
+
+    // the build keys are directly addressed when (maxKey - minKey) < positionCount * MAX_DIRECT_ADDRESSING_RANGE_FACTOR
+    private static final int MAX_DIRECT_ADDRESSING_RANGE_FACTOR = 4;
+    private static final int MAX_DIRECT_ADDRESSING_SIZE = 1 << 30;
+
+    private final AdaptiveLongBigArray addresses;
+    private final int positionCount;
+    private final PagesHashStrategy pagesHashStrategy;
+    private final Type keyType;
+    private final int channelCount;
+
+    // direct addressing, used when directPositions != null
+    private final long minKey;
+    private final int[] directPositions;
+
+    // open addressing, used otherwise
+    private final int mask;
+    private final long[] hashKeys;
+    private final int[] hashPositions;
+
+    private final long size;
+    private final long hashCollisions;
+    private final double expectedHashCollisions;
+    private final long positionIsNullCount;
+
+    public static boolean isSupportedType(Type type)
+    {
+        return SUPPORTED_TYPES.contains(type);
+    }
+
+    public BigintPagesHash(
+            AdaptiveLongBigArray addresses,
+            int positionCount,
+            PagesHashStrategy pagesHashStrategy,
+            List<Block> keyBlocks,
+            Type keyType,
+            PositionLinks.FactoryBuilder positionLinks)
+    {
+        this.addresses = requireNonNull(addresses, "addresses is null");
+        this.positionCount = positionCount;
+        this.pagesHashStrategy = requireNonNull(pagesHashStrategy, "pagesHashStrategy is null");
+        requireNonNull(keyBlocks, "keyBlocks is null");
+        this.keyType = requireNonNull(keyType, "keyType is null");
+        this.channelCount = pagesHashStrategy.getChannelCount();
+
+        // extract all keys to a native array first, so that the build loops below do not touch the blocks
+        long[] keys = new long[positionCount];
+        boolean[] isNull = new boolean[positionCount];
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long positionIsNullCountLocal = 0;
+        for (int position = 0; position < positionCount; position++) {
+            long pageAddress = addresses.get(position);
+            Block block = keyBlocks.get(decodeSliceIndex(pageAddress));
+            int blockPosition = decodePosition(pageAddress);
+            if (block.isNull(blockPosition)) {
+                isNull[position] = true;
+                positionIsNullCountLocal++;
+                continue;
+            }
+            long key = keyType.getLong(block, blockPosition);
+            keys[position] = key;
+            min = Math.min(min, key);
+            max = Math.max(max, key);
+        }
+
+        long hashCollisionsLocal = 0;
+        long range = max - min;
+        if (min <= max && range >= 0 && range < (long) positionCount * MAX_DIRECT_ADDRESSING_RANGE_FACTOR && range < MAX_DIRECT_ADDRESSING_SIZE) {
+            minKey = min;
+            directPositions = new int[toIntExact(range + 1)];
+            Arrays.fill(directPositions, -1);
+            for (int position = 0; position < positionCount; position++) {
+                if (isNull[position]) {
+                    continue;
+                }
+                int index = (int) (keys[position] - min);
+                int currentPosition = directPositions[index];
+                directPositions[index] = currentPosition == -1 ? position : positionLinks.link(position, currentPosition);
+            }
+
+            mask = 0;
+            hashKeys = null;
+            hashPositions = null;
+            expectedHashCollisions = 0;
+        }
+        else {
+            minKey = 0;
+            directPositions = null;
+
+            int hashSize = HashCommon.arraySize(positionCount, 0.75f);
+            mask = hashSize - 1;
+            hashKeys = new long[hashSize];
+            hashPositions = new int[hashSize];
+            Arrays.fill(hashPositions, -1);
+            for (int position = 0; position < positionCount; position++) {
+                if (isNull[position]) {
+                    continue;
+                }
+                long key = keys[position];
+                int pos = getHashPosition(key, mask);
+
+                // look for an empty slot or a slot containing this key
+                while (hashPositions[pos] != -1) {
+                    if (hashKeys[pos] == key) {
+                        // found a slot for this key, link the new key position to the current key position
+                        break;
+                    }
+                    // increment position and mask to handler wrap around
+                    pos = (pos + 1) & mask;
+                    hashCollisionsLocal++;
+                }
+
+                int currentPosition = hashPositions[pos];
+                hashKeys[pos] = key;
+                hashPositions[pos] = currentPosition == -1 ? position : positionLinks.link(position, currentPosition);
+            }
+
+            expectedHashCollisions = estimateNumberOfHashCollisions(positionCount, hashSize);
+        }
+
+        // only one of the direct address table and the open addressing arrays is allocated
+        size = addresses.getRetainedSizeInBytes() +
+                pagesHashStrategy.getSizeInBytes() +
+                sizeOf(directPositions) +
+                sizeOf(hashKeys) +
+                sizeOf(hashPositions);
+
+        hashCollisions = hashCollisionsLocal;
+        positionIsNullCount = positionIsNullCountLocal;
+    }
+
+    public int getChannelCount()
+    {
+        return channelCount;
+    }
+
+    public int getPositionCount()
+    {
+        return positionCount;
+    }
+
+    public long getInMemorySizeInBytes()
+    {
+        return INSTANCE_SIZE + size;
+    }
+
+    public long getHashCollisions()
+    {
+        return hashCollisions;
+    }
+
+    public double getExpectedHashCollisions()
+    {
+        return expectedHashCollisions;
+    }
+
+    public long getPositionIsNullCount()
+    {
+        return positionIsNullCount;
+    }
+
+    @VisibleForTesting
+    public boolean isDirectAddressed()
+    {
+        return directPositions != null;
+    }
+
+    public int getAddressIndex(int position, Block keyBlock)
+    {
+        return getAddressIndex(keyType.getLong(keyBlock, position));
+    }
+
+    public int getAddressIndex(long key)
+    {
+        if (directPositions != null) {
+            long index = key - minKey;
+            if (index < 0 || index >= directPositions.length) {
+                return -1;
+            }
+            return directPositions[(int) index];
+        }
+
+        int pos = getHashPosition(key, mask);
+        while (hashPositions[pos] != -1) {
+            if (hashKeys[pos] == key) {
+                return hashPositions[pos];
+            }
+            // increment position and mask to handler wrap around
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Looks up the address indexes of the given positions of the key block, and stores them in
+     * {@code addressIndexes} at the index of each position. The key block must not be null at the given positions.
+     */
+    public void getAddressIndexes(int[] positions, int positionCount, Block keyBlock, long[] addressIndexes)
+    {
+        // read the keys first, so the lookup loop below works on a native array only
+        long[] keys = new long[positionCount];
+        for (int i = 0; i < positionCount; i++) {
+            keys[i] = keyType.getLong(keyBlock, positions[i]);
+        }
+
+        if (directPositions != null) {
+            int[] directPositions = this.directPositions;
+            long length = directPositions.length;
+            for (int i = 0; i < positionCount; i++) {
+                long index = keys[i] - minKey;
+                addressIndexes[positions[i]] = Long.compareUnsigned(index, length) < 0 ? directPositions[(int) index] : -1;
+            }
+            return;
+        }
+
+        for (int i = 0; i < positionCount; i++) {
+            long key = keys[i];
+            int pos = getHashPosition(key, mask);
+            while (hashPositions[pos] != -1 && hashKeys[pos] != key) {
+                pos = (pos + 1) & mask;
+            }
+            addressIndexes[positions[i]] = hashPositions[pos];
+        }
+    }
+
+    public void appendTo(long position, PageBuilder pageBuilder, int outputChannelOffset)
+    {
+        long pageAddress = addresses.get(toIntExact(position));
+        int blockIndex = decodeSliceIndex(pageAddress);
+        int blockPosition = decodePosition(pageAddress);
+
+        pagesHashStrategy.appendTo(blockIndex, blockPosition, pageBuilder, outputChannelOffset);
+    }
+
+    /**
+     * Appends the rows at {@code positions[offset]} to {@code positions[offset + length - 1]}.
+     * The addresses of all the rows are decoded first, and the values are then copied one column at a time.
+     */
+    public void appendTo(long[] positions, int offset, int length, PageBuilder pageBuilder, int outputChannelOffset)
+    {
+        int[] blockIndexes = new int[length];
+        int[] blockPositions = new int[length];
+        for (int i = 0; i < length; i++) {
+            long pageAddress = addresses.get(toIntExact(positions[offset + i]));
+            blockIndexes[i] = decodeSliceIndex(pageAddress);
+            blockPositions[i] = decodePosition(pageAddress);
+        }
+        pagesHashStrategy.appendTo(blockIndexes, blockPositions, length, pageBuilder, outputChannelOffset);
+    }
+
+    private static int getHashPosition(long key, int mask)
+    {
+        return (int) (murmurHash3(key) & mask);
+    }
+}
@@ -13,6 +13,7 @@
  */
 package com.facebook.presto.operator;
 
+import com.facebook.presto.Session;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.common.type.Type;
 import com.facebook.presto.memory.context.LocalMemoryContext;
@@ -20,12 +21,16 @@ import com.facebook.presto.sql.gen.JoinCompiler;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BooleanSupplier;
 
 import static com.facebook.presto.SystemSessionProperties.isDictionaryAggregationEnabled;
+import static com.facebook.presto.SystemSessionProperties.isFlatGroupByHashEnabled;
 import static com.facebook.presto.common.type.UnknownType.UNKNOWN;
 import static com.facebook.presto.operator.GroupByHash.createGroupByHash;
+import static com.facebook.presto.operator.SpillingUtils.getGroupValuePages;
 import static java.util.Objects.requireNonNull;
 
 public class ChannelSet
@@ -82,28 +87,67 @@ public class ChannelSet
 
         private final GroupByHash hash;
         private final Page nullBlockPage;
-        private final OperatorContext operatorContext;
         private final LocalMemoryContext localMemoryContext;
+        private final BooleanSupplier memoryAvailable;
 
         public ChannelSetBuilder(Type type, Optional<Integer> hashChannel, int expectedPositions, OperatorContext operatorContext, JoinCompiler joinCompiler)
         {
+            this(type, hashChannel, expectedPositions, operatorContext, joinCompiler, false);
+        }
+
+        public ChannelSetBuilder(Type type, Optional<Integer> hashChannel, int expectedPositions, OperatorContext operatorContext, JoinCompiler joinCompiler, boolean useRevocableMemory)
+        {
+            this(
+                    type,
+                    hashChannel,
+                    expectedPositions,
+                    requireNonNull(operatorContext, "operatorContext is null").getSession(),
+                    joinCompiler,
+                    useRevocableMemory ? operatorContext.localRevocableMemoryContext() : operatorContext.localUserMemoryContext(),
+                    // revocable memory is released by spilling, so there is no need to yield while waiting for it
+                    useRevocableMemory ? () -> true : () -> operatorContext.isWaitingForMemory().isDone());
+        }
+
+        /**
+         * Creates a builder that reserves memory in the given context, but never yields because of it.
+         */
+        public ChannelSetBuilder(Type type, Optional<Integer> hashChannel, int expectedPositions, Session session, JoinCompiler joinCompiler, LocalMemoryContext localMemoryContext)
+        {
+            this(type, hashChannel, expectedPositions, session, joinCompiler, localMemoryContext, () -> true);
+        }
+
+        private ChannelSetBuilder(
+                Type type,
+                Optional<Integer> hashChannel,
+                int expectedPositions,
+                Session session,
+                JoinCompiler joinCompiler,
+                LocalMemoryContext localMemoryContext,
+                BooleanSupplier memoryAvailable)
+        {
+            this.localMemoryContext = requireNonNull(localMemoryContext, "localMemoryContext is null");
+            this.memoryAvailable = requireNonNull(memoryAvailable, "memoryAvailable is null");
             List<Type> types = ImmutableList.of(type);
             this.hash = createGroupByHash(
                     types,
                     HASH_CHANNELS,
                     hashChannel,
                     expectedPositions,
-                    isDictionaryAggregationEnabled(operatorContext.getSession()),
+                    isDictionaryAggregationEnabled(session),
+                    isFlatGroupByHashEnabled(session),
                     joinCompiler,
                     this::updateMemoryReservation);
             this.nullBlockPage = new Page(type.createBlockBuilder(null, 1, UNKNOWN.getFixedSize()).appendNull().build());
-            this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
-            this.localMemoryContext = operatorContext.localUserMemoryContext();
         }
 
         public ChannelSet build()
         {
-            return new ChannelSet(hash, hash.contains(0, nullBlockPage, HASH_CHANNELS), HASH_CHANNELS);
+            return new ChannelSet(hash, containsNull(), HASH_CHANNELS);
+        }
+
+        public boolean containsNull()
+        {
+            return hash.contains(0, nullBlockPage, HASH_CHANNELS);
         }
 
         public long getEstimatedSize()
@@ -116,6 +160,22 @@ public class ChannelSet
             return hash.getGroupCount();
         }
 
+        /**
+         * Returns the types of the pages returned by {@link #getValuePages()}: the set type, followed by the hash if the set has a hash channel.
+         */
+        public List<Type> getValueTypes()
+        {
+            return hash.getTypes();
+        }
+
+        /**
+         * Returns the distinct values of the set, with the same layout as the pages added to this builder.
+         */
+        public Iterator<Page> getValuePages()
+        {
+            return getGroupValuePages(hash, hash.getGroupCount());
+        }
+
         public Work<?> addPage(Page page)
         {
             // Just add the page to the pending work, which will be processed later.
@@ -128,7 +188,7 @@ public class ChannelSet
             localMemoryContext.setBytes(hash.getEstimatedSize());
 
             // If memory is not available, inform the caller that we cannot proceed for allocation.
-            return operatorContext.isWaitingForMemory().isDone();
+            return memoryAvailable.getAsBoolean();
         }
 
         @VisibleForTesting
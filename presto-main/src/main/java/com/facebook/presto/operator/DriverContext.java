@@ -32,6 +32,7 @@ import org.joda.time.DateTime;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
@@ -86,6 +87,9 @@ public class DriverContext
     private final Optional<FragmentResultCacheContext> fragmentResultCacheContext;
     private final long splitWeight;
 
+    // the partition of the local exchange read by the driver
+    private volatile OptionalInt localPartition = OptionalInt.empty();
+
     public DriverContext(
             PipelineContext pipelineContext,
             Executor notificationExecutor,
@@ -116,6 +120,17 @@ public class DriverContext
         return splitWeight;
     }
 
+    public OptionalInt getLocalPartition()
+    {
+        return localPartition;
+    }
+
+    public void setLocalPartition(int localPartition)
+    {
+        checkArgument(localPartition >= 0, "localPartition is negative");
+        this.localPartition = OptionalInt.of(localPartition);
+    }
+
     public OperatorContext addOperatorContext(int operatorId, PlanNodeId planNodeId, String operatorType)
     {
         checkArgument(operatorId >= 0, "operatorId is negative");
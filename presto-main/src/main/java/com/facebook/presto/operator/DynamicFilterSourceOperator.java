@@ -29,6 +29,7 @@ import io.airlift.units.DataSize;
 import javax.annotation.Nullable;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 
@@ -39,6 +40,7 @@ import static com.facebook.presto.common.type.TypeUtils.isFloatingPointNaN;
 import static com.facebook.presto.common.type.TypeUtils.readNativeValue;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Verify.verify;
+import static io.airlift.units.DataSize.Unit.BYTE;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toSet;
 
@@ -46,7 +48,8 @@ import static java.util.stream.Collectors.toSet;
  * This operator acts as a simple "pass-through" pipe, while saving its input pages.
  * The collected pages' value are used for creating a run-time filtering constraint (for probe-side table scan in an inner join).
  * We record all values for the run-time filter only for small build-side pages (which should be the case when using "broadcast" join).
- * For large inputs on build side, we can optionally record the min and max values per channel for orderable types (except Double and Real).
+ * For large inputs on build side, we can optionally record the min and max values per channel for orderable types (except Double and Real),
+ * and optionally build a Bloom filter per channel out of all the values.
  */
 public class DynamicFilterSourceOperator
         implements Operator
@@ -93,6 +96,8 @@ public class DynamicFilterSourceOperator
         private final DataSize maxFilterSize;
         private final int minMaxCollectionLimit;
         private final boolean useNewNanDefinition;
+        private final Optional<Consumer<Map<String, SplitBlockBloomFilter>>> bloomFilterConsumer;
+        private final DataSize bloomFilterSize;
 
         private boolean closed;
 
@@ -105,6 +110,36 @@ public class DynamicFilterSourceOperator
                 DataSize maxFilterSize,
                 int minMaxCollectionLimit,
                 boolean useNewNanDefinition)
+        {
+            this(
+                    operatorId,
+                    planNodeId,
+                    dynamicPredicateConsumer,
+                    channels,
+                    maxFilterPositionsCount,
+                    maxFilterSize,
+                    minMaxCollectionLimit,
+                    useNewNanDefinition,
+                    Optional.empty(),
+                    new DataSize(0, BYTE));
+        }
+
+        /**
+         * @param bloomFilterConsumer when present, receives from each operator the Bloom filters of the channels whose values did not fit
+         * in the limits of the exact predicate, once all the build-side values were collected
+         * @param bloomFilterSize maximum size of the Bloom filter of each channel
+         */
+        public DynamicFilterSourceOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                Consumer<TupleDomain<String>> dynamicPredicateConsumer,
+                List<Channel> channels,
+                int maxFilterPositionsCount,
+                DataSize maxFilterSize,
+                int minMaxCollectionLimit,
+                boolean useNewNanDefinition,
+                Optional<Consumer<Map<String, SplitBlockBloomFilter>>> bloomFilterConsumer,
+                DataSize bloomFilterSize)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -120,6 +155,8 @@ public class DynamicFilterSourceOperator
             this.maxFilterSize = maxFilterSize;
             this.minMaxCollectionLimit = minMaxCollectionLimit;
             this.useNewNanDefinition = useNewNanDefinition;
+            this.bloomFilterConsumer = requireNonNull(bloomFilterConsumer, "bloomFilterConsumer is null");
+            this.bloomFilterSize = requireNonNull(bloomFilterSize, "bloomFilterSize is null");
         }
 
         @Override
@@ -134,7 +171,9 @@ public class DynamicFilterSourceOperator
                     maxFilterPositionsCount,
                     maxFilterSize,
                     minMaxCollectionLimit,
-                    useNewNanDefinition);
+                    useNewNanDefinition,
+                    bloomFilterConsumer,
+                    bloomFilterSize);
         }
 
         @Override
@@ -158,6 +197,8 @@ public class DynamicFilterSourceOperator
     private final List<Channel> channels;
     private final List<Integer> minMaxChannels;
     private final boolean useNewNanDefinition;
+    private final Optional<Consumer<Map<String, SplitBlockBloomFilter>>> bloomFilterConsumer;
+    private final long bloomFilterSizeInBytes;
 
     private boolean finished;
     private Page current;
@@ -174,6 +215,10 @@ public class DynamicFilterSourceOperator
     @Nullable
     private Block[] maxValues;
 
+    // Created once the exact predicate becomes too large.
+    @Nullable
+    private SplitBlockBloomFilter[] bloomFilters;
+
     private DynamicFilterSourceOperator(
             OperatorContext context,
             Consumer<TupleDomain<String>> dynamicPredicateConsumer,
@@ -182,7 +227,9 @@ public class DynamicFilterSourceOperator
             int maxFilterPositionsCount,
             DataSize maxFilterSize,
             int minMaxCollectionLimit,
-            boolean useNewNanDefinition)
+            boolean useNewNanDefinition,
+            Optional<Consumer<Map<String, SplitBlockBloomFilter>>> bloomFilterConsumer,
+            DataSize bloomFilterSize)
     {
         this.context = requireNonNull(context, "context is null");
         this.maxFilterPositionsCount = maxFilterPositionsCount;
@@ -216,6 +263,8 @@ public class DynamicFilterSourceOperator
             maxValues = new Block[channels.size()];
         }
         this.useNewNanDefinition = useNewNanDefinition;
+        this.bloomFilterConsumer = requireNonNull(bloomFilterConsumer, "bloomFilterConsumer is null");
+        this.bloomFilterSizeInBytes = bloomFilterSize.toBytes();
     }
 
     @Override
@@ -237,6 +286,11 @@ public class DynamicFilterSourceOperator
         current = page;
         if (valueSets == null) {
             // the exact predicate became too large.
+            if (bloomFilters != null) {
+                for (int channelIndex = 0; channelIndex < channels.size(); ++channelIndex) {
+                    addToBloomFilter(page.getBlock(channels.get(channelIndex).getIndex()), channelIndex);
+                }
+            }
             if (minValues == null) {
                 // there are too many rows to collect min/max range
                 return;
@@ -275,6 +329,18 @@ public class DynamicFilterSourceOperator
 
     private void handleTooLargePredicate()
     {
+        if (bloomFilterConsumer.isPresent()) {
+            // keep all the values collected so far in Bloom filters, which take a fixed amount of memory
+            bloomFilters = new SplitBlockBloomFilter[channels.size()];
+            long bloomFiltersSizeInBytes = 0;
+            for (int channelIndex = 0; channelIndex < channels.size(); ++channelIndex) {
+                bloomFilters[channelIndex] = new SplitBlockBloomFilter(channels.get(channelIndex).getType(), bloomFilterSizeInBytes);
+                addToBloomFilter(blockBuilders[channelIndex], channelIndex);
+                bloomFiltersSizeInBytes += bloomFilters[channelIndex].getRetainedSizeInBytes();
+            }
+            context.localUserMemoryContext().setBytes(bloomFiltersSizeInBytes);
+        }
+
         // The resulting predicate is too large
         if (minMaxChannels.isEmpty()) {
             // allow all probe-side values to be read.
@@ -307,6 +373,14 @@ public class DynamicFilterSourceOperator
         maxValues = null;
     }
 
+    private void addToBloomFilter(Block block, int channelIndex)
+    {
+        SplitBlockBloomFilter bloomFilter = bloomFilters[channelIndex];
+        for (int position = 0; position < block.getPositionCount(); ++position) {
+            bloomFilter.add(block, position);
+        }
+    }
+
     private void updateMinMaxValues(Block block, int channelIndex)
     {
         checkState(minValues != null && maxValues != null);
@@ -367,6 +441,19 @@ public class DynamicFilterSourceOperator
             return;
         }
         finished = true;
+        bloomFilterConsumer.ifPresent(consumer -> {
+            // every operator reports its Bloom filters, even if its values fit in the exact predicate
+            ImmutableMap.Builder<String, SplitBlockBloomFilter> bloomFiltersBuilder = ImmutableMap.builder();
+            if (bloomFilters != null) {
+                for (int channelIndex = 0; channelIndex < channels.size(); ++channelIndex) {
+                    bloomFiltersBuilder.put(channels.get(channelIndex).getFilterId(), bloomFilters[channelIndex]);
+                }
+            }
+            bloomFilters = null;
+            context.localUserMemoryContext().setBytes(0);
+            consumer.accept(bloomFiltersBuilder.build());
+        });
+
         ImmutableMap.Builder<String, Domain> domainsBuilder = ImmutableMap.builder();
         if (valueSets == null) {
             if (minValues == null) {
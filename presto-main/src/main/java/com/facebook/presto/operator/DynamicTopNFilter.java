@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.common.block.Block;
+import com.facebook.presto.common.block.SortOrder;
+import com.facebook.presto.common.type.Type;
+import com.facebook.presto.spi.ColumnHandle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The value of the first sort key of the last row kept by a top N operator once it holds N rows. A row whose key sorts
+ * after the boundary cannot enter the top N, so the rows are filtered on that key alone, before they are compared with
+ * the rows of the heap, and the same filter is applied by the table scan of the driver.
+ */
+public class DynamicTopNFilter
+{
+    private final Type type;
+    private final SortOrder sortOrder;
+    // with more sort keys, a row whose first key equals the boundary can still sort before the last row
+    private final boolean inclusive;
+
+    private Block boundary;
+
+    public DynamicTopNFilter(Type type, SortOrder sortOrder, boolean inclusive)
+    {
+        this.type = requireNonNull(type, "type is null");
+        this.sortOrder = requireNonNull(sortOrder, "sortOrder is null");
+        this.inclusive = inclusive;
+    }
+
+    public boolean hasBoundary()
+    {
+        return boundary != null;
+    }
+
+    public void setBoundary(Block block, int position)
+    {
+        boundary = block.getSingleValueBlock(position);
+    }
+
+    /**
+     * Keeps the first {@code positionCount} of {@code positions} whose values in {@code block} can enter the top N,
+     * and returns how many are kept.
+     */
+    public int filterPositions(Block block, int[] positions, int positionCount)
+    {
+        if (boundary == null) {
+            return positionCount;
+        }
+
+        int maxComparison = inclusive ? 0 : -1;
+        int selectedCount = 0;
+        for (int i = 0; i < positionCount; i++) {
+            int position = positions[i];
+            if (sortOrder.compareBlockValue(type, block, position, boundary, 0) <= maxComparison) {
+                positions[selectedCount] = position;
+                selectedCount++;
+            }
+        }
+        return selectedCount;
+    }
+
+    /**
+     * Shares the filter of each driver between its top N operator and its table scan.
+     */
+    public static class Factory
+    {
+        private final Type type;
+        private final SortOrder sortOrder;
+        private final boolean inclusive;
+        private final ColumnHandle column;
+        private final Map<DriverContext, DynamicTopNFilter> filters = new ConcurrentHashMap<>();
+
+        public Factory(Type type, SortOrder sortOrder, boolean inclusive, ColumnHandle column)
+        {
+            this.type = requireNonNull(type, "type is null");
+            this.sortOrder = requireNonNull(sortOrder, "sortOrder is null");
+            this.inclusive = inclusive;
+            this.column = requireNonNull(column, "column is null");
+        }
+
+        /**
+         * Returns the column of the table scan that holds the first sort key.
+         */
+        public ColumnHandle getColumn()
+        {
+            return column;
+        }
+
+        public DynamicTopNFilter getFilter(DriverContext driverContext)
+        {
+            return filters.computeIfAbsent(driverContext, ignored -> new DynamicTopNFilter(type, sortOrder, inclusive));
+        }
+
+        public void release(DriverContext driverContext)
+        {
+            filters.remove(driverContext);
+        }
+    }
+}
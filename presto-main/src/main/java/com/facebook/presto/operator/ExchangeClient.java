@@ -23,7 +23,9 @@ import com.facebook.presto.server.thrift.ThriftTaskClient;
 import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.page.PageCodecMarker;
 import com.facebook.presto.spi.page.SerializedPage;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.airlift.units.DataSize;
@@ -37,19 +39,25 @@ import java.io.Closeable;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.facebook.presto.common.block.PageBuilderStatus.DEFAULT_MAX_PAGE_SIZE_IN_BYTES;
+import static com.facebook.presto.execution.SqlStageExecution.DEFAULT_TASK_ATTEMPT_NUMBER;
 import static com.facebook.presto.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
@@ -84,6 +92,9 @@ public class ExchangeClient
     private final long bufferCapacity;
     private final DataSize maxResponseSize;
     private final int concurrentRequestMultiplier;
+    @GuardedBy("this")
+    @Nullable
+    private final ExchangeRequestConcurrencyController concurrencyController;
     private final Duration maxErrorDuration;
     private final boolean acknowledgePages;
     private final HttpClient httpClient;
@@ -99,16 +110,32 @@ public class ExchangeClient
 
     @GuardedBy("this")
     private final Deque<PageBufferClient> queuedClients = new LinkedList<>();
+    // size of queuedClients, readable without holding the lock
+    private volatile int queuedClientCount;
 
     private final Set<PageBufferClient> completedClients = newConcurrentHashSet();
     private final Set<PageBufferClient> removedClients = newConcurrentHashSet();
-    private final LinkedBlockingDeque<SerializedPage> pageBuffer = new LinkedBlockingDeque<>();
 
+    // A speculative attempt of a remote source task produces the same output as the task, so only the pages of the attempt
+    // that first delivers pages or finishes are used, and the other attempts are removed. Attempts are keyed by the first attempt.
     @GuardedBy("this")
-    private final List<SettableFuture<?>> blockedCallers = new ArrayList<>();
+    private final Map<PageBufferClient, TaskId> clientTaskIds = new HashMap<>();
+    @GuardedBy("this")
+    private final ListMultimap<TaskId, PageBufferClient> taskAttempts = ArrayListMultimap.create();
+    @GuardedBy("this")
+    private final Map<TaskId, PageBufferClient> selectedAttempts = new HashMap<>();
+    private final ConcurrentMap<PageBufferClient, Long> requestStartNanos = new ConcurrentHashMap<>();
 
+    // pages are added by the callback threads while holding the lock, but are polled without it
+    private final Queue<SerializedPage> pageBuffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger bufferedPages = new AtomicInteger();
+    private final AtomicLong bufferRetainedSizeInBytes = new AtomicLong();
     @GuardedBy("this")
-    private long bufferRetainedSizeInBytes;
+    private boolean noMorePagesMarkerAdded;
+
+    @GuardedBy("this")
+    private final List<SettableFuture<?>> blockedCallers = new ArrayList<>();
+
     @GuardedBy("this")
     private long maxBufferRetainedSizeInBytes;
     @GuardedBy("this")
@@ -119,6 +146,10 @@ public class ExchangeClient
     private final AtomicBoolean closed = new AtomicBoolean();
     private final AtomicReference<Throwable> failure = new AtomicReference<>();
 
+    // the buffer size is updated without a lock, and the memory context is set to it under this lock,
+    // so that a stale size read by one thread cannot overwrite a newer one set by another thread
+    private final Object systemMemoryLock = new Object();
+    @GuardedBy("systemMemoryLock")
     private final LocalMemoryContext systemMemoryContext;
     private final Executor pageBufferClientCallbackExecutor;
 
@@ -128,6 +159,7 @@ public class ExchangeClient
             DataSize bufferCapacity,
             DataSize maxResponseSize,
             int concurrentRequestMultiplier,
+            boolean adaptiveRequestConcurrencyEnabled,
             Duration maxErrorDuration,
             boolean acknowledgePages,
             double responseSizeExponentialMovingAverageDecayingAlpha,
@@ -141,6 +173,7 @@ public class ExchangeClient
         this.bufferCapacity = bufferCapacity.toBytes();
         this.maxResponseSize = maxResponseSize;
         this.concurrentRequestMultiplier = concurrentRequestMultiplier;
+        this.concurrencyController = adaptiveRequestConcurrencyEnabled ? new ExchangeRequestConcurrencyController(concurrentRequestMultiplier) : null;
         this.maxErrorDuration = maxErrorDuration;
         this.acknowledgePages = acknowledgePages;
         this.httpClient = httpClient;
@@ -163,11 +196,7 @@ public class ExchangeClient
         }
         List<PageBufferClientStatus> pageBufferClientStatus = pageBufferClientStatusBuilder.build();
         synchronized (this) {
-            int bufferedPages = pageBuffer.size();
-            if (bufferedPages > 0 && pageBuffer.peekLast() == NO_MORE_PAGES) {
-                bufferedPages--;
-            }
-            return new ExchangeClientStatus(bufferRetainedSizeInBytes, maxBufferRetainedSizeInBytes, responseSizeExponentialMovingAverage.get(), successfulRequests, bufferedPages, noMoreLocations, pageBufferClientStatus);
+            return new ExchangeClientStatus(bufferRetainedSizeInBytes.get(), maxBufferRetainedSizeInBytes, responseSizeExponentialMovingAverage.get(), successfulRequests, bufferedPages.get(), noMoreLocations, pageBufferClientStatus);
         }
     }
 
@@ -216,7 +245,18 @@ public class ExchangeClient
                 pageBufferClientCallbackExecutor);
         allClients.put(location, client);
         checkState(taskIdToLocationMap.put(remoteSourceTaskId, location) == null, "Duplicate remoteSourceTaskId: " + remoteSourceTaskId);
-        queuedClients.add(client);
+
+        TaskId firstAttemptTaskId = remoteSourceTaskId.withAttemptNumber(DEFAULT_TASK_ATTEMPT_NUMBER);
+        clientTaskIds.put(client, firstAttemptTaskId);
+        taskAttempts.put(firstAttemptTaskId, client);
+        if (selectedAttempts.containsKey(firstAttemptTaskId)) {
+            // another attempt of the task is already used
+            removeClient(client);
+        }
+        else {
+            queuedClients.add(client);
+            queuedClientCount = queuedClients.size();
+        }
 
         scheduleRequestIfNecessary();
     }
@@ -242,11 +282,36 @@ public class ExchangeClient
             return;
         }
 
+        removeClient(client);
+    }
+
+    @GuardedBy("this")
+    private void removeClient(PageBufferClient client)
+    {
         closeQuietly(client);
         removedClients.add(client);
         completedClients.add(client);
     }
 
+    /**
+     * Returns false if the pages of another attempt of the remote source task of the client are used.
+     */
+    @GuardedBy("this")
+    private boolean selectAttempt(PageBufferClient client)
+    {
+        TaskId taskId = clientTaskIds.get(client);
+        PageBufferClient selected = selectedAttempts.putIfAbsent(taskId, client);
+        if (selected != null) {
+            return selected == client;
+        }
+        for (PageBufferClient attempt : taskAttempts.get(taskId)) {
+            if (attempt != client && !removedClients.contains(attempt)) {
+                removeClient(attempt);
+            }
+        }
+        return true;
+    }
+
     public synchronized void noMoreLocations()
     {
         noMoreLocations = true;
@@ -300,11 +365,12 @@ public class ExchangeClient
             return null;
         }
 
-        synchronized (this) {
-            if (!closed.get()) {
-                bufferRetainedSizeInBytes -= page.getRetainedSizeInBytes();
-                systemMemoryContext.setBytes(bufferRetainedSizeInBytes);
-            }
+        bufferedPages.decrementAndGet();
+        long retainedSizeInBytes = bufferRetainedSizeInBytes.addAndGet(-page.getRetainedSizeInBytes());
+        updateSystemMemory();
+
+        // only contend with the callback threads for the lock if more requests may be needed
+        if (queuedClientCount > 0 && retainedSizeInBytes < bufferCapacity) {
             scheduleRequestIfNecessary();
         }
 
@@ -333,12 +399,16 @@ public class ExchangeClient
         for (PageBufferClient client : allClients.values()) {
             closeQuietly(client);
         }
-        pageBuffer.clear();
-        systemMemoryContext.setBytes(0);
-        bufferRetainedSizeInBytes = 0;
-        if (pageBuffer.peekLast() != NO_MORE_PAGES) {
-            checkState(pageBuffer.add(NO_MORE_PAGES), "Could not add no more pages marker");
+        // pages are removed one by one, so that each page is released either here or by a concurrent pollPage()
+        for (SerializedPage page = pageBuffer.poll(); page != null; page = pageBuffer.poll()) {
+            if (page != NO_MORE_PAGES) {
+                bufferedPages.decrementAndGet();
+                bufferRetainedSizeInBytes.addAndGet(-page.getRetainedSizeInBytes());
+            }
         }
+        updateSystemMemory();
+        checkState(pageBuffer.add(NO_MORE_PAGES), "Could not add no more pages marker");
+        noMorePagesMarkerAdded = true;
         notifyBlockedCallers();
     }
 
@@ -350,8 +420,9 @@ public class ExchangeClient
 
         // if finished, add the end marker
         if (noMoreLocations && completedClients.size() == allClients.size()) {
-            if (pageBuffer.peekLast() != NO_MORE_PAGES) {
+            if (!noMorePagesMarkerAdded) {
                 checkState(pageBuffer.add(NO_MORE_PAGES), "Could not add no more pages marker");
+                noMorePagesMarkerAdded = true;
             }
             if (pageBuffer.peek() == NO_MORE_PAGES) {
                 close();
@@ -360,12 +431,13 @@ public class ExchangeClient
             return;
         }
 
-        long neededBytes = bufferCapacity - bufferRetainedSizeInBytes;
+        long neededBytes = bufferCapacity - bufferRetainedSizeInBytes.get();
         if (neededBytes <= 0) {
             return;
         }
         long averageResponseSize = max(1, responseSizeExponentialMovingAverage.get());
-        int clientCount = (int) ((1.0 * neededBytes / averageResponseSize) * concurrentRequestMultiplier);
+        double multiplier = concurrencyController == null ? concurrentRequestMultiplier : concurrencyController.getMultiplier();
+        int clientCount = (int) ((1.0 * neededBytes / averageResponseSize) * multiplier);
         clientCount = max(clientCount, 1);
 
         int pendingClients = allClients.size() - queuedClients.size() - completedClients.size();
@@ -377,12 +449,16 @@ public class ExchangeClient
                 // no more clients available
                 return;
             }
+            queuedClientCount = queuedClients.size();
 
             if (removedClients.contains(client)) {
                 continue;
             }
 
             DataSize max = new DataSize(min(averageResponseSize * 2, maxResponseSize.toBytes()), BYTE);
+            if (concurrencyController != null) {
+                requestStartNanos.put(client, System.nanoTime());
+            }
             client.scheduleRequest(max);
             i++;
         }
@@ -405,9 +481,11 @@ public class ExchangeClient
         }
     }
 
-    private boolean addPages(List<SerializedPage> pages)
+    private boolean addPages(PageBufferClient client, List<SerializedPage> pages)
     {
         // Compute stats before acquiring the lock
+        Long startNanos = requestStartNanos.remove(client);
+        long latencyNanos = startNanos == null ? -1 : System.nanoTime() - startNanos;
         long pagesRetainedSizeInBytes = 0;
         long responseSize = 0;
         for (SerializedPage page : pages) {
@@ -421,12 +499,18 @@ public class ExchangeClient
                 return false;
             }
 
+            if (!pages.isEmpty() && !selectAttempt(client)) {
+                return false;
+            }
+
             if (!pages.isEmpty()) {
+                // account for the pages before they can be polled, so that the retained size does not go negative
+                bufferedPages.addAndGet(pages.size());
+                long retainedSizeInBytes = bufferRetainedSizeInBytes.addAndGet(pagesRetainedSizeInBytes);
                 pageBuffer.addAll(pages);
 
-                bufferRetainedSizeInBytes += pagesRetainedSizeInBytes;
-                maxBufferRetainedSizeInBytes = max(maxBufferRetainedSizeInBytes, bufferRetainedSizeInBytes);
-                systemMemoryContext.setBytes(bufferRetainedSizeInBytes);
+                maxBufferRetainedSizeInBytes = max(maxBufferRetainedSizeInBytes, retainedSizeInBytes);
+                updateSystemMemory();
 
                 // Notify pending listeners that a page has been added
                 notify = ImmutableList.copyOf(blockedCallers);
@@ -435,6 +519,9 @@ public class ExchangeClient
 
             successfulRequests++;
             responseSizeExponentialMovingAverage.update(responseSize);
+            if (concurrencyController != null && latencyNanos >= 0) {
+                concurrencyController.responseReceived(latencyNanos, bufferRetainedSizeInBytes.get(), bufferCapacity);
+            }
         }
         // Trigger notifications after releasing the lock
         notifyListeners(notify);
@@ -442,6 +529,14 @@ public class ExchangeClient
         return true;
     }
 
+    private void updateSystemMemory()
+    {
+        synchronized (systemMemoryLock) {
+            // the size is read under the lock, so the last update always sets the current size
+            systemMemoryContext.setBytes(closed.get() ? 0 : bufferRetainedSizeInBytes.get());
+        }
+    }
+
     private void notifyBlockedCallers()
     {
         List<SettableFuture<?>> callers;
@@ -464,6 +559,7 @@ public class ExchangeClient
     {
         if (!queuedClients.contains(client)) {
             queuedClients.add(client);
+            queuedClientCount = queuedClients.size();
         }
         scheduleRequestIfNecessary();
     }
@@ -471,6 +567,10 @@ public class ExchangeClient
     private synchronized void clientFinished(PageBufferClient client)
     {
         requireNonNull(client, "client is null");
+        if (!removedClients.contains(client)) {
+            // an attempt without output may finish before the other attempts deliver their pages
+            selectAttempt(client);
+        }
         completedClients.add(client);
         scheduleRequestIfNecessary();
     }
@@ -512,7 +612,7 @@ public class ExchangeClient
         {
             requireNonNull(client, "client is null");
             requireNonNull(pages, "pages is null");
-            return ExchangeClient.this.addPages(pages);
+            return ExchangeClient.this.addPages(client, pages);
         }
 
         @Override
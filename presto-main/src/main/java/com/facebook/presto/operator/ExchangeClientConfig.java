@@ -14,6 +14,7 @@
 package com.facebook.presto.operator;
 
 import com.facebook.airlift.configuration.Config;
+import com.facebook.airlift.configuration.ConfigDescription;
 import com.facebook.airlift.configuration.DefunctConfig;
 import com.facebook.airlift.http.client.HttpClientConfig;
 import io.airlift.units.DataSize;
@@ -32,6 +33,7 @@ public class ExchangeClientConfig
 {
     private DataSize maxBufferSize = new DataSize(32, Unit.MEGABYTE);
     private int concurrentRequestMultiplier = 3;
+    private boolean adaptiveRequestConcurrencyEnabled;
     private Duration minErrorDuration = new Duration(1, TimeUnit.MINUTES);
     private Duration maxErrorDuration = new Duration(5, TimeUnit.MINUTES);
     private Duration asyncPageTransportTimeout = new Duration(60, TimeUnit.SECONDS);
@@ -67,6 +69,19 @@ public class ExchangeClientConfig
         return this;
     }
 
+    public boolean isAdaptiveRequestConcurrencyEnabled()
+    {
+        return adaptiveRequestConcurrencyEnabled;
+    }
+
+    @Config("exchange.adaptive-request-concurrency-enabled")
+    @ConfigDescription("Adjust the concurrent request multiplier from the response latency and the buffer fill level")
+    public ExchangeClientConfig setAdaptiveRequestConcurrencyEnabled(boolean adaptiveRequestConcurrencyEnabled)
+    {
+        this.adaptiveRequestConcurrencyEnabled = adaptiveRequestConcurrencyEnabled;
+        return this;
+    }
+
     @Deprecated
     public Duration getMinErrorDuration()
     {
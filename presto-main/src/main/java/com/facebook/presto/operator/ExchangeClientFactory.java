@@ -41,6 +41,7 @@ public class ExchangeClientFactory
 {
     private final DataSize maxBufferedBytes;
     private final int concurrentRequestMultiplier;
+    private final boolean adaptiveRequestConcurrencyEnabled;
     private final Duration maxErrorDuration;
     private final HttpClient httpClient;
     private final DriftClient<ThriftTaskClient> driftClient;
@@ -62,6 +63,7 @@ public class ExchangeClientFactory
                 config.getMaxBufferSize(),
                 config.getMaxResponseSize(),
                 config.getConcurrentRequestMultiplier(),
+                config.isAdaptiveRequestConcurrencyEnabled(),
                 config.getMaxErrorDuration(),
                 config.isAcknowledgePages(),
                 config.getPageBufferClientMaxCallbackThreads(),
@@ -75,6 +77,7 @@ public class ExchangeClientFactory
             DataSize maxBufferedBytes,
             DataSize maxResponseSize,
             int concurrentRequestMultiplier,
+            boolean adaptiveRequestConcurrencyEnabled,
             Duration maxErrorDuration,
             boolean acknowledgePages,
             int pageBufferClientMaxCallbackThreads,
@@ -85,6 +88,7 @@ public class ExchangeClientFactory
     {
         this.maxBufferedBytes = requireNonNull(maxBufferedBytes, "maxBufferedBytes is null");
         this.concurrentRequestMultiplier = concurrentRequestMultiplier;
+        this.adaptiveRequestConcurrencyEnabled = adaptiveRequestConcurrencyEnabled;
         this.maxErrorDuration = requireNonNull(maxErrorDuration, "maxErrorDuration is null");
         this.acknowledgePages = acknowledgePages;
         this.httpClient = requireNonNull(httpClient, "httpClient is null");
@@ -129,6 +133,7 @@ public class ExchangeClientFactory
                 maxBufferedBytes,
                 maxResponseSize,
                 concurrentRequestMultiplier,
+                adaptiveRequestConcurrencyEnabled,
                 maxErrorDuration,
                 acknowledgePages,
                 responseSizeExponentialMovingAverageDecayingAlpha,
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Adjusts the multiplier applied by {@link ExchangeClient} to the number of requests needed to fill its buffer.
+ * The multiplier grows additively while the buffer runs low and the response latency stays close to the lowest
+ * latency observed, and shrinks multiplicatively once the buffer fills up or the latency rises, which signals
+ * that the upstream tasks or the network are congested by the requests in flight.
+ */
+@NotThreadSafe
+class ExchangeRequestConcurrencyController
+{
+    @VisibleForTesting
+    static final double MIN_MULTIPLIER = 1;
+    @VisibleForTesting
+    static final double MAX_MULTIPLIER = 32;
+
+    private static final double INCREASE_STEP = 0.5;
+    private static final double DECREASE_FACTOR = 0.75;
+    private static final double LOW_BUFFER_FILL = 0.25;
+    private static final double HIGH_BUFFER_FILL = 0.75;
+    // latency above this multiple of the baseline is considered congestion
+    private static final double CONGESTED_LATENCY_RATIO = 2;
+    private static final double LATENCY_ALPHA = 0.2;
+    // lets the baseline follow a lasting increase of the latency, e.g. larger responses
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private double multiplier;
+    private double averageLatencyNanos = -1;
+    private double baselineLatencyNanos = -1;
+
+    public ExchangeRequestConcurrencyController(double initialMultiplier)
+    {
+        checkArgument(initialMultiplier >= MIN_MULTIPLIER, "initialMultiplier must be at least %s", MIN_MULTIPLIER);
+        this.multiplier = min(initialMultiplier, MAX_MULTIPLIER);
+    }
+
+    public double getMultiplier()
+    {
+        return multiplier;
+    }
+
+    public void responseReceived(long latencyNanos, long bufferedBytes, long bufferCapacity)
+    {
+        checkArgument(latencyNanos >= 0, "latencyNanos is negative");
+        checkArgument(bufferCapacity > 0, "bufferCapacity must be positive");
+
+        if (averageLatencyNanos < 0) {
+            averageLatencyNanos = latencyNanos;
+            baselineLatencyNanos = latencyNanos;
+        }
+        else {
+            averageLatencyNanos += LATENCY_ALPHA * (latencyNanos - averageLatencyNanos);
+            baselineLatencyNanos = min(latencyNanos, baselineLatencyNanos + BASELINE_DRIFT * (averageLatencyNanos - baselineLatencyNanos));
+        }
+
+        double bufferFill = 1.0 * bufferedBytes / bufferCapacity;
+        boolean congested = averageLatencyNanos > CONGESTED_LATENCY_RATIO * max(1, baselineLatencyNanos);
+        if (bufferFill >= HIGH_BUFFER_FILL || congested) {
+            multiplier = max(MIN_MULTIPLIER, multiplier * DECREASE_FACTOR);
+        }
+        else if (bufferFill < LOW_BUFFER_FILL) {
+            multiplier = min(MAX_MULTIPLIER, multiplier + INCREASE_STEP);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("multiplier", multiplier)
+                .add("averageLatencyNanos", averageLatencyNanos)
+                .add("baselineLatencyNanos", baselineLatencyNanos)
+                .toString();
+    }
+}
@@ -39,6 +39,8 @@ public class FileFragmentResultCacheConfig
     private DataSize maxInFlightSize = new DataSize(1, GIGABYTE);
     private DataSize maxSinglePagesSize = new DataSize(500, MEGABYTE);
     private DataSize maxCacheSize = new DataSize(100, GIGABYTE);
+    private DataSize maxMemoryCacheSize = new DataSize(0, MEGABYTE);
+    private DataSize maxMemoryCacheEntrySize = new DataSize(1, MEGABYTE);
 
     private boolean inputDataStatsEnabled;
 
@@ -151,6 +153,34 @@ public class FileFragmentResultCacheConfig
         return this;
     }
 
+    @MinDataSize("0B")
+    public DataSize getMaxMemoryCacheSize()
+    {
+        return maxMemoryCacheSize;
+    }
+
+    @Config("fragment-result-cache.max-memory-cache-size")
+    @ConfigDescription("Maximum direct memory used by the results that are also kept in memory, including the objects holding them, 0 to disable the memory tier")
+    public FileFragmentResultCacheConfig setMaxMemoryCacheSize(DataSize maxMemoryCacheSize)
+    {
+        this.maxMemoryCacheSize = maxMemoryCacheSize;
+        return this;
+    }
+
+    @MinDataSize("0B")
+    public DataSize getMaxMemoryCacheEntrySize()
+    {
+        return maxMemoryCacheEntrySize;
+    }
+
+    @Config("fragment-result-cache.max-memory-cache-entry-size")
+    @ConfigDescription("Maximum serialized size of a result kept in memory")
+    public FileFragmentResultCacheConfig setMaxMemoryCacheEntrySize(DataSize maxMemoryCacheEntrySize)
+    {
+        this.maxMemoryCacheEntrySize = maxMemoryCacheEntrySize;
+        return this;
+    }
+
     public boolean isInputDataStatsEnabled()
     {
         return inputDataStatsEnabled;
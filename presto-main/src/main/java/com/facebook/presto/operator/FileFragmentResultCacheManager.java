@@ -25,9 +25,12 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.AbstractIterator;
+import io.airlift.slice.DynamicSliceOutput;
 import io.airlift.slice.InputStreamSliceInput;
 import io.airlift.slice.OutputStreamSliceOutput;
+import io.airlift.slice.Slice;
 import io.airlift.slice.SliceOutput;
+import io.airlift.slice.Slices;
 import org.weakref.jmx.Managed;
 
 import javax.inject.Inject;
@@ -52,6 +55,7 @@ import static com.facebook.presto.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
 import static com.facebook.presto.spi.page.PagesSerdeUtil.readPages;
 import static com.facebook.presto.spi.page.PagesSerdeUtil.writePages;
 import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static java.lang.Math.toIntExact;
 import static java.nio.file.Files.newInputStream;
 import static java.nio.file.Files.newOutputStream;
 import static java.nio.file.StandardOpenOption.APPEND;
@@ -77,6 +81,9 @@ public class FileFragmentResultCacheManager
     private final ExecutorService removalExecutor;
 
     private final Cache<CacheKey, CacheEntry> cache;
+    // small results are also kept in memory, in front of the files
+    private final Optional<FragmentResultMemoryCache> memoryCache;
+    private final long maxMemoryCacheEntryBytes;
     private final boolean inputDataStatsEnabled;
 
     // TODO: Decouple CacheKey by encoding PlanNode and SplitIdentifier separately so we don't have to keep too many objects in memory
@@ -106,6 +113,13 @@ public class FileFragmentResultCacheManager
                 .removalListener(new CacheRemovalListener())
                 .recordStats()
                 .build();
+        this.maxMemoryCacheEntryBytes = cacheConfig.getMaxMemoryCacheEntrySize().toBytes();
+        if (cacheConfig.getMaxMemoryCacheSize().toBytes() > 0 && maxMemoryCacheEntryBytes > 0) {
+            this.memoryCache = Optional.of(new FragmentResultMemoryCache(cacheConfig.getMaxMemoryCacheSize().toBytes(), maxMemoryCacheEntryBytes, fragmentCacheStats));
+        }
+        else {
+            this.memoryCache = Optional.empty();
+        }
         this.inputDataStatsEnabled = cacheConfig.isInputDataStatsEnabled();
 
         File target = new File(baseDirectory.toUri());
@@ -167,11 +181,24 @@ public class FileFragmentResultCacheManager
         try {
             Files.createFile(path);
             try (SliceOutput output = new OutputStreamSliceOutput(newOutputStream(path, APPEND))) {
-                writePages(pagesSerdeFactory.createPagesSerde(), output, pages.iterator());
+                Optional<Slice> serializedPages = Optional.empty();
+                if (memoryCache.isPresent() && resultSize <= maxMemoryCacheEntryBytes) {
+                    // serialize once for both tiers
+                    SliceOutput buffer = new DynamicSliceOutput(toIntExact(resultSize) + 64);
+                    writePages(pagesSerdeFactory.createPagesSerde(), buffer, pages.iterator());
+                    serializedPages = Optional.of(buffer.slice());
+                    output.writeBytes(serializedPages.get());
+                }
+                else {
+                    writePages(pagesSerdeFactory.createPagesSerde(), output, pages.iterator());
+                }
                 long resultPhysicalBytes = output.size();
                 cache.put(key, new CacheEntry(path, resultPhysicalBytes, inputDataSize));
                 fragmentCacheStats.incrementCacheEntries();
                 fragmentCacheStats.addCacheSizeInBytes(resultPhysicalBytes);
+                if (serializedPages.isPresent()) {
+                    memoryCache.get().put(key, serializedPages.get(), inputDataSize);
+                }
             }
             catch (UncheckedIOException | IOException e) {
                 log.warn(e, "%s encountered an error while writing to path %s", Thread.currentThread().getName(), path);
@@ -210,6 +237,18 @@ public class FileFragmentResultCacheManager
             return new FragmentCacheResult(Optional.empty(), 0);
         }
 
+        if (memoryCache.isPresent()) {
+            Optional<FragmentResultMemoryCache.Entry> memoryEntry = memoryCache.get().get(key);
+            if (memoryEntry.isPresent()) {
+                fragmentCacheStats.incrementCacheHit();
+                Iterator<Page> result = readPages(pagesSerdeFactory.createPagesSerde(), memoryEntry.get().getSerializedPages().getInput());
+                return new FragmentCacheResult(Optional.of(result), memoryEntry.get().getInputDataSize());
+            }
+            if (cacheEntry.getResultBytes() <= maxMemoryCacheEntryBytes) {
+                return getAndPromote(key, cacheEntry);
+            }
+        }
+
         try {
             InputStream inputStream = newInputStream(cacheEntry.getPath());
             Iterator<Page> result = readPages(pagesSerdeFactory.createPagesSerde(), new InputStreamSliceInput(inputStream));
@@ -224,10 +263,31 @@ public class FileFragmentResultCacheManager
         }
     }
 
+    /**
+     * Reads a small result from its file in one go, and keeps it in memory if the memory tier admits it.
+     */
+    private FragmentCacheResult getAndPromote(CacheKey key, CacheEntry cacheEntry)
+    {
+        try {
+            Slice serializedPages = Slices.wrappedBuffer(Files.readAllBytes(cacheEntry.getPath()));
+            memoryCache.get().put(key, serializedPages, cacheEntry.getInputDataSize());
+            Iterator<Page> result = readPages(pagesSerdeFactory.createPagesSerde(), serializedPages.getInput());
+            fragmentCacheStats.incrementCacheHit();
+            return new FragmentCacheResult(Optional.of(result), cacheEntry.getInputDataSize());
+        }
+        catch (UncheckedIOException | IOException e) {
+            log.error(e, "read path %s error", cacheEntry.getPath());
+            // there might be a chance the file has been deleted. We would return cache miss in this case.
+            fragmentCacheStats.incrementCacheMiss();
+            return new FragmentCacheResult(Optional.empty(), 0);
+        }
+    }
+
     @Managed
     public void invalidateAllCache()
     {
         cache.invalidateAll();
+        memoryCache.ifPresent(FragmentResultMemoryCache::invalidateAll);
     }
 
     private static <T> Iterator<T> closeWhenExhausted(Iterator<T> iterator, Closeable resource)
@@ -332,6 +392,7 @@ public class FileFragmentResultCacheManager
         public void onRemoval(RemovalNotification<CacheKey, CacheEntry> notification)
         {
             CacheEntry cacheEntry = notification.getValue();
+            memoryCache.ifPresent(memory -> memory.invalidate(notification.getKey()));
             removalExecutor.submit(() -> tryDeleteFile(cacheEntry.getPath()));
             fragmentCacheStats.incrementCacheRemoval();
             fragmentCacheStats.decrementCacheEntries();
@@ -0,0 +1,945 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.common.Page;
+import com.facebook.presto.common.PageBuilder;
+import com.facebook.presto.common.block.Block;
+import com.facebook.presto.common.block.BlockBuilder;
+import com.facebook.presto.common.block.DictionaryBlock;
+import com.facebook.presto.common.block.RunLengthEncodedBlock;
+import com.facebook.presto.common.type.Type;
+import com.facebook.presto.common.type.VarcharType;
+import com.facebook.presto.operator.scalar.CombineHashFunction;
+import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spi.function.aggregation.GroupByIdBlock;
+import com.facebook.presto.type.TypeUtils;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.openjdk.jol.info.ClassLayout;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static com.facebook.presto.common.type.BigintType.BIGINT;
+import static com.facebook.presto.common.type.BooleanType.BOOLEAN;
+import static com.facebook.presto.common.type.DateType.DATE;
+import static com.facebook.presto.common.type.IntegerType.INTEGER;
+import static com.facebook.presto.common.type.SmallintType.SMALLINT;
+import static com.facebook.presto.common.type.TimestampType.TIMESTAMP;
+import static com.facebook.presto.common.type.TinyintType.TINYINT;
+import static com.facebook.presto.spi.StandardErrorCode.GENERIC_INSUFFICIENT_RESOURCES;
+import static com.facebook.presto.sql.planner.PlannerUtils.INITIAL_HASH_VALUE;
+import static com.facebook.presto.util.HashCollisionsEstimator.estimateNumberOfHashCollisions;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Verify.verify;
+import static io.airlift.slice.SizeOf.sizeOf;
+import static it.unimi.dsi.fastutil.HashCommon.arraySize;
+import static it.unimi.dsi.fastutil.HashCommon.murmurHash3;
+import static java.lang.Math.toIntExact;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Group by hash for multiple key channels that stores the keys of each group
+ * serialized into a single flat row buffer instead of per-channel block builders.
+ * <p>
+ * Each row has the layout {@code [raw hash (8)][null flags (1 per channel)][values]}.
+ * Fixed width values take 8 bytes (1 byte for boolean).  Variable width values take
+ * 4 bytes of length followed by {@value #INLINE_VARIABLE_WIDTH_BYTES} bytes that hold
+ * either the value itself or, for longer values, the offset of the value in a side buffer.
+ * <p>
+ * When all key channels are dictionary blocks over the same dictionary source, each dictionary
+ * position is looked up once and its group id is reused for the other rows of the page.
+ * <p>
+ * This implementation assumes arrays used in the hash are always a power of 2
+ */
+public class FlatGroupByHash
+        implements GroupByHash
+{
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(FlatGroupByHash.class).instanceSize();
+    private static final float FILL_RATIO = 0.75f;
+
+    @VisibleForTesting
+    static final int INLINE_VARIABLE_WIDTH_BYTES = 16;
+    @VisibleForTesting
+    static final int MAX_INLINE_VARCHAR_LENGTH = 16;
+
+    private static final byte LONG_KIND = 0;
+    private static final byte BOOLEAN_KIND = 1;
+    private static final byte SLICE_KIND = 2;
+
+    private static final int RAW_HASH_OFFSET = 0;
+    private static final int NULL_FLAGS_OFFSET = Long.BYTES;
+
+    private final List<Type> types;
+    private final List<Type> hashTypes;
+    private final int[] channels;
+    private final Optional<Integer> inputHashChannel;
+    private final boolean outputRawHash;
+    private final HashGenerator hashGenerator;
+    private final boolean processDictionary;
+
+    // row layout
+    private final byte[] kinds;
+    private final int[] valueOffsets;
+    private final int rowSize;
+
+    private int hashCapacity;
+    private int maxFill;
+    private int mask;
+
+    // the hash table from hash position to groupId with the low bits of the raw hash of each entry
+    private int[] groupIdsByHash;
+    private byte[] rawHashByHashPosition;
+
+    // the group keys, one fixed size row per groupId
+    private byte[] rows;
+    private Slice rowsSlice;
+
+    // variable width values that do not fit inline
+    private final DynamicSliceOutput variableWidthData = new DynamicSliceOutput(0);
+
+    private int nextGroupId;
+    private DictionaryLookBack dictionaryLookBack;
+    private long hashCollisions;
+    private double expectedHashCollisions;
+
+    // reserve enough memory before rehash
+    private final UpdateMemory updateMemory;
+    private long preallocatedMemoryInBytes;
+    private long currentPageSizeInBytes;
+
+    public static boolean isSupportedType(Type type)
+    {
+        if (type.equals(BIGINT) || type.equals(INTEGER) || type.equals(SMALLINT) || type.equals(TINYINT) ||
+                type.equals(DATE) || type.equals(TIMESTAMP) || type.equals(BOOLEAN)) {
+            return true;
+        }
+        return type instanceof VarcharType && ((VarcharType) type).getLength() <= MAX_INLINE_VARCHAR_LENGTH;
+    }
+
+    public FlatGroupByHash(
+            List<? extends Type> hashTypes,
+            int[] hashChannels,
+            Optional<Integer> inputHashChannel,
+            int expectedSize,
+            boolean processDictionary,
+            UpdateMemory updateMemory)
+    {
+        this.hashTypes = ImmutableList.copyOf(requireNonNull(hashTypes, "hashTypes is null"));
+        requireNonNull(hashChannels, "hashChannels is null");
+        requireNonNull(inputHashChannel, "inputHashChannel is null");
+        checkArgument(hashTypes.size() == hashChannels.length, "hashTypes and hashChannels have different sizes");
+        checkArgument(expectedSize > 0, "expectedSize must be greater than zero");
+
+        this.channels = hashChannels.clone();
+        this.inputHashChannel = inputHashChannel;
+        this.outputRawHash = inputHashChannel.isPresent();
+        this.types = outputRawHash ? ImmutableList.copyOf(Iterables.concat(hashTypes, ImmutableList.of(BIGINT))) : this.hashTypes;
+        this.hashGenerator = inputHashChannel.isPresent() ? new PrecomputedHashGenerator(inputHashChannel.get()) : new InterpretedHashGenerator(this.hashTypes, hashChannels);
+        this.processDictionary = processDictionary;
+
+        this.kinds = new byte[channels.length];
+        this.valueOffsets = new int[channels.length];
+        int offset = NULL_FLAGS_OFFSET + channels.length;
+        for (int i = 0; i < channels.length; i++) {
+            Type type = this.hashTypes.get(i);
+            checkArgument(isSupportedType(type), "Type %s is not supported by FlatGroupByHash", type);
+            valueOffsets[i] = offset;
+            if (type.equals(BOOLEAN)) {
+                kinds[i] = BOOLEAN_KIND;
+                offset += Byte.BYTES;
+            }
+            else if (type.getJavaType() == long.class) {
+                kinds[i] = LONG_KIND;
+                offset += Long.BYTES;
+            }
+            else {
+                kinds[i] = SLICE_KIND;
+                offset += Integer.BYTES + INLINE_VARIABLE_WIDTH_BYTES;
+            }
+        }
+        this.rowSize = offset;
+
+        hashCapacity = arraySize(expectedSize, FILL_RATIO);
+        maxFill = calculateMaxFill(hashCapacity);
+        mask = hashCapacity - 1;
+
+        groupIdsByHash = new int[hashCapacity];
+        Arrays.fill(groupIdsByHash, -1);
+        rawHashByHashPosition = new byte[hashCapacity];
+
+        rows = new byte[toIntExact((long) maxFill * rowSize)];
+        rowsSlice = Slices.wrappedBuffer(rows);
+
+        // This interface is used for actively reserving memory (push model) for rehash.
+        // The caller can also query memory usage on this object (pull model)
+        this.updateMemory = requireNonNull(updateMemory, "updateMemory is null");
+    }
+
+    @Override
+    public long getEstimatedSize()
+    {
+        return INSTANCE_SIZE +
+                sizeOf(groupIdsByHash) +
+                sizeOf(rawHashByHashPosition) +
+                sizeOf(rows) +
+                variableWidthData.getRetainedSize() +
+                preallocatedMemoryInBytes;
+    }
+
+    @Override
+    public long getHashCollisions()
+    {
+        return hashCollisions;
+    }
+
+    @Override
+    public double getExpectedHashCollisions()
+    {
+        return expectedHashCollisions + estimateNumberOfHashCollisions(getGroupCount(), hashCapacity);
+    }
+
+    @Override
+    public List<Type> getTypes()
+    {
+        return types;
+    }
+
+    @Override
+    public int getGroupCount()
+    {
+        return nextGroupId;
+    }
+
+    @Override
+    public void appendValuesTo(int groupId, PageBuilder pageBuilder, int outputChannelOffset)
+    {
+        checkArgument(groupId >= 0, "groupId is negative");
+        int rowOffset = groupId * rowSize;
+        for (int i = 0; i < channels.length; i++) {
+            BlockBuilder blockBuilder = pageBuilder.getBlockBuilder(outputChannelOffset + i);
+            if (rows[rowOffset + NULL_FLAGS_OFFSET + i] != 0) {
+                blockBuilder.appendNull();
+                continue;
+            }
+            Type type = hashTypes.get(i);
+            int valueOffset = rowOffset + valueOffsets[i];
+            switch (kinds[i]) {
+                case LONG_KIND:
+                    type.writeLong(blockBuilder, rowsSlice.getLong(valueOffset));
+                    break;
+                case BOOLEAN_KIND:
+                    type.writeBoolean(blockBuilder, rows[valueOffset] != 0);
+                    break;
+                default:
+                    int length = rowsSlice.getInt(valueOffset);
+                    if (length <= INLINE_VARIABLE_WIDTH_BYTES) {
+                        type.writeSlice(blockBuilder, rowsSlice, valueOffset + Integer.BYTES, length);
+                    }
+                    else {
+                        type.writeSlice(blockBuilder, variableWidthData.getUnderlyingSlice(), toIntExact(rowsSlice.getLong(valueOffset + Integer.BYTES)), length);
+                    }
+            }
+        }
+        if (outputRawHash) {
+            BIGINT.writeLong(pageBuilder.getBlockBuilder(outputChannelOffset + channels.length), getRawHash(groupId));
+        }
+    }
+
+    @Override
+    public Work<?> addPage(Page page)
+    {
+        currentPageSizeInBytes = page.getRetainedSizeInBytes();
+        if (isRunLengthEncoded(page)) {
+            return new AddRunLengthEncodedPageWork(page);
+        }
+        if (canProcessDictionary(page)) {
+            return new AddDictionaryPageWork(page);
+        }
+        return new AddPageWork(page);
+    }
+
+    @Override
+    public List<Page> getBufferedPages()
+    {
+        ImmutableList.Builder<Page> inputPages = ImmutableList.builder();
+        PageBuilder pageBuilder = new PageBuilder(types);
+        for (int groupId = 0; groupId < nextGroupId; groupId++) {
+            pageBuilder.declarePosition();
+            appendValuesTo(groupId, pageBuilder, 0);
+            if (pageBuilder.isFull()) {
+                inputPages.add(extractKeyChannels(pageBuilder.build()));
+                pageBuilder.reset();
+            }
+        }
+        if (!pageBuilder.isEmpty()) {
+            inputPages.add(extractKeyChannels(pageBuilder.build()));
+        }
+        return inputPages.build();
+    }
+
+    @Override
+    public Work<GroupByIdBlock> getGroupIds(Page page)
+    {
+        currentPageSizeInBytes = page.getRetainedSizeInBytes();
+        if (isRunLengthEncoded(page)) {
+            return new GetRunLengthEncodedGroupIdsWork(page);
+        }
+        if (canProcessDictionary(page)) {
+            return new GetDictionaryGroupIdsWork(page);
+        }
+        return new GetGroupIdsWork(page);
+    }
+
+    @Override
+    public boolean contains(int position, Page page, int[] hashChannels)
+    {
+        long rawHash = INITIAL_HASH_VALUE;
+        for (int i = 0; i < hashChannels.length; i++) {
+            rawHash = CombineHashFunction.getHash(rawHash, TypeUtils.hashPosition(hashTypes.get(i), page.getBlock(hashChannels[i]), position));
+        }
+        return contains(position, page, hashChannels, rawHash);
+    }
+
+    @Override
+    public boolean contains(int position, Page page, int[] hashChannels, long rawHash)
+    {
+        int hashPosition = getHashPosition(rawHash, mask);
+
+        // look for a slot containing this key
+        while (groupIdsByHash[hashPosition] != -1) {
+            if (rawHashByHashPosition[hashPosition] == (byte) rawHash && rowNotDistinctFromPosition(groupIdsByHash[hashPosition], position, page, hashChannels)) {
+                // found an existing slot for this key
+                return true;
+            }
+            // increment position and mask to handle wrap around
+            hashPosition = (hashPosition + 1) & mask;
+        }
+
+        return false;
+    }
+
+    @Override
+    public long getRawHash(int groupId)
+    {
+        return rowsSlice.getLong(groupId * rowSize + RAW_HASH_OFFSET);
+    }
+
+    @VisibleForTesting
+    @Override
+    public int getCapacity()
+    {
+        return hashCapacity;
+    }
+
+    private Page extractKeyChannels(Page page)
+    {
+        if (!outputRawHash) {
+            return page;
+        }
+        Block[] blocks = new Block[channels.length];
+        for (int i = 0; i < channels.length; i++) {
+            blocks[i] = page.getBlock(i);
+        }
+        return new Page(page.getPositionCount(), blocks);
+    }
+
+    private int putIfAbsent(int position, Page page)
+    {
+        long rawHash = hashGenerator.hashPosition(position, page);
+        int hashPosition = getHashPosition(rawHash, mask);
+        byte rawHashTag = (byte) rawHash;
+
+        // look for an empty slot or a slot containing this key
+        int groupId;
+        while ((groupId = groupIdsByHash[hashPosition]) != -1) {
+            if (rawHashByHashPosition[hashPosition] == rawHashTag && rowNotDistinctFromPosition(groupId, position, page, channels)) {
+                // found an existing slot for this key
+                return groupId;
+            }
+            // increment position and mask to handle wrap around
+            hashPosition = (hashPosition + 1) & mask;
+            hashCollisions++;
+        }
+
+        return addNewGroup(hashPosition, position, page, rawHash);
+    }
+
+    private int addNewGroup(int hashPosition, int position, Page page, long rawHash)
+    {
+        // record group id in hash
+        int groupId = nextGroupId++;
+        groupIdsByHash[hashPosition] = groupId;
+        rawHashByHashPosition[hashPosition] = (byte) rawHash;
+
+        // serialize the keys into the row for this group
+        int rowOffset = groupId * rowSize;
+        rowsSlice.setLong(rowOffset + RAW_HASH_OFFSET, rawHash);
+        for (int i = 0; i < channels.length; i++) {
+            Block block = page.getBlock(channels[i]);
+            if (block.isNull(position)) {
+                rows[rowOffset + NULL_FLAGS_OFFSET + i] = 1;
+                continue;
+            }
+            int valueOffset = rowOffset + valueOffsets[i];
+            switch (kinds[i]) {
+                case LONG_KIND:
+                    rowsSlice.setLong(valueOffset, hashTypes.get(i).getLong(block, position));
+                    break;
+                case BOOLEAN_KIND:
+                    rows[valueOffset] = (byte) (hashTypes.get(i).getBoolean(block, position) ? 1 : 0);
+                    break;
+                default:
+                    int length = block.getSliceLength(position);
+                    rowsSlice.setInt(valueOffset, length);
+                    if (length <= INLINE_VARIABLE_WIDTH_BYTES) {
+                        rowsSlice.setBytes(valueOffset + Integer.BYTES, block.getSlice(position, 0, length));
+                    }
+                    else {
+                        rowsSlice.setLong(valueOffset + Integer.BYTES, variableWidthData.size());
+                        block.writeBytesTo(position, 0, length, variableWidthData);
+                    }
+            }
+        }
+
+        // increase capacity, if necessary
+        if (needRehash()) {
+            tryRehash();
+        }
+        return groupId;
+    }
+
+    private boolean rowNotDistinctFromPosition(int groupId, int position, Page page, int[] hashChannels)
+    {
+        int rowOffset = groupId * rowSize;
+        for (int i = 0; i < hashChannels.length; i++) {
+            Block block = page.getBlock(hashChannels[i]);
+            boolean rowIsNull = rows[rowOffset + NULL_FLAGS_OFFSET + i] != 0;
+            if (block.isNull(position)) {
+                if (!rowIsNull) {
+                    return false;
+                }
+                continue;
+            }
+            if (rowIsNull) {
+                return false;
+            }
+            int valueOffset = rowOffset + valueOffsets[i];
+            switch (kinds[i]) {
+                case LONG_KIND:
+                    if (rowsSlice.getLong(valueOffset) != hashTypes.get(i).getLong(block, position)) {
+                        return false;
+                    }
+                    break;
+                case BOOLEAN_KIND:
+                    if ((rows[valueOffset] != 0) != hashTypes.get(i).getBoolean(block, position)) {
+                        return false;
+                    }
+                    break;
+                default:
+                    int length = rowsSlice.getInt(valueOffset);
+                    if (length != block.getSliceLength(position)) {
+                        return false;
+                    }
+                    boolean equal;
+                    if (length <= INLINE_VARIABLE_WIDTH_BYTES) {
+                        equal = block.bytesEqual(position, 0, rowsSlice, valueOffset + Integer.BYTES, length);
+                    }
+                    else {
+                        equal = block.bytesEqual(position, 0, variableWidthData.getUnderlyingSlice(), toIntExact(rowsSlice.getLong(valueOffset + Integer.BYTES)), length);
+                    }
+                    if (!equal) {
+                        return false;
+                    }
+            }
+        }
+        return true;
+    }
+
+    private boolean needRehash()
+    {
+        return nextGroupId >= maxFill;
+    }
+
+    private boolean tryRehash()
+    {
+        long newCapacityLong = hashCapacity * 2L;
+        if (newCapacityLong > Integer.MAX_VALUE) {
+            throw new PrestoException(GENERIC_INSUFFICIENT_RESOURCES, "Size of hash table cannot exceed 1 billion entries");
+        }
+        int newCapacity = toIntExact(newCapacityLong);
+        int newMaxFill = calculateMaxFill(newCapacity);
+        long newRowsSize = (long) newMaxFill * rowSize;
+        if (newRowsSize > Integer.MAX_VALUE) {
+            throw new PrestoException(GENERIC_INSUFFICIENT_RESOURCES, "Size of group by keys cannot exceed 2GB");
+        }
+
+        // An estimate of how much extra memory is needed before we can go ahead and expand the hash table.
+        // This includes the new capacity for groupIdsByHash, rawHashByHashPosition and rows as well as the size of the current page
+        preallocatedMemoryInBytes = newCapacity * (long) (Integer.BYTES + Byte.BYTES) +
+                newRowsSize +
+                currentPageSizeInBytes;
+        if (!updateMemory.update()) {
+            // reserved memory but has exceeded the limit
+            return false;
+        }
+
+        expectedHashCollisions += estimateNumberOfHashCollisions(getGroupCount(), hashCapacity);
+
+        int newMask = newCapacity - 1;
+        int[] newGroupIdsByHash = new int[newCapacity];
+        Arrays.fill(newGroupIdsByHash, -1);
+        byte[] newRawHashByHashPosition = new byte[newCapacity];
+
+        // the raw hash is stored in the row, so rehashing only reads the rows sequentially
+        for (int groupId = 0; groupId < nextGroupId; groupId++) {
+            long rawHash = getRawHash(groupId);
+            int hashPosition = getHashPosition(rawHash, newMask);
+            while (newGroupIdsByHash[hashPosition] != -1) {
+                hashPosition = (hashPosition + 1) & newMask;
+                hashCollisions++;
+            }
+            newGroupIdsByHash[hashPosition] = groupId;
+            newRawHashByHashPosition[hashPosition] = (byte) rawHash;
+        }
+
+        mask = newMask;
+        hashCapacity = newCapacity;
+        maxFill = newMaxFill;
+        groupIdsByHash = newGroupIdsByHash;
+        rawHashByHashPosition = newRawHashByHashPosition;
+        rows = Arrays.copyOf(rows, toIntExact(newRowsSize));
+        rowsSlice = Slices.wrappedBuffer(rows);
+
+        preallocatedMemoryInBytes = 0;
+        // release temporary memory reservation
+        updateMemory.update();
+        return true;
+    }
+
+    private boolean isRunLengthEncoded(Page page)
+    {
+        for (int i = 0; i < channels.length; i++) {
+            if (!(page.getBlock(channels[i]) instanceof RunLengthEncodedBlock)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void updateDictionaryLookBack(Page page)
+    {
+        Block[] dictionaries = new Block[channels.length];
+        for (int i = 0; i < channels.length; i++) {
+            dictionaries[i] = ((DictionaryBlock) page.getBlock(channels[i])).getDictionary();
+        }
+        if (dictionaryLookBack == null || !dictionaryLookBack.isFor(dictionaries)) {
+            dictionaryLookBack = new DictionaryLookBack(dictionaries);
+        }
+    }
+
+    // For a page whose key channels are DictionaryBlocks, create a new page in which
+    // the dictionaries from the DictionaryBlocks are extracted into the corresponding channels
+    // From Page(DictionaryBlock1, DictionaryBlock2) create new page with Page(dictionary1, dictionary2)
+    private Page createPageWithExtractedDictionary(Page page)
+    {
+        Block[] blocks = new Block[page.getChannelCount()];
+        for (int channel : channels) {
+            blocks[channel] = ((DictionaryBlock) page.getBlock(channel)).getDictionary();
+        }
+        if (inputHashChannel.isPresent()) {
+            blocks[inputHashChannel.get()] = ((DictionaryBlock) page.getBlock(inputHashChannel.get())).getDictionary();
+        }
+        return new Page(blocks[channels[0]].getPositionCount(), blocks);
+    }
+
+    // The rows of the dictionaries only line up when all the dictionary blocks share the ids
+    // of the same dictionary source.
+    private boolean canProcessDictionary(Page page)
+    {
+        if (!processDictionary || !(page.getBlock(channels[0]) instanceof DictionaryBlock)) {
+            return false;
+        }
+
+        DictionaryBlock firstBlock = (DictionaryBlock) page.getBlock(channels[0]);
+        for (int i = 1; i < channels.length; i++) {
+            if (!isSameDictionarySource(firstBlock, page.getBlock(channels[i]))) {
+                return false;
+            }
+        }
+        return !inputHashChannel.isPresent() || isSameDictionarySource(firstBlock, page.getBlock(inputHashChannel.get()));
+    }
+
+    private static boolean isSameDictionarySource(DictionaryBlock dictionaryBlock, Block block)
+    {
+        return block instanceof DictionaryBlock
+                && ((DictionaryBlock) block).getDictionarySourceId().equals(dictionaryBlock.getDictionarySourceId())
+                && ((DictionaryBlock) block).getDictionary().getPositionCount() == dictionaryBlock.getDictionary().getPositionCount();
+    }
+
+    private int getGroupId(Page dictionaryPage, int positionInDictionary)
+    {
+        if (dictionaryLookBack.isProcessed(positionInDictionary)) {
+            return dictionaryLookBack.getGroupId(positionInDictionary);
+        }
+
+        int groupId = putIfAbsent(positionInDictionary, dictionaryPage);
+        dictionaryLookBack.setProcessed(positionInDictionary, groupId);
+        return groupId;
+    }
+
+    private static int getHashPosition(long rawHash, int mask)
+    {
+        return (int) (murmurHash3(rawHash) & mask);
+    }
+
+    private static int calculateMaxFill(int hashSize)
+    {
+        checkArgument(hashSize > 0, "hashSize must be greater than 0");
+        int maxFill = (int) Math.ceil(hashSize * FILL_RATIO);
+        if (maxFill == hashSize) {
+            maxFill--;
+        }
+        checkArgument(hashSize > maxFill, "hashSize must be larger than maxFill");
+        return maxFill;
+    }
+
+    private class AddPageWork
+            implements Work<Void>
+    {
+        private final Page page;
+
+        private int lastPosition;
+
+        public AddPageWork(Page page)
+        {
+            this.page = requireNonNull(page, "page is null");
+        }
+
+        @Override
+        public boolean process()
+        {
+            int positionCount = page.getPositionCount();
+            checkState(lastPosition <= positionCount, "position count out of bound");
+
+            // needRehash() == true indicates we have reached capacity boundary and a rehash is needed.
+            // We can only proceed if tryRehash() successfully did a rehash.
+            if (needRehash() && !tryRehash()) {
+                return false;
+            }
+
+            // putIfAbsent will rehash automatically if rehash is needed, unless there isn't enough memory to do so.
+            // Therefore needRehash will not generally return true even if we have just crossed the capacity boundary.
+            while (lastPosition < positionCount && !needRehash()) {
+                // get the group for the current row
+                putIfAbsent(lastPosition, page);
+                lastPosition++;
+            }
+            return lastPosition == positionCount;
+        }
+
+        @Override
+        public Void getResult()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class DictionaryLookBack
+    {
+        private final Block[] dictionaries;
+        private final int[] processed;
+
+        public DictionaryLookBack(Block[] dictionaries)
+        {
+            this.dictionaries = dictionaries;
+            this.processed = new int[dictionaries[0].getPositionCount()];
+            Arrays.fill(processed, -1);
+        }
+
+        public boolean isFor(Block[] dictionaries)
+        {
+            for (int i = 0; i < dictionaries.length; i++) {
+                if (this.dictionaries[i] != dictionaries[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int getGroupId(int position)
+        {
+            return processed[position];
+        }
+
+        public boolean isProcessed(int position)
+        {
+            return processed[position] != -1;
+        }
+
+        public void setProcessed(int position, int groupId)
+        {
+            processed[position] = groupId;
+        }
+    }
+
+    private class AddDictionaryPageWork
+            implements Work<Void>
+    {
+        private final Page page;
+        private final Page dictionaryPage;
+        private final DictionaryBlock dictionaryBlock;
+
+        private int lastPosition;
+
+        public AddDictionaryPageWork(Page page)
+        {
+            verify(canProcessDictionary(page), "invalid call to addDictionaryPage");
+            this.page = requireNonNull(page, "page is null");
+            this.dictionaryBlock = (DictionaryBlock) page.getBlock(channels[0]);
+            updateDictionaryLookBack(page);
+            this.dictionaryPage = createPageWithExtractedDictionary(page);
+        }
+
+        @Override
+        public boolean process()
+        {
+            int positionCount = page.getPositionCount();
+            checkState(lastPosition <= positionCount, "position count out of bound");
+
+            // needRehash() == true indicates we have reached capacity boundary and a rehash is needed.
+            // We can only proceed if tryRehash() successfully did a rehash.
+            if (needRehash() && !tryRehash()) {
+                return false;
+            }
+
+            // putIfAbsent will rehash automatically if rehash is needed, unless there isn't enough memory to do so.
+            // Therefore needRehash will not generally return true even if we have just crossed the capacity boundary.
+            while (lastPosition < positionCount && !needRehash()) {
+                getGroupId(dictionaryPage, dictionaryBlock.getId(lastPosition));
+                lastPosition++;
+            }
+            return lastPosition == positionCount;
+        }
+
+        @Override
+        public Void getResult()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class AddRunLengthEncodedPageWork
+            implements Work<Void>
+    {
+        private final Page page;
+
+        private boolean finished;
+
+        public AddRunLengthEncodedPageWork(Page page)
+        {
+            this.page = requireNonNull(page, "page is null");
+        }
+
+        @Override
+        public boolean process()
+        {
+            checkState(!finished);
+            if (page.getPositionCount() == 0) {
+                finished = true;
+                return true;
+            }
+
+            // needRehash() == true indicates we have reached capacity boundary and a rehash is needed.
+            // We can only proceed if tryRehash() successfully did a rehash.
+            if (needRehash() && !tryRehash()) {
+                return false;
+            }
+
+            // Only needs to process the first row since it is Run Length Encoded
+            putIfAbsent(0, page);
+            finished = true;
+
+            return true;
+        }
+
+        @Override
+        public Void getResult()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class GetGroupIdsWork
+            implements Work<GroupByIdBlock>
+    {
+        private final BlockBuilder blockBuilder;
+        private final Page page;
+
+        private boolean finished;
+        private int lastPosition;
+
+        public GetGroupIdsWork(Page page)
+        {
+            this.page = requireNonNull(page, "page is null");
+            // we know the exact size required for the block
+            this.blockBuilder = BIGINT.createFixedSizeBlockBuilder(page.getPositionCount());
+        }
+
+        @Override
+        public boolean process()
+        {
+            int positionCount = page.getPositionCount();
+            checkState(lastPosition <= positionCount, "position count out of bound");
+            checkState(!finished);
+
+            // needRehash() == true indicates we have reached capacity boundary and a rehash is needed.
+            // We can only proceed if tryRehash() successfully did a rehash.
+            if (needRehash() && !tryRehash()) {
+                return false;
+            }
+
+            // putIfAbsent will rehash automatically if rehash is needed, unless there isn't enough memory to do so.
+            // Therefore needRehash will not generally return true even if we have just crossed the capacity boundary.
+            while (lastPosition < positionCount && !needRehash()) {
+                // output the group id for this row
+                BIGINT.writeLong(blockBuilder, putIfAbsent(lastPosition, page));
+                lastPosition++;
+            }
+            return lastPosition == positionCount;
+        }
+
+        @Override
+        public GroupByIdBlock getResult()
+        {
+            checkState(lastPosition == page.getPositionCount(), "process has not yet finished");
+            checkState(!finished, "result has produced");
+            finished = true;
+            return new GroupByIdBlock(nextGroupId, blockBuilder.build());
+        }
+    }
+
+    private class GetDictionaryGroupIdsWork
+            implements Work<GroupByIdBlock>
+    {
+        private final BlockBuilder blockBuilder;
+        private final Page page;
+        private final Page dictionaryPage;
+        private final DictionaryBlock dictionaryBlock;
+
+        private boolean finished;
+        private int lastPosition;
+
+        public GetDictionaryGroupIdsWork(Page page)
+        {
+            this.page = requireNonNull(page, "page is null");
+            verify(canProcessDictionary(page), "invalid call to processDictionary");
+
+            this.dictionaryBlock = (DictionaryBlock) page.getBlock(channels[0]);
+            updateDictionaryLookBack(page);
+            this.dictionaryPage = createPageWithExtractedDictionary(page);
+
+            // we know the exact size required for the block
+            this.blockBuilder = BIGINT.createFixedSizeBlockBuilder(page.getPositionCount());
+        }
+
+        @Override
+        public boolean process()
+        {
+            int positionCount = page.getPositionCount();
+            checkState(lastPosition <= positionCount, "position count out of bound");
+            checkState(!finished);
+
+            // needRehash() == true indicates we have reached capacity boundary and a rehash is needed.
+            // We can only proceed if tryRehash() successfully did a rehash.
+            if (needRehash() && !tryRehash()) {
+                return false;
+            }
+
+            // putIfAbsent will rehash automatically if rehash is needed, unless there isn't enough memory to do so.
+            // Therefore needRehash will not generally return true even if we have just crossed the capacity boundary.
+            while (lastPosition < positionCount && !needRehash()) {
+                BIGINT.writeLong(blockBuilder, getGroupId(dictionaryPage, dictionaryBlock.getId(lastPosition)));
+                lastPosition++;
+            }
+            return lastPosition == positionCount;
+        }
+
+        @Override
+        public GroupByIdBlock getResult()
+        {
+            checkState(lastPosition == page.getPositionCount(), "process has not yet finished");
+            checkState(!finished, "result has produced");
+            finished = true;
+            return new GroupByIdBlock(nextGroupId, blockBuilder.build());
+        }
+    }
+
+    private class GetRunLengthEncodedGroupIdsWork
+            implements Work<GroupByIdBlock>
+    {
+        private final Page page;
+
+        int groupId = -1;
+        private boolean processFinished;
+        private boolean resultProduced;
+
+        public GetRunLengthEncodedGroupIdsWork(Page page)
+        {
+            this.page = requireNonNull(page, "page is null");
+        }
+
+        @Override
+        public boolean process()
+        {
+            checkState(!processFinished);
+            if (page.getPositionCount() == 0) {
+                processFinished = true;
+                return true;
+            }
+
+            // needRehash() == true indicates we have reached capacity boundary and a rehash is needed.
+            // We can only proceed if tryRehash() successfully did a rehash.
+            if (needRehash() && !tryRehash()) {
+                return false;
+            }
+
+            // Only needs to process the first row since it is Run Length Encoded
+            groupId = putIfAbsent(0, page);
+            processFinished = true;
+            return true;
+        }
+
+        @Override
+        public GroupByIdBlock getResult()
+        {
+            checkState(processFinished);
+            checkState(!resultProduced);
+            resultProduced = true;
+
+            return new GroupByIdBlock(
+                    nextGroupId,
+                    new RunLengthEncodedBlock(
+                            BIGINT.createFixedSizeBlockBuilder(1).writeLong(groupId).build(),
+                            page.getPositionCount()));
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.common.Page;
+import com.facebook.presto.common.PageBuilder;
+import com.facebook.presto.common.type.Type;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.openjdk.jol.info.ClassLayout;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.airlift.slice.SizeOf.sizeOf;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Finds the top N rows defined by {@param comparator} without grouping.
+ *
+ * The kept rows are identified by int row ids, which index the page and position of each row, and the heap is an
+ * int array of row ids whose root is the last of the kept rows. A row that replaces the root takes over its row id,
+ * so there are never more than N row ids. Once N rows are kept, the first sort key of the root is published to
+ * the {@link DynamicTopNFilter}, and the positions of each page are filtered on that key before any heap work.
+ */
+public class FlatTopNBuilder
+{
+    private static final long INSTANCE_SIZE = ClassLayout.parseClass(FlatTopNBuilder.class).instanceSize();
+    private static final int INITIAL_CAPACITY = 1024;
+    // compact the pages when they retain this many times more positions than the kept rows
+    private static final int COMPACT_THRESHOLD = 2;
+
+    private final List<Type> types;
+    private final int topN;
+    private final PageWithPositionComparator comparator;
+    private final int firstSortChannel;
+    private final DynamicTopNFilter filter;
+
+    private int[] heap;
+    private int[] rowPageIds;
+    private int[] rowPositions;
+    private int rowCount;
+
+    private Page[] pages = new Page[16];
+    private int[] pageRowCounts = new int[16];
+    private int pageCount;
+    // the ids of the pages that no longer have kept rows
+    private final IntArrayList freePageIds = new IntArrayList();
+    private long retainedPositions;
+    private long pagesSizeInBytes;
+
+    private int[] positions = new int[0];
+
+    public FlatTopNBuilder(List<Type> types, int topN, PageWithPositionComparator comparator, int firstSortChannel, DynamicTopNFilter filter)
+    {
+        this.types = ImmutableList.copyOf(requireNonNull(types, "types is null"));
+        checkArgument(topN > 0, "topN must be > 0");
+        this.topN = topN;
+        this.comparator = requireNonNull(comparator, "comparator is null");
+        this.firstSortChannel = firstSortChannel;
+        this.filter = requireNonNull(filter, "filter is null");
+
+        int capacity = min(topN, INITIAL_CAPACITY);
+        heap = new int[capacity];
+        rowPageIds = new int[capacity];
+        rowPositions = new int[capacity];
+    }
+
+    public void addPage(Page page)
+    {
+        int positionCount = page.getPositionCount();
+        if (positions.length < positionCount) {
+            positions = new int[positionCount];
+        }
+        for (int position = 0; position < positionCount; position++) {
+            positions[position] = position;
+        }
+        int candidateCount = filter.filterPositions(page.getBlock(firstSortChannel), positions, positionCount);
+
+        int pageId = -1;
+        boolean rootReplaced = false;
+        for (int i = 0; i < candidateCount; i++) {
+            int position = positions[i];
+            if (rowCount < topN) {
+                if (pageId < 0) {
+                    pageId = addPageReference(page);
+                }
+                ensureRowCapacity(rowCount + 1);
+                int rowId = rowCount;
+                rowPageIds[rowId] = pageId;
+                rowPositions[rowId] = position;
+                pageRowCounts[pageId]++;
+                heap[rowCount] = rowId;
+                rowCount++;
+                siftUp(rowCount - 1);
+                rootReplaced |= rowCount == topN;
+                continue;
+            }
+
+            int rootRowId = heap[0];
+            if (comparator.compareTo(page, position, pages[rowPageIds[rootRowId]], rowPositions[rootRowId]) >= 0) {
+                continue;
+            }
+            if (pageId < 0) {
+                pageId = addPageReference(page);
+            }
+            // reference the new row first, so that the page is not released when the root is in the same page
+            pageRowCounts[pageId]++;
+            dereference(rowPageIds[rootRowId]);
+            rowPageIds[rootRowId] = pageId;
+            rowPositions[rootRowId] = position;
+            siftDown(0);
+            rootReplaced = true;
+        }
+
+        if (rootReplaced) {
+            int rootRowId = heap[0];
+            filter.setBoundary(pages[rowPageIds[rootRowId]].getBlock(firstSortChannel), rowPositions[rootRowId]);
+        }
+        if (retainedPositions > (long) COMPACT_THRESHOLD * rowCount + INITIAL_CAPACITY) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns the kept rows in order. The builder can not be used afterwards.
+     */
+    public Iterator<Page> buildResult()
+    {
+        // pop the heap from the last row, filling the row ids from the end
+        int[] sortedRowIds = new int[rowCount];
+        for (int index = rowCount - 1; index >= 0; index--) {
+            sortedRowIds[index] = heap[0];
+            rowCount--;
+            heap[0] = heap[rowCount];
+            siftDown(0);
+        }
+
+        return new AbstractIterator<Page>()
+        {
+            private final PageBuilder pageBuilder = new PageBuilder(types);
+            private int index;
+
+            @Override
+            protected Page computeNext()
+            {
+                pageBuilder.reset();
+                while (!pageBuilder.isFull() && index < sortedRowIds.length) {
+                    int rowId = sortedRowIds[index];
+                    Page page = pages[rowPageIds[rowId]];
+                    int position = rowPositions[rowId];
+                    for (int channel = 0; channel < types.size(); channel++) {
+                        types.get(channel).appendTo(page.getBlock(channel), position, pageBuilder.getBlockBuilder(channel));
+                    }
+                    pageBuilder.declarePosition();
+                    index++;
+                }
+                if (pageBuilder.isEmpty()) {
+                    return endOfData();
+                }
+                return pageBuilder.build();
+            }
+        };
+    }
+
+    public long getEstimatedSizeInBytes()
+    {
+        return INSTANCE_SIZE +
+                pagesSizeInBytes +
+                sizeOf(heap) +
+                sizeOf(rowPageIds) +
+                sizeOf(rowPositions) +
+                sizeOf(pages) +
+                sizeOf(pageRowCounts) +
+                sizeOf(freePageIds.elements()) +
+                sizeOf(positions);
+    }
+
+    private int addPageReference(Page page)
+    {
+        int pageId;
+        if (!freePageIds.isEmpty()) {
+            pageId = freePageIds.popInt();
+        }
+        else {
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pages.length * 2);
+                pageRowCounts = Arrays.copyOf(pageRowCounts, pageRowCounts.length * 2);
+            }
+            pageId = pageCount;
+            pageCount++;
+        }
+        pages[pageId] = page;
+        pageRowCounts[pageId] = 0;
+        retainedPositions += page.getPositionCount();
+        pagesSizeInBytes += page.getRetainedSizeInBytes();
+        return pageId;
+    }
+
+    private void dereference(int pageId)
+    {
+        pageRowCounts[pageId]--;
+        if (pageRowCounts[pageId] == 0) {
+            Page page = pages[pageId];
+            retainedPositions -= page.getPositionCount();
+            pagesSizeInBytes -= page.getRetainedSizeInBytes();
+            pages[pageId] = null;
+            freePageIds.push(pageId);
+        }
+    }
+
+    /**
+     * Copies the kept rows of each page into a page of their own, so that the pages only retain the kept rows.
+     */
+    private void compact()
+    {
+        // group the row ids by page
+        int[] offsets = new int[pageCount + 1];
+        for (int rowId = 0; rowId < rowCount; rowId++) {
+            offsets[rowPageIds[rowId] + 1]++;
+        }
+        for (int pageId = 0; pageId < pageCount; pageId++) {
+            offsets[pageId + 1] += offsets[pageId];
+        }
+        int[] next = Arrays.copyOf(offsets, pageCount);
+        int[] rowIds = new int[rowCount];
+        int[] pagePositions = new int[rowCount];
+        for (int rowId = 0; rowId < rowCount; rowId++) {
+            int index = next[rowPageIds[rowId]]++;
+            rowIds[index] = rowId;
+            pagePositions[index] = rowPositions[rowId];
+        }
+
+        for (int pageId = 0; pageId < pageCount; pageId++) {
+            Page page = pages[pageId];
+            int start = offsets[pageId];
+            int length = offsets[pageId + 1] - start;
+            if (page == null || length == page.getPositionCount()) {
+                continue;
+            }
+            Page compacted = page.copyPositions(pagePositions, start, length);
+            for (int index = 0; index < length; index++) {
+                rowPositions[rowIds[start + index]] = index;
+            }
+            retainedPositions += length - page.getPositionCount();
+            pagesSizeInBytes += compacted.getRetainedSizeInBytes() - page.getRetainedSizeInBytes();
+            pages[pageId] = compacted;
+        }
+    }
+
+    private void ensureRowCapacity(int capacity)
+    {
+        if (heap.length < capacity) {
+            int newCapacity = (int) min(topN, heap.length * 2L);
+            heap = Arrays.copyOf(heap, newCapacity);
+            rowPageIds = Arrays.copyOf(rowPageIds, newCapacity);
+            rowPositions = Arrays.copyOf(rowPositions, newCapacity);
+        }
+    }
+
+    private void siftUp(int index)
+    {
+        int rowId = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (compareRows(heap[parent], rowId) >= 0) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = rowId;
+    }
+
+    private void siftDown(int index)
+    {
+        if (rowCount == 0) {
+            return;
+        }
+        int rowId = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= rowCount) {
+                break;
+            }
+            if (child + 1 < rowCount && compareRows(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (compareRows(rowId, heap[child]) >= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = rowId;
+    }
+
+    private int compareRows(int leftRowId, int rightRowId)
+    {
+        return comparator.compareTo(
+                pages[rowPageIds[leftRowId]],
+                rowPositions[leftRowId],
+                pages[rowPageIds[rightRowId]],
+                rowPositions[rightRowId]);
+    }
+}
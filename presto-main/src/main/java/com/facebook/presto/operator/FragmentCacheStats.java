@@ -28,6 +28,13 @@ public class FragmentCacheStats
     // Total on-disk size in bytes.
     private final AtomicLong cacheSizeInBytes = new AtomicLong();
 
+    // The memory tier, which is consulted before the files. The hits above include the hits of the memory tier.
+    private final AtomicLong memoryHit = new AtomicLong();
+    private final AtomicLong memoryMiss = new AtomicLong();
+    private final AtomicLong memoryAdmissionRejected = new AtomicLong();
+    private final AtomicLong memoryCacheEntries = new AtomicLong();
+    private final AtomicLong memoryCacheSizeInBytes = new AtomicLong();
+
     public void incrementCacheHit()
     {
         hit.getAndIncrement();
@@ -63,6 +70,31 @@ public class FragmentCacheStats
         cacheEntries.getAndDecrement();
     }
 
+    public void incrementMemoryCacheHit()
+    {
+        memoryHit.getAndIncrement();
+    }
+
+    public void incrementMemoryCacheMiss()
+    {
+        memoryMiss.getAndIncrement();
+    }
+
+    public void incrementMemoryCacheAdmissionRejected()
+    {
+        memoryAdmissionRejected.getAndIncrement();
+    }
+
+    public void addMemoryCacheEntries(long entries)
+    {
+        memoryCacheEntries.addAndGet(entries);
+    }
+
+    public void addMemoryCacheSizeInBytes(long bytes)
+    {
+        memoryCacheSizeInBytes.addAndGet(bytes);
+    }
+
     @Managed
     public long getCacheHit()
     {
@@ -98,4 +130,47 @@ public class FragmentCacheStats
     {
         return cacheSizeInBytes.get();
     }
+
+    @Managed
+    public long getFileCacheHit()
+    {
+        return hit.get() - memoryHit.get();
+    }
+
+    @Managed
+    public long getFileCacheMiss()
+    {
+        // the memory tier only holds results that are also in files, so every miss is a miss of the file tier
+        return miss.get();
+    }
+
+    @Managed
+    public long getMemoryCacheHit()
+    {
+        return memoryHit.get();
+    }
+
+    @Managed
+    public long getMemoryCacheMiss()
+    {
+        return memoryMiss.get();
+    }
+
+    @Managed
+    public long getMemoryCacheAdmissionRejected()
+    {
+        return memoryAdmissionRejected.get();
+    }
+
+    @Managed
+    public long getMemoryCacheEntries()
+    {
+        return memoryCacheEntries.get();
+    }
+
+    @Managed
+    public long getMemoryCacheSizeInBytes()
+    {
+        return memoryCacheSizeInBytes.get();
+    }
 }
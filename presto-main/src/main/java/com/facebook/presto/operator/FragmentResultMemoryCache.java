@@ -0,0 +1,251 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.operator.FileFragmentResultCacheManager.CacheKey;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.openjdk.jol.info.ClassLayout;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.toIntExact;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The memory tier of the fragment result cache: the serialized pages of small results, copied off heap and evicted
+ * in least recently used order within a total size. The direct memory is not tracked by any memory pool, so the
+ * size of an entry includes the objects that hold it, and no direct memory is allocated for a result that is not admitted.
+ *
+ * Admission is size aware and follows TinyLFU: a frequency sketch counts the recent accesses of all keys, cached or
+ * not, and a result is only admitted when it was accessed more often than each of the entries it would evict.
+ * Results that are read once do not push out results that are read repeatedly.
+ */
+@ThreadSafe
+final class FragmentResultMemoryCache
+{
+    private static final int ENTRY_OVERHEAD = ClassLayout.parseClass(Entry.class).instanceSize()
+            + ClassLayout.parseClass(Slice.class).instanceSize()
+            + ClassLayout.parseClass(ByteBuffer.class).instanceSize();
+
+    private final long maxSizeInBytes;
+    private final FragmentCacheStats stats;
+
+    @GuardedBy("this")
+    private final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("this")
+    private final FrequencySketch sketch;
+    @GuardedBy("this")
+    private long sizeInBytes;
+
+    public FragmentResultMemoryCache(long maxSizeInBytes, long maxEntrySizeInBytes, FragmentCacheStats stats)
+    {
+        checkArgument(maxSizeInBytes > 0, "maxSizeInBytes must be positive");
+        checkArgument(maxEntrySizeInBytes > 0, "maxEntrySizeInBytes must be positive");
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.stats = requireNonNull(stats, "stats is null");
+        // size the sketch for a few counters per entry that can fit when all entries have the maximum size
+        long expectedEntries = max(1, maxSizeInBytes / max(1, maxEntrySizeInBytes / 16));
+        this.sketch = new FrequencySketch(toIntExact(min(expectedEntries * 4, 1 << 24)));
+    }
+
+    /**
+     * Records an access to the key, and returns its entry when it is in memory.
+     */
+    public synchronized Optional<Entry> get(CacheKey key)
+    {
+        sketch.increment(key.hashCode());
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            stats.incrementMemoryCacheMiss();
+            return Optional.empty();
+        }
+        stats.incrementMemoryCacheHit();
+        return Optional.of(entry);
+    }
+
+    /**
+     * Copies the serialized pages of the result off heap when the result is admitted, evicting the least recently
+     * used entries to make room for it. Returns whether the result is cached.
+     */
+    public synchronized boolean put(CacheKey key, Slice serializedPages, long inputDataSize)
+    {
+        if (entries.containsKey(key)) {
+            return true;
+        }
+
+        long size = getRetainedSizeInBytes(serializedPages.length());
+        if (size > maxSizeInBytes) {
+            stats.incrementMemoryCacheAdmissionRejected();
+            return false;
+        }
+
+        // the victims are the least recently used entries, which are first in access order
+        int frequency = sketch.frequency(key.hashCode());
+        List<CacheKey> victims = new ArrayList<>();
+        long freedBytes = 0;
+        Iterator<Map.Entry<CacheKey, Entry>> iterator = entries.entrySet().iterator();
+        while (sizeInBytes - freedBytes + size > maxSizeInBytes) {
+            Map.Entry<CacheKey, Entry> victim = iterator.next();
+            if (sketch.frequency(victim.getKey().hashCode()) >= frequency) {
+                stats.incrementMemoryCacheAdmissionRejected();
+                return false;
+            }
+            victims.add(victim.getKey());
+            freedBytes += victim.getValue().getSizeInBytes();
+        }
+        victims.forEach(this::remove);
+
+        Slice copy = Slices.allocateDirect(serializedPages.length());
+        copy.setBytes(0, serializedPages);
+        entries.put(key, new Entry(copy, inputDataSize, size));
+        sizeInBytes += size;
+        stats.addMemoryCacheEntries(1);
+        stats.addMemoryCacheSizeInBytes(size);
+        return true;
+    }
+
+    /**
+     * Returns the size an entry with serialized pages of the given length is charged against the cache size.
+     */
+    public static long getRetainedSizeInBytes(long serializedPagesLength)
+    {
+        return ENTRY_OVERHEAD + serializedPagesLength;
+    }
+
+    public synchronized void invalidate(CacheKey key)
+    {
+        remove(key);
+    }
+
+    public synchronized void invalidateAll()
+    {
+        stats.addMemoryCacheEntries(-entries.size());
+        stats.addMemoryCacheSizeInBytes(-sizeInBytes);
+        entries.clear();
+        sizeInBytes = 0;
+    }
+
+    @GuardedBy("this")
+    private void remove(CacheKey key)
+    {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            sizeInBytes -= entry.getSizeInBytes();
+            stats.addMemoryCacheEntries(-1);
+            stats.addMemoryCacheSizeInBytes(-entry.getSizeInBytes());
+        }
+    }
+
+    public static class Entry
+    {
+        private final Slice serializedPages;
+        private final long inputDataSize;
+        private final long sizeInBytes;
+
+        private Entry(Slice serializedPages, long inputDataSize, long sizeInBytes)
+        {
+            this.serializedPages = requireNonNull(serializedPages, "serializedPages is null");
+            this.inputDataSize = inputDataSize;
+            this.sizeInBytes = sizeInBytes;
+        }
+
+        public Slice getSerializedPages()
+        {
+            return serializedPages;
+        }
+
+        public long getInputDataSize()
+        {
+            return inputDataSize;
+        }
+
+        public long getSizeInBytes()
+        {
+            return sizeInBytes;
+        }
+    }
+
+    /**
+     * A count-min sketch of saturating 4 bit counters. All counters are halved once the number of increments
+     * reaches ten times the number of counters, so that the frequencies follow the recent accesses.
+     */
+    private static class FrequencySketch
+    {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0x7b9f2ab5, 0x3c6ef372, 0xa54ff53a};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int increments;
+
+        FrequencySketch(int expectedCounters)
+        {
+            int width = max(64, highestOneBit(max(1, expectedCounters - 1)) << 1);
+            counters = new byte[DEPTH][width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        int frequency(int hash)
+        {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = min(frequency, counters[row][index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        void increment(int hash)
+        {
+            boolean incremented = false;
+            for (int row = 0; row < DEPTH; row++) {
+                int index = index(hash, row);
+                if (counters[row][index] < MAX_COUNT) {
+                    counters[row][index]++;
+                    incremented = true;
+                }
+            }
+            if (incremented && ++increments == sampleSize) {
+                for (byte[] row : counters) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] >>= 1;
+                    }
+                }
+                increments /= 2;
+            }
+        }
+
+        private int index(int hash, int row)
+        {
+            int mixed = (hash ^ (hash >>> 16)) * SEEDS[row];
+            return (mixed ^ (mixed >>> 15)) & mask;
+        }
+    }
+}
@@ -36,6 +36,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.units.DataSize;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 
 import java.util.List;
 import java.util.Optional;
@@ -43,7 +44,11 @@ import java.util.OptionalInt;
 import java.util.OptionalLong;
 import java.util.stream.Collectors;
 
+import static com.facebook.presto.common.RuntimeMetricName.PARTIAL_AGGREGATION_DISABLED_COUNT;
+import static com.facebook.presto.common.RuntimeMetricName.PARTIAL_AGGREGATION_REENABLED_COUNT;
+import static com.facebook.presto.common.RuntimeUnit.NONE;
 import static com.facebook.presto.operator.aggregation.builder.InMemoryHashAggregationBuilder.toTypes;
+import static com.facebook.presto.operator.aggregation.partial.PartialAggregationController.MIN_SAMPLED_ROWS_TO_ENABLE_AGGREGATION;
 import static com.facebook.presto.sql.planner.PlannerUtils.INITIAL_HASH_VALUE;
 import static com.facebook.presto.type.TypeUtils.NULL_HASH_CODE;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -51,6 +56,7 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Verify.verify;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.lang.Math.min;
 import static java.util.Objects.requireNonNull;
 
 public class HashAggregationOperator
@@ -316,6 +322,16 @@ public class HashAggregationOperator
     private long inputRowsProcessed;
     private long uniqueRowsProduced;
 
+    // whether the last aggregation builder skipped partial aggregation
+    private boolean partialAggregationSkipped;
+    // hashes the group by keys of the rows sampled while partial aggregation is skipped
+    private HashGenerator skippedRowsHashGenerator;
+    // reused across pages to count the distinct hashes of the sampled rows
+    private LongOpenHashSet skippedRowsHashes;
+    // sampled rows not reported to the controller yet
+    private long pendingSampledRows;
+    private long pendingSampledUniqueRows;
+
     public HashAggregationOperator(
             OperatorContext operatorContext,
             List<Type> groupByTypes,
@@ -418,6 +434,9 @@ public class HashAggregationOperator
 
         initializeAggregationBuilderIfNeeded();
         processInputPage(page);
+        if (aggregationBuilder instanceof SkipAggregationBuilder && partialAggregationController.get().isContinuousTracking()) {
+            sampleSkippedRows(page);
+        }
 
         // process the current page; save the unfinished work if we are waiting for memory
         if (unfinishedWork != null && unfinishedWork.process()) {
@@ -429,6 +448,45 @@ public class HashAggregationOperator
         inputRowsProcessed += page.getPositionCount();
     }
 
+    /**
+     * Counts the distinct group by keys among the first rows of the page, so that the controller can tell when the input
+     * became clustered enough for partial aggregation to be worth it again. Distinct keys are estimated by distinct hashes.
+     * The controller is shared by all the drivers of the stage, so the samples are reported once enough rows are sampled
+     * for the controller to decide, instead of on every page.
+     */
+    private void sampleSkippedRows(Page page)
+    {
+        int sampledRows = min(page.getPositionCount(), MIN_SAMPLED_ROWS_TO_ENABLE_AGGREGATION);
+        if (sampledRows == 0) {
+            return;
+        }
+        if (skippedRowsHashGenerator == null) {
+            skippedRowsHashGenerator = hashChannel.isPresent()
+                    ? new PrecomputedHashGenerator(hashChannel.get())
+                    : new InterpretedHashGenerator(groupByTypes, groupByChannels);
+            skippedRowsHashes = new LongOpenHashSet(MIN_SAMPLED_ROWS_TO_ENABLE_AGGREGATION);
+        }
+
+        skippedRowsHashes.clear();
+        for (int position = 0; position < sampledRows; position++) {
+            skippedRowsHashes.add(skippedRowsHashGenerator.hashPosition(position, page));
+        }
+        pendingSampledRows += sampledRows;
+        pendingSampledUniqueRows += skippedRowsHashes.size();
+        if (pendingSampledRows >= MIN_SAMPLED_ROWS_TO_ENABLE_AGGREGATION) {
+            reportSampledRows();
+        }
+    }
+
+    private void reportSampledRows()
+    {
+        if (pendingSampledRows > 0) {
+            partialAggregationController.get().onSkippedRowsSampled(pendingSampledRows, pendingSampledUniqueRows);
+            pendingSampledRows = 0;
+            pendingSampledUniqueRows = 0;
+        }
+    }
+
     @Override
     public ListenableFuture<?> startMemoryRevoke()
     {
@@ -560,6 +618,8 @@ public class HashAggregationOperator
 
     private void closeAggregationBuilder()
     {
+        // the rows sampled since the last report still count towards re-enabling partial aggregation
+        reportSampledRows();
         partialAggregationController.ifPresent(
                 controller -> controller.onFlush(
                         inputBytesProcessed,
@@ -603,6 +663,11 @@ public class HashAggregationOperator
                 .map(PartialAggregationController::isPartialAggregationDisabled)
                 .orElse(false);
 
+        if (step.isOutputPartial() && partialAggregationController.isPresent() && partialAggregationDisabled != partialAggregationSkipped) {
+            operatorContext.getRuntimeStats().addMetricValue(partialAggregationDisabled ? PARTIAL_AGGREGATION_DISABLED_COUNT : PARTIAL_AGGREGATION_REENABLED_COUNT, NONE, 1);
+            partialAggregationSkipped = partialAggregationDisabled;
+        }
+
         if (step.isOutputPartial() && partialAggregationDisabled) {
             aggregationBuilder = new SkipAggregationBuilder(
                     groupByChannels,
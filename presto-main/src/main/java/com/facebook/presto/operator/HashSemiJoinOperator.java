@@ -17,17 +17,27 @@ import com.facebook.presto.common.Page;
 import com.facebook.presto.common.block.Block;
 import com.facebook.presto.common.block.BlockBuilder;
 import com.facebook.presto.common.type.Type;
+import com.facebook.presto.memory.context.AggregatedMemoryContext;
 import com.facebook.presto.operator.SetBuilderOperator.SetSupplier;
 import com.facebook.presto.spi.plan.PlanNodeId;
+import com.facebook.presto.spiller.PartitioningSpiller;
+import com.facebook.presto.spiller.PartitioningSpillerFactory;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListenableFuture;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
 import static com.facebook.airlift.concurrent.MoreFutures.tryGetFutureValue;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
 import static com.facebook.presto.common.type.BooleanType.BOOLEAN;
+import static com.facebook.presto.operator.SpillingUtils.checkSpillSucceeded;
+import static com.facebook.presto.spiller.PartitioningSpillerFactory.unsupportedPartitioningSpillerFactory;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
@@ -46,9 +56,22 @@ public class HashSemiJoinOperator
         private final List<Type> probeTypes;
         private final int probeJoinChannel;
         private final Optional<Integer> probeJoinHashChannel;
+        private final PartitioningSpillerFactory partitioningSpillerFactory;
         private boolean closed;
 
         public HashSemiJoinOperatorFactory(int operatorId, PlanNodeId planNodeId, SetSupplier setSupplier, List<? extends Type> probeTypes, int probeJoinChannel, Optional<Integer> probeJoinHashChannel)
+        {
+            this(operatorId, planNodeId, setSupplier, probeTypes, probeJoinChannel, probeJoinHashChannel, unsupportedPartitioningSpillerFactory());
+        }
+
+        public HashSemiJoinOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                SetSupplier setSupplier,
+                List<? extends Type> probeTypes,
+                int probeJoinChannel,
+                Optional<Integer> probeJoinHashChannel,
+                PartitioningSpillerFactory partitioningSpillerFactory)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -57,6 +80,8 @@ public class HashSemiJoinOperator
             checkArgument(probeJoinChannel >= 0, "probeJoinChannel is negative");
             this.probeJoinChannel = probeJoinChannel;
             this.probeJoinHashChannel = probeJoinHashChannel;
+            this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
+            setSupplier.addProbeFactory();
         }
 
         @Override
@@ -64,31 +89,67 @@ public class HashSemiJoinOperator
         {
             checkState(!closed, "Factory is already closed");
             OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId, HashSemiJoinOperator.class.getSimpleName());
-            return new HashSemiJoinOperator(operatorContext, setSupplier, probeJoinChannel, probeJoinHashChannel);
+            setSupplier.addProbeOperator();
+            return new HashSemiJoinOperator(operatorContext, setSupplier, probeTypes, probeJoinChannel, probeJoinHashChannel, partitioningSpillerFactory);
         }
 
         @Override
         public void noMoreOperators()
         {
+            if (closed) {
+                return;
+            }
             closed = true;
+            setSupplier.probeFactoryClosed();
         }
 
         @Override
         public OperatorFactory duplicate()
         {
-            return new HashSemiJoinOperatorFactory(operatorId, planNodeId, setSupplier, probeTypes, probeJoinChannel, probeJoinHashChannel);
+            return new HashSemiJoinOperatorFactory(operatorId, planNodeId, setSupplier, probeTypes, probeJoinChannel, probeJoinHashChannel, partitioningSpillerFactory);
         }
     }
 
+    private final SetSupplier setSupplier;
+    private final List<Type> probeTypes;
     private final int probeJoinChannel;
     private final ListenableFuture<ChannelSet> channelSetFuture;
     private final Optional<Integer> probeHashChannel;
+    private final PartitioningSpillerFactory partitioningSpillerFactory;
+    // the loaded partitions of a spilled set are shared by all probe operators, so they are charged to the pipeline
+    private final AggregatedMemoryContext partitionMemoryContext;
 
     private ChannelSet channelSet;
+    // whether the whole set, including its spilled part, is empty or contains null
+    private boolean setEmpty;
+    private boolean setContainsNull;
     private Page outputPage;
     private boolean finishing;
 
+    // state used when the set was spilled
+    @Nullable
+    private SpilledChannelSet spilledChannelSet;
+    private Optional<PartitioningSpiller> spiller = Optional.empty();
+    private ListenableFuture<?> spillInProgress = NOT_BLOCKED;
+    private int releasedPartitions;
+    @Nullable
+    private ChannelSet partitionChannelSet;
+    @Nullable
+    private Iterator<Page> unspilledPages;
+    private boolean closed;
+
     public HashSemiJoinOperator(OperatorContext operatorContext, SetSupplier channelSetFuture, int probeJoinChannel, Optional<Integer> probeHashChannel)
+    {
+        this(operatorContext, channelSetFuture, ImmutableList.of(), probeJoinChannel, probeHashChannel, unsupportedPartitioningSpillerFactory());
+    }
+
+    public HashSemiJoinOperator(
+            OperatorContext operatorContext,
+            SetSupplier channelSetFuture,
+            List<Type> probeTypes,
+            int probeJoinChannel,
+            Optional<Integer> probeHashChannel,
+            PartitioningSpillerFactory partitioningSpillerFactory)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
 
@@ -96,9 +157,13 @@ public class HashSemiJoinOperator
         requireNonNull(channelSetFuture, "hashProvider is null");
         checkArgument(probeJoinChannel >= 0, "probeJoinChannel is negative");
 
+        this.setSupplier = channelSetFuture;
         this.channelSetFuture = channelSetFuture.getChannelSet();
+        this.probeTypes = ImmutableList.copyOf(requireNonNull(probeTypes, "probeTypes is null"));
         this.probeJoinChannel = probeJoinChannel;
         this.probeHashChannel = probeHashChannel;
+        this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
+        this.partitionMemoryContext = operatorContext.getDriverContext().getPipelineContext().getPipelineMemoryContext().aggregateUserMemoryContext();
     }
 
     @Override
@@ -116,24 +181,32 @@ public class HashSemiJoinOperator
     @Override
     public boolean isFinished()
     {
-        return finishing && outputPage == null;
+        return finishing && outputPage == null && (spilledChannelSet == null || releasedPartitions == spilledChannelSet.getPartitionCount());
     }
 
     @Override
     public ListenableFuture<?> isBlocked()
     {
+        if (!spillInProgress.isDone()) {
+            return spillInProgress;
+        }
         return channelSetFuture;
     }
 
     @Override
     public boolean needsInput()
     {
-        if (finishing || outputPage != null) {
+        if (finishing || outputPage != null || !spillInProgress.isDone()) {
             return false;
         }
 
         if (channelSet == null) {
             channelSet = tryGetFutureValue(channelSetFuture).orElse(null);
+            if (channelSet != null) {
+                spilledChannelSet = setSupplier.getSpilledChannelSet().orElse(null);
+                setEmpty = spilledChannelSet == null ? channelSet.isEmpty() : spilledChannelSet.isEmpty() && channelSet.isEmpty();
+                setContainsNull = spilledChannelSet == null ? channelSet.containsNull() : spilledChannelSet.containsNull() || channelSet.containsNull();
+            }
         }
         return channelSet != null;
     }
@@ -143,11 +216,45 @@ public class HashSemiJoinOperator
     {
         requireNonNull(page, "page is null");
         checkState(!finishing, "Operator is finishing");
-        // use an effectively-final local variable instead of the non-final instance field inside of the loop
-        ChannelSet channelSet = this.channelSet;
         checkState(channelSet != null, "Set has not been built yet");
         checkState(outputPage == null, "Operator still has pending output");
 
+        if (spilledChannelSet == null) {
+            outputPage = page.appendColumn(probe(page, channelSet, null));
+            return;
+        }
+
+        // positions not found in the set kept in memory are looked up in the spilled partitions once the input is finished
+        IntArrayList spilledPositions = new IntArrayList();
+        Block matches = probe(page, channelSet, spilledPositions);
+        if (spilledPositions.isEmpty()) {
+            outputPage = page.appendColumn(matches);
+            return;
+        }
+
+        spillInProgress = spill(page.getPositions(spilledPositions.elements(), 0, spilledPositions.size()));
+        IntArrayList keptPositions = new IntArrayList(page.getPositionCount() - spilledPositions.size());
+        int spilledIndex = 0;
+        for (int position = 0; position < page.getPositionCount(); position++) {
+            if (spilledIndex < spilledPositions.size() && spilledPositions.getInt(spilledIndex) == position) {
+                spilledIndex++;
+            }
+            else {
+                keptPositions.add(position);
+            }
+        }
+        if (!keptPositions.isEmpty()) {
+            outputPage = page.getPositions(keptPositions.elements(), 0, keptPositions.size())
+                    .appendColumn(matches.getPositions(keptPositions.elements(), 0, keptPositions.size()));
+        }
+    }
+
+    /**
+     * Returns whether the probe join channel of each position is contained in the set. When {@code spilledPositions}
+     * is not null, the positions that may be contained in the spilled part of the set are added to it instead.
+     */
+    private Block probe(Page page, ChannelSet channelSet, @Nullable IntArrayList spilledPositions)
+    {
         // create the block builder for the new boolean column
         // we know the exact size required for the block
         BlockBuilder blockBuilder = BOOLEAN.createFixedSizeBlockBuilder(page.getPositionCount());
@@ -159,7 +266,7 @@ public class HashSemiJoinOperator
         // update hashing strategy to use probe cursor
         for (int position = 0; position < page.getPositionCount(); position++) {
             if (probeJoinNulls != null && probeJoinNulls.isNull(position)) {
-                if (channelSet.isEmpty()) {
+                if (setEmpty) {
                     BOOLEAN.writeBoolean(blockBuilder, false);
                 }
                 else {
@@ -175,7 +282,11 @@ public class HashSemiJoinOperator
                 else {
                     contains = channelSet.contains(position, probeJoinPage);
                 }
-                if (!contains && channelSet.containsNull()) {
+                if (!contains && spilledPositions != null) {
+                    spilledPositions.add(position);
+                    blockBuilder.appendNull();
+                }
+                else if (!contains && setContainsNull) {
                     blockBuilder.appendNull();
                 }
                 else {
@@ -183,9 +294,22 @@ public class HashSemiJoinOperator
                 }
             }
         }
+        return blockBuilder.build();
+    }
+
+    private ListenableFuture<?> spill(Page page)
+    {
+        checkState(spillInProgress.isDone(), "Previous spill still in progress");
+        checkSpillSucceeded(spillInProgress);
 
-        // add the new boolean column to the page
-        outputPage = page.appendColumn(blockBuilder.build());
+        if (!spiller.isPresent()) {
+            spiller = Optional.of(partitioningSpillerFactory.create(
+                    probeTypes,
+                    SpilledChannelSet.createPartitionGenerator(probeTypes.get(probeJoinChannel), probeJoinChannel, probeHashChannel, spilledChannelSet.getPartitionCount()),
+                    operatorContext.getSpillContext().newLocalSpillContext(),
+                    operatorContext.aggregateSystemMemoryContext()));
+        }
+        return spiller.get().partitionAndSpill(page, partition -> true).getSpillingFuture();
     }
 
     @Override
@@ -193,6 +317,55 @@ public class HashSemiJoinOperator
     {
         Page result = outputPage;
         outputPage = null;
-        return result;
+        if (result != null || !finishing || spilledChannelSet == null || !spillInProgress.isDone()) {
+            return result;
+        }
+        checkSpillSucceeded(spillInProgress);
+        return getSpilledOutput();
+    }
+
+    private Page getSpilledOutput()
+    {
+        while (releasedPartitions < spilledChannelSet.getPartitionCount()) {
+            int partition = releasedPartitions;
+            if (!spiller.isPresent()) {
+                // nothing was spilled, so there is nothing to look up in the partitions
+                setSupplier.releaseSpilledPartition(partition);
+                releasedPartitions++;
+                continue;
+            }
+
+            if (unspilledPages == null) {
+                partitionChannelSet = spilledChannelSet.getPartition(partition, partitionMemoryContext);
+                unspilledPages = spiller.get().getSpilledPages(partition);
+            }
+            if (unspilledPages.hasNext()) {
+                Page page = unspilledPages.next();
+                return page.appendColumn(probe(page, partitionChannelSet, null));
+            }
+
+            partitionChannelSet = null;
+            unspilledPages = null;
+            setSupplier.releaseSpilledPartition(partition);
+            releasedPartitions++;
+        }
+        spiller.ifPresent(PartitioningSpiller::verifyAllPartitionsRead);
+        return null;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        partitionChannelSet = null;
+        unspilledPages = null;
+        setSupplier.probeOperatorClosed(releasedPartitions);
+        if (spiller.isPresent()) {
+            spiller.get().close();
+        }
     }
 }
@@ -92,6 +92,25 @@ public final class JoinHash
         return startJoinPosition(addressIndex, position, allChannelsPage);
     }
 
+    @Override
+    public boolean supportsBatchedJoinPositions()
+    {
+        return true;
+    }
+
+    @Override
+    public void getJoinPositions(int[] positions, int positionCount, Page hashChannelsPage, Page allChannelsPage, @Nullable long[] rawHashes, long[] joinPositions)
+    {
+        pagesHash.getAddressIndexes(positions, positionCount, hashChannelsPage, rawHashes, joinPositions);
+        if (positionLinks == null) {
+            return;
+        }
+        for (int i = 0; i < positionCount; i++) {
+            int position = positions[i];
+            joinPositions[position] = startJoinPosition(toIntExact(joinPositions[position]), position, allChannelsPage);
+        }
+    }
+
     private long startJoinPosition(int currentJoinPosition, int probePosition, Page allProbeChannelsPage)
     {
         if (currentJoinPosition == -1) {
@@ -124,6 +143,12 @@ public final class JoinHash
         pagesHash.appendTo(toIntExact(position), pageBuilder, outputChannelOffset);
     }
 
+    @Override
+    public void appendTo(long[] positions, int offset, int length, PageBuilder pageBuilder, int outputChannelOffset)
+    {
+        pagesHash.appendTo(positions, offset, length, pageBuilder, outputChannelOffset);
+    }
+
     @Override
     public void close()
     {
@@ -57,6 +57,11 @@ public class JoinProbe
     private int position = -1;
     private int nullRowCount;
 
+    // join positions of all remaining probe positions, for lookup sources that support batched lookups
+    @Nullable
+    private LookupSource batchedLookupSource;
+    private long[] batchedJoinPositions;
+
     private JoinProbe(int[] probeOutputChannels, Page page, Page probePage, @Nullable Block probeHashBlock)
     {
         this.probeOutputChannels = probeOutputChannels;
@@ -83,6 +88,12 @@ public class JoinProbe
             ++nullRowCount;
             return -1;
         }
+        if (lookupSource.supportsBatchedJoinPositions()) {
+            if (batchedLookupSource != lookupSource) {
+                lookupRemainingJoinPositions(lookupSource);
+            }
+            return batchedJoinPositions[position];
+        }
         if (probeHashBlock != null) {
             long rawHash = BIGINT.getLong(probeHashBlock, position);
             return lookupSource.getJoinPosition(position, probePage, page, rawHash);
@@ -90,6 +101,29 @@ public class JoinProbe
         return lookupSource.getJoinPosition(position, probePage, page);
     }
 
+    private void lookupRemainingJoinPositions(LookupSource lookupSource)
+    {
+        int[] positions = new int[positionCount - position];
+        int batchSize = 0;
+        for (int i = position; i < positionCount; i++) {
+            if (!probeMayHaveNull || !rowContainsNull(i)) {
+                positions[batchSize++] = i;
+            }
+        }
+
+        long[] rawHashes = null;
+        if (probeHashBlock != null) {
+            rawHashes = new long[positionCount];
+            for (int i = 0; i < batchSize; i++) {
+                rawHashes[positions[i]] = BIGINT.getLong(probeHashBlock, positions[i]);
+            }
+        }
+
+        batchedJoinPositions = new long[positionCount];
+        lookupSource.getJoinPositions(positions, batchSize, probePage, page, rawHashes, batchedJoinPositions);
+        batchedLookupSource = lookupSource;
+    }
+
     public int getPosition()
     {
         return position;
@@ -101,6 +135,11 @@ public class JoinProbe
     }
 
     private boolean currentRowContainsNull()
+    {
+        return rowContainsNull(position);
+    }
+
+    private boolean rowContainsNull(int position)
     {
         for (int i = 0; i < probePage.getChannelCount(); i++) {
             if (probePage.getBlock(i).isNull(position)) {
@@ -503,6 +503,8 @@ public class LookupJoinOperator
             statisticsCounter.recordProbe(joinSourcePositions);
             joinSourcePositions = 0;
         }
+        // the pending build rows refer to the lookup source, which may change once the lease ends
+        pageBuilder.flushBuildRows();
     }
 
     private void restoreProbe(Page probePage, long joinPosition, boolean currentProbePositionProducedRow, int joinSourcePositions, SpillInfoSnapshot spillInfoSnapshot)
@@ -16,9 +16,12 @@ package com.facebook.presto.operator;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.common.PageBuilder;
 import com.facebook.presto.common.block.Block;
+import com.facebook.presto.common.block.BlockBuilder;
 import com.facebook.presto.common.type.Type;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 
+import javax.annotation.Nullable;
+
 import java.util.List;
 
 import static com.facebook.presto.common.block.PageBuilderStatus.DEFAULT_MAX_PAGE_SIZE_IN_BYTES;
@@ -30,10 +33,16 @@ import static java.util.Objects.requireNonNull;
  * This page builder creates pages with dictionary blocks:
  * normal dictionary blocks for the probe side and the original blocks for the build side.
  * <p>
+ * Build rows are not copied as they are appended, but collected in batches that are copied with a single
+ * {@link LookupSource#appendTo(long[], int, int, PageBuilder, int)} call. The batch is flushed when it is full,
+ * when the page is built, and by {@link #flushBuildRows()}, which must be called before the lookup source lease ends.
+ * <p>
  * TODO use dictionary blocks (probably extended kind) to avoid data copying for build side
  */
 public class LookupJoinPageBuilder
 {
+    private static final int BUILD_ROW_BATCH_SIZE = 256;
+
     private final IntArrayList probeIndexBuilder = new IntArrayList();
     private final PageBuilder buildPageBuilder;
     private final int buildOutputChannelCount;
@@ -42,6 +51,12 @@ public class LookupJoinPageBuilder
     private int estimatedProbeBytesPerRow = -1;
     private boolean isSequentialProbeIndices = true;
 
+    // join positions of the build rows appended since the last flush, -1 for null build rows
+    private final long[] pendingBuildPositions = new long[BUILD_ROW_BATCH_SIZE];
+    private int pendingBuildRowCount;
+    @Nullable
+    private LookupSource pendingLookupSource;
+
     public LookupJoinPageBuilder(List<Type> buildTypes)
     {
         this.buildPageBuilder = new PageBuilder(requireNonNull(buildTypes, "buildTypes is null"));
@@ -50,12 +65,12 @@ public class LookupJoinPageBuilder
 
     public boolean isFull()
     {
-        return estimatedProbeBlockBytes + buildPageBuilder.getSizeInBytes() >= DEFAULT_MAX_PAGE_SIZE_IN_BYTES || buildPageBuilder.isFull();
+        return estimatedProbeBlockBytes + buildPageBuilder.getSizeInBytes() + estimatePendingBuildBytes() >= DEFAULT_MAX_PAGE_SIZE_IN_BYTES || buildPageBuilder.isFull();
     }
 
     public boolean isEmpty()
     {
-        return probeIndexBuilder.isEmpty() && buildPageBuilder.isEmpty();
+        return probeIndexBuilder.isEmpty() && buildPageBuilder.isEmpty() && pendingBuildRowCount == 0;
     }
 
     public void reset()
@@ -67,6 +82,8 @@ public class LookupJoinPageBuilder
         estimatedProbeBytesPerRow = -1;
         previousPosition = -1;
         isSequentialProbeIndices = true;
+        pendingBuildRowCount = 0;
+        pendingLookupSource = null;
     }
 
     /**
@@ -78,8 +95,11 @@ public class LookupJoinPageBuilder
         appendProbeIndex(probe);
 
         // build side
-        buildPageBuilder.declarePosition();
-        lookupSource.appendTo(joinPosition, buildPageBuilder, 0);
+        if (pendingLookupSource != lookupSource) {
+            flushBuildRows();
+            pendingLookupSource = lookupSource;
+        }
+        appendPendingBuildRow(joinPosition);
     }
 
     /**
@@ -91,14 +111,43 @@ public class LookupJoinPageBuilder
         appendProbeIndex(probe);
 
         // build side
-        buildPageBuilder.declarePosition();
-        for (int i = 0; i < buildOutputChannelCount; i++) {
-            buildPageBuilder.getBlockBuilder(i).appendNull();
+        appendPendingBuildRow(-1);
+    }
+
+    /**
+     * Copies the build rows appended since the last flush to the build side of the page.
+     */
+    public void flushBuildRows()
+    {
+        int start = 0;
+        while (start < pendingBuildRowCount) {
+            int end = start + 1;
+            if (pendingBuildPositions[start] < 0) {
+                while (end < pendingBuildRowCount && pendingBuildPositions[end] < 0) {
+                    end++;
+                }
+                for (int i = 0; i < buildOutputChannelCount; i++) {
+                    BlockBuilder blockBuilder = buildPageBuilder.getBlockBuilder(i);
+                    for (int position = start; position < end; position++) {
+                        blockBuilder.appendNull();
+                    }
+                }
+            }
+            else {
+                while (end < pendingBuildRowCount && pendingBuildPositions[end] >= 0) {
+                    end++;
+                }
+                pendingLookupSource.appendTo(pendingBuildPositions, start, end - start, buildPageBuilder, 0);
+            }
+            start = end;
         }
+        buildPageBuilder.declarePositions(pendingBuildRowCount);
+        pendingBuildRowCount = 0;
     }
 
     public Page build(JoinProbe probe)
     {
+        flushBuildRows();
         int outputPositions = probeIndexBuilder.size();
         verify(buildPageBuilder.getPositionCount() == outputPositions);
 
@@ -141,10 +190,28 @@ public class LookupJoinPageBuilder
     {
         return toStringHelper(this)
                 .add("estimatedSize", estimatedProbeBlockBytes + buildPageBuilder.getSizeInBytes())
-                .add("positionCount", buildPageBuilder.getPositionCount())
+                .add("positionCount", buildPageBuilder.getPositionCount() + pendingBuildRowCount)
                 .toString();
     }
 
+    private void appendPendingBuildRow(long joinPosition)
+    {
+        pendingBuildPositions[pendingBuildRowCount++] = joinPosition;
+        if (pendingBuildRowCount == BUILD_ROW_BATCH_SIZE) {
+            flushBuildRows();
+        }
+    }
+
+    private long estimatePendingBuildBytes()
+    {
+        // assume the pending build rows are as large as the ones already copied
+        int positionCount = buildPageBuilder.getPositionCount();
+        if (positionCount == 0) {
+            return 0;
+        }
+        return (long) pendingBuildRowCount * buildPageBuilder.getSizeInBytes() / positionCount;
+    }
+
     private void appendProbeIndex(JoinProbe probe)
     {
         int position = probe.getPosition();
@@ -16,6 +16,7 @@ package com.facebook.presto.operator;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.common.PageBuilder;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import java.io.Closeable;
@@ -36,10 +37,49 @@ public interface LookupSource
 
     long getJoinPosition(int position, Page hashChannelsPage, Page allChannelsPage);
 
+    /**
+     * @return true if {@link #getJoinPositions} is implemented with a batched lookup that is faster than looking up positions one at a time
+     */
+    default boolean supportsBatchedJoinPositions()
+    {
+        return false;
+    }
+
+    /**
+     * Looks up the join positions of the first {@code positionCount} entries of {@code positions}, and stores
+     * the join position of each probe position at the same index of {@code joinPositions}.
+     * The hash channels must not be null at any of the given positions.
+     *
+     * @param rawHashes precomputed raw hashes indexed by probe position, or null if the probe has no hash channel
+     */
+    default void getJoinPositions(int[] positions, int positionCount, Page hashChannelsPage, Page allChannelsPage, @Nullable long[] rawHashes, long[] joinPositions)
+    {
+        for (int i = 0; i < positionCount; i++) {
+            int position = positions[i];
+            if (rawHashes == null) {
+                joinPositions[position] = getJoinPosition(position, hashChannelsPage, allChannelsPage);
+            }
+            else {
+                joinPositions[position] = getJoinPosition(position, hashChannelsPage, allChannelsPage, rawHashes[position]);
+            }
+        }
+    }
+
     long getNextJoinPosition(long currentJoinPosition, int probePosition, Page allProbeChannelsPage);
 
     void appendTo(long position, PageBuilder pageBuilder, int outputChannelOffset);
 
+    /**
+     * Appends the rows at the join positions {@code positions[offset]} to {@code positions[offset + length - 1]}, in order.
+     * Like {@link #appendTo(long, PageBuilder, int)}, it does not declare the positions in the page builder.
+     */
+    default void appendTo(long[] positions, int offset, int length, PageBuilder pageBuilder, int outputChannelOffset)
+    {
+        for (int i = offset; i < offset + length; i++) {
+            appendTo(positions[i], pageBuilder, outputChannelOffset);
+        }
+    }
+
     boolean isJoinPositionEligible(long currentJoinPosition, int probePosition, Page allProbeChannelsPage);
 
     boolean isEmpty();
@@ -23,12 +23,16 @@ import com.facebook.presto.spi.function.aggregation.GroupByIdBlock;
 import com.facebook.presto.sql.gen.JoinCompiler;
 import com.google.common.annotations.VisibleForTesting;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
 import static com.facebook.presto.SystemSessionProperties.isDictionaryAggregationEnabled;
+import static com.facebook.presto.SystemSessionProperties.isFlatGroupByHashEnabled;
 import static com.facebook.presto.operator.GroupByHash.createGroupByHash;
+import static com.facebook.presto.operator.SpillingUtils.getGroupValuePages;
 import static com.google.common.base.Preconditions.checkState;
+import static java.lang.Math.toIntExact;
 
 public class MarkDistinctHash
 {
@@ -42,7 +46,7 @@ public class MarkDistinctHash
 
     public MarkDistinctHash(Session session, List<Type> types, int[] channels, Optional<Integer> hashChannel, int expectedDistinctValues, JoinCompiler joinCompiler, UpdateMemory updateMemory)
     {
-        this.groupByHash = createGroupByHash(types, channels, hashChannel, expectedDistinctValues, isDictionaryAggregationEnabled(session), joinCompiler, updateMemory);
+        this.groupByHash = createGroupByHash(types, channels, hashChannel, expectedDistinctValues, isDictionaryAggregationEnabled(session), isFlatGroupByHashEnabled(session), joinCompiler, updateMemory);
     }
 
     public long getEstimatedSize()
@@ -66,6 +70,22 @@ public class MarkDistinctHash
         return groupByHash.getBufferedPages();
     }
 
+    /**
+     * Returns the types of the pages returned by {@link #getMarkedDistinctPages()}.
+     */
+    public List<Type> getTypes()
+    {
+        return groupByHash.getTypes();
+    }
+
+    /**
+     * Returns the values that were already marked as distinct, including their hash if there is a hash channel.
+     */
+    public Iterator<Page> getMarkedDistinctPages()
+    {
+        return getGroupValuePages(groupByHash, toIntExact(nextDistinctId));
+    }
+
     private Block processNextGroupIds(GroupByIdBlock ids)
     {
         int positions = ids.getPositionCount();
@@ -17,24 +17,42 @@ import com.facebook.presto.common.Page;
 import com.facebook.presto.common.block.Block;
 import com.facebook.presto.common.type.Type;
 import com.facebook.presto.memory.context.LocalMemoryContext;
+import com.facebook.presto.operator.exchange.LocalPartitionGenerator;
 import com.facebook.presto.spi.plan.PlanNodeId;
+import com.facebook.presto.spiller.PartitioningSpiller;
+import com.facebook.presto.spiller.PartitioningSpillerFactory;
 import com.facebook.presto.sql.gen.JoinCompiler;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.Closer;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ListenableFuture;
 
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 import static com.facebook.presto.common.type.BooleanType.BOOLEAN;
+import static com.facebook.presto.operator.SpillingUtils.checkSpillSucceeded;
+import static com.facebook.presto.operator.SpillingUtils.partitionAndSpillAll;
+import static com.facebook.presto.spiller.PartitioningSpillerFactory.unsupportedPartitioningSpillerFactory;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.util.concurrent.Futures.allAsList;
 import static java.util.Objects.requireNonNull;
 
 public class MarkDistinctOperator
         implements Operator
 {
+    // number of partitions of the spilled input
+    private static final int SPILL_PARTITION_COUNT = 16;
+
     public static class MarkDistinctOperatorFactory
             implements OperatorFactory
     {
@@ -44,6 +62,8 @@ public class MarkDistinctOperator
         private final List<Integer> markDistinctChannels;
         private final List<Type> types;
         private final JoinCompiler joinCompiler;
+        private final boolean spillEnabled;
+        private final PartitioningSpillerFactory partitioningSpillerFactory;
         private boolean closed;
 
         public MarkDistinctOperatorFactory(
@@ -53,6 +73,19 @@ public class MarkDistinctOperator
                 Collection<Integer> markDistinctChannels,
                 Optional<Integer> hashChannel,
                 JoinCompiler joinCompiler)
+        {
+            this(operatorId, planNodeId, sourceTypes, markDistinctChannels, hashChannel, joinCompiler, false, unsupportedPartitioningSpillerFactory());
+        }
+
+        public MarkDistinctOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                List<? extends Type> sourceTypes,
+                Collection<Integer> markDistinctChannels,
+                Optional<Integer> hashChannel,
+                JoinCompiler joinCompiler,
+                boolean spillEnabled,
+                PartitioningSpillerFactory partitioningSpillerFactory)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -60,6 +93,8 @@ public class MarkDistinctOperator
             checkArgument(!markDistinctChannels.isEmpty(), "markDistinctChannels is empty");
             this.hashChannel = requireNonNull(hashChannel, "hashChannel is null");
             this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
+            this.spillEnabled = spillEnabled;
+            this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
             this.types = ImmutableList.<Type>builder()
                     .addAll(sourceTypes)
                     .add(BOOLEAN)
@@ -71,7 +106,7 @@ public class MarkDistinctOperator
         {
             checkState(!closed, "Factory is already closed");
             OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId, MarkDistinctOperator.class.getSimpleName());
-            return new MarkDistinctOperator(operatorContext, types, markDistinctChannels, hashChannel, joinCompiler);
+            return new MarkDistinctOperator(operatorContext, types, markDistinctChannels, hashChannel, joinCompiler, spillEnabled, partitioningSpillerFactory);
         }
 
         @Override
@@ -83,13 +118,24 @@ public class MarkDistinctOperator
         @Override
         public OperatorFactory duplicate()
         {
-            return new MarkDistinctOperatorFactory(operatorId, planNodeId, types.subList(0, types.size() - 1), markDistinctChannels, hashChannel, joinCompiler);
+            return new MarkDistinctOperatorFactory(operatorId, planNodeId, types.subList(0, types.size() - 1), markDistinctChannels, hashChannel, joinCompiler, spillEnabled, partitioningSpillerFactory);
         }
     }
 
     private final OperatorContext operatorContext;
-    private final MarkDistinctHash markDistinctHash;
+    private final List<Type> sourceTypes;
+    private final List<Type> distinctTypes;
+    private final int[] markDistinctChannels;
+    private final Optional<Integer> hashChannel;
+    private final JoinCompiler joinCompiler;
+    private final boolean spillEnabled;
+    private final PartitioningSpillerFactory partitioningSpillerFactory;
     private final LocalMemoryContext localUserMemoryContext;
+    private final LocalMemoryContext localRevocableMemoryContext;
+
+    // null once the distinct values were spilled
+    @Nullable
+    private MarkDistinctHash markDistinctHash;
 
     private Page inputPage;
     private boolean finishing;
@@ -97,7 +143,33 @@ public class MarkDistinctOperator
     // for yield when memory is not available
     private Work<Block> unfinishedWork;
 
+    // Once spilled, the values already marked as distinct and all the subsequent input are partitioned to disk.
+    // When the input is finished, the partitions are processed one at a time: the spilled distinct values are
+    // added to an empty hash first, so that only the input values not seen before spilling are marked as distinct.
+    private Optional<PartitioningSpiller> distinctSpiller = Optional.empty();
+    private Optional<PartitioningSpiller> inputSpiller = Optional.empty();
+    private ListenableFuture<?> spillInProgress = NOT_BLOCKED;
+    private int processedPartitions;
+    @Nullable
+    private MarkDistinctHash partitionHash;
+    @Nullable
+    private Iterator<Page> unspilledDistinctPages;
+    @Nullable
+    private Iterator<Page> unspilledInputPages;
+
     public MarkDistinctOperator(OperatorContext operatorContext, List<Type> types, List<Integer> markDistinctChannels, Optional<Integer> hashChannel, JoinCompiler joinCompiler)
+    {
+        this(operatorContext, types, markDistinctChannels, hashChannel, joinCompiler, false, unsupportedPartitioningSpillerFactory());
+    }
+
+    public MarkDistinctOperator(
+            OperatorContext operatorContext,
+            List<Type> types,
+            List<Integer> markDistinctChannels,
+            Optional<Integer> hashChannel,
+            JoinCompiler joinCompiler,
+            boolean spillEnabled,
+            PartitioningSpillerFactory partitioningSpillerFactory)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
 
@@ -108,8 +180,16 @@ public class MarkDistinctOperator
         for (int channel : markDistinctChannels) {
             distinctTypes.add(types.get(channel));
         }
-        this.markDistinctHash = new MarkDistinctHash(operatorContext.getSession(), distinctTypes.build(), Ints.toArray(markDistinctChannels), hashChannel, joinCompiler, this::updateMemoryReservation);
+        this.sourceTypes = ImmutableList.copyOf(types.subList(0, types.size() - 1));
+        this.distinctTypes = distinctTypes.build();
+        this.markDistinctChannels = Ints.toArray(markDistinctChannels);
+        this.hashChannel = hashChannel;
+        this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
+        this.spillEnabled = spillEnabled;
+        this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
         this.localUserMemoryContext = operatorContext.localUserMemoryContext();
+        this.localRevocableMemoryContext = operatorContext.localRevocableMemoryContext();
+        this.markDistinctHash = new MarkDistinctHash(operatorContext.getSession(), this.distinctTypes, this.markDistinctChannels, hashChannel, joinCompiler, this::updateMemoryReservation);
     }
 
     @Override
@@ -121,19 +201,32 @@ public class MarkDistinctOperator
     @Override
     public void finish()
     {
+        if (finishing) {
+            return;
+        }
         finishing = true;
+        if (markDistinctHash != null) {
+            // the memory of the hash can no longer be revoked
+            updateMemoryReservation();
+        }
     }
 
     @Override
     public boolean isFinished()
     {
-        return finishing && !hasUnfinishedInput();
+        return finishing && !hasUnfinishedInput() && (!isSpilled() || processedPartitions == SPILL_PARTITION_COUNT);
+    }
+
+    @Override
+    public ListenableFuture<?> isBlocked()
+    {
+        return spillInProgress;
     }
 
     @Override
     public boolean needsInput()
     {
-        return !finishing && !hasUnfinishedInput();
+        return !finishing && !hasUnfinishedInput() && spillInProgress.isDone();
     }
 
     @Override
@@ -142,6 +235,11 @@ public class MarkDistinctOperator
         requireNonNull(page, "page is null");
         checkState(needsInput());
 
+        if (isSpilled()) {
+            spillInProgress = inputSpiller.get().partitionAndSpill(page, partition -> true).getSpillingFuture();
+            return;
+        }
+
         inputPage = page;
 
         unfinishedWork = markDistinctHash.markDistinctRows(page);
@@ -151,6 +249,15 @@ public class MarkDistinctOperator
     @Override
     public Page getOutput()
     {
+        if (!spillInProgress.isDone()) {
+            return null;
+        }
+        checkSpillSucceeded(spillInProgress);
+
+        if (isSpilled()) {
+            return finishing ? getSpilledOutput() : null;
+        }
+
         if (unfinishedWork == null) {
             return null;
         }
@@ -169,11 +276,129 @@ public class MarkDistinctOperator
         return outputPage;
     }
 
+    @Override
+    public ListenableFuture<?> startMemoryRevoke()
+    {
+        if (!spillEnabled || finishing || isSpilled()) {
+            return NOT_BLOCKED;
+        }
+        checkState(spillInProgress.isDone(), "Previous spill still in progress");
+
+        distinctSpiller = Optional.of(partitioningSpillerFactory.create(
+                markDistinctHash.getTypes(),
+                createPartitionGenerator(spilledDistinctChannels(), spilledHashChannel()),
+                operatorContext.getSpillContext().newLocalSpillContext(),
+                operatorContext.aggregateSystemMemoryContext()));
+        inputSpiller = Optional.of(partitioningSpillerFactory.create(
+                sourceTypes,
+                createPartitionGenerator(markDistinctChannels, hashChannel),
+                operatorContext.getSpillContext().newLocalSpillContext(),
+                operatorContext.aggregateSystemMemoryContext()));
+
+        // Only the values of the pages that were output are spilled as distinct. The values of the
+        // page being processed that were not marked yet are spilled with the page, as input.
+        ImmutableList.Builder<ListenableFuture<?>> futures = ImmutableList.builder();
+        futures.add(partitionAndSpillAll(distinctSpiller.get(), markDistinctHash.getMarkedDistinctPages()));
+        if (inputPage != null) {
+            futures.add(inputSpiller.get().partitionAndSpill(inputPage, partition -> true).getSpillingFuture());
+            inputPage = null;
+            unfinishedWork = null;
+        }
+        spillInProgress = allAsList(futures.build());
+        return spillInProgress;
+    }
+
+    @Override
+    public void finishMemoryRevoke()
+    {
+        if (markDistinctHash != null && isSpilled()) {
+            markDistinctHash = null;
+            updateMemoryReservation();
+        }
+    }
+
+    private Page getSpilledOutput()
+    {
+        while (processedPartitions < SPILL_PARTITION_COUNT) {
+            if (partitionHash == null) {
+                partitionHash = new MarkDistinctHash(operatorContext.getSession(), distinctTypes, spilledDistinctChannels(), spilledHashChannel(), joinCompiler, this::updateMemoryReservation);
+                unspilledDistinctPages = distinctSpiller.get().getSpilledPages(processedPartitions);
+                unspilledInputPages = inputSpiller.get().getSpilledPages(processedPartitions);
+            }
+
+            if (unfinishedWork != null) {
+                if (!unfinishedWork.process()) {
+                    return null;
+                }
+                Block distinctMask = unfinishedWork.getResult();
+                Page page = inputPage;
+                unfinishedWork = null;
+                inputPage = null;
+                updateMemoryReservation();
+                if (page != null) {
+                    return page.appendColumn(distinctMask);
+                }
+            }
+            else if (unspilledDistinctPages.hasNext()) {
+                // mark the values that were output before spilling, the result is not needed
+                unfinishedWork = partitionHash.markDistinctRows(unspilledDistinctPages.next());
+            }
+            else if (unspilledInputPages.hasNext()) {
+                inputPage = unspilledInputPages.next();
+                unfinishedWork = partitionHash.markDistinctRows(inputPage.extractChannels(getDistinctAndHashChannels()));
+            }
+            else {
+                partitionHash = null;
+                unspilledDistinctPages = null;
+                unspilledInputPages = null;
+                processedPartitions++;
+                updateMemoryReservation();
+            }
+        }
+        distinctSpiller.get().verifyAllPartitionsRead();
+        inputSpiller.get().verifyAllPartitionsRead();
+        return null;
+    }
+
+    private boolean isSpilled()
+    {
+        return inputSpiller.isPresent();
+    }
+
     private boolean hasUnfinishedInput()
     {
         return inputPage != null || unfinishedWork != null;
     }
 
+    // channels of the distinct values in the pages spilled from the hash
+    private int[] spilledDistinctChannels()
+    {
+        return IntStream.range(0, markDistinctChannels.length).toArray();
+    }
+
+    private Optional<Integer> spilledHashChannel()
+    {
+        return hashChannel.map(channel -> markDistinctChannels.length);
+    }
+
+    private int[] getDistinctAndHashChannels()
+    {
+        if (!hashChannel.isPresent()) {
+            return markDistinctChannels;
+        }
+        int[] channels = Arrays.copyOf(markDistinctChannels, markDistinctChannels.length + 1);
+        channels[markDistinctChannels.length] = hashChannel.get();
+        return channels;
+    }
+
+    private LocalPartitionGenerator createPartitionGenerator(int[] distinctChannels, Optional<Integer> hashChannel)
+    {
+        HashGenerator hashGenerator = hashChannel.isPresent()
+                ? new PrecomputedHashGenerator(hashChannel.get())
+                : new InterpretedHashGenerator(distinctTypes, distinctChannels);
+        return new LocalPartitionGenerator(hashGenerator, SPILL_PARTITION_COUNT);
+    }
+
     /**
      * Update memory usage.
      *
@@ -184,13 +409,37 @@ public class MarkDistinctOperator
     // The following implementation is a hybrid model, where the push model is going to call the pull model causing reentrancy
     private boolean updateMemoryReservation()
     {
+        if (spillEnabled && !isSpilled() && !finishing) {
+            // revocable memory is released by spilling, so there is no need to yield while waiting for it
+            localRevocableMemoryContext.setBytes(markDistinctHash.getEstimatedSize());
+            return true;
+        }
+        localRevocableMemoryContext.setBytes(0);
+
+        long estimatedSize = 0;
+        if (markDistinctHash != null) {
+            estimatedSize += markDistinctHash.getEstimatedSize();
+        }
+        if (partitionHash != null) {
+            estimatedSize += partitionHash.getEstimatedSize();
+        }
         // Operator/driver will be blocked on memory after we call localUserMemoryContext.setBytes().
         // If memory is not available, once we return, this operator will be blocked until memory is available.
-        localUserMemoryContext.setBytes(markDistinctHash.getEstimatedSize());
+        localUserMemoryContext.setBytes(estimatedSize);
         // If memory is not available, inform the caller that we cannot proceed for allocation.
         return operatorContext.isWaitingForMemory().isDone();
     }
 
+    @Override
+    public void close()
+            throws IOException
+    {
+        try (Closer closer = Closer.create()) {
+            distinctSpiller.ifPresent(closer::register);
+            inputSpiller.ifPresent(closer::register);
+        }
+    }
+
     @VisibleForTesting
     public int getCapacity()
     {
@@ -14,13 +14,20 @@
 package com.facebook.presto.operator;
 
 import com.facebook.presto.common.Page;
+import com.facebook.presto.common.type.Type;
 import com.facebook.presto.memory.context.LocalMemoryContext;
 import com.facebook.presto.spi.plan.PlanNodeId;
+import com.facebook.presto.spiller.SingleStreamSpiller;
+import com.facebook.presto.spiller.SingleStreamSpillerFactory;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Future;
 
+import static com.facebook.presto.operator.SpillingUtils.checkSpillSucceeded;
+import static com.facebook.presto.spiller.SingleStreamSpillerFactory.unsupportedSingleStreamSpillerFactory;
 import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
@@ -33,14 +40,29 @@ public class NestedLoopBuildOperator
         private final int operatorId;
         private final PlanNodeId planNodeId;
         private final JoinBridgeManager<NestedLoopJoinBridge> nestedLoopJoinBridgeManager;
+        private final boolean spillEnabled;
+        private final SingleStreamSpillerFactory singleStreamSpillerFactory;
 
         private boolean closed;
 
         public NestedLoopBuildOperatorFactory(int operatorId, PlanNodeId planNodeId, JoinBridgeManager<NestedLoopJoinBridge> nestedLoopJoinBridgeManager)
+        {
+            this(operatorId, planNodeId, nestedLoopJoinBridgeManager, false, unsupportedSingleStreamSpillerFactory());
+        }
+
+        public NestedLoopBuildOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                JoinBridgeManager<NestedLoopJoinBridge> nestedLoopJoinBridgeManager,
+                boolean spillEnabled,
+                SingleStreamSpillerFactory singleStreamSpillerFactory)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
             this.nestedLoopJoinBridgeManager = requireNonNull(nestedLoopJoinBridgeManager, "nestedLoopJoinBridgeManager is null");
+            // pages without channels only hold a position count, there is no point in spilling them
+            this.spillEnabled = spillEnabled && !nestedLoopJoinBridgeManager.getBuildOutputTypes().isEmpty();
+            this.singleStreamSpillerFactory = requireNonNull(singleStreamSpillerFactory, "singleStreamSpillerFactory is null");
         }
 
         @Override
@@ -48,7 +70,12 @@ public class NestedLoopBuildOperator
         {
             checkState(!closed, "Factory is already closed");
             OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId, NestedLoopBuildOperator.class.getSimpleName());
-            return new NestedLoopBuildOperator(operatorContext, nestedLoopJoinBridgeManager.getJoinBridge(driverContext.getLifespan()));
+            return new NestedLoopBuildOperator(
+                    operatorContext,
+                    nestedLoopJoinBridgeManager.getJoinBridge(driverContext.getLifespan()),
+                    nestedLoopJoinBridgeManager.getBuildOutputTypes(),
+                    spillEnabled,
+                    singleStreamSpillerFactory);
         }
 
         @Override
@@ -63,26 +90,51 @@ public class NestedLoopBuildOperator
         @Override
         public OperatorFactory duplicate()
         {
-            return new NestedLoopBuildOperatorFactory(operatorId, planNodeId, nestedLoopJoinBridgeManager);
+            return new NestedLoopBuildOperatorFactory(operatorId, planNodeId, nestedLoopJoinBridgeManager, spillEnabled, singleStreamSpillerFactory);
         }
     }
 
     private final OperatorContext operatorContext;
     private final NestedLoopJoinBridge nestedLoopJoinBridge;
+    private final List<Type> types;
+    private final boolean spillEnabled;
+    private final SingleStreamSpillerFactory singleStreamSpillerFactory;
     private final NestedLoopJoinPagesBuilder nestedLoopJoinPagesBuilder;
     private final LocalMemoryContext localUserMemoryContext;
+    private final LocalMemoryContext localRevocableMemoryContext;
+
+    // Once spilled, all the build pages are spilled when the input is finished, and the probe side
+    // streams its pages against the spilled pages, one block of probe pages at a time.
+    private Optional<SingleStreamSpiller> spiller = Optional.empty();
+    private ListenableFuture<?> spillInProgress = NOT_BLOCKED;
 
     // Initially, probeDoneWithPages is not present.
     // Once finish is called, probeDoneWithPages will be set to a future that completes when the pages are no longer needed by the probe side.
     // When the pages are no longer needed, the isFinished method on this operator will return true.
     private Optional<ListenableFuture<?>> probeDoneWithPages = Optional.empty();
+    private boolean finishing;
+    private boolean closed;
 
     public NestedLoopBuildOperator(OperatorContext operatorContext, NestedLoopJoinBridge nestedLoopJoinBridge)
+    {
+        this(operatorContext, nestedLoopJoinBridge, ImmutableList.of(), false, unsupportedSingleStreamSpillerFactory());
+    }
+
+    public NestedLoopBuildOperator(
+            OperatorContext operatorContext,
+            NestedLoopJoinBridge nestedLoopJoinBridge,
+            List<Type> types,
+            boolean spillEnabled,
+            SingleStreamSpillerFactory singleStreamSpillerFactory)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
         this.nestedLoopJoinBridge = requireNonNull(nestedLoopJoinBridge, "nestedLoopJoinBridge is null");
+        this.types = ImmutableList.copyOf(requireNonNull(types, "types is null"));
+        this.spillEnabled = spillEnabled;
+        this.singleStreamSpillerFactory = requireNonNull(singleStreamSpillerFactory, "singleStreamSpillerFactory is null");
         this.nestedLoopJoinPagesBuilder = new NestedLoopJoinPagesBuilder(operatorContext);
         this.localUserMemoryContext = operatorContext.localUserMemoryContext();
+        this.localRevocableMemoryContext = operatorContext.localRevocableMemoryContext();
     }
 
     @Override
@@ -98,9 +150,30 @@ public class NestedLoopBuildOperator
             return;
         }
 
+        if (!finishing) {
+            finishing = true;
+            if (spiller.isPresent()) {
+                // the probe side reads the build pages from disk only, so the pages still in memory are spilled as well
+                spillInProgress = spillPages();
+            }
+        }
+
+        if (!spillInProgress.isDone()) {
+            return;
+        }
+        checkSpillSucceeded(spillInProgress);
+        // the spill file is committed before the probe operators of all the drivers start reading it
+        spiller.ifPresent(SingleStreamSpiller::commit);
+
         // nestedLoopJoinPagesBuilder and the built NestedLoopJoinPages will mostly share the same objects.
         // Extra allocation is minimal during build call. As a result, memory accounting is not updated here.
-        probeDoneWithPages = Optional.of(nestedLoopJoinBridge.setPages(nestedLoopJoinPagesBuilder.build()));
+        NestedLoopJoinPages nestedLoopJoinPages = nestedLoopJoinPagesBuilder.build(spiller);
+        if (spillEnabled) {
+            // the pages are now used by the probe side, and their memory can no longer be revoked
+            localUserMemoryContext.setBytes(nestedLoopJoinPages.getEstimatedSize().toBytes());
+            localRevocableMemoryContext.setBytes(0);
+        }
+        probeDoneWithPages = Optional.of(nestedLoopJoinBridge.setPages(nestedLoopJoinPages));
     }
 
     @Override
@@ -112,13 +185,16 @@ public class NestedLoopBuildOperator
     @Override
     public ListenableFuture<?> isBlocked()
     {
+        if (!spillInProgress.isDone()) {
+            return spillInProgress;
+        }
         return probeDoneWithPages.orElse(NOT_BLOCKED);
     }
 
     @Override
     public boolean needsInput()
     {
-        return !probeDoneWithPages.isPresent();
+        return !finishing && spillInProgress.isDone();
     }
 
     @Override
@@ -132,7 +208,11 @@ public class NestedLoopBuildOperator
         }
 
         nestedLoopJoinPagesBuilder.addPage(page);
-        if (!localUserMemoryContext.trySetBytes(nestedLoopJoinPagesBuilder.getEstimatedSize().toBytes())) {
+        if (spillEnabled) {
+            // the memory is released by spilling the pages, so the page is never compacted here
+            localRevocableMemoryContext.setBytes(nestedLoopJoinPagesBuilder.getEstimatedSize().toBytes());
+        }
+        else if (!localUserMemoryContext.trySetBytes(nestedLoopJoinPagesBuilder.getEstimatedSize().toBytes())) {
             nestedLoopJoinPagesBuilder.compact();
             localUserMemoryContext.setBytes(nestedLoopJoinPagesBuilder.getEstimatedSize().toBytes());
         }
@@ -144,4 +224,47 @@ public class NestedLoopBuildOperator
     {
         return null;
     }
+
+    @Override
+    public ListenableFuture<?> startMemoryRevoke()
+    {
+        if (finishing || nestedLoopJoinPagesBuilder.getEstimatedSize().toBytes() == 0) {
+            return NOT_BLOCKED;
+        }
+        checkState(spillInProgress.isDone(), "Previous spill still in progress");
+        checkSpillSucceeded(spillInProgress);
+
+        spillInProgress = spillPages();
+        return spillInProgress;
+    }
+
+    @Override
+    public void finishMemoryRevoke()
+    {
+        if (!finishing) {
+            localRevocableMemoryContext.setBytes(nestedLoopJoinPagesBuilder.getEstimatedSize().toBytes());
+        }
+    }
+
+    private ListenableFuture<?> spillPages()
+    {
+        if (!spiller.isPresent()) {
+            spiller = Optional.of(singleStreamSpillerFactory.create(
+                    types,
+                    operatorContext.getSpillContext().newLocalSpillContext(),
+                    operatorContext.localSystemMemoryContext()));
+        }
+        return spiller.get().spill(nestedLoopJoinPagesBuilder.removePages().iterator());
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        spiller.ifPresent(SingleStreamSpiller::close);
+        localRevocableMemoryContext.setBytes(0);
+    }
 }
@@ -17,20 +17,26 @@ import com.facebook.presto.common.Page;
 import com.facebook.presto.common.block.Block;
 import com.facebook.presto.common.block.RunLengthEncodedBlock;
 import com.facebook.presto.execution.Lifespan;
+import com.facebook.presto.memory.context.LocalMemoryContext;
 import com.facebook.presto.operator.project.PageProcessor;
 import com.facebook.presto.spi.plan.PlanNodeId;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.DataSize;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 
 import static com.facebook.airlift.concurrent.MoreFutures.tryGetFutureValue;
+import static com.facebook.presto.common.RuntimeMetricName.NESTED_LOOP_JOIN_BUILD_RESCAN_COUNT;
+import static com.facebook.presto.common.RuntimeUnit.NONE;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Math.multiplyExact;
@@ -45,13 +51,24 @@ public class NestedLoopJoinOperator
         private final int operatorId;
         private final PlanNodeId planNodeId;
         private final JoinBridgeManager<NestedLoopJoinBridge> joinBridgeManager;
+        private final DataSize spillProbeBlockSize;
         private boolean closed;
 
         public NestedLoopJoinOperatorFactory(int operatorId, PlanNodeId planNodeId, JoinBridgeManager<NestedLoopJoinBridge> nestedLoopJoinBridgeManager)
+        {
+            this(operatorId, planNodeId, nestedLoopJoinBridgeManager, DEFAULT_SPILL_PROBE_BLOCK_SIZE);
+        }
+
+        public NestedLoopJoinOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                JoinBridgeManager<NestedLoopJoinBridge> nestedLoopJoinBridgeManager,
+                DataSize spillProbeBlockSize)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
             this.joinBridgeManager = nestedLoopJoinBridgeManager;
+            this.spillProbeBlockSize = requireNonNull(spillProbeBlockSize, "spillProbeBlockSize is null");
             this.joinBridgeManager.incrementProbeFactoryCount();
         }
 
@@ -60,6 +77,7 @@ public class NestedLoopJoinOperator
             requireNonNull(other, "other is null");
             this.operatorId = other.operatorId;
             this.planNodeId = other.planNodeId;
+            this.spillProbeBlockSize = other.spillProbeBlockSize;
 
             this.joinBridgeManager = other.joinBridgeManager;
 
@@ -81,6 +99,7 @@ public class NestedLoopJoinOperator
             return new NestedLoopJoinOperator(
                     operatorContext,
                     nestedLoopJoinBridge,
+                    spillProbeBlockSize.toBytes(),
                     () -> joinBridgeManager.probeOperatorClosed(driverContext.getLifespan()));
         }
 
@@ -107,9 +126,14 @@ public class NestedLoopJoinOperator
         }
     }
 
+    private static final DataSize DEFAULT_SPILL_PROBE_BLOCK_SIZE = new DataSize(16, MEGABYTE);
+
     private final ListenableFuture<NestedLoopJoinPages> nestedLoopJoinPagesFuture;
+    // size of the block of probe pages joined with every scan of the spilled build pages
+    private final long spillProbeBlockSizeInBytes;
 
     private final OperatorContext operatorContext;
+    private final LocalMemoryContext localUserMemoryContext;
     private final Runnable afterClose;
 
     private List<Page> buildPages;
@@ -119,10 +143,22 @@ public class NestedLoopJoinOperator
     private boolean finishing;
     private boolean closed;
 
-    private NestedLoopJoinOperator(OperatorContext operatorContext, NestedLoopJoinBridge joinBridge, Runnable afterClose)
+    // When the build pages were spilled, the probe pages are buffered into a block, and the block is joined
+    // with the build pages read back from disk. The build pages are scanned again for every block.
+    private NestedLoopJoinPages spilledBuildPages;
+    private final List<Page> probeBlock = new ArrayList<>();
+    private long probeBlockSizeInBytes;
+    private Iterator<Page> spilledBuildPageIterator;
+    private Page spilledBuildPage;
+    private int probeBlockIndex;
+
+    private NestedLoopJoinOperator(OperatorContext operatorContext, NestedLoopJoinBridge joinBridge, long spillProbeBlockSizeInBytes, Runnable afterClose)
     {
+        checkArgument(spillProbeBlockSizeInBytes > 0, "spillProbeBlockSizeInBytes must be positive");
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
+        this.localUserMemoryContext = operatorContext.localUserMemoryContext();
         this.nestedLoopJoinPagesFuture = joinBridge.getPagesFuture();
+        this.spillProbeBlockSizeInBytes = spillProbeBlockSizeInBytes;
         this.afterClose = requireNonNull(afterClose, "afterClose is null");
     }
 
@@ -141,7 +177,7 @@ public class NestedLoopJoinOperator
     @Override
     public boolean isFinished()
     {
-        boolean finished = finishing && probePage == null;
+        boolean finished = finishing && probePage == null && probeBlock.isEmpty();
 
         if (finished) {
             close();
@@ -158,7 +194,7 @@ public class NestedLoopJoinOperator
     @Override
     public boolean needsInput()
     {
-        if (finishing || probePage != null) {
+        if (finishing || probePage != null || spilledBuildPageIterator != null) {
             return false;
         }
 
@@ -166,9 +202,12 @@ public class NestedLoopJoinOperator
             Optional<NestedLoopJoinPages> nestedLoopJoinPages = tryGetFutureValue(nestedLoopJoinPagesFuture);
             if (nestedLoopJoinPages.isPresent()) {
                 buildPages = nestedLoopJoinPages.get().getPages();
+                if (nestedLoopJoinPages.get().isSpilled()) {
+                    spilledBuildPages = nestedLoopJoinPages.get();
+                }
             }
         }
-        return buildPages != null;
+        return buildPages != null && probeBlockSizeInBytes < spillProbeBlockSizeInBytes;
     }
 
     @Override
@@ -180,6 +219,16 @@ public class NestedLoopJoinOperator
         checkState(probePage == null, "Current page has not been completely processed yet");
         checkState(buildPageIterator == null || !buildPageIterator.hasNext(), "Current buildPageIterator has not been completely processed yet");
 
+        if (spilledBuildPages != null) {
+            checkState(spilledBuildPageIterator == null, "Current block of probe pages has not been completely processed yet");
+            if (page.getPositionCount() > 0) {
+                probeBlock.add(page);
+                probeBlockSizeInBytes += page.getRetainedSizeInBytes();
+                localUserMemoryContext.setBytes(probeBlockSizeInBytes);
+            }
+            return;
+        }
+
         if (page.getPositionCount() > 0) {
             probePage = page;
             buildPageIterator = buildPages.iterator();
@@ -189,6 +238,10 @@ public class NestedLoopJoinOperator
     @Override
     public Page getOutput()
     {
+        if (spilledBuildPages != null) {
+            return getSpilledOutput();
+        }
+
         // Either probe side or build side is not ready
         if (probePage == null || buildPages == null) {
             return null;
@@ -208,6 +261,42 @@ public class NestedLoopJoinOperator
         return null;
     }
 
+    private Page getSpilledOutput()
+    {
+        if (spilledBuildPageIterator == null) {
+            if (probeBlock.isEmpty() || (!finishing && probeBlockSizeInBytes < spillProbeBlockSizeInBytes)) {
+                return null;
+            }
+            spilledBuildPageIterator = spilledBuildPages.readSpilledPages();
+            operatorContext.getRuntimeStats().addMetricValue(NESTED_LOOP_JOIN_BUILD_RESCAN_COUNT, NONE, 1);
+        }
+
+        while (true) {
+            if (nestedLoopOutputIterator != null && nestedLoopOutputIterator.hasNext()) {
+                return nestedLoopOutputIterator.next();
+            }
+            if (spilledBuildPage != null && probeBlockIndex < probeBlock.size()) {
+                nestedLoopOutputIterator = createNestedLoopOutputIterator(probeBlock.get(probeBlockIndex), spilledBuildPage);
+                probeBlockIndex++;
+                continue;
+            }
+            if (spilledBuildPageIterator.hasNext()) {
+                spilledBuildPage = spilledBuildPageIterator.next();
+                probeBlockIndex = 0;
+                continue;
+            }
+
+            // the block of probe pages was joined with all build pages
+            spilledBuildPageIterator = null;
+            spilledBuildPage = null;
+            nestedLoopOutputIterator = null;
+            probeBlock.clear();
+            probeBlockSizeInBytes = 0;
+            localUserMemoryContext.setBytes(0);
+            return null;
+        }
+    }
+
     @Override
     public void close()
     {
@@ -215,6 +304,11 @@ public class NestedLoopJoinOperator
         probePage = null;
         nestedLoopOutputIterator = null;
         buildPageIterator = null;
+        spilledBuildPages = null;
+        spilledBuildPageIterator = null;
+        spilledBuildPage = null;
+        probeBlock.clear();
+        localUserMemoryContext.setBytes(0);
         // We don't want to release the supplier multiple times, since its reference counted
         if (closed) {
             return;
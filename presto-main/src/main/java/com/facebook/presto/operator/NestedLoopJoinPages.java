@@ -14,25 +14,38 @@
 package com.facebook.presto.operator;
 
 import com.facebook.presto.common.Page;
+import com.facebook.presto.spiller.SingleStreamSpiller;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import io.airlift.units.DataSize;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 
+import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
 public final class NestedLoopJoinPages
 {
     private final ImmutableList<Page> pages;
     private final DataSize estimatedSize;
+    // build pages spilled to disk, which are read again for every block of probe pages
+    private final Optional<SingleStreamSpiller> spilledPages;
 
     NestedLoopJoinPages(List<Page> pages, DataSize estimatedSize, OperatorContext operatorContext)
+    {
+        this(pages, estimatedSize, operatorContext, Optional.empty());
+    }
+
+    NestedLoopJoinPages(List<Page> pages, DataSize estimatedSize, OperatorContext operatorContext, Optional<SingleStreamSpiller> spilledPages)
     {
         requireNonNull(pages, "pages is null");
         requireNonNull(operatorContext, "operatorContext is null");
         requireNonNull(estimatedSize, "estimatedSize is null");
         this.pages = ImmutableList.copyOf(pages);
         this.estimatedSize = estimatedSize;
+        this.spilledPages = requireNonNull(spilledPages, "spilledPages is null");
     }
 
     public List<Page> getPages()
@@ -44,4 +57,35 @@ public final class NestedLoopJoinPages
     {
         return estimatedSize;
     }
+
+    public boolean isSpilled()
+    {
+        return spilledPages.isPresent();
+    }
+
+    /**
+     * Returns a new stream of the spilled build pages. Probe operators of different drivers can read the pages at the same time,
+     * each from its own stream, but the spiller is not thread safe, so the streams are advanced one at a time.
+     */
+    public Iterator<Page> readSpilledPages()
+    {
+        checkState(spilledPages.isPresent(), "Build pages were not spilled");
+        Iterator<Page> pages;
+        synchronized (this) {
+            pages = spilledPages.get().getSpilledPages();
+        }
+        return new AbstractIterator<Page>()
+        {
+            @Override
+            protected Page computeNext()
+            {
+                synchronized (NestedLoopJoinPages.this) {
+                    if (pages.hasNext()) {
+                        return pages.next();
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
 }
@@ -15,11 +15,13 @@ package com.facebook.presto.operator;
 
 import com.facebook.presto.common.Page;
 import com.facebook.presto.operator.project.PageProcessor;
+import com.facebook.presto.spiller.SingleStreamSpiller;
 import com.google.common.collect.ImmutableList;
 import io.airlift.units.DataSize;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Preconditions.checkState;
@@ -92,7 +94,25 @@ public class NestedLoopJoinPagesBuilder
         this.estimatedSize = estimatedSize;
     }
 
+    /**
+     * Removes the pages added so far, so that they can be spilled.
+     */
+    public List<Page> removePages()
+    {
+        checkNotFinished();
+        checkState(emptyChannelPositionCounter == 0, "Pages without channels are not spilled");
+        List<Page> removed = pages;
+        pages = new ArrayList<>();
+        estimatedSize = 0;
+        return removed;
+    }
+
     public NestedLoopJoinPages build()
+    {
+        return build(Optional.empty());
+    }
+
+    public NestedLoopJoinPages build(Optional<SingleStreamSpiller> spilledPages)
     {
         checkNotFinished();
 
@@ -106,7 +126,7 @@ public class NestedLoopJoinPagesBuilder
 
         finished = true;
         pages = ImmutableList.copyOf(pages);
-        return new NestedLoopJoinPages(pages, getEstimatedSize(), operatorContext);
+        return new NestedLoopJoinPages(pages, getEstimatedSize(), operatorContext, spilledPages);
     }
 
     private void checkNotFinished()
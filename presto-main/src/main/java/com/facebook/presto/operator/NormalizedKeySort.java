@@ -0,0 +1,282 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.common.array.AdaptiveLongBigArray;
+import com.facebook.presto.common.block.Block;
+import com.facebook.presto.common.block.SortOrder;
+import com.facebook.presto.common.type.DecimalType;
+import com.facebook.presto.common.type.Type;
+import com.facebook.presto.common.type.VarcharType;
+import io.airlift.slice.Slice;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.util.List;
+
+import static com.facebook.presto.common.type.BigintType.BIGINT;
+import static com.facebook.presto.common.type.BooleanType.BOOLEAN;
+import static com.facebook.presto.common.type.DateType.DATE;
+import static com.facebook.presto.common.type.DoubleType.DOUBLE;
+import static com.facebook.presto.common.type.IntegerType.INTEGER;
+import static com.facebook.presto.common.type.RealType.REAL;
+import static com.facebook.presto.common.type.SmallintType.SMALLINT;
+import static com.facebook.presto.common.type.TimestampType.TIMESTAMP;
+import static com.facebook.presto.common.type.TinyintType.TINYINT;
+import static com.facebook.presto.operator.SyntheticAddress.decodePosition;
+import static com.facebook.presto.operator.SyntheticAddress.decodeSliceIndex;
+import static io.airlift.slice.SizeOf.sizeOfIntArray;
+import static io.airlift.slice.SizeOf.sizeOfLongArray;
+import static java.lang.Double.doubleToLongBits;
+import static java.lang.Double.longBitsToDouble;
+import static java.lang.Float.floatToIntBits;
+import static java.lang.Float.intBitsToFloat;
+import static java.lang.Math.toIntExact;
+
+/**
+ * Sorts the positions of a {@link PagesIndex} by a normalized key of the first sort channel: a long whose signed order is
+ * the sort order of the value, so the positions are sorted with a radix sort on the keys instead of comparisons that read
+ * the blocks. The null positions of the first channel are moved before or after the other positions, and the positions
+ * that have the same key are sorted with the ordering of all the sort channels when the key does not decide their order,
+ * either because it is a prefix of the value or because there are more sort channels.
+ * <p>
+ * The keys, the addresses and the buffers of the radix sort take 32 bytes per position, which the caller reserves from
+ * the memory of the operator with {@link #getRetainedSizeInBytes(int)} before sorting.
+ */
+final class NormalizedKeySort
+{
+    // below this size the radix sort does not pay for the passes over the keys
+    private static final int MIN_POSITIONS = 1024;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX_PASSES = Long.SIZE / RADIX_BITS;
+    private static final int RADIX_SIZE = 1 << RADIX_BITS;
+
+    private NormalizedKeySort() {}
+
+    public static boolean isSupported(PagesIndex pagesIndex, List<Integer> sortChannels, int startPosition, int endPosition)
+    {
+        return endPosition - startPosition >= MIN_POSITIONS && getKeyEncoding(pagesIndex.getTypes().get(sortChannels.get(0))) != null;
+    }
+
+    public static long getRetainedSizeInBytes(int positionCount)
+    {
+        // the keys and the addresses, their radix sort buffers, and the digit counts of every pass and their offsets
+        return 4 * sizeOfLongArray(positionCount) + (RADIX_PASSES + 1) * sizeOfIntArray(RADIX_SIZE);
+    }
+
+    public static void sort(PagesIndex pagesIndex, List<Integer> sortChannels, List<SortOrder> sortOrders, PagesIndexOrdering ordering, int startPosition, int endPosition)
+    {
+        int channel = sortChannels.get(0);
+        SortOrder sortOrder = sortOrders.get(0);
+        KeyEncoding encoding = getKeyEncoding(pagesIndex.getTypes().get(channel));
+        ObjectArrayList<Block> blocks = pagesIndex.getChannel(channel);
+        AdaptiveLongBigArray valueAddresses = pagesIndex.getValueAddresses();
+
+        int positionCount = endPosition - startPosition;
+        long[] keys = new long[positionCount];
+        // the addresses of the null positions are stored from the end of the array
+        long[] addresses = new long[positionCount];
+        int valueCount = 0;
+        int nullCount = 0;
+        for (int position = startPosition; position < endPosition; position++) {
+            long address = valueAddresses.get(position);
+            Block block = blocks.get(decodeSliceIndex(address));
+            int blockPosition = decodePosition(address);
+            if (block.isNull(blockPosition)) {
+                nullCount++;
+                addresses[positionCount - nullCount] = address;
+                continue;
+            }
+            long key = encoding.encode(block, blockPosition);
+            // flipping the bits reverses the signed order, and flipping the sign bit makes the unsigned order of the
+            // radix sort the signed order
+            keys[valueCount] = (sortOrder.isAscending() ? key : ~key) ^ Long.MIN_VALUE;
+            addresses[valueCount] = address;
+            valueCount++;
+        }
+
+        radixSort(keys, addresses, valueCount);
+
+        int valuesStart = sortOrder.isNullsFirst() ? startPosition + nullCount : startPosition;
+        int nullsStart = sortOrder.isNullsFirst() ? startPosition : startPosition + valueCount;
+        for (int i = 0; i < valueCount; i++) {
+            valueAddresses.set(valuesStart + i, addresses[i]);
+        }
+        for (int i = 0; i < nullCount; i++) {
+            valueAddresses.set(nullsStart + i, addresses[valueCount + i]);
+        }
+
+        boolean hasMoreSortChannels = sortChannels.size() > 1;
+        if (hasMoreSortChannels && nullCount > 1) {
+            ordering.sort(pagesIndex, nullsStart, nullsStart + nullCount);
+        }
+        if (hasMoreSortChannels || !encoding.isExact()) {
+            int runStart = 0;
+            for (int i = 1; i <= valueCount; i++) {
+                if (i == valueCount || keys[i] != keys[runStart]) {
+                    if (i - runStart > 1) {
+                        ordering.sort(pagesIndex, valuesStart + runStart, valuesStart + i);
+                    }
+                    runStart = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts the keys as unsigned longs with a least significant digit radix sort, skipping the digits that are the same for all keys.
+     */
+    private static void radixSort(long[] keys, long[] addresses, int count)
+    {
+        if (count == 0) {
+            return;
+        }
+
+        int[][] counts = new int[RADIX_PASSES][RADIX_SIZE];
+        for (int i = 0; i < count; i++) {
+            long key = keys[i];
+            for (int pass = 0; pass < RADIX_PASSES; pass++) {
+                counts[pass][(int) (key >>> (pass * RADIX_BITS)) & (RADIX_SIZE - 1)]++;
+            }
+        }
+
+        long[] sourceKeys = keys;
+        long[] sourceAddresses = addresses;
+        long[] targetKeys = null;
+        long[] targetAddresses = null;
+        int[] offsets = new int[RADIX_SIZE];
+        for (int pass = 0; pass < RADIX_PASSES; pass++) {
+            int[] passCounts = counts[pass];
+            int shift = pass * RADIX_BITS;
+            if (passCounts[(int) (sourceKeys[0] >>> shift) & (RADIX_SIZE - 1)] == count) {
+                // all keys have the same digit
+                continue;
+            }
+            if (targetKeys == null) {
+                targetKeys = new long[count];
+                targetAddresses = new long[count];
+            }
+
+            int offset = 0;
+            for (int digit = 0; digit < RADIX_SIZE; digit++) {
+                offsets[digit] = offset;
+                offset += passCounts[digit];
+            }
+            for (int i = 0; i < count; i++) {
+                int digit = (int) (sourceKeys[i] >>> shift) & (RADIX_SIZE - 1);
+                int target = offsets[digit]++;
+                targetKeys[target] = sourceKeys[i];
+                targetAddresses[target] = sourceAddresses[i];
+            }
+
+            long[] swapKeys = sourceKeys;
+            long[] swapAddresses = sourceAddresses;
+            sourceKeys = targetKeys;
+            sourceAddresses = targetAddresses;
+            targetKeys = swapKeys;
+            targetAddresses = swapAddresses;
+        }
+
+        if (sourceKeys != keys) {
+            System.arraycopy(sourceKeys, 0, keys, 0, count);
+            System.arraycopy(sourceAddresses, 0, addresses, 0, count);
+        }
+    }
+
+    private static KeyEncoding getKeyEncoding(Type type)
+    {
+        if (type.equals(BIGINT) || type.equals(INTEGER) || type.equals(SMALLINT) || type.equals(TINYINT) || type.equals(DATE) || type.equals(TIMESTAMP) ||
+                (type instanceof DecimalType && ((DecimalType) type).isShort())) {
+            return new KeyEncoding(true)
+            {
+                @Override
+                public long encode(Block block, int position)
+                {
+                    return type.getLong(block, position);
+                }
+            };
+        }
+        if (type.equals(BOOLEAN)) {
+            return new KeyEncoding(true)
+            {
+                @Override
+                public long encode(Block block, int position)
+                {
+                    return type.getBoolean(block, position) ? 1 : 0;
+                }
+            };
+        }
+        if (type.equals(DOUBLE)) {
+            return new KeyEncoding(true)
+            {
+                @Override
+                public long encode(Block block, int position)
+                {
+                    double value = longBitsToDouble(type.getLong(block, position));
+                    // -0.0 equals 0.0, and doubleToLongBits collapses all NaNs into the largest value
+                    long bits = doubleToLongBits(value == 0 ? 0.0 : value);
+                    return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+                }
+            };
+        }
+        if (type.equals(REAL)) {
+            return new KeyEncoding(true)
+            {
+                @Override
+                public long encode(Block block, int position)
+                {
+                    float value = intBitsToFloat(toIntExact(type.getLong(block, position)));
+                    int bits = floatToIntBits(value == 0 ? 0.0f : value);
+                    return bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+                }
+            };
+        }
+        if (type instanceof VarcharType) {
+            return new KeyEncoding(false)
+            {
+                @Override
+                public long encode(Block block, int position)
+                {
+                    // the first bytes of the value in big endian order, which compares as the bytes of the value when unsigned
+                    Slice slice = type.getSlice(block, position);
+                    long key = 0;
+                    for (int i = 0; i < Long.BYTES; i++) {
+                        key = (key << Byte.SIZE) | (i < slice.length() ? slice.getUnsignedByte(i) : 0);
+                    }
+                    return key ^ Long.MIN_VALUE;
+                }
+            };
+        }
+        return null;
+    }
+
+    private abstract static class KeyEncoding
+    {
+        private final boolean exact;
+
+        KeyEncoding(boolean exact)
+        {
+            this.exact = exact;
+        }
+
+        /**
+         * Returns whether positions with the same key have the same value.
+         */
+        public boolean isExact()
+        {
+            return exact;
+        }
+
+        public abstract long encode(Block block, int position);
+    }
+}
@@ -16,6 +16,7 @@ package com.facebook.presto.operator;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.common.PageBuilder;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
@@ -87,6 +88,18 @@ public final class OuterLookupSource
         return lookupSource.getJoinPosition(position, hashChannelsPage, allChannelsPage);
     }
 
+    @Override
+    public boolean supportsBatchedJoinPositions()
+    {
+        return lookupSource.supportsBatchedJoinPositions();
+    }
+
+    @Override
+    public void getJoinPositions(int[] positions, int positionCount, Page hashChannelsPage, Page allChannelsPage, @Nullable long[] rawHashes, long[] joinPositions)
+    {
+        lookupSource.getJoinPositions(positions, positionCount, hashChannelsPage, allChannelsPage, rawHashes, joinPositions);
+    }
+
     @Override
     public long getNextJoinPosition(long currentJoinPosition, int probePosition, Page allProbeChannelsPage)
     {
@@ -106,6 +119,15 @@ public final class OuterLookupSource
         outerPositionTracker.positionVisited(position);
     }
 
+    @Override
+    public void appendTo(long[] positions, int offset, int length, PageBuilder pageBuilder, int outputChannelOffset)
+    {
+        lookupSource.appendTo(positions, offset, length, pageBuilder, outputChannelOffset);
+        for (int i = offset; i < offset + length; i++) {
+            outerPositionTracker.positionVisited(positions[i]);
+        }
+    }
+
     @Override
     public void close()
     {
@@ -20,6 +20,8 @@ import io.airlift.units.DataSize;
 import it.unimi.dsi.fastutil.HashCommon;
 import org.openjdk.jol.info.ClassLayout;
 
+import javax.annotation.Nullable;
+
 import java.util.Arrays;
 
 import static com.facebook.presto.operator.SyntheticAddress.decodePosition;
@@ -180,6 +182,50 @@ public final class PagesHash
         return -1;
     }
 
+    /**
+     * Looks up the address indexes of the given positions of the hash channels page, and stores them in
+     * {@code addressIndexes} at the index of each position. The whole batch is hashed first, then the first
+     * slot of every position is read, and only then rows are compared, so that the slot reads of a position
+     * do not wait for the row comparisons of the previous one. The hash channels must not be null at the given positions.
+     *
+     * @param rawHashes precomputed raw hashes indexed by position, or null if they have to be computed
+     */
+    public void getAddressIndexes(int[] positions, int positionCount, Page hashChannelsPage, @Nullable long[] rawHashes, long[] addressIndexes)
+    {
+        long[] hashes = new long[positionCount];
+        if (rawHashes == null) {
+            for (int i = 0; i < positionCount; i++) {
+                hashes[i] = pagesHashStrategy.hashRow(positions[i], hashChannelsPage);
+            }
+        }
+        else {
+            for (int i = 0; i < positionCount; i++) {
+                hashes[i] = rawHashes[positions[i]];
+            }
+        }
+
+        int[] slots = new int[positionCount];
+        int[] candidates = new int[positionCount];
+        for (int i = 0; i < positionCount; i++) {
+            int slot = getHashPosition(hashes[i], mask);
+            slots[i] = slot;
+            candidates[i] = key[slot];
+        }
+
+        for (int i = 0; i < positionCount; i++) {
+            int position = positions[i];
+            byte rawHash = (byte) hashes[i];
+            int slot = slots[i];
+            int candidate = candidates[i];
+            while (candidate != -1 && !positionEqualsCurrentRowIgnoreNulls(candidate, rawHash, position, hashChannelsPage)) {
+                // increment position and mask to handler wrap around
+                slot = (slot + 1) & mask;
+                candidate = key[slot];
+            }
+            addressIndexes[position] = candidate;
+        }
+    }
+
     public void appendTo(long position, PageBuilder pageBuilder, int outputChannelOffset)
     {
         long pageAddress = addresses.get(toIntExact(position));
@@ -189,6 +235,22 @@ public final class PagesHash
         pagesHashStrategy.appendTo(blockIndex, blockPosition, pageBuilder, outputChannelOffset);
     }
 
+    /**
+     * Appends the rows at {@code positions[offset]} to {@code positions[offset + length - 1]}.
+     * The addresses of all the rows are decoded first, and the values are then copied one column at a time.
+     */
+    public void appendTo(long[] positions, int offset, int length, PageBuilder pageBuilder, int outputChannelOffset)
+    {
+        int[] blockIndexes = new int[length];
+        int[] blockPositions = new int[length];
+        for (int i = 0; i < length; i++) {
+            long pageAddress = addresses.get(toIntExact(positions[offset + i]));
+            blockIndexes[i] = decodeSliceIndex(pageAddress);
+            blockPositions[i] = decodePosition(pageAddress);
+        }
+        pagesHashStrategy.appendTo(blockIndexes, blockPositions, length, pageBuilder, outputChannelOffset);
+    }
+
     private boolean isPositionNull(int position)
     {
         long pageAddress = addresses.get(position);
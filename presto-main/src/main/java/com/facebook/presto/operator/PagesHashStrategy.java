@@ -33,6 +33,12 @@ public interface PagesHashStrategy
      */
     void appendTo(int blockIndex, int position, PageBuilder pageBuilder, int outputChannelOffset);
 
+    /**
+     * Appends all values at the first {@code length} specified positions to the page builder starting at {@code outputChannelOffset}.
+     * The values are appended one column at a time.
+     */
+    void appendTo(int[] blockIndexes, int[] positions, int length, PageBuilder pageBuilder, int outputChannelOffset);
+
     /**
      * Calculates the hash code the hashed columns in this PagesHashStrategy at the specified position.
      */
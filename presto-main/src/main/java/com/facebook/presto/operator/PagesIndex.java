@@ -54,6 +54,7 @@ import java.util.function.Supplier;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static com.facebook.presto.SystemSessionProperties.isBigintJoinHashEnabled;
 import static com.facebook.presto.operator.SyntheticAddress.decodePosition;
 import static com.facebook.presto.operator.SyntheticAddress.decodeSliceIndex;
 import static com.facebook.presto.operator.SyntheticAddress.encodeSyntheticAddress;
@@ -87,6 +88,7 @@ public class PagesIndex
     private final AdaptiveLongBigArray valueAddresses;
     private final ObjectArrayList<Block>[] channels;
     private final boolean eagerCompact;
+    private final boolean normalizedKeySortEnabled;
 
     private int nextBlockToCompact;
     private int positionCount;
@@ -99,7 +101,8 @@ public class PagesIndex
             FunctionAndTypeManager functionAndTypeManager,
             List<Type> types,
             int expectedPositions,
-            boolean eagerCompact)
+            boolean eagerCompact,
+            boolean normalizedKeySortEnabled)
     {
         this.orderingCompiler = requireNonNull(orderingCompiler, "orderingCompiler is null");
         this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
@@ -108,6 +111,7 @@ public class PagesIndex
         this.valueAddresses = new AdaptiveLongBigArray();
         this.valueAddresses.ensureCapacity(expectedPositions);
         this.eagerCompact = eagerCompact;
+        this.normalizedKeySortEnabled = normalizedKeySortEnabled;
 
         //noinspection rawtypes
         channels = (ObjectArrayList<Block>[]) new ObjectArrayList[types.size()];
@@ -129,16 +133,23 @@ public class PagesIndex
         private static final OrderingCompiler ORDERING_COMPILER = new OrderingCompiler();
         private static final JoinCompiler JOIN_COMPILER = new JoinCompiler(MetadataManager.createTestMetadataManager());
         private final boolean eagerCompact;
+        private final boolean normalizedKeySortEnabled;
 
         public TestingFactory(boolean eagerCompact)
+        {
+            this(eagerCompact, true);
+        }
+
+        public TestingFactory(boolean eagerCompact, boolean normalizedKeySortEnabled)
         {
             this.eagerCompact = eagerCompact;
+            this.normalizedKeySortEnabled = normalizedKeySortEnabled;
         }
 
         @Override
         public PagesIndex newPagesIndex(List<Type> types, int expectedPositions)
         {
-            return new PagesIndex(ORDERING_COMPILER, JOIN_COMPILER, MetadataManager.createTestMetadataManager().getFunctionAndTypeManager(), types, expectedPositions, eagerCompact);
+            return new PagesIndex(ORDERING_COMPILER, JOIN_COMPILER, MetadataManager.createTestMetadataManager().getFunctionAndTypeManager(), types, expectedPositions, eagerCompact, normalizedKeySortEnabled);
         }
     }
 
@@ -148,6 +159,7 @@ public class PagesIndex
         private final OrderingCompiler orderingCompiler;
         private final JoinCompiler joinCompiler;
         private final boolean eagerCompact;
+        private final boolean normalizedKeySortEnabled;
         private final FunctionAndTypeManager functionAndTypeManager;
 
         @Inject
@@ -156,13 +168,14 @@ public class PagesIndex
             this.orderingCompiler = requireNonNull(orderingCompiler, "orderingCompiler is null");
             this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
             this.eagerCompact = requireNonNull(featuresConfig, "featuresConfig is null").isPagesIndexEagerCompactionEnabled();
+            this.normalizedKeySortEnabled = featuresConfig.isPagesIndexNormalizedKeySortEnabled();
             this.functionAndTypeManager = requireNonNull(metadata, "metadata is null").getFunctionAndTypeManager();
         }
 
         @Override
         public PagesIndex newPagesIndex(List<Type> types, int expectedPositions)
         {
-            return new PagesIndex(orderingCompiler, joinCompiler, functionAndTypeManager, types, expectedPositions, eagerCompact);
+            return new PagesIndex(orderingCompiler, joinCompiler, functionAndTypeManager, types, expectedPositions, eagerCompact, normalizedKeySortEnabled);
         }
     }
 
@@ -376,6 +389,33 @@ public class PagesIndex
         createPagesIndexComparator(sortChannels, sortOrders).sort(this, startPosition, endPosition);
     }
 
+    public void sort(List<Integer> sortChannels, List<SortOrder> sortOrders, LocalMemoryContext sortMemoryContext)
+    {
+        sort(sortChannels, sortOrders, 0, getPositionCount(), sortMemoryContext);
+    }
+
+    /**
+     * Sorts the positions with the normalized key sort when it is enabled, reserving its buffers from the memory context
+     * for the duration of the sort. The positions are sorted with comparisons when the buffers cannot be reserved.
+     */
+    public void sort(List<Integer> sortChannels, List<SortOrder> sortOrders, int startPosition, int endPosition, LocalMemoryContext sortMemoryContext)
+    {
+        requireNonNull(sortMemoryContext, "sortMemoryContext is null");
+        PagesIndexOrdering ordering = createPagesIndexComparator(sortChannels, sortOrders);
+        if (normalizedKeySortEnabled
+                && NormalizedKeySort.isSupported(this, sortChannels, startPosition, endPosition)
+                && sortMemoryContext.trySetBytes(NormalizedKeySort.getRetainedSizeInBytes(endPosition - startPosition))) {
+            try {
+                NormalizedKeySort.sort(this, sortChannels, sortOrders, ordering, startPosition, endPosition);
+            }
+            finally {
+                sortMemoryContext.setBytes(0);
+            }
+            return;
+        }
+        ordering.sort(this, startPosition, endPosition);
+    }
+
     public boolean positionEqualsPosition(PagesHashStrategy partitionHashStrategy, int leftPosition, int rightPosition)
     {
         long leftAddress = valueAddresses.get(leftPosition);
@@ -480,6 +520,22 @@ public class PagesIndex
             Optional<List<Integer>> outputChannels)
     {
         List<List<Block>> channels = ImmutableList.copyOf(this.channels);
+        if (joinChannels.size() == 1 && !sortChannel.isPresent() && isBigintJoinHashEnabled(session)) {
+            int keyChannel = joinChannels.get(0);
+            Type keyType = types.get(keyChannel);
+            if (BigintPagesHash.isSupportedType(keyType)) {
+                return new BigintJoinHashSupplier(
+                        session,
+                        createPagesHashStrategy(joinChannels, hashChannel, outputChannels),
+                        valueAddresses,
+                        positionCount,
+                        channels,
+                        keyChannel,
+                        keyType,
+                        filterFunctionFactory);
+            }
+        }
+
         if (!joinChannels.isEmpty()) {
             // todo compiled implementation of lookup join does not support when we are joining with empty join channels.
             // This code path will trigger only for OUTER joins. To fix that we need to add support for
@@ -83,6 +83,7 @@ public class PartitionedLookupSource
     private final int shiftSize;
     @Nullable
     private final OuterPositionTracker outerPositionTracker;
+    private final boolean supportsBatchedJoinPositions;
 
     private boolean closed;
 
@@ -97,6 +98,7 @@ public class PartitionedLookupSource
         this.partitionMask = lookupSources.size() - 1;
         this.shiftSize = numberOfTrailingZeros(lookupSources.size()) + 1;
         this.outerPositionTracker = outerPositionTracker.orElse(null);
+        this.supportsBatchedJoinPositions = lookupSources.stream().allMatch(LookupSource::supportsBatchedJoinPositions);
     }
 
     @Override
@@ -143,6 +145,67 @@ public class PartitionedLookupSource
         return encodePartitionedJoinPosition(partition, toIntExact(joinPosition));
     }
 
+    @Override
+    public boolean supportsBatchedJoinPositions()
+    {
+        return supportsBatchedJoinPositions;
+    }
+
+    @Override
+    public void getJoinPositions(int[] positions, int positionCount, Page hashChannelsPage, Page allChannelsPage, @Nullable long[] rawHashes, long[] joinPositions)
+    {
+        if (lookupSources.length == 1) {
+            lookupSources[0].getJoinPositions(positions, positionCount, hashChannelsPage, allChannelsPage, rawHashes, joinPositions);
+            encodePartitionedJoinPositions(0, positions, positionCount, joinPositions);
+            return;
+        }
+
+        if (rawHashes == null) {
+            rawHashes = new long[hashChannelsPage.getPositionCount()];
+            for (int i = 0; i < positionCount; i++) {
+                rawHashes[positions[i]] = partitionGenerator.getRawHash(hashChannelsPage, positions[i]);
+            }
+        }
+
+        // group the positions by partition, so that each partition is probed with a single batch
+        int[] partitions = new int[positionCount];
+        int[] partitionSizes = new int[lookupSources.length];
+        for (int i = 0; i < positionCount; i++) {
+            int partition = partitionGenerator.getPartition(rawHashes[positions[i]]);
+            partitions[i] = partition;
+            partitionSizes[partition]++;
+        }
+        int[][] partitionPositions = new int[lookupSources.length][];
+        for (int partition = 0; partition < lookupSources.length; partition++) {
+            partitionPositions[partition] = new int[partitionSizes[partition]];
+            partitionSizes[partition] = 0;
+        }
+        for (int i = 0; i < positionCount; i++) {
+            int partition = partitions[i];
+            partitionPositions[partition][partitionSizes[partition]++] = positions[i];
+        }
+
+        for (int partition = 0; partition < lookupSources.length; partition++) {
+            int size = partitionSizes[partition];
+            if (size == 0) {
+                continue;
+            }
+            lookupSources[partition].getJoinPositions(partitionPositions[partition], size, hashChannelsPage, allChannelsPage, rawHashes, joinPositions);
+            encodePartitionedJoinPositions(partition, partitionPositions[partition], size, joinPositions);
+        }
+    }
+
+    private void encodePartitionedJoinPositions(int partition, int[] positions, int positionCount, long[] joinPositions)
+    {
+        for (int i = 0; i < positionCount; i++) {
+            int position = positions[i];
+            long joinPosition = joinPositions[position];
+            if (joinPosition >= 0) {
+                joinPositions[position] = encodePartitionedJoinPosition(partition, toIntExact(joinPosition));
+            }
+        }
+    }
+
     @Override
     public long getNextJoinPosition(long currentJoinPosition, int probePosition, Page allProbeChannelsPage)
     {
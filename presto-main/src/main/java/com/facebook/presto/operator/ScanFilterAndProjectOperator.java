@@ -41,6 +41,9 @@ import com.facebook.presto.split.EmptySplitPageSource;
 import com.facebook.presto.split.PageSourceProvider;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.airlift.units.DataSize;
@@ -56,10 +59,13 @@ import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 import static com.facebook.airlift.concurrent.MoreFutures.toListenableFuture;
+import static com.facebook.presto.common.RuntimeMetricName.DYNAMIC_FILTER_BLOOM_FILTER_FILTERED_ROWS;
+import static com.facebook.presto.common.RuntimeMetricName.DYNAMIC_FILTER_TOP_N_FILTERED_ROWS;
 import static com.facebook.presto.common.RuntimeMetricName.STORAGE_READ_DATA_BYTES;
 import static com.facebook.presto.common.RuntimeMetricName.STORAGE_READ_TIME_NANOS;
 import static com.facebook.presto.common.RuntimeUnit.BYTE;
 import static com.facebook.presto.common.RuntimeUnit.NANO;
+import static com.facebook.presto.common.RuntimeUnit.NONE;
 import static com.facebook.presto.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
 import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
@@ -81,12 +87,17 @@ public class ScanFilterAndProjectOperator
     private final LocalMemoryContext outputMemoryContext;
     private final SettableFuture<?> blocked = SettableFuture.create();
     private final Optional<Supplier<TupleDomain<ColumnHandle>>> dynamicFilterSupplier;
+    private final Optional<Supplier<Multimap<ColumnHandle, SplitBlockBloomFilter>>> dynamicBloomFilterSupplier;
+    private final Optional<DynamicTopNFilter> topNFilter;
+    private final int topNFilterChannel;
     private final MergingPageOutput mergingOutput;
 
     private RecordCursor cursor;
     private ConnectorPageSource pageSource;
 
     private Split split;
+    // Bloom filters of the dynamic filters, by channel, resolved when the page source of the split is created
+    private ListMultimap<Integer, SplitBlockBloomFilter> bloomFilters = ImmutableListMultimap.of();
 
     private boolean finishing;
 
@@ -104,6 +115,9 @@ public class ScanFilterAndProjectOperator
             Iterable<ColumnHandle> columns,
             Iterable<Type> types,
             Optional<Supplier<TupleDomain<ColumnHandle>>> dynamicFilterSupplier,
+            Optional<Supplier<Multimap<ColumnHandle, SplitBlockBloomFilter>>> dynamicBloomFilterSupplier,
+            Optional<DynamicTopNFilter> topNFilter,
+            Optional<ColumnHandle> topNFilterColumn,
             MergingPageOutput mergingOutput)
     {
         this.cursorProcessor = requireNonNull(cursorProcessor, "cursorProcessor is null");
@@ -118,6 +132,9 @@ public class ScanFilterAndProjectOperator
         this.pageProcessorMemoryContext = newSimpleAggregatedMemoryContext().newLocalMemoryContext(ScanFilterAndProjectOperator.class.getSimpleName());
         this.outputMemoryContext = operatorContext.newLocalSystemMemoryContext(ScanFilterAndProjectOperator.class.getSimpleName());
         this.dynamicFilterSupplier = requireNonNull(dynamicFilterSupplier, "dynamicFilterSupplier is null");
+        this.dynamicBloomFilterSupplier = requireNonNull(dynamicBloomFilterSupplier, "dynamicBloomFilterSupplier is null");
+        this.topNFilter = requireNonNull(topNFilter, "topNFilter is null");
+        this.topNFilterChannel = requireNonNull(topNFilterColumn, "topNFilterColumn is null").map(this.columns::indexOf).orElse(-1);
         this.mergingOutput = requireNonNull(mergingOutput, "mergingOutput is null");
 
         this.pageBuilder = new PageBuilder(ImmutableList.copyOf(requireNonNull(types, "types is null")));
@@ -253,6 +270,7 @@ public class ScanFilterAndProjectOperator
             }
             else {
                 pageSource = source;
+                bloomFilters = resolveBloomFilters();
             }
         }
 
@@ -300,9 +318,13 @@ public class ScanFilterAndProjectOperator
             if (page != null) {
                 // update operator stats
                 page = recordProcessedInput(page);
+                page = filterWithBloomFilters(page);
+                page = filterWithTopNFilter(page);
 
-                Iterator<Optional<Page>> output = pageProcessor.process(sqlFunctionProperties, yieldSignal, pageProcessorMemoryContext, page);
-                mergingOutput.addInput(output);
+                if (page.getPositionCount() > 0) {
+                    Iterator<Optional<Page>> output = pageProcessor.process(sqlFunctionProperties, yieldSignal, pageProcessorMemoryContext, page);
+                    mergingOutput.addInput(output);
+                }
             }
 
             // stats update
@@ -318,6 +340,85 @@ public class ScanFilterAndProjectOperator
         return result;
     }
 
+    private ListMultimap<Integer, SplitBlockBloomFilter> resolveBloomFilters()
+    {
+        if (!dynamicBloomFilterSupplier.isPresent()) {
+            return ImmutableListMultimap.of();
+        }
+        ImmutableListMultimap.Builder<Integer, SplitBlockBloomFilter> builder = ImmutableListMultimap.builder();
+        for (Map.Entry<ColumnHandle, SplitBlockBloomFilter> entry : dynamicBloomFilterSupplier.get().get().entries()) {
+            int channel = columns.indexOf(entry.getKey());
+            if (channel >= 0) {
+                builder.put(channel, entry.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Drops the rows whose values are not in the Bloom filters. The filtered columns are loaded eagerly
+     * for all the rows of the page, while the other columns stay lazy and are only decoded for the
+     * remaining rows, if at all.
+     */
+    private Page filterWithBloomFilters(Page page)
+    {
+        if (bloomFilters.isEmpty()) {
+            return page;
+        }
+
+        int positionCount = page.getPositionCount();
+        int[] positions = new int[positionCount];
+        for (int position = 0; position < positionCount; position++) {
+            positions[position] = position;
+        }
+        int selectedCount = positionCount;
+        for (Map.Entry<Integer, SplitBlockBloomFilter> entry : bloomFilters.entries()) {
+            selectedCount = entry.getValue().filterPositions(page.getBlock(entry.getKey()), positions, selectedCount);
+        }
+        if (selectedCount == positionCount) {
+            return page;
+        }
+        operatorContext.getRuntimeStats().addMetricValue(DYNAMIC_FILTER_BLOOM_FILTER_FILTERED_ROWS, NONE, positionCount - selectedCount);
+        return selectPositions(page, positions, selectedCount);
+    }
+
+    /**
+     * Drops the rows that sort after the rows kept by the top N operator of the driver.
+     */
+    private Page filterWithTopNFilter(Page page)
+    {
+        if (!topNFilter.isPresent() || topNFilterChannel < 0 || !topNFilter.get().hasBoundary() || page.getPositionCount() == 0) {
+            return page;
+        }
+
+        int positionCount = page.getPositionCount();
+        int[] positions = new int[positionCount];
+        for (int position = 0; position < positionCount; position++) {
+            positions[position] = position;
+        }
+        int selectedCount = topNFilter.get().filterPositions(page.getBlock(topNFilterChannel), positions, positionCount);
+        if (selectedCount == positionCount) {
+            return page;
+        }
+        operatorContext.getRuntimeStats().addMetricValue(DYNAMIC_FILTER_TOP_N_FILTERED_ROWS, NONE, positionCount - selectedCount);
+        return selectPositions(page, positions, selectedCount);
+    }
+
+    private static Page selectPositions(Page page, int[] positions, int length)
+    {
+        Block[] blocks = new Block[page.getChannelCount()];
+        for (int channel = 0; channel < blocks.length; channel++) {
+            Block block = page.getBlock(channel);
+            if (block instanceof LazyBlock && !((LazyBlock) block).isLoaded()) {
+                blocks[channel] = new LazyBlock(length, lazyBlock -> lazyBlock.setBlock(block.getPositions(positions, 0, length)));
+            }
+            else {
+                blocks[channel] = block.getPositions(positions, 0, length);
+            }
+        }
+        return new Page(length, blocks);
+    }
+
     private final class RecordingLazyBlockLoader
             implements LazyBlockLoader<LazyBlock>
     {
@@ -417,6 +518,8 @@ public class ScanFilterAndProjectOperator
         private final List<ColumnHandle> columns;
         private final List<Type> types;
         private final Optional<Supplier<TupleDomain<ColumnHandle>>> dynamicFilterSupplier;
+        private final Optional<Supplier<Multimap<ColumnHandle, SplitBlockBloomFilter>>> dynamicBloomFilterSupplier;
+        private final Optional<DynamicTopNFilter.Factory> topNFilterFactory;
         private final DataSize minOutputPageSize;
         private final int minOutputPageRowCount;
         private boolean closed;
@@ -434,6 +537,70 @@ public class ScanFilterAndProjectOperator
                 Optional<Supplier<TupleDomain<ColumnHandle>>> dynamicFilterSupplier,
                 DataSize minOutputPageSize,
                 int minOutputPageRowCount)
+        {
+            this(
+                    operatorId,
+                    planNodeId,
+                    sourceId,
+                    pageSourceProvider,
+                    cursorProcessor,
+                    pageProcessor,
+                    table,
+                    columns,
+                    types,
+                    dynamicFilterSupplier,
+                    Optional.empty(),
+                    minOutputPageSize,
+                    minOutputPageRowCount);
+        }
+
+        public ScanFilterAndProjectOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                PlanNodeId sourceId,
+                PageSourceProvider pageSourceProvider,
+                Supplier<CursorProcessor> cursorProcessor,
+                Supplier<PageProcessor> pageProcessor,
+                TableHandle table,
+                Iterable<ColumnHandle> columns,
+                List<Type> types,
+                Optional<Supplier<TupleDomain<ColumnHandle>>> dynamicFilterSupplier,
+                Optional<Supplier<Multimap<ColumnHandle, SplitBlockBloomFilter>>> dynamicBloomFilterSupplier,
+                DataSize minOutputPageSize,
+                int minOutputPageRowCount)
+        {
+            this(
+                    operatorId,
+                    planNodeId,
+                    sourceId,
+                    pageSourceProvider,
+                    cursorProcessor,
+                    pageProcessor,
+                    table,
+                    columns,
+                    types,
+                    dynamicFilterSupplier,
+                    dynamicBloomFilterSupplier,
+                    Optional.empty(),
+                    minOutputPageSize,
+                    minOutputPageRowCount);
+        }
+
+        public ScanFilterAndProjectOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                PlanNodeId sourceId,
+                PageSourceProvider pageSourceProvider,
+                Supplier<CursorProcessor> cursorProcessor,
+                Supplier<PageProcessor> pageProcessor,
+                TableHandle table,
+                Iterable<ColumnHandle> columns,
+                List<Type> types,
+                Optional<Supplier<TupleDomain<ColumnHandle>>> dynamicFilterSupplier,
+                Optional<Supplier<Multimap<ColumnHandle, SplitBlockBloomFilter>>> dynamicBloomFilterSupplier,
+                Optional<DynamicTopNFilter.Factory> topNFilterFactory,
+                DataSize minOutputPageSize,
+                int minOutputPageRowCount)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -445,6 +612,8 @@ public class ScanFilterAndProjectOperator
             this.columns = ImmutableList.copyOf(requireNonNull(columns, "columns is null"));
             this.types = requireNonNull(types, "types is null");
             this.dynamicFilterSupplier = requireNonNull(dynamicFilterSupplier, "dynamicFilterSupplier is null");
+            this.dynamicBloomFilterSupplier = requireNonNull(dynamicBloomFilterSupplier, "dynamicBloomFilterSupplier is null");
+            this.topNFilterFactory = requireNonNull(topNFilterFactory, "topNFilterFactory is null");
             this.minOutputPageSize = requireNonNull(minOutputPageSize, "minOutputPageSize is null");
             this.minOutputPageRowCount = minOutputPageRowCount;
         }
@@ -470,6 +639,9 @@ public class ScanFilterAndProjectOperator
                     columns,
                     types,
                     dynamicFilterSupplier,
+                    dynamicBloomFilterSupplier,
+                    topNFilterFactory.map(factory -> factory.getFilter(driverContext)),
+                    topNFilterFactory.map(DynamicTopNFilter.Factory::getColumn),
                     new MergingPageOutput(types, minOutputPageSize.toBytes(), minOutputPageRowCount));
         }
 
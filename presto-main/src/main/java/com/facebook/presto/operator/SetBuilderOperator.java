@@ -17,6 +17,8 @@ import com.facebook.presto.common.Page;
 import com.facebook.presto.common.type.Type;
 import com.facebook.presto.operator.ChannelSet.ChannelSetBuilder;
 import com.facebook.presto.spi.plan.PlanNodeId;
+import com.facebook.presto.spiller.PartitioningSpiller;
+import com.facebook.presto.spiller.PartitioningSpillerFactory;
 import com.facebook.presto.sql.gen.JoinCompiler;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -24,10 +26,15 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import java.io.IOException;
 import java.util.Optional;
 
+import static com.facebook.presto.operator.SpillingUtils.checkSpillSucceeded;
+import static com.facebook.presto.operator.SpillingUtils.partitionAndSpillAll;
+import static com.facebook.presto.spiller.PartitioningSpillerFactory.unsupportedPartitioningSpillerFactory;
 import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
@@ -35,11 +42,23 @@ import static java.util.Objects.requireNonNull;
 public class SetBuilderOperator
         implements Operator
 {
+    // number of partitions of the set, when it is spilled
+    private static final int SPILL_PARTITION_COUNT = 16;
+
     public static class SetSupplier
     {
         private final Type type;
         private final SettableFuture<ChannelSet> channelSetFuture = SettableFuture.create();
 
+        @GuardedBy("this")
+        private Optional<SpilledChannelSet> spilledChannelSet = Optional.empty();
+        @GuardedBy("this")
+        private int probeOperatorCount;
+        @GuardedBy("this")
+        private int openProbeFactories;
+        @GuardedBy("this")
+        private boolean probeFactoriesAdded;
+
         public SetSupplier(Type type)
         {
             this.type = requireNonNull(type, "type is null");
@@ -55,11 +74,84 @@ public class SetBuilderOperator
             return channelSetFuture;
         }
 
+        /**
+         * Returns the spilled part of the set. Must be called once the future returned by {@link #getChannelSet()} is done.
+         */
+        public synchronized Optional<SpilledChannelSet> getSpilledChannelSet()
+        {
+            checkState(channelSetFuture.isDone(), "ChannelSet is not built yet");
+            return spilledChannelSet;
+        }
+
         void setChannelSet(ChannelSet channelSet)
         {
             boolean wasSet = channelSetFuture.set(requireNonNull(channelSet, "channelSet is null"));
             checkState(wasSet, "ChannelSet already set");
         }
+
+        void setChannelSet(ChannelSet channelSet, SpilledChannelSet spilledChannelSet)
+        {
+            synchronized (this) {
+                this.spilledChannelSet = Optional.of(requireNonNull(spilledChannelSet, "spilledChannelSet is null"));
+                disposeReleasedPartitions();
+            }
+            setChannelSet(channelSet);
+        }
+
+        synchronized void addProbeFactory()
+        {
+            probeFactoriesAdded = true;
+            openProbeFactories++;
+        }
+
+        synchronized void probeFactoryClosed()
+        {
+            openProbeFactories--;
+            disposeReleasedPartitions();
+        }
+
+        synchronized void addProbeOperator()
+        {
+            probeOperatorCount++;
+        }
+
+        /**
+         * Releases the given partition of the spilled set on behalf of one probe operator.
+         */
+        public synchronized void releaseSpilledPartition(int partition)
+        {
+            checkState(spilledChannelSet.isPresent(), "Set was not spilled");
+            spilledChannelSet.get().releasePartition(partition, getExpectedReleases());
+        }
+
+        /**
+         * Releases, on behalf of a closed probe operator, the partitions of the spilled set that the operator did not release yet.
+         */
+        public synchronized void probeOperatorClosed(int releasedPartitions)
+        {
+            if (!spilledChannelSet.isPresent()) {
+                // the set was not spilled, or it is not built yet and this operator will not be waiting for its partitions
+                probeOperatorCount--;
+                return;
+            }
+            SpilledChannelSet set = spilledChannelSet.get();
+            for (int partition = releasedPartitions; partition < set.getPartitionCount(); partition++) {
+                set.releasePartition(partition, getExpectedReleases());
+            }
+        }
+
+        @GuardedBy("this")
+        private void disposeReleasedPartitions()
+        {
+            spilledChannelSet.ifPresent(set -> set.disposeReleasedPartitions(getExpectedReleases()));
+        }
+
+        @GuardedBy("this")
+        private int getExpectedReleases()
+        {
+            // while probe operators can still be created, no partition can be dropped
+            return !probeFactoriesAdded || openProbeFactories > 0 ? Integer.MAX_VALUE : probeOperatorCount;
+        }
     }
 
     public static class SetBuilderOperatorFactory
@@ -73,6 +165,8 @@ public class SetBuilderOperator
         private final int expectedPositions;
         private boolean closed;
         private final JoinCompiler joinCompiler;
+        private final boolean spillEnabled;
+        private final PartitioningSpillerFactory partitioningSpillerFactory;
 
         public SetBuilderOperatorFactory(
                 int operatorId,
@@ -82,15 +176,45 @@ public class SetBuilderOperator
                 Optional<Integer> hashChannel,
                 int expectedPositions,
                 JoinCompiler joinCompiler)
+        {
+            this(operatorId, planNodeId, type, setChannel, hashChannel, expectedPositions, joinCompiler, false, unsupportedPartitioningSpillerFactory());
+        }
+
+        public SetBuilderOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                Type type,
+                int setChannel,
+                Optional<Integer> hashChannel,
+                int expectedPositions,
+                JoinCompiler joinCompiler,
+                boolean spillEnabled,
+                PartitioningSpillerFactory partitioningSpillerFactory)
+        {
+            this(operatorId, planNodeId, new SetSupplier(requireNonNull(type, "type is null")), setChannel, hashChannel, expectedPositions, joinCompiler, spillEnabled, partitioningSpillerFactory);
+        }
+
+        private SetBuilderOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                SetSupplier setProvider,
+                int setChannel,
+                Optional<Integer> hashChannel,
+                int expectedPositions,
+                JoinCompiler joinCompiler,
+                boolean spillEnabled,
+                PartitioningSpillerFactory partitioningSpillerFactory)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
             Preconditions.checkArgument(setChannel >= 0, "setChannel is negative");
-            this.setProvider = new SetSupplier(requireNonNull(type, "type is null"));
+            this.setProvider = requireNonNull(setProvider, "setProvider is null");
             this.setChannel = setChannel;
             this.hashChannel = requireNonNull(hashChannel, "hashChannel is null");
             this.expectedPositions = expectedPositions;
             this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
+            this.spillEnabled = spillEnabled;
+            this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
         }
 
         public SetSupplier getSetProvider()
@@ -103,7 +227,7 @@ public class SetBuilderOperator
         {
             checkState(!closed, "Factory is already closed");
             OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId, SetBuilderOperator.class.getSimpleName());
-            return new SetBuilderOperator(operatorContext, setProvider, setChannel, hashChannel, expectedPositions, joinCompiler);
+            return new SetBuilderOperator(operatorContext, setProvider, setChannel, hashChannel, expectedPositions, joinCompiler, spillEnabled, partitioningSpillerFactory);
         }
 
         @Override
@@ -115,21 +239,33 @@ public class SetBuilderOperator
         @Override
         public OperatorFactory duplicate()
         {
-            return new SetBuilderOperatorFactory(operatorId, planNodeId, setProvider.getType(), setChannel, hashChannel, expectedPositions, joinCompiler);
+            return new SetBuilderOperatorFactory(operatorId, planNodeId, setProvider.getType(), setChannel, hashChannel, expectedPositions, joinCompiler, spillEnabled, partitioningSpillerFactory);
         }
     }
 
     private final OperatorContext operatorContext;
     private final SetSupplier setSupplier;
     private final int[] sourceChannels;
+    private final Optional<Integer> channelSetHashChannel;
+    private final int expectedPositions;
+    private final JoinCompiler joinCompiler;
+    private final boolean spillEnabled;
+    private final PartitioningSpillerFactory partitioningSpillerFactory;
 
-    private final ChannelSetBuilder channelSetBuilder;
+    private ChannelSetBuilder channelSetBuilder;
 
+    private boolean finishing;
     private boolean finished;
 
     @Nullable
     private Work<?> unfinishedWork;  // The pending work for current page.
 
+    private Optional<PartitioningSpiller> spiller = Optional.empty();
+    private ListenableFuture<?> spillInProgress = NOT_BLOCKED;
+    // the spilled values contain null, or any value at all
+    private boolean spilledNull;
+    private boolean spilledValues;
+
     public SetBuilderOperator(
             OperatorContext operatorContext,
             SetSupplier setSupplier,
@@ -137,6 +273,19 @@ public class SetBuilderOperator
             Optional<Integer> hashChannel,
             int expectedPositions,
             JoinCompiler joinCompiler)
+    {
+        this(operatorContext, setSupplier, setChannel, hashChannel, expectedPositions, joinCompiler, false, unsupportedPartitioningSpillerFactory());
+    }
+
+    public SetBuilderOperator(
+            OperatorContext operatorContext,
+            SetSupplier setSupplier,
+            int setChannel,
+            Optional<Integer> hashChannel,
+            int expectedPositions,
+            JoinCompiler joinCompiler,
+            boolean spillEnabled,
+            PartitioningSpillerFactory partitioningSpillerFactory)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
         this.setSupplier = requireNonNull(setSupplier, "setProvider is null");
@@ -149,13 +298,23 @@ public class SetBuilderOperator
         }
 
         // Set builder is has a single channel which goes in channel 0, if hash is present, add a hashBlock to channel 1
-        Optional<Integer> channelSetHashChannel = hashChannel.isPresent() ? Optional.of(1) : Optional.empty();
-        this.channelSetBuilder = new ChannelSetBuilder(
+        this.channelSetHashChannel = hashChannel.isPresent() ? Optional.of(1) : Optional.empty();
+        this.expectedPositions = expectedPositions;
+        this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
+        this.spillEnabled = spillEnabled;
+        this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
+        this.channelSetBuilder = createChannelSetBuilder();
+    }
+
+    private ChannelSetBuilder createChannelSetBuilder()
+    {
+        return new ChannelSetBuilder(
                 setSupplier.getType(),
                 channelSetHashChannel,
                 expectedPositions,
-                requireNonNull(operatorContext, "operatorContext is null"),
-                requireNonNull(joinCompiler, "joinCompiler is null"));
+                operatorContext,
+                joinCompiler,
+                spillEnabled);
     }
 
     @Override
@@ -170,8 +329,46 @@ public class SetBuilderOperator
         if (finished) {
             return;
         }
+        if (unfinishedWork != null && !processUnfinishedWork()) {
+            return;
+        }
+
+        if (!finishing) {
+            finishing = true;
+            if (spiller.isPresent()) {
+                // all values have to be spilled, so that each partition can be probed on its own
+                spillInProgress = spillValues();
+            }
+        }
+
+        if (!spillInProgress.isDone()) {
+            return;
+        }
+        checkSpillSucceeded(spillInProgress);
+
+        if (spiller.isPresent()) {
+            channelSetBuilder = createChannelSetBuilder();
+            SpilledChannelSet spilledChannelSet = new SpilledChannelSet(
+                    setSupplier.getType(),
+                    channelSetHashChannel,
+                    SPILL_PARTITION_COUNT,
+                    spilledNull,
+                    !spilledValues,
+                    operatorContext.getSession(),
+                    joinCompiler,
+                    spiller.get());
+            // the spilled set is now owned by the set supplier
+            spiller = Optional.empty();
+            operatorContext.localRevocableMemoryContext().setBytes(0);
+            setSupplier.setChannelSet(channelSetBuilder.build(), spilledChannelSet);
+            finished = true;
+            return;
+        }
 
         ChannelSet channelSet = channelSetBuilder.build();
+        // the set is now used by the probe side, and its memory can no longer be revoked
+        operatorContext.localUserMemoryContext().setBytes(channelSet.getEstimatedSizeInBytes());
+        operatorContext.localRevocableMemoryContext().setBytes(0);
         setSupplier.setChannelSet(channelSet);
         operatorContext.recordOutput(channelSet.getEstimatedSizeInBytes(), channelSet.size());
         finished = true;
@@ -183,13 +380,19 @@ public class SetBuilderOperator
         return finished;
     }
 
+    @Override
+    public ListenableFuture<?> isBlocked()
+    {
+        return spillInProgress;
+    }
+
     @Override
     public boolean needsInput()
     {
         // Since SetBuilderOperator doesn't produce any output, the getOutput()
         // method may never be called. We need to handle any unfinished work
         // before addInput() can be called again.
-        return !finished && (unfinishedWork == null || processUnfinishedWork());
+        return !finishing && spillInProgress.isDone() && (unfinishedWork == null || processUnfinishedWork());
     }
 
     @Override
@@ -208,6 +411,45 @@ public class SetBuilderOperator
         return null;
     }
 
+    @Override
+    public ListenableFuture<?> startMemoryRevoke()
+    {
+        if (finishing || channelSetBuilder.size() == 0) {
+            return NOT_BLOCKED;
+        }
+        // the set builder does not yield for revocable memory, so there is never unfinished work to revoke
+        checkState(unfinishedWork == null, "Cannot revoke memory with unfinished work");
+        checkState(spillInProgress.isDone(), "Previous spill still in progress");
+        checkSpillSucceeded(spillInProgress);
+
+        spillInProgress = spillValues();
+        return spillInProgress;
+    }
+
+    @Override
+    public void finishMemoryRevoke()
+    {
+        if (finishing || !spiller.isPresent()) {
+            return;
+        }
+        channelSetBuilder = createChannelSetBuilder();
+        channelSetBuilder.updateMemoryReservation();
+    }
+
+    private ListenableFuture<?> spillValues()
+    {
+        if (!spiller.isPresent()) {
+            spiller = Optional.of(partitioningSpillerFactory.create(
+                    channelSetBuilder.getValueTypes(),
+                    SpilledChannelSet.createPartitionGenerator(setSupplier.getType(), 0, channelSetHashChannel, SPILL_PARTITION_COUNT),
+                    operatorContext.getSpillContext().newLocalSpillContext(),
+                    operatorContext.aggregateSystemMemoryContext()));
+        }
+        spilledNull |= channelSetBuilder.containsNull();
+        spilledValues |= channelSetBuilder.size() > 0;
+        return partitionAndSpillAll(spiller.get(), channelSetBuilder.getValuePages());
+    }
+
     private boolean processUnfinishedWork()
     {
         // Processes the unfinishedWork for this page by adding the data to the hash table. If this page
@@ -222,6 +464,15 @@ public class SetBuilderOperator
         return done;
     }
 
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (spiller.isPresent()) {
+            spiller.get().close();
+        }
+    }
+
     @VisibleForTesting
     public int getCapacity()
     {
@@ -17,6 +17,7 @@ import com.facebook.presto.common.NotSupportedException;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.common.PageBuilder;
 import com.facebook.presto.common.block.Block;
+import com.facebook.presto.common.block.BlockBuilder;
 import com.facebook.presto.common.type.Type;
 import com.facebook.presto.metadata.FunctionAndTypeManager;
 import com.facebook.presto.spi.PrestoException;
@@ -107,6 +108,20 @@ public class SimplePagesHashStrategy
         }
     }
 
+    @Override
+    public void appendTo(int[] blockIndexes, int[] positions, int length, PageBuilder pageBuilder, int outputChannelOffset)
+    {
+        for (int outputIndex : outputChannels) {
+            Type type = types.get(outputIndex);
+            List<Block> channel = channels.get(outputIndex);
+            BlockBuilder blockBuilder = pageBuilder.getBlockBuilder(outputChannelOffset);
+            for (int i = 0; i < length; i++) {
+                type.appendTo(channel.get(blockIndexes[i]), positions[i], blockBuilder);
+            }
+            outputChannelOffset++;
+        }
+    }
+
     @Override
     public long hashPosition(int blockIndex, int position)
     {
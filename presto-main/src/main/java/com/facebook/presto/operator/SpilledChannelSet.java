@@ -0,0 +1,206 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.Session;
+import com.facebook.presto.common.Page;
+import com.facebook.presto.common.type.Type;
+import com.facebook.presto.memory.context.AggregatedMemoryContext;
+import com.facebook.presto.memory.context.LocalMemoryContext;
+import com.facebook.presto.operator.ChannelSet.ChannelSetBuilder;
+import com.facebook.presto.operator.exchange.LocalPartitionGenerator;
+import com.facebook.presto.spiller.PartitioningSpiller;
+import com.facebook.presto.sql.gen.JoinCompiler;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Verify.verify;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Set of a semi join filtering source that was spilled to disk, partitioned by the hash of the values.
+ * Probe operators process the partitions one at a time. A partition is loaded by the first probe
+ * operator that needs it, and is shared with the other probe operators until all of them release it.
+ * The memory of a loaded partition is reserved once, for as long as the partition is loaded.
+ */
+@ThreadSafe
+public class SpilledChannelSet
+{
+    private final Type type;
+    // channel of the precomputed hash in the spilled pages
+    private final Optional<Integer> hashChannel;
+    private final int partitionCount;
+    private final boolean containsNull;
+    private final boolean empty;
+    private final Session session;
+    private final JoinCompiler joinCompiler;
+
+    @GuardedBy("this")
+    private final PartitioningSpiller spiller;
+    @GuardedBy("this")
+    private final ChannelSet[] loadedPartitions;
+    @GuardedBy("this")
+    private final LocalMemoryContext[] partitionMemoryContexts;
+    @GuardedBy("this")
+    private final int[] partitionReleases;
+    @GuardedBy("this")
+    private final boolean[] disposedPartitions;
+    @GuardedBy("this")
+    private boolean closed;
+
+    public SpilledChannelSet(
+            Type type,
+            Optional<Integer> hashChannel,
+            int partitionCount,
+            boolean containsNull,
+            boolean empty,
+            Session session,
+            JoinCompiler joinCompiler,
+            PartitioningSpiller spiller)
+    {
+        this.type = requireNonNull(type, "type is null");
+        this.hashChannel = requireNonNull(hashChannel, "hashChannel is null");
+        this.partitionCount = partitionCount;
+        this.containsNull = containsNull;
+        this.empty = empty;
+        this.session = requireNonNull(session, "session is null");
+        this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
+        this.spiller = requireNonNull(spiller, "spiller is null");
+        this.loadedPartitions = new ChannelSet[partitionCount];
+        this.partitionMemoryContexts = new LocalMemoryContext[partitionCount];
+        this.partitionReleases = new int[partitionCount];
+        this.disposedPartitions = new boolean[partitionCount];
+    }
+
+    /**
+     * Creates the partition generator that assigns values to the partitions of this set.
+     */
+    public static LocalPartitionGenerator createPartitionGenerator(Type type, int valueChannel, Optional<Integer> hashChannel, int partitionCount)
+    {
+        HashGenerator hashGenerator = hashChannel.isPresent()
+                ? new PrecomputedHashGenerator(hashChannel.get())
+                : new InterpretedHashGenerator(ImmutableList.of(type), new int[] {valueChannel});
+        return new LocalPartitionGenerator(hashGenerator, partitionCount);
+    }
+
+    public int getPartitionCount()
+    {
+        return partitionCount;
+    }
+
+    /**
+     * Returns whether the whole set, not only one of its partitions, contains null.
+     */
+    public boolean containsNull()
+    {
+        return containsNull;
+    }
+
+    /**
+     * Returns whether the whole set, not only one of its partitions, is empty.
+     */
+    public boolean isEmpty()
+    {
+        return empty;
+    }
+
+    /**
+     * Returns the values of the given partition, loading them from disk if no other probe operator did it yet.
+     * The memory of the loaded partition is reserved in a new context of the given memory context, until the
+     * partition is released by all probe operators.
+     */
+    public synchronized ChannelSet getPartition(int partition, AggregatedMemoryContext memoryContext)
+    {
+        checkState(!closed, "Spilled set is already closed");
+        checkState(!disposedPartitions[partition], "Partition %s was already released by all probe operators", partition);
+        if (loadedPartitions[partition] == null) {
+            LocalMemoryContext partitionMemoryContext = memoryContext.newLocalMemoryContext(SpilledChannelSet.class.getSimpleName());
+            partitionMemoryContexts[partition] = partitionMemoryContext;
+            ChannelSetBuilder builder = new ChannelSetBuilder(type, hashChannel, 10_000, session, joinCompiler, partitionMemoryContext);
+            Iterator<Page> pages = spiller.getSpilledPages(partition);
+            while (pages.hasNext()) {
+                // the builder never yields, as it does not wait for memory
+                verify(builder.addPage(pages.next()).process(), "Work did not finish");
+            }
+            builder.updateMemoryReservation();
+            loadedPartitions[partition] = builder.build();
+        }
+        return loadedPartitions[partition];
+    }
+
+    /**
+     * Releases the partition on behalf of one probe operator. Once the partition was released
+     * {@code probeOperatorCount} times, it is dropped from memory.
+     */
+    public synchronized void releasePartition(int partition, int probeOperatorCount)
+    {
+        partitionReleases[partition]++;
+        disposeReleasedPartitions(probeOperatorCount);
+    }
+
+    /**
+     * Drops the partitions that were released by all the {@code probeOperatorCount} probe operators,
+     * and removes the spill files once all partitions are dropped.
+     */
+    public synchronized void disposeReleasedPartitions(int probeOperatorCount)
+    {
+        boolean allDisposed = true;
+        for (int partition = 0; partition < partitionCount; partition++) {
+            if (partitionReleases[partition] >= probeOperatorCount) {
+                loadedPartitions[partition] = null;
+                freePartitionMemory(partition);
+                disposedPartitions[partition] = true;
+            }
+            allDisposed &= disposedPartitions[partition];
+        }
+        if (allDisposed) {
+            close();
+        }
+    }
+
+    @GuardedBy("this")
+    private void freePartitionMemory(int partition)
+    {
+        if (partitionMemoryContexts[partition] != null) {
+            partitionMemoryContexts[partition].close();
+            partitionMemoryContexts[partition] = null;
+        }
+    }
+
+    public synchronized void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int partition = 0; partition < partitionCount; partition++) {
+            loadedPartitions[partition] = null;
+            freePartitionMemory(partition);
+        }
+        try {
+            spiller.close();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
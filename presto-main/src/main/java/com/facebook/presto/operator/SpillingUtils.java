@@ -13,12 +13,21 @@
  */
 package com.facebook.presto.operator;
 
+import com.facebook.presto.common.Page;
+import com.facebook.presto.common.PageBuilder;
 import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spiller.PartitioningSpiller;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.ListenableFuture;
 
+import java.util.Iterator;
 import java.util.concurrent.Future;
 
 import static com.facebook.airlift.concurrent.MoreFutures.getFutureValue;
 import static com.facebook.presto.spi.StandardErrorCode.GENERIC_SPILL_FAILURE;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.Futures.transformAsync;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static java.lang.String.format;
 
 public class SpillingUtils
@@ -43,4 +52,47 @@ public class SpillingUtils
             throw new PrestoException(GENERIC_SPILL_FAILURE, format("Spilling failed: %s", runtimeException.getMessage()), runtimeException);
         }
     }
+
+    /**
+     * Spills all pages to the partitions they belong to. The spill of a page is started once the spill
+     * of the previous page has finished, as the spiller does not allow concurrent spills.
+     */
+    public static ListenableFuture<?> partitionAndSpillAll(PartitioningSpiller spiller, Iterator<Page> pages)
+    {
+        while (pages.hasNext()) {
+            ListenableFuture<?> spillingFuture = spiller.partitionAndSpill(pages.next(), partition -> true).getSpillingFuture();
+            if (!spillingFuture.isDone()) {
+                return transformAsync(spillingFuture, ignored -> partitionAndSpillAll(spiller, pages), directExecutor());
+            }
+            checkSpillSucceeded(spillingFuture);
+        }
+        return immediateFuture(null);
+    }
+
+    /**
+     * Returns the values of the first {@code groupCount} groups of the hash as pages of {@link GroupByHash#getTypes()}.
+     */
+    public static Iterator<Page> getGroupValuePages(GroupByHash groupByHash, int groupCount)
+    {
+        return new AbstractIterator<Page>()
+        {
+            private final PageBuilder pageBuilder = new PageBuilder(groupByHash.getTypes());
+            private int groupId;
+
+            @Override
+            protected Page computeNext()
+            {
+                if (groupId >= groupCount) {
+                    return endOfData();
+                }
+                pageBuilder.reset();
+                while (!pageBuilder.isFull() && groupId < groupCount) {
+                    pageBuilder.declarePosition();
+                    groupByHash.appendValuesTo(groupId, pageBuilder, 0);
+                    groupId++;
+                }
+                return pageBuilder.build();
+            }
+        };
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.common.block.Block;
+import com.facebook.presto.common.type.Type;
+import io.airlift.slice.XxHash64;
+import org.openjdk.jol.info.ClassLayout;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.airlift.slice.SizeOf.sizeOf;
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bloom filter over the non-null values of a type, split in blocks of 256 bits: a value only sets
+ * one bit in each of the eight 32-bit words of a single block, so that a lookup touches one cache line.
+ * Nulls are never contained in the filter, as joins do not match them.
+ */
+@NotThreadSafe
+public class SplitBlockBloomFilter
+{
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(SplitBlockBloomFilter.class).instanceSize();
+
+    private static final int WORDS_PER_BLOCK = 8;
+    private static final int BYTES_PER_BLOCK = WORDS_PER_BLOCK * Integer.BYTES;
+    private static final int MAX_BLOCK_COUNT = 1 << 24;
+    private static final int[] SALT = {
+            0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d,
+            0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31};
+
+    private final Type type;
+    private final int[] words;
+    private final int blockCount;
+
+    /**
+     * Creates an empty filter using at most {@code maxSizeInBytes} for its bits, but at least one block.
+     */
+    public SplitBlockBloomFilter(Type type, long maxSizeInBytes)
+    {
+        this(type, new int[blockCount(maxSizeInBytes) * WORDS_PER_BLOCK]);
+    }
+
+    private SplitBlockBloomFilter(Type type, int[] words)
+    {
+        this.type = requireNonNull(type, "type is null");
+        this.words = requireNonNull(words, "words is null");
+        this.blockCount = words.length / WORDS_PER_BLOCK;
+    }
+
+    private static int blockCount(long maxSizeInBytes)
+    {
+        checkArgument(maxSizeInBytes > 0, "maxSizeInBytes must be positive");
+        return highestOneBit((int) max(1, min(maxSizeInBytes / BYTES_PER_BLOCK, MAX_BLOCK_COUNT)));
+    }
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    public void add(Block block, int position)
+    {
+        if (block.isNull(position)) {
+            return;
+        }
+        long hash = hash(block, position);
+        int offset = blockOffset(hash);
+        int key = (int) hash;
+        for (int i = 0; i < WORDS_PER_BLOCK; i++) {
+            words[offset + i] |= 1 << ((key * SALT[i]) >>> 27);
+        }
+    }
+
+    public boolean mightContain(Block block, int position)
+    {
+        if (block.isNull(position)) {
+            return false;
+        }
+        long hash = hash(block, position);
+        int offset = blockOffset(hash);
+        int key = (int) hash;
+        for (int i = 0; i < WORDS_PER_BLOCK; i++) {
+            if ((words[offset + i] & (1 << ((key * SALT[i]) >>> 27))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keeps the first {@code positionCount} entries of {@code positions} whose value of {@code block} might be in the filter,
+     * moving them to the front of the array, and returns how many were kept.
+     */
+    public int filterPositions(Block block, int[] positions, int positionCount)
+    {
+        int selectedCount = 0;
+        for (int i = 0; i < positionCount; i++) {
+            int position = positions[i];
+            if (mightContain(block, position)) {
+                positions[selectedCount] = position;
+                selectedCount++;
+            }
+        }
+        return selectedCount;
+    }
+
+    /**
+     * Adds all the values of {@code other}, which must have the same type and size, to this filter.
+     */
+    public void merge(SplitBlockBloomFilter other)
+    {
+        checkArgument(type.equals(other.type), "Cannot merge a filter of %s into a filter of %s", other.type, type);
+        checkArgument(words.length == other.words.length, "Cannot merge filters of different sizes");
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= other.words[i];
+        }
+    }
+
+    public SplitBlockBloomFilter copy()
+    {
+        return new SplitBlockBloomFilter(type, words.clone());
+    }
+
+    public long getRetainedSizeInBytes()
+    {
+        return INSTANCE_SIZE + sizeOf(words);
+    }
+
+    private long hash(Block block, int position)
+    {
+        // the hash of some types is the value itself, spread it over all the bits
+        return XxHash64.hash(type.hash(block, position));
+    }
+
+    private int blockOffset(long hash)
+    {
+        return (int) (((hash >>> 32) * blockCount) >>> 32) * WORDS_PER_BLOCK;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("type", type)
+                .add("blockCount", blockCount)
+                .toString();
+    }
+}
@@ -18,6 +18,7 @@ import com.facebook.airlift.stats.GcMonitor;
 import com.facebook.presto.Session;
 import com.facebook.presto.common.RuntimeStats;
 import com.facebook.presto.execution.Lifespan;
+import com.facebook.presto.execution.StateMachine.StateChangeListener;
 import com.facebook.presto.execution.TaskId;
 import com.facebook.presto.execution.TaskMetadataContext;
 import com.facebook.presto.execution.TaskState;
@@ -287,6 +288,14 @@ public class TaskContext
         return taskStateMachine.getState();
     }
 
+    /**
+     * Listener is always notified asynchronously, see {@link TaskStateMachine#addStateChangeListener}.
+     */
+    public void addStateChangeListener(StateChangeListener<TaskState> stateChangeListener)
+    {
+        taskStateMachine.addStateChangeListener(stateChangeListener);
+    }
+
     public TaskMetadataContext getTaskMetadataContext()
     {
         return taskMetadataContext;
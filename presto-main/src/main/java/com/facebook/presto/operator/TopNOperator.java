@@ -16,14 +16,15 @@ package com.facebook.presto.operator;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.common.block.SortOrder;
 import com.facebook.presto.common.type.Type;
+import com.facebook.presto.memory.context.LocalMemoryContext;
 import com.facebook.presto.spi.plan.PlanNodeId;
 import com.google.common.collect.ImmutableList;
 
 import java.util.List;
+import java.util.Optional;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
-import static com.google.common.base.Verify.verify;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -41,6 +42,7 @@ public class TopNOperator
         private final int n;
         private final List<Integer> sortChannels;
         private final List<SortOrder> sortOrders;
+        private final Optional<DynamicTopNFilter.Factory> scanFilterFactory;
         private boolean closed;
 
         public TopNOperatorFactory(
@@ -50,6 +52,18 @@ public class TopNOperator
                 int n,
                 List<Integer> sortChannels,
                 List<SortOrder> sortOrders)
+        {
+            this(operatorId, planNodeId, types, n, sortChannels, sortOrders, Optional.empty());
+        }
+
+        public TopNOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                List<? extends Type> types,
+                int n,
+                List<Integer> sortChannels,
+                List<SortOrder> sortOrders,
+                Optional<DynamicTopNFilter.Factory> scanFilterFactory)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -57,6 +71,7 @@ public class TopNOperator
             this.n = n;
             this.sortChannels = ImmutableList.copyOf(requireNonNull(sortChannels, "sortChannels is null"));
             this.sortOrders = ImmutableList.copyOf(requireNonNull(sortOrders, "sortOrders is null"));
+            this.scanFilterFactory = requireNonNull(scanFilterFactory, "scanFilterFactory is null");
         }
 
         @Override
@@ -64,12 +79,18 @@ public class TopNOperator
         {
             checkState(!closed, "Factory is already closed");
             OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId, TopNOperator.class.getSimpleName());
+            // the table scan of the driver filters on the same boundary
+            DynamicTopNFilter filter = scanFilterFactory
+                    .map(factory -> factory.getFilter(driverContext))
+                    .orElseGet(() -> new DynamicTopNFilter(sourceTypes.get(sortChannels.get(0)), sortOrders.get(0), sortChannels.size() > 1));
             return new TopNOperator(
                     operatorContext,
                     sourceTypes,
                     n,
                     sortChannels,
-                    sortOrders);
+                    sortOrders,
+                    filter,
+                    () -> scanFilterFactory.ifPresent(factory -> factory.release(driverContext)));
         }
 
         @Override
@@ -81,13 +102,15 @@ public class TopNOperator
         @Override
         public OperatorFactory duplicate()
         {
-            return new TopNOperatorFactory(operatorId, planNodeId, sourceTypes, n, sortChannels, sortOrders);
+            return new TopNOperatorFactory(operatorId, planNodeId, sourceTypes, n, sortChannels, sortOrders, scanFilterFactory);
         }
     }
 
     private final OperatorContext operatorContext;
+    private final LocalMemoryContext memoryContext;
+    private final Runnable onClose;
 
-    private GroupedTopNBuilder topNBuilder;
+    private FlatTopNBuilder topNBuilder;
     private boolean finishing;
 
     private WorkProcessor<Page> outputPages;
@@ -97,9 +120,13 @@ public class TopNOperator
             List<Type> types,
             int n,
             List<Integer> sortChannels,
-            List<SortOrder> sortOrders)
+            List<SortOrder> sortOrders,
+            DynamicTopNFilter filter,
+            Runnable onClose)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
+        this.memoryContext = operatorContext.localUserMemoryContext();
+        this.onClose = requireNonNull(onClose, "onClose is null");
         checkArgument(n >= 0, "n must be non-negative");
         if (n == 0) {
             finishing = true;
@@ -108,13 +135,12 @@ public class TopNOperator
             outputPages.process();
         }
         else {
-            topNBuilder = new InMemoryGroupedTopNBuilder(
+            topNBuilder = new FlatTopNBuilder(
                     types,
-                    new SimplePageWithPositionComparator(types, sortChannels, sortOrders),
                     n,
-                    false,
-                    operatorContext.localUserMemoryContext(),
-                    new NoChannelGroupByHash());
+                    new SimplePageWithPositionComparator(types, sortChannels, sortOrders),
+                    sortChannels.get(0),
+                    requireNonNull(filter, "filter is null"));
         }
     }
 
@@ -146,10 +172,8 @@ public class TopNOperator
     public void addInput(Page page)
     {
         checkState(!finishing, "Operator is already finishing");
-        boolean done = topNBuilder.processPage(requireNonNull(page, "page is null")).process();
-        // there is no grouping so work will always be done
-        verify(done);
-        topNBuilder.updateMemoryReservations();
+        topNBuilder.addPage(requireNonNull(page, "page is null"));
+        memoryContext.setBytes(topNBuilder.getEstimatedSizeInBytes());
     }
 
     @Override
@@ -161,7 +185,7 @@ public class TopNOperator
 
         if (outputPages == null) {
             // start flushing
-            outputPages = topNBuilder.buildResult();
+            outputPages = WorkProcessor.fromIterator(topNBuilder.buildResult());
         }
 
         if (!outputPages.process()) {
@@ -169,14 +193,20 @@ public class TopNOperator
         }
 
         if (outputPages.isFinished()) {
-            topNBuilder.close();
+            topNBuilder = null;
+            memoryContext.setBytes(0);
             return null;
         }
 
-        Page outputPage = outputPages.getResult();
-        topNBuilder.updateMemoryReservations();
+        return outputPages.getResult();
+    }
 
-        return outputPage;
+    @Override
+    public void close()
+    {
+        topNBuilder = null;
+        memoryContext.setBytes(0);
+        onClose.run();
     }
 
     private boolean noMoreOutput()
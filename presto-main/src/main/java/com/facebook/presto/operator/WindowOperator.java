@@ -198,6 +198,7 @@ public class WindowOperator
     private final AtomicReference<WindowInfo> driverWindowInfo = new AtomicReference<>(WindowInfo.emptyInfo());
 
     private final Optional<SpillablePagesToPagesIndexes> spillablePagesToPagesIndexes;
+    private final LocalMemoryContext sortMemoryContext;
 
     private final WorkProcessor<Page> outputPages;
     @Nullable
@@ -235,6 +236,7 @@ public class WindowOperator
         checkArgument(preSortedChannelPrefix == 0 || ImmutableSet.copyOf(preGroupedChannels).equals(ImmutableSet.copyOf(partitionChannels)), "preSortedChannelPrefix can only be greater than zero if all partition channels are pre-grouped");
 
         this.operatorContext = operatorContext;
+        this.sortMemoryContext = operatorContext.aggregateUserMemoryContext().newLocalMemoryContext(NormalizedKeySort.class.getSimpleName());
         this.outputChannels = Ints.toArray(outputChannels);
         this.windowFunctions = windowFunctionDefinitions.stream()
                 .map(functionDefinition -> new FramedWindowFunction(functionDefinition.createWindowFunction(), functionDefinition.getFrameInfo()))
@@ -887,7 +889,7 @@ public class WindowOperator
             int startPosition = 0;
             while (startPosition < pagesIndexWithHashStrategies.pagesIndex.getPositionCount()) {
                 int endPosition = findGroupEnd(pagesIndexWithHashStrategies.pagesIndex, pagesIndexWithHashStrategies.preSortedPartitionHashStrategy, startPosition);
-                pagesIndexWithHashStrategies.pagesIndex.sort(orderChannels, ordering, startPosition, endPosition);
+                pagesIndexWithHashStrategies.pagesIndex.sort(orderChannels, ordering, startPosition, endPosition, sortMemoryContext);
                 startPosition = endPosition;
             }
         }
@@ -947,5 +949,6 @@ public class WindowOperator
     {
         driverWindowInfo.set(new WindowInfo(ImmutableList.of(windowInfo.build())));
         spillablePagesToPagesIndexes.ifPresent(SpillablePagesToPagesIndexes::closeSpiller);
+        sortMemoryContext.close();
     }
 }
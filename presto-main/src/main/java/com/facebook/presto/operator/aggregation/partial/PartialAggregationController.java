@@ -13,10 +13,12 @@
  */
 package com.facebook.presto.operator.aggregation.partial;
 
+import com.google.common.annotations.VisibleForTesting;
 import io.airlift.units.DataSize;
 
 import java.util.OptionalLong;
 
+import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
 public class PartialAggregationController
@@ -32,19 +34,39 @@ public class PartialAggregationController
      * Re-enable partial aggregation periodically, in case later data can be partially aggregated more effectively.
      */
     private static final double ENABLE_AGGREGATION_BUFFER_SIZE_TO_INPUT_BYTES_RATIO = DISABLE_AGGREGATION_BUFFER_SIZE_TO_INPUT_BYTES_RATIO * 200;
+    /**
+     * With continuous tracking, the stats of the previous flushes are multiplied by this factor on every flush,
+     * so that the decision follows the reduction ratio of the most recent data instead of the data seen since the start.
+     */
+    private static final double CONTINUOUS_TRACKING_HISTORY_DECAY = 0.5;
+    /**
+     * With continuous tracking, the uniqueness of the skipped rows is estimated from at least this many sampled rows
+     * before partial aggregation is re-enabled.
+     */
+    @VisibleForTesting
+    public static final int MIN_SAMPLED_ROWS_TO_ENABLE_AGGREGATION = 1024;
 
     private final DataSize maxPartialAggregationMemorySize;
     private final double uniqueRowsRatioThreshold;
+    private final boolean continuousTracking;
 
     private volatile boolean partialAggregationDisabled;
-    private long totalBytesProcessed;
-    private long totalRowsProcessed;
-    private long totalUniqueRowsProduced;
+    private double totalBytesProcessed;
+    private double totalRowsProcessed;
+    private double totalUniqueRowsProduced;
+    private long totalSampledRows;
+    private long totalSampledUniqueRows;
 
     public PartialAggregationController(DataSize maxPartialAggregationMemorySize, double uniqueRowsRatioThreshold)
+    {
+        this(maxPartialAggregationMemorySize, uniqueRowsRatioThreshold, false);
+    }
+
+    public PartialAggregationController(DataSize maxPartialAggregationMemorySize, double uniqueRowsRatioThreshold, boolean continuousTracking)
     {
         this.maxPartialAggregationMemorySize = requireNonNull(maxPartialAggregationMemorySize, "maxPartialMemory is null");
         this.uniqueRowsRatioThreshold = uniqueRowsRatioThreshold;
+        this.continuousTracking = continuousTracking;
     }
 
     public boolean isPartialAggregationDisabled()
@@ -52,6 +74,39 @@ public class PartialAggregationController
         return partialAggregationDisabled;
     }
 
+    /**
+     * Returns whether the operators should sample the rows they skip while partial aggregation is disabled,
+     * and report them with {@link #onSkippedRowsSampled}.
+     */
+    public boolean isContinuousTracking()
+    {
+        return continuousTracking;
+    }
+
+    /**
+     * Reports that {@code uniqueRows} of {@code sampledRows} contiguous rows passed through while partial aggregation was
+     * disabled have distinct group by keys. Partial aggregation over a whole buffer reduces the rows at least as much as
+     * the sample shows, so it is re-enabled as soon as the sampled rows are clustered enough.
+     */
+    public synchronized void onSkippedRowsSampled(long sampledRows, long uniqueRows)
+    {
+        checkState(continuousTracking, "rows are only sampled with continuous tracking");
+        if (!partialAggregationDisabled) {
+            return;
+        }
+
+        totalSampledRows += sampledRows;
+        totalSampledUniqueRows += uniqueRows;
+        if (totalSampledRows < MIN_SAMPLED_ROWS_TO_ENABLE_AGGREGATION) {
+            return;
+        }
+        if (((double) totalSampledUniqueRows / totalSampledRows) <= uniqueRowsRatioThreshold) {
+            enablePartialAggregation();
+        }
+        totalSampledRows = 0;
+        totalSampledUniqueRows = 0;
+    }
+
     public synchronized void onFlush(long bytesProcessed, long rowsProcessed, OptionalLong uniqueRowsProduced)
     {
         if (!partialAggregationDisabled && !uniqueRowsProduced.isPresent()) {
@@ -59,6 +114,11 @@ public class PartialAggregationController
             return;
         }
 
+        if (continuousTracking && !partialAggregationDisabled) {
+            totalBytesProcessed *= CONTINUOUS_TRACKING_HISTORY_DECAY;
+            totalRowsProcessed *= CONTINUOUS_TRACKING_HISTORY_DECAY;
+            totalUniqueRowsProduced *= CONTINUOUS_TRACKING_HISTORY_DECAY;
+        }
         totalBytesProcessed += bytesProcessed;
         totalRowsProcessed += rowsProcessed;
         uniqueRowsProduced.ifPresent(value -> totalUniqueRowsProduced += value);
@@ -68,21 +128,28 @@ public class PartialAggregationController
         }
 
         if (partialAggregationDisabled && totalBytesProcessed >= maxPartialAggregationMemorySize.toBytes() * ENABLE_AGGREGATION_BUFFER_SIZE_TO_INPUT_BYTES_RATIO) {
-            totalBytesProcessed = 0;
-            totalRowsProcessed = 0;
-            totalUniqueRowsProduced = 0;
-            partialAggregationDisabled = false;
+            enablePartialAggregation();
         }
     }
 
+    private void enablePartialAggregation()
+    {
+        totalBytesProcessed = 0;
+        totalRowsProcessed = 0;
+        totalUniqueRowsProduced = 0;
+        totalSampledRows = 0;
+        totalSampledUniqueRows = 0;
+        partialAggregationDisabled = false;
+    }
+
     private boolean shouldDisablePartialAggregation()
     {
         return totalBytesProcessed >= maxPartialAggregationMemorySize.toBytes() * DISABLE_AGGREGATION_BUFFER_SIZE_TO_INPUT_BYTES_RATIO
-                && ((double) totalUniqueRowsProduced / totalRowsProcessed) > uniqueRowsRatioThreshold;
+                && (totalUniqueRowsProduced / totalRowsProcessed) > uniqueRowsRatioThreshold;
     }
 
     public PartialAggregationController duplicate()
     {
-        return new PartialAggregationController(maxPartialAggregationMemorySize, uniqueRowsRatioThreshold);
+        return new PartialAggregationController(maxPartialAggregationMemorySize, uniqueRowsRatioThreshold, continuousTracking);
     }
 }
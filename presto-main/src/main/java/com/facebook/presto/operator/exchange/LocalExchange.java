@@ -46,6 +46,7 @@ import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import static com.facebook.presto.SystemSessionProperties.isLocalExchangePartitionViewsEnabled;
 import static com.facebook.presto.operator.PipelineExecutionStrategy.UNGROUPED_EXECUTION;
 import static com.facebook.presto.operator.exchange.LocalExchangeSink.finishedLocalExchangeSink;
 import static com.facebook.presto.sql.planner.SystemPartitioningHandle.FIXED_ARBITRARY_DISTRIBUTION;
@@ -142,7 +143,8 @@ public class LocalExchange
                             partitioningChannelTypes,
                             partitionHashChannel.isPresent()),
                     partitionChannels,
-                    partitionHashChannel);
+                    partitionHashChannel,
+                    isLocalExchangePartitionViewsEnabled(session));
         }
         else {
             throw new IllegalArgumentException("Unsupported local exchange partitioning " + partitioning);
@@ -212,10 +214,15 @@ public class LocalExchange
         return allSinkFactories.get(id.id);
     }
 
-    public synchronized LocalExchangeSource getNextSource()
+    public LocalExchangeSource getNextSource()
+    {
+        return sources.get(getNextSourcePartition());
+    }
+
+    public synchronized int getNextSourcePartition()
     {
         checkState(nextSourceIndex < sources.size(), "All operators already created");
-        LocalExchangeSource result = sources.get(nextSourceIndex);
+        int result = nextSourceIndex;
         nextSourceIndex++;
         return result;
     }
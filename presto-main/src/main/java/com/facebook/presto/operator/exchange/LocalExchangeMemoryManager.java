@@ -13,6 +13,7 @@
  */
 package com.facebook.presto.operator.exchange;
 
+import com.facebook.presto.operator.exchange.PageReference.PageReleasedListener;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 
@@ -20,6 +21,7 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -62,6 +64,27 @@ public class LocalExchangeMemoryManager
         }
     }
 
+    /**
+     * Accounts for data shared by {@code referenceCount} pages, such as the views over the positions of a page,
+     * once instead of once per page. The returned listener releases the size each page reports, and the shared
+     * data with the last of them.
+     */
+    PageReleasedListener reserveSharedPage(long sharedSizeInBytes, int referenceCount)
+    {
+        checkArgument(sharedSizeInBytes >= 0, "sharedSizeInBytes is negative");
+        checkArgument(referenceCount >= 1, "referenceCount must be at least 1");
+        updateMemoryUsage(sharedSizeInBytes);
+        AtomicInteger remainingReferences = new AtomicInteger(referenceCount);
+        return releasedSizeInBytes -> {
+            if (remainingReferences.decrementAndGet() == 0) {
+                updateMemoryUsage(-(releasedSizeInBytes + sharedSizeInBytes));
+            }
+            else {
+                updateMemoryUsage(-releasedSizeInBytes);
+            }
+        };
+    }
+
     public ListenableFuture<?> getNotFullFuture()
     {
         if (bufferedBytes.get() <= maxBufferedBytes) {
@@ -51,7 +51,9 @@ public class LocalExchangeSourceOperator
             LocalExchange inMemoryExchange = localExchangeFactory.getLocalExchange(driverContext.getLifespan());
 
             OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId, LocalExchangeSourceOperator.class.getSimpleName());
-            return new LocalExchangeSourceOperator(operatorContext, inMemoryExchange.getNextSource());
+            int partition = inMemoryExchange.getNextSourcePartition();
+            driverContext.setLocalPartition(partition);
+            return new LocalExchangeSourceOperator(operatorContext, inMemoryExchange.getSource(partition));
         }
 
         @Override
@@ -30,19 +30,31 @@ final class PageReference
 
     private volatile int referenceCount;
     private final Page page;
+    private final long retainedSizeInBytes;
     private final PageReleasedListener onPageReleased;
 
     public PageReference(Page page, int referenceCount, PageReleasedListener onPageReleased)
+    {
+        this(page, page.getRetainedSizeInBytes(), referenceCount, onPageReleased);
+    }
+
+    /**
+     * Creates a reference accounting for {@code retainedSizeInBytes} instead of the retained size of the page,
+     * for pages sharing their data with other pages that is accounted for separately.
+     */
+    public PageReference(Page page, long retainedSizeInBytes, int referenceCount, PageReleasedListener onPageReleased)
     {
         this.page = requireNonNull(page, "page is null");
         this.onPageReleased = requireNonNull(onPageReleased, "onPageReleased is null");
+        checkArgument(retainedSizeInBytes >= 0, "retainedSizeInBytes is negative");
         checkArgument(referenceCount >= 1, "referenceCount must be at least 1");
+        this.retainedSizeInBytes = retainedSizeInBytes;
         this.referenceCount = referenceCount;
     }
 
     public long getRetainedSizeInBytes()
     {
-        return page.getRetainedSizeInBytes();
+        return retainedSizeInBytes;
     }
 
     public Page removePage()
@@ -50,7 +62,7 @@ final class PageReference
         int referenceCount = REFERENCE_COUNT_UPDATER.decrementAndGet(this);
         checkArgument(referenceCount >= 0, "Page reference count is negative");
         if (referenceCount == 0) {
-            onPageReleased.onPageReleased(page.getRetainedSizeInBytes());
+            onPageReleased.onPageReleased(retainedSizeInBytes);
         }
         return page;
     }
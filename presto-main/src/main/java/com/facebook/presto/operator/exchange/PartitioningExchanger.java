@@ -22,15 +22,22 @@ import com.google.common.util.concurrent.ListenableFuture;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Consumer;
 
+import static java.util.Collections.newSetFromMap;
 import static java.util.Objects.requireNonNull;
 
 class PartitioningExchanger
         implements LocalExchanger
 {
+    // A view retains the whole page. A partition receiving less than this fraction of its fair share of the rows
+    // of a page gets a copy of its rows instead of a view, so that a few rows do not keep the whole page alive.
+    private static final double MIN_VIEW_FAIR_SHARE_FRACTION = 0.5;
+
     private final List<Consumer<PageReference>> buffers;
     private final LocalExchangeMemoryManager memoryManager;
     private final PartitionFunction partitionFunction;
@@ -38,13 +45,15 @@ class PartitioningExchanger
     private final Optional<Integer> hashChannel;
     private final IntArrayList[] partitionAssignments;
     private final PageReleasedListener onPageReleased;
+    private final boolean partitionViewsEnabled;
 
     public PartitioningExchanger(
             List<Consumer<PageReference>> partitions,
             LocalExchangeMemoryManager memoryManager,
             PartitionFunction partitionFunction,
             List<Integer> partitioningChannels,
-            Optional<Integer> hashChannel)
+            Optional<Integer> hashChannel,
+            boolean partitionViewsEnabled)
     {
         this.buffers = ImmutableList.copyOf(requireNonNull(partitions, "partitions is null"));
         this.memoryManager = requireNonNull(memoryManager, "memoryManager is null");
@@ -52,6 +61,7 @@ class PartitioningExchanger
         this.partitioningChannels = Ints.toArray(requireNonNull(partitioningChannels, "partitioningChannels is null"));
         this.hashChannel = requireNonNull(hashChannel, "hashChannel is null");
         this.onPageReleased = PageReleasedListener.forLocalExchangeMemoryManager(memoryManager);
+        this.partitionViewsEnabled = partitionViewsEnabled;
 
         partitionAssignments = new IntArrayList[partitions.size()];
         for (int i = 0; i < partitionAssignments.length; i++) {
@@ -74,15 +84,96 @@ class PartitioningExchanger
             partitionAssignments[partition].add(position);
         }
 
+        if (partitionViewsEnabled) {
+            sendViews(page);
+            return;
+        }
+
         // build a page for each partition
         for (int partition = 0; partition < buffers.size(); partition++) {
             IntArrayList positions = partitionAssignments[partition];
             if (!positions.isEmpty()) {
-                Page pageSplit = page.copyPositions(positions.elements(), 0, positions.size());
-                memoryManager.updateMemoryUsage(pageSplit.getRetainedSizeInBytes());
-                buffers.get(partition).accept(new PageReference(pageSplit, 1, onPageReleased));
+                sendCopy(page, partition, positions);
+            }
+        }
+    }
+
+    private void sendViews(Page page)
+    {
+        // a partition gets a view when it receives at least this many rows, relative to its fair share of the page
+        int minViewPositionCount = (int) Math.ceil(MIN_VIEW_FAIR_SHARE_FRACTION * page.getPositionCount() / buffers.size());
+        int viewCount = 0;
+        for (int partition = 0; partition < buffers.size(); partition++) {
+            IntArrayList positions = partitionAssignments[partition];
+            if (!positions.isEmpty() && positions.size() == page.getPositionCount()) {
+                // all the rows go to a single partition
+                memoryManager.updateMemoryUsage(page.getRetainedSizeInBytes());
+                buffers.get(partition).accept(new PageReference(page, 1, onPageReleased));
+                return;
+            }
+            if (!positions.isEmpty() && positions.size() >= minViewPositionCount) {
+                viewCount++;
+            }
+        }
+
+        // the views share the data of the page, which is accounted for once and released with the last of them
+        PageReleasedListener onViewReleased = null;
+        Set<Object> pageParts = null;
+        if (viewCount > 0) {
+            onViewReleased = memoryManager.reserveSharedPage(page.getRetainedSizeInBytes(), viewCount);
+            pageParts = getRetainedParts(page);
+        }
+
+        for (int partition = 0; partition < buffers.size(); partition++) {
+            IntArrayList positions = partitionAssignments[partition];
+            if (positions.isEmpty()) {
+                continue;
+            }
+            if (positions.size() < minViewPositionCount) {
+                sendCopy(page, partition, positions);
+                continue;
             }
+            // the view keeps a reference to the positions, so they cannot be shared with the assignment list
+            int[] viewPositions = positions.toIntArray();
+            Page view = page.getPositions(viewPositions, 0, viewPositions.length);
+            long viewSizeInBytes = getIncrementalSizeInBytes(view, pageParts);
+            memoryManager.updateMemoryUsage(viewSizeInBytes);
+            buffers.get(partition).accept(new PageReference(view, viewSizeInBytes, 1, onViewReleased));
+        }
+    }
+
+    private void sendCopy(Page page, int partition, IntArrayList positions)
+    {
+        Page pageSplit = page.copyPositions(positions.elements(), 0, positions.size());
+        memoryManager.updateMemoryUsage(pageSplit.getRetainedSizeInBytes());
+        buffers.get(partition).accept(new PageReference(pageSplit, 1, onPageReleased));
+    }
+
+    private static Set<Object> getRetainedParts(Page page)
+    {
+        Set<Object> parts = newSetFromMap(new IdentityHashMap<>());
+        for (int channel = 0; channel < page.getChannelCount(); channel++) {
+            page.getBlock(channel).retainedBytesForEachPart((object, size) -> parts.add(object));
+        }
+        return parts;
+    }
+
+    /**
+     * Returns the retained size of the parts of the view that are not parts of the page it is a view of,
+     * such as its positions and the dictionary blocks wrapping the blocks of the page.
+     */
+    private static long getIncrementalSizeInBytes(Page view, Set<Object> pageParts)
+    {
+        Set<Object> viewParts = newSetFromMap(new IdentityHashMap<>());
+        long[] sizeInBytes = new long[1];
+        for (int channel = 0; channel < view.getChannelCount(); channel++) {
+            view.getBlock(channel).retainedBytesForEachPart((object, size) -> {
+                if (!pageParts.contains(object) && viewParts.add(object)) {
+                    sizeInBytes[0] += size;
+                }
+            });
         }
+        return sizeInBytes[0];
     }
 
     private Page extractPartitioningChannels(Page inputPage)
@@ -0,0 +1,311 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator.repartition;
+
+import com.facebook.presto.common.block.ArrayAllocator;
+import com.facebook.presto.common.block.DictionaryBlock;
+import com.facebook.presto.common.block.DictionaryId;
+import io.airlift.slice.SliceOutput;
+import io.airlift.slice.Slices;
+import org.openjdk.jol.info.ClassLayout;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+
+import static com.facebook.presto.common.array.Arrays.ExpansionFactor.MEDIUM;
+import static com.facebook.presto.common.array.Arrays.ExpansionOption.PRESERVE;
+import static com.facebook.presto.common.array.Arrays.ensureCapacity;
+import static com.facebook.presto.common.block.DictionaryId.randomDictionaryId;
+import static com.facebook.presto.operator.repartition.AbstractBlockEncodingBuffer.createBlockEncodingBuffers;
+import static com.facebook.presto.operator.repartition.AbstractBlockEncodingBuffer.writeLengthPrefixedString;
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkState;
+import static io.airlift.slice.SizeOf.SIZE_OF_INT;
+import static io.airlift.slice.SizeOf.SIZE_OF_LONG;
+import static io.airlift.slice.SizeOf.sizeOf;
+import static java.lang.Math.max;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Buffers a top level column as a DictionaryBlock when the incoming blocks are dictionary encoded. Only the dictionary
+ * entries that the buffered rows reference are copied, once for each serialized page, into a compact dictionary, and the
+ * rows are buffered as ids of the compact dictionary. The entries of different incoming dictionaries, e.g. the per-page
+ * dictionaries of ORC, are appended to the same compact dictionary, so a serialized page is never larger than its rows
+ * flattened plus an int for each row. The receiver reads the column back as a DictionaryBlock.
+ * <p>
+ * The rows are buffered as ids when the dictionary of the first block has no more entries than the rows of the block sent
+ * to this partition, so its entries are likely to be referenced more than once. Other blocks are flattened by the delegate
+ * buffer. As a serialized page cannot mix ids and flattened rows, buffered ids must be flushed before appending a block that
+ * is not dictionary encoded, see {@link #requiresFlush}.
+ */
+public class DictionaryBlockEncodingBuffer
+        implements BlockEncodingBuffer
+{
+    private static final String NAME = "DICTIONARY";
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(DictionaryBlockEncodingBuffer.class).instanceSize();
+
+    private final ArrayAllocator bufferAllocator;
+    private final BlockEncodingBuffer flatBuffer;
+
+    // The entries of the compact dictionary of the buffered ids
+    @Nullable
+    private BlockEncodingBuffer dictionaryBuffer;
+    private int dictionarySize;
+
+    // Whether the buffered rows are ids of the compact dictionary
+    private boolean bufferingIds;
+
+    // Whether the rows of the current block are buffered as ids
+    private boolean appendingIds;
+    @Nullable
+    private DictionaryBlock dictionaryBlock;
+    @Nullable
+    private DecodedBlockNode dictionaryNode;
+    private int partitionBufferCapacity;
+
+    private int[] positions;
+    private int positionsOffset;
+    private int positionCount;
+    private int batchSize;
+
+    // The ids in the compact dictionary of the entries of the incoming dictionary, or -1 for entries that are not copied yet
+    @Nullable
+    private DictionaryId sourceDictionaryId;
+    private int sourceDictionarySize;
+    private int[] compactIds = new int[0];
+    // The positions in the incoming dictionary of the entries copied to the compact dictionary since it was last reset
+    private int[] copiedPositions = new int[0];
+    private int copiedPositionCount;
+
+    private int[] ids = new int[0];
+    private int bufferedPositionCount;
+
+    public DictionaryBlockEncodingBuffer(BlockEncodingBuffer flatBuffer, ArrayAllocator bufferAllocator)
+    {
+        this.flatBuffer = requireNonNull(flatBuffer, "flatBuffer is null");
+        this.bufferAllocator = requireNonNull(bufferAllocator, "bufferAllocator is null");
+    }
+
+    /**
+     * Returns true if the buffered rows are ids that the rows of the decoded block cannot be appended to.
+     */
+    public boolean requiresFlush(DecodedBlockNode decodedBlockNode)
+    {
+        return bufferedPositionCount > 0 && bufferingIds && !isDictionaryEncoded(decodedBlockNode);
+    }
+
+    @Override
+    public void setupDecodedBlocksAndPositions(DecodedBlockNode decodedBlockNode, int[] positions, int positionCount, int partitionBufferCapacity, long estimatedSerializedPageSize)
+    {
+        requireNonNull(decodedBlockNode, "decodedBlockNode is null");
+        requireNonNull(positions, "positions is null");
+
+        if (bufferedPositionCount == 0) {
+            bufferingIds = isDictionaryEncoded(decodedBlockNode) &&
+                    ((DictionaryBlock) decodedBlockNode.getDecodedBlock()).getDictionary().getPositionCount() <= positionCount;
+        }
+
+        appendingIds = bufferingIds;
+        if (!appendingIds) {
+            flatBuffer.setupDecodedBlocksAndPositions(decodedBlockNode, positions, positionCount, partitionBufferCapacity, estimatedSerializedPageSize);
+            return;
+        }
+        checkState(isDictionaryEncoded(decodedBlockNode), "the buffered ids must be flushed before appending rows that are not dictionary encoded");
+
+        this.positions = positions;
+        this.positionCount = positionCount;
+        this.partitionBufferCapacity = partitionBufferCapacity;
+        this.dictionaryBlock = (DictionaryBlock) decodedBlockNode.getDecodedBlock();
+        this.dictionaryNode = decodedBlockNode.getChildren().get(0);
+        if (dictionaryBuffer == null) {
+            dictionaryBuffer = createBlockEncodingBuffers(dictionaryNode, bufferAllocator, false);
+        }
+
+        int size = dictionaryBlock.getDictionary().getPositionCount();
+        if (!dictionaryBlock.getDictionarySourceId().equals(sourceDictionaryId) || size != sourceDictionarySize) {
+            // The entries of the new dictionary are copied to the compact dictionary after the entries copied so far
+            resetCompactIds();
+            sourceDictionaryId = dictionaryBlock.getDictionarySourceId();
+            sourceDictionarySize = size;
+            if (compactIds.length < size) {
+                compactIds = new int[size];
+                Arrays.fill(compactIds, -1);
+            }
+        }
+    }
+
+    @Override
+    public void accumulateSerializedRowSizes(int[] serializedRowSizes)
+    {
+        if (!appendingIds) {
+            flatBuffer.accumulateSerializedRowSizes(serializedRowSizes);
+            return;
+        }
+
+        // A row whose entry is not copied yet may add the entry to the compact dictionary
+        int averageEntrySize = (int) (dictionaryNode.getEstimatedSerializedSizeInBytes() / max(1, sourceDictionarySize));
+        for (int i = 0; i < positionCount; i++) {
+            serializedRowSizes[i] += SIZE_OF_INT + (compactIds[dictionaryBlock.getId(positions[i])] < 0 ? averageEntrySize : 0);
+        }
+    }
+
+    @Override
+    public void setNextBatch(int positionsOffset, int batchSize)
+    {
+        this.positionsOffset = positionsOffset;
+        this.batchSize = batchSize;
+
+        if (!appendingIds) {
+            flatBuffer.setNextBatch(positionsOffset, batchSize);
+        }
+    }
+
+    @Override
+    public void appendDataInBatch()
+    {
+        if (!appendingIds) {
+            flatBuffer.appendDataInBatch();
+            bufferedPositionCount += batchSize;
+            return;
+        }
+
+        int copiedStart = copiedPositionCount;
+        ids = ensureCapacity(ids, bufferedPositionCount + batchSize, MEDIUM, PRESERVE);
+        for (int i = 0; i < batchSize; i++) {
+            int sourceId = dictionaryBlock.getId(positions[positionsOffset + i]);
+            int id = compactIds[sourceId];
+            if (id < 0) {
+                id = dictionarySize + copiedPositionCount - copiedStart;
+                compactIds[sourceId] = id;
+                copiedPositions = ensureCapacity(copiedPositions, copiedPositionCount + 1, MEDIUM, PRESERVE);
+                copiedPositions[copiedPositionCount++] = sourceId;
+            }
+            ids[bufferedPositionCount + i] = id;
+        }
+        bufferedPositionCount += batchSize;
+
+        int copiedCount = copiedPositionCount - copiedStart;
+        if (copiedCount > 0) {
+            dictionaryBuffer.setupDecodedBlocksAndPositions(dictionaryNode, copiedPositions, copiedPositionCount, partitionBufferCapacity, max(1, dictionaryNode.getEstimatedSerializedSizeInBytes()));
+            dictionaryBuffer.setNextBatch(copiedStart, copiedCount);
+            dictionaryBuffer.appendDataInBatch();
+            dictionaryBuffer.noMoreBatches();
+            dictionarySize += copiedCount;
+        }
+    }
+
+    @Override
+    public void serializeTo(SliceOutput output)
+    {
+        if (!bufferingIds) {
+            flatBuffer.serializeTo(output);
+            return;
+        }
+
+        // The compact dictionary is only shared by the ids of this page
+        DictionaryId dictionaryId = randomDictionaryId();
+        writeLengthPrefixedString(output, NAME);
+        output.writeInt(bufferedPositionCount);
+        dictionaryBuffer.serializeTo(output);
+        output.writeBytes(Slices.wrappedIntArray(ids, 0, bufferedPositionCount));
+        output.writeLong(dictionaryId.getMostSignificantBits());
+        output.writeLong(dictionaryId.getLeastSignificantBits());
+        output.writeLong(dictionaryId.getSequenceId());
+    }
+
+    @Override
+    public void resetBuffers()
+    {
+        flatBuffer.resetBuffers();
+        if (dictionaryBuffer != null) {
+            dictionaryBuffer.resetBuffers();
+        }
+        dictionarySize = 0;
+        resetCompactIds();
+        bufferedPositionCount = 0;
+
+        // The buffers may be flushed in the middle of a block, whose remaining rows are still appended as ids
+        bufferingIds = appendingIds;
+    }
+
+    @Override
+    public void noMoreBatches()
+    {
+        if (!appendingIds) {
+            flatBuffer.noMoreBatches();
+            return;
+        }
+
+        appendingIds = false;
+        dictionaryBlock = null;
+        dictionaryNode = null;
+        positions = null;
+    }
+
+    @Override
+    public long getRetainedSizeInBytes()
+    {
+        return INSTANCE_SIZE +
+                sizeOf(ids) +
+                sizeOf(compactIds) +
+                sizeOf(copiedPositions) +
+                flatBuffer.getRetainedSizeInBytes() +
+                (dictionaryBuffer == null ? 0 : dictionaryBuffer.getRetainedSizeInBytes());
+    }
+
+    @Override
+    public long getSerializedSizeInBytes()
+    {
+        if (!bufferingIds) {
+            return flatBuffer.getSerializedSizeInBytes();
+        }
+
+        return NAME.length() + SIZE_OF_INT +                // NAME
+                SIZE_OF_INT +                               // positionCount
+                dictionaryBuffer.getSerializedSizeInBytes() +   // dictionary
+                (long) bufferedPositionCount * SIZE_OF_INT +    // ids
+                3 * SIZE_OF_LONG;                           // dictionary id
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("appendingIds", appendingIds)
+                .add("bufferingIds", bufferingIds)
+                .add("dictionarySize", dictionarySize)
+                .add("sourceDictionaryId", sourceDictionaryId)
+                .add("bufferedPositionCount", bufferedPositionCount)
+                .add("idsCapacity", ids.length)
+                .add("flatBuffer", flatBuffer)
+                .add("dictionaryBuffer", dictionaryBuffer)
+                .toString();
+    }
+
+    private static boolean isDictionaryEncoded(DecodedBlockNode decodedBlockNode)
+    {
+        // The rows of composite types are flattened, as their dictionaries would need nested buffers
+        return decodedBlockNode.getDecodedBlock() instanceof DictionaryBlock &&
+                decodedBlockNode.getChildren().get(0).getChildren().isEmpty();
+    }
+
+    private void resetCompactIds()
+    {
+        for (int i = 0; i < copiedPositionCount; i++) {
+            compactIds[copiedPositions[i]] = -1;
+        }
+        copiedPositionCount = 0;
+    }
+}
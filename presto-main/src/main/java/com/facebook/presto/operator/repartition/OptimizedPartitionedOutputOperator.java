@@ -105,7 +105,8 @@ public class OptimizedPartitionedOutputOperator
             OptionalInt nullChannel,
             OutputBuffer outputBuffer,
             PagesSerdeFactory serdeFactory,
-            DataSize maxMemory)
+            DataSize maxMemory,
+            boolean dictionaryEncodingEnabled)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
         this.pagePreprocessor = requireNonNull(pagePreprocessor, "pagePreprocessor is null");
@@ -119,6 +120,7 @@ public class OptimizedPartitionedOutputOperator
                 serdeFactory,
                 sourceTypes,
                 maxMemory,
+                dictionaryEncodingEnabled,
                 operatorContext);
 
         operatorContext.setInfoSupplier(pagePartitioner.getPartitionedOutputInfoSupplier());
@@ -263,11 +265,18 @@ public class OptimizedPartitionedOutputOperator
     {
         private final OutputBuffer outputBuffer;
         private final DataSize maxMemory;
+        private final boolean dictionaryEncodingEnabled;
 
         public OptimizedPartitionedOutputFactory(OutputBuffer outputBuffer, DataSize maxMemory)
+        {
+            this(outputBuffer, maxMemory, false);
+        }
+
+        public OptimizedPartitionedOutputFactory(OutputBuffer outputBuffer, DataSize maxMemory, boolean dictionaryEncodingEnabled)
         {
             this.outputBuffer = requireNonNull(outputBuffer, "outputBuffer is null");
             this.maxMemory = requireNonNull(maxMemory, "maxMemory is null");
+            this.dictionaryEncodingEnabled = dictionaryEncodingEnabled;
         }
 
         @Override
@@ -292,7 +301,8 @@ public class OptimizedPartitionedOutputOperator
                     outputPartitioning.get().getNullChannel(),
                     outputBuffer,
                     serdeFactory,
-                    maxMemory);
+                    maxMemory,
+                    dictionaryEncodingEnabled);
         }
     }
 
@@ -311,6 +321,7 @@ public class OptimizedPartitionedOutputOperator
         private final OutputBuffer outputBuffer;
         private final PagesSerdeFactory serdeFactory;
         private final DataSize maxMemory;
+        private final boolean dictionaryEncodingEnabled;
 
         public OptimizedPartitionedOutputOperatorFactory(
                 int operatorId,
@@ -324,7 +335,8 @@ public class OptimizedPartitionedOutputOperator
                 OptionalInt nullChannel,
                 OutputBuffer outputBuffer,
                 PagesSerdeFactory serdeFactory,
-                DataSize maxMemory)
+                DataSize maxMemory,
+                boolean dictionaryEncodingEnabled)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -338,6 +350,7 @@ public class OptimizedPartitionedOutputOperator
             this.outputBuffer = requireNonNull(outputBuffer, "outputBuffer is null");
             this.serdeFactory = requireNonNull(serdeFactory, "serdeFactory is null");
             this.maxMemory = requireNonNull(maxMemory, "maxMemory is null");
+            this.dictionaryEncodingEnabled = dictionaryEncodingEnabled;
         }
 
         @Override
@@ -355,7 +368,8 @@ public class OptimizedPartitionedOutputOperator
                     nullChannel,
                     outputBuffer,
                     serdeFactory,
-                    maxMemory);
+                    maxMemory,
+                    dictionaryEncodingEnabled);
         }
 
         @Override
@@ -378,7 +392,8 @@ public class OptimizedPartitionedOutputOperator
                     nullChannel,
                     outputBuffer,
                     serdeFactory,
-                    maxMemory);
+                    maxMemory,
+                    dictionaryEncodingEnabled);
         }
     }
 
@@ -422,6 +437,7 @@ public class OptimizedPartitionedOutputOperator
                 PagesSerdeFactory serdeFactory,
                 List<Type> sourceTypes,
                 DataSize maxMemory,
+                boolean dictionaryEncodingEnabled,
                 OperatorContext operatorContext)
         {
             this.partitionFunction = requireNonNull(partitionFunction, "pagePartitioner is null");
@@ -454,7 +470,7 @@ public class OptimizedPartitionedOutputOperator
 
             partitionBuffers = new PartitionBuffer[partitionCount];
             for (int i = 0; i < partitionCount; i++) {
-                partitionBuffers[i] = new PartitionBuffer(i, sourceTypes.size(), partitionBufferCapacity, pagesAdded, rowsAdded, serde, bufferAllocator, operatorContext);
+                partitionBuffers[i] = new PartitionBuffer(i, sourceTypes.size(), partitionBufferCapacity, pagesAdded, rowsAdded, serde, bufferAllocator, dictionaryEncodingEnabled, operatorContext);
             }
 
             this.sourceTypes = sourceTypes;
@@ -628,6 +644,7 @@ public class OptimizedPartitionedOutputOperator
         private final int capacity;
         private final int channelCount;
         private final ArrayAllocator bufferAllocator;
+        private final boolean dictionaryEncodingEnabled;
 
         private int[] positions;   // the default positions array for top level BlockEncodingBuffer
         private int positionCount;  // number of positions to be copied for this partition
@@ -637,7 +654,16 @@ public class OptimizedPartitionedOutputOperator
         private boolean bufferFull;
         private OperatorContext operatorContext;
 
-        PartitionBuffer(int partition, int channelCount, int capacity, AtomicLong pagesAdded, AtomicLong rowsAdded, PagesSerde serde, ArrayAllocator bufferAllocator, OperatorContext operatorContext)
+        PartitionBuffer(
+                int partition,
+                int channelCount,
+                int capacity,
+                AtomicLong pagesAdded,
+                AtomicLong rowsAdded,
+                PagesSerde serde,
+                ArrayAllocator bufferAllocator,
+                boolean dictionaryEncodingEnabled,
+                OperatorContext operatorContext)
         {
             this.partition = partition;
             this.channelCount = channelCount;
@@ -646,6 +672,7 @@ public class OptimizedPartitionedOutputOperator
             this.rowsAdded = requireNonNull(rowsAdded, "rowsAdded is null");
             this.serde = requireNonNull(serde, "serde is null");
             this.bufferAllocator = requireNonNull(bufferAllocator, "bufferAllocator is null");
+            this.dictionaryEncodingEnabled = dictionaryEncodingEnabled;
             this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
             this.lifespan = operatorContext.getDriverContext().getLifespan();
         }
@@ -679,6 +706,10 @@ public class OptimizedPartitionedOutputOperator
 
             initializeBlockEncodingBuffers(decodedBlocks);
 
+            if (dictionaryEncodingEnabled && requiresFlush(decodedBlocks)) {
+                flush(outputBuffer);
+            }
+
             for (int i = 0; i < channelCount; i++) {
                 blockEncodingBuffers[i].setupDecodedBlocksAndPositions(decodedBlocks[i], positions, positionCount, capacity, estimatedSerializedPageSize);
             }
@@ -723,11 +754,28 @@ public class OptimizedPartitionedOutputOperator
                 BlockEncodingBuffer[] buffers = new BlockEncodingBuffer[channelCount];
                 for (int i = 0; i < channelCount; i++) {
                     buffers[i] = createBlockEncodingBuffers(decodedBlocks[i], bufferAllocator, false);
+                    if (dictionaryEncodingEnabled) {
+                        buffers[i] = new DictionaryBlockEncodingBuffer(buffers[i], bufferAllocator);
+                    }
                 }
                 blockEncodingBuffers = buffers;
             }
         }
 
+        /**
+         * A serialized page cannot mix dictionary ids and flattened rows in a column, so the buffered ids have to be
+         * flushed before appending a page whose column is not dictionary encoded.
+         */
+        private boolean requiresFlush(DecodedBlockNode[] decodedBlocks)
+        {
+            for (int i = 0; i < channelCount; i++) {
+                if (((DictionaryBlockEncodingBuffer) blockEncodingBuffers[i]).requiresFlush(decodedBlocks[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         /**
          * Calculate the row sizes in bytes and write them to serializedRowSizes.
          */
@@ -13,7 +13,11 @@
  */
 package com.facebook.presto.operator.window;
 
+import com.facebook.presto.common.block.Block;
 import com.facebook.presto.common.block.BlockBuilder;
+import com.facebook.presto.common.type.FixedWidthType;
+import com.facebook.presto.common.type.RowType;
+import com.facebook.presto.common.type.Type;
 import com.facebook.presto.operator.UpdateMemory;
 import com.facebook.presto.operator.aggregation.AccumulatorFactory;
 import com.facebook.presto.operator.aggregation.BuiltInAggregationFunctionImplementation;
@@ -27,20 +31,42 @@ import com.google.common.collect.ImmutableList;
 import java.util.List;
 import java.util.Optional;
 
+import static com.facebook.presto.common.type.BigintType.BIGINT;
 import static com.facebook.presto.operator.aggregation.GenericAccumulatorFactory.generateAccumulatorFactory;
 import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Evaluates an aggregation over the frame of each row. Frames that only grow at their end reuse the accumulator of the previous
+ * row. Frames that slide, such as {@code ROWS BETWEEN n PRECEDING AND CURRENT ROW}, are evaluated without re-adding the whole frame:
+ * <ul>
+ * <li>count and sum over bigint remove the rows that leave the frame from a running value;</li>
+ * <li>other aggregations that can combine fixed width intermediate results in any order keep the intermediate results of every
+ * suffix of the front of the frame, and an accumulator for the rows added after it (a two-stack queue). The frame is the
+ * combination of one suffix and the accumulator, and the suffixes are rebuilt from the accumulator when the frame start passes
+ * them, so every row is added at most twice.</li>
+ * </ul>
+ * Other aggregations re-add the whole frame when it slides. The suffixes of an aggregation with variable width intermediate
+ * results could each be as large as the frame, and they are not accounted to the operator memory.
+ */
 public class AggregateWindowFunction
         implements WindowFunction
 {
     private final List<Integer> argumentChannels;
     private final AccumulatorFactory accumulatorFactory;
+    private final boolean combinable;
+    private final Optional<InvertibleAggregation> invertibleAggregation;
 
     private WindowIndex windowIndex;
+    // accumulates the rows from backStart to currentEnd
     private Accumulator accumulator;
     private int currentStart;
     private int currentEnd;
+    private int backStart;
+
+    // position i holds the intermediate result of the rows from frontEnd - i to backStart - 1
+    private Block frontStates;
+    private int frontEnd;
 
     private AggregateWindowFunction(AggregationFunctionImplementation function, List<Integer> argumentChannels)
     {
@@ -48,6 +74,11 @@ public class AggregateWindowFunction
         BuiltInAggregationFunctionImplementation builtinFunction = (BuiltInAggregationFunctionImplementation) function;
         this.argumentChannels = ImmutableList.copyOf(argumentChannels);
         this.accumulatorFactory = generateAccumulatorFactory(builtinFunction, createArgs(builtinFunction), Optional.empty());
+        this.combinable = builtinFunction.isDecomposable() &&
+                !builtinFunction.isOrderSensitive() &&
+                builtinFunction.getLambdaInterfaces().isEmpty() &&
+                isFixedWidth(builtinFunction.getIntermediateType());
+        this.invertibleAggregation = InvertibleAggregation.create(builtinFunction.name(), builtinFunction.getParameterTypes(), argumentChannels);
     }
 
     @Override
@@ -60,6 +91,11 @@ public class AggregateWindowFunction
     @Override
     public void processRow(BlockBuilder output, int peerGroupStart, int peerGroupEnd, int frameStart, int frameEnd)
     {
+        if (invertibleAggregation.isPresent()) {
+            processRowInvertible(invertibleAggregation.get(), output, frameStart, frameEnd);
+            return;
+        }
+
         if (frameStart < 0) {
             // empty frame
             resetAccumulator();
@@ -69,15 +105,108 @@ public class AggregateWindowFunction
             accumulate(currentEnd + 1, frameEnd);
             currentEnd = frameEnd;
         }
+        else if (combinable && isSliding(frameStart, frameEnd)) {
+            if (frameStart >= backStart) {
+                // the front is exhausted, move the rows of the accumulator that stay in the frame to the front
+                buildFront(frameStart, currentEnd);
+            }
+            accumulate(currentEnd + 1, frameEnd);
+            currentStart = frameStart;
+            currentEnd = frameEnd;
+        }
         else {
             // different frame
             resetAccumulator();
             accumulate(frameStart, frameEnd);
             currentStart = frameStart;
             currentEnd = frameEnd;
+            backStart = frameStart;
+        }
+
+        if (currentStart >= 0 && currentStart < backStart) {
+            evaluateWithFront(output);
+        }
+        else {
+            accumulator.evaluateFinal(output);
+        }
+    }
+
+    private void processRowInvertible(InvertibleAggregation aggregation, BlockBuilder output, int frameStart, int frameEnd)
+    {
+        try {
+            if (frameStart < 0) {
+                // empty frame
+                aggregation.reset();
+                currentStart = -1;
+                currentEnd = -1;
+            }
+            else if (isSliding(frameStart, frameEnd) || (frameStart == currentStart && frameEnd >= currentEnd)) {
+                for (int position = currentStart; position < frameStart; position++) {
+                    aggregation.remove(windowIndex, position);
+                }
+                for (int position = currentEnd + 1; position <= frameEnd; position++) {
+                    aggregation.add(windowIndex, position);
+                }
+                currentStart = frameStart;
+                currentEnd = frameEnd;
+            }
+            else {
+                // different frame
+                aggregation.reset();
+                for (int position = frameStart; position <= frameEnd; position++) {
+                    aggregation.add(windowIndex, position);
+                }
+                currentStart = frameStart;
+                currentEnd = frameEnd;
+            }
+        }
+        catch (ArithmeticException e) {
+            // the running value overflowed, evaluate the frame as a fresh aggregation to fail or succeed like one
+            aggregation.reset();
+            currentStart = -1;
+            currentEnd = -1;
+            Accumulator frameAccumulator = accumulatorFactory.createAccumulator(UpdateMemory.NOOP);
+            if (frameStart >= 0) {
+                frameAccumulator.addInput(windowIndex, argumentChannels, frameStart, frameEnd);
+            }
+            frameAccumulator.evaluateFinal(output);
+            return;
+        }
+        aggregation.evaluate(output);
+    }
+
+    /**
+     * A frame slides when it overlaps the previous frame and both of its bounds moved forward.
+     */
+    private boolean isSliding(int frameStart, int frameEnd)
+    {
+        return currentStart >= 0 && frameStart > currentStart && frameStart <= currentEnd && frameEnd >= currentEnd;
+    }
+
+    private void buildFront(int start, int end)
+    {
+        Accumulator suffixAccumulator = accumulatorFactory.createAccumulator(UpdateMemory.NOOP);
+        BlockBuilder states = suffixAccumulator.getIntermediateType().createBlockBuilder(null, end - start + 1);
+        for (int position = end; position >= start; position--) {
+            suffixAccumulator.addInput(windowIndex, argumentChannels, position, position);
+            suffixAccumulator.evaluateIntermediate(states);
         }
+        frontStates = states.build();
+        frontEnd = end;
+        backStart = end + 1;
+        accumulator = accumulatorFactory.createAccumulator(UpdateMemory.NOOP);
+    }
 
-        accumulator.evaluateFinal(output);
+    private void evaluateWithFront(BlockBuilder output)
+    {
+        Accumulator frameAccumulator = accumulatorFactory.createAccumulator(UpdateMemory.NOOP);
+        frameAccumulator.addIntermediate(frontStates.getRegion(frontEnd - currentStart, 1));
+        if (currentEnd >= backStart) {
+            BlockBuilder backState = accumulator.getIntermediateType().createBlockBuilder(null, 1);
+            accumulator.evaluateIntermediate(backState);
+            frameAccumulator.addIntermediate(backState.build());
+        }
+        frameAccumulator.evaluateFinal(output);
     }
 
     private void accumulate(int start, int end)
@@ -87,13 +216,23 @@ public class AggregateWindowFunction
 
     private void resetAccumulator()
     {
-        if (currentStart >= 0) {
+        if (invertibleAggregation.isPresent()) {
+            invertibleAggregation.get().reset();
+            currentStart = -1;
+            currentEnd = -1;
+            return;
+        }
+
+        if (currentStart >= 0 || accumulator == null || frontStates != null) {
             // updateMemory callback is used by distinct and ordering accumulators
             // since window functions do not support distinct and ordering accumulators
             // it is ok not to provide the memory reservation callback
             accumulator = accumulatorFactory.createAccumulator(UpdateMemory.NOOP);
             currentStart = -1;
             currentEnd = -1;
+            backStart = -1;
+            frontStates = null;
+            frontEnd = -1;
         }
     }
 
@@ -110,6 +249,14 @@ public class AggregateWindowFunction
         };
     }
 
+    private static boolean isFixedWidth(Type type)
+    {
+        if (type instanceof RowType) {
+            return type.getTypeParameters().stream().allMatch(AggregateWindowFunction::isFixedWidth);
+        }
+        return type instanceof FixedWidthType;
+    }
+
     private static List<Integer> createArgs(BuiltInAggregationFunctionImplementation function)
     {
         ImmutableList.Builder<Integer> list = ImmutableList.builder();
@@ -118,4 +265,151 @@ public class AggregateWindowFunction
         }
         return list.build();
     }
+
+    /**
+     * A running aggregation that can remove its input. Additions and removals throw {@link ArithmeticException} on overflow.
+     */
+    private abstract static class InvertibleAggregation
+    {
+        public static Optional<InvertibleAggregation> create(String name, List<Type> parameterTypes, List<Integer> argumentChannels)
+        {
+            if (name.equals("count") && parameterTypes.isEmpty()) {
+                return Optional.of(new CountRows());
+            }
+            if (name.equals("count") && parameterTypes.size() == 1) {
+                return Optional.of(new CountValues(argumentChannels.get(0)));
+            }
+            if (name.equals("sum") && parameterTypes.equals(ImmutableList.of(BIGINT))) {
+                return Optional.of(new LongSum(argumentChannels.get(0)));
+            }
+            return Optional.empty();
+        }
+
+        public abstract void reset();
+
+        public abstract void add(WindowIndex windowIndex, int position);
+
+        public abstract void remove(WindowIndex windowIndex, int position);
+
+        public abstract void evaluate(BlockBuilder output);
+    }
+
+    private static class CountRows
+            extends InvertibleAggregation
+    {
+        private long count;
+
+        @Override
+        public void reset()
+        {
+            count = 0;
+        }
+
+        @Override
+        public void add(WindowIndex windowIndex, int position)
+        {
+            count++;
+        }
+
+        @Override
+        public void remove(WindowIndex windowIndex, int position)
+        {
+            count--;
+        }
+
+        @Override
+        public void evaluate(BlockBuilder output)
+        {
+            BIGINT.writeLong(output, count);
+        }
+    }
+
+    private static class CountValues
+            extends InvertibleAggregation
+    {
+        private final int channel;
+        private long count;
+
+        public CountValues(int channel)
+        {
+            this.channel = channel;
+        }
+
+        @Override
+        public void reset()
+        {
+            count = 0;
+        }
+
+        @Override
+        public void add(WindowIndex windowIndex, int position)
+        {
+            if (!windowIndex.isNull(channel, position)) {
+                count++;
+            }
+        }
+
+        @Override
+        public void remove(WindowIndex windowIndex, int position)
+        {
+            if (!windowIndex.isNull(channel, position)) {
+                count--;
+            }
+        }
+
+        @Override
+        public void evaluate(BlockBuilder output)
+        {
+            BIGINT.writeLong(output, count);
+        }
+    }
+
+    private static class LongSum
+            extends InvertibleAggregation
+    {
+        private final int channel;
+        private long count;
+        private long sum;
+
+        public LongSum(int channel)
+        {
+            this.channel = channel;
+        }
+
+        @Override
+        public void reset()
+        {
+            count = 0;
+            sum = 0;
+        }
+
+        @Override
+        public void add(WindowIndex windowIndex, int position)
+        {
+            if (!windowIndex.isNull(channel, position)) {
+                count++;
+                sum = Math.addExact(sum, windowIndex.getLong(channel, position));
+            }
+        }
+
+        @Override
+        public void remove(WindowIndex windowIndex, int position)
+        {
+            if (!windowIndex.isNull(channel, position)) {
+                count--;
+                sum = Math.subtractExact(sum, windowIndex.getLong(channel, position));
+            }
+        }
+
+        @Override
+        public void evaluate(BlockBuilder output)
+        {
+            if (count == 0) {
+                output.appendNull();
+            }
+            else {
+                BIGINT.writeLong(output, sum);
+            }
+        }
+    }
 }
@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.spiller;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.util.concurrent.Futures.getChecked;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Appends to a file through two buffers: while the full buffer is being written asynchronously,
+ * the caller fills the other one. The file only receives whole buffers (except for the last write),
+ * regardless of how small the individual writes to this stream are.
+ * <p>
+ * The buffers are direct, so that the channel writes them as they are instead of copying them to a temporary
+ * direct buffer first. They are accounted for by the spiller owning the stream.
+ */
+@NotThreadSafe
+final class DoubleBufferedFileOutputStream
+        extends OutputStream
+{
+    private final AsynchronousFileChannel channel;
+    private final SpillPathLoad pathLoad;
+
+    private ByteBuffer currentBuffer;
+    private ByteBuffer spareBuffer;
+    private long position;
+    private PendingWrite pendingWrite;
+    private boolean closed;
+
+    public DoubleBufferedFileOutputStream(Path path, int bufferSize, SpillPathLoad pathLoad)
+            throws IOException
+    {
+        requireNonNull(path, "path is null");
+        checkArgument(bufferSize > 0, "bufferSize must be positive");
+        this.pathLoad = requireNonNull(pathLoad, "pathLoad is null");
+        this.currentBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.spareBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.channel = AsynchronousFileChannel.open(path, WRITE);
+        this.position = channel.size();
+    }
+
+    @Override
+    public void write(int b)
+            throws IOException
+    {
+        checkState(!closed, "stream is closed");
+        if (!currentBuffer.hasRemaining()) {
+            swapBuffers();
+        }
+        currentBuffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length)
+            throws IOException
+    {
+        checkState(!closed, "stream is closed");
+        while (length > 0) {
+            if (!currentBuffer.hasRemaining()) {
+                swapBuffers();
+            }
+            int chunk = Math.min(length, currentBuffer.remaining());
+            currentBuffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    @Override
+    public void flush()
+            throws IOException
+    {
+        checkState(!closed, "stream is closed");
+        if (currentBuffer.position() > 0) {
+            swapBuffers();
+        }
+        awaitPendingWrite();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        }
+        finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private void swapBuffers()
+            throws IOException
+    {
+        // the spare buffer is free again once its write completed
+        awaitPendingWrite();
+        ByteBuffer fullBuffer = currentBuffer;
+        currentBuffer = spareBuffer;
+        currentBuffer.clear();
+        spareBuffer = fullBuffer;
+        fullBuffer.flip();
+        startWrite(fullBuffer);
+    }
+
+    private void startWrite(ByteBuffer buffer)
+    {
+        pendingWrite = new PendingWrite(buffer);
+        channel.write(buffer, position, null, pendingWrite);
+    }
+
+    private void awaitPendingWrite()
+            throws IOException
+    {
+        while (pendingWrite != null) {
+            int written = getChecked(pendingWrite.getWritten(), IOException.class);
+            pathLoad.recordWrite(written, pendingWrite.getElapsedNanos());
+            position += written;
+
+            ByteBuffer buffer = pendingWrite.getBuffer();
+            pendingWrite = null;
+            if (buffer.hasRemaining()) {
+                // the channel is allowed to write only part of the buffer
+                startWrite(buffer);
+            }
+        }
+    }
+
+    private static class PendingWrite
+            implements CompletionHandler<Integer, Void>
+    {
+        private final ByteBuffer buffer;
+        private final long startNanos = System.nanoTime();
+        private final SettableFuture<Integer> written = SettableFuture.create();
+        // published to the waiting thread by the completion of the future
+        private long elapsedNanos;
+
+        public PendingWrite(ByteBuffer buffer)
+        {
+            this.buffer = requireNonNull(buffer, "buffer is null");
+        }
+
+        public ByteBuffer getBuffer()
+        {
+            return buffer;
+        }
+
+        public SettableFuture<Integer> getWritten()
+        {
+            return written;
+        }
+
+        public long getElapsedNanos()
+        {
+            return elapsedNanos;
+        }
+
+        @Override
+        public void completed(Integer result, Void attachment)
+        {
+            elapsedNanos = System.nanoTime() - startNanos;
+            written.set(result);
+        }
+
+        @Override
+        public void failed(Throwable throwable, Void attachment)
+        {
+            written.setException(throwable);
+        }
+    }
+}
@@ -13,6 +13,9 @@
  */
 package com.facebook.presto.spiller;
 
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -42,11 +45,25 @@ final class FileHolder
         this.filePath = requireNonNull(filePath, "filePath is null");
     }
 
-    public synchronized OutputStream newOutputStream(OpenOption... options)
+    public synchronized OutputStream newDoubleBufferedOutputStream(int bufferSize, SpillPathLoad pathLoad)
+            throws IOException
+    {
+        checkState(!deleted, "File already deleted");
+        return new DoubleBufferedFileOutputStream(filePath, bufferSize, pathLoad);
+    }
+
+    public synchronized long size()
+            throws IOException
+    {
+        checkState(!deleted, "File already deleted");
+        return Files.size(filePath);
+    }
+
+    public synchronized Slice mapReadOnly()
             throws IOException
     {
         checkState(!deleted, "File already deleted");
-        return Files.newOutputStream(filePath, options);
+        return Slices.mapFileReadOnly(filePath.toFile());
     }
 
     public synchronized InputStream newInputStream(OpenOption... options)
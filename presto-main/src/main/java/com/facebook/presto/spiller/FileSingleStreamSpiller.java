@@ -19,17 +19,22 @@ import com.facebook.presto.operator.SpillContext;
 import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.page.PagesSerde;
 import com.facebook.presto.spi.page.PagesSerdeUtil;
+import com.facebook.presto.spi.page.SerializedPage;
 import com.facebook.presto.spi.spiller.SpillCipher;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
 import com.google.common.io.Closer;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import io.airlift.slice.InputStreamSliceInput;
 import io.airlift.slice.OutputStreamSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
 import io.airlift.slice.SliceOutput;
+import io.airlift.slice.Slices;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -38,21 +43,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import static com.facebook.presto.SystemSessionProperties.isSpillMemoryMappedReadEnabled;
 import static com.facebook.presto.common.block.PageBuilderStatus.DEFAULT_MAX_PAGE_SIZE_IN_BYTES;
 import static com.facebook.presto.execution.buffer.PageSplitterUtil.splitPage;
 import static com.facebook.presto.spi.StandardErrorCode.GENERIC_SPILL_FAILURE;
+import static com.facebook.presto.spi.page.PagesSerdeUtil.readSerializedPage;
 import static com.facebook.presto.spi.page.PagesSerdeUtil.writeSerializedPage;
 import static com.facebook.presto.spiller.FileSingleStreamSpillerFactory.SPILL_FILE_PREFIX;
 import static com.facebook.presto.spiller.FileSingleStreamSpillerFactory.SPILL_FILE_SUFFIX;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Iterators.transform;
 import static java.lang.String.format;
-import static java.nio.file.StandardOpenOption.APPEND;
 import static java.util.Objects.requireNonNull;
 
 @NotThreadSafe
@@ -61,14 +67,25 @@ public class FileSingleStreamSpiller
 {
     @VisibleForTesting
     static final int BUFFER_SIZE = 4 * 1024;
+    // serialized pages are batched into direct buffers of this size before they are written to the file
+    @VisibleForTesting
+    static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    // One buffer for the slice input or output, and two write buffers, one being filled while the other is written.
+    // This is reserved for the lifetime of every spiller, so a partitioning spiller reserves it once per spilled partition.
+    @VisibleForTesting
+    static final int RESERVED_BYTES = BUFFER_SIZE + 2 * WRITE_BUFFER_SIZE;
 
     private final FileHolder targetFile;
+    private final SpillPathLoad pathLoad;
     private final Closer closer = Closer.create();
+    // streams of the reads that have not been exhausted yet, they are closed with the spiller
+    private final Set<Closeable> openReaders = Sets.newConcurrentHashSet();
     private final PagesSerde serde;
     private final SpillerStats spillerStats;
     private final SpillContext localSpillContext;
     private final LocalMemoryContext memoryContext;
     private final Optional<SpillCipher> spillCipher;
+    private final boolean memoryMappedReadEnabled;
 
     private final ListeningExecutorService executor;
 
@@ -80,7 +97,7 @@ public class FileSingleStreamSpiller
     public FileSingleStreamSpiller(
             PagesSerde serde,
             ListeningExecutorService executor,
-            Path spillPath,
+            SpillPathLoad pathLoad,
             SpillerStats spillerStats,
             SpillContext spillContext,
             LocalMemoryContext memoryContext,
@@ -88,8 +105,10 @@ public class FileSingleStreamSpiller
     {
         this.serde = requireNonNull(serde, "serde is null");
         this.executor = requireNonNull(executor, "executor is null");
+        this.pathLoad = requireNonNull(pathLoad, "pathLoad is null");
         this.spillerStats = requireNonNull(spillerStats, "spillerStats is null");
         this.localSpillContext = spillContext.newLocalSpillContext();
+        this.memoryMappedReadEnabled = isSpillMemoryMappedReadEnabled(spillContext.getSession());
         this.memoryContext = requireNonNull(memoryContext, "memoryContext is null");
         this.spillCipher = requireNonNull(spillCipher, "spillCipher is null");
         checkState(!spillCipher.isPresent() || !spillCipher.get().isDestroyed(), "spillCipher is already destroyed");
@@ -104,9 +123,9 @@ public class FileSingleStreamSpiller
         // This means we start accounting for the memory before the spiller thread allocates it, and we release the memory reservation
         // before/after the spiller thread allocates that memory -- -- whether before or after depends on whether writePages() is in the
         // middle of execution when close() is called (note that this applies to both readPages() and writePages() methods).
-        this.memoryContext.setBytes(BUFFER_SIZE);
+        this.memoryContext.setBytes(RESERVED_BYTES);
         try {
-            this.targetFile = closer.register(new FileHolder(Files.createTempFile(spillPath, SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX)));
+            this.targetFile = closer.register(new FileHolder(Files.createTempFile(pathLoad.getPath(), SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX)));
         }
         catch (IOException e) {
             throw new PrestoException(GENERIC_SPILL_FAILURE, format("Failed to create spill file: %s", e.getMessage()), e);
@@ -118,7 +137,22 @@ public class FileSingleStreamSpiller
     {
         requireNonNull(pageIterator, "pageIterator is null");
         checkNoSpillInProgress();
-        spillInProgress = executor.submit(() -> writePages(pageIterator));
+        // queued spills count towards the load of the path too, as they will write to it
+        pathLoad.spillStarted();
+        try {
+            spillInProgress = executor.submit(() -> {
+                try {
+                    writePages(pageIterator);
+                }
+                finally {
+                    pathLoad.spillFinished();
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            pathLoad.spillFinished();
+            throw e;
+        }
         return spillInProgress;
     }
 
@@ -147,11 +181,17 @@ public class FileSingleStreamSpiller
         committed = true;
     }
 
+    @VisibleForTesting
+    int getOpenReaderCount()
+    {
+        return openReaders.size();
+    }
+
     private void writePages(Iterator<Page> pageIterator)
     {
         checkState(writable, "Spilling no longer allowed. The spiller has been made non-writable on first read for subsequent reads to be consistent");
         checkState(!committed, "Spilling no longer allowed. Spill file is already committed");
-        try (SliceOutput output = new OutputStreamSliceOutput(targetFile.newOutputStream(APPEND), BUFFER_SIZE)) {
+        try (SliceOutput output = new OutputStreamSliceOutput(targetFile.newDoubleBufferedOutputStream(WRITE_BUFFER_SIZE, pathLoad), BUFFER_SIZE)) {
             while (pageIterator.hasNext()) {
                 Page page = pageIterator.next();
                 spilledPagesInMemorySize += page.getSizeInBytes();
@@ -173,7 +213,6 @@ public class FileSingleStreamSpiller
 
     private Iterator<Page> readPages()
     {
-        checkState(writable, "Repeated reads are disallowed to prevent potential resource leaks");
         writable = false;
 
         try {
@@ -182,11 +221,22 @@ public class FileSingleStreamSpiller
             }
 
             checkState(committed, "Cannot read pages since spill file is not committed");
-            InputStream input = closer.register(targetFile.newInputStream());
+            // a single mapping cannot exceed 2GB, larger files are read through a stream
+            if (memoryMappedReadEnabled && targetFile.size() <= Integer.MAX_VALUE) {
+                MappedFileReader reader = new MappedFileReader(targetFile.mapReadOnly());
+                openReaders.add(reader);
+                Iterator<Page> deserializedPages = transform(reader, serde::deserialize);
+                spillerStats.addToTotalSpilledBytesRead(getSpilledPagesInMemorySize());
+                return closeWhenExhausted(deserializedPages, () -> closeReader(reader));
+            }
+
+            // every read has its own stream, so that the spilled pages can be read more than once
+            InputStream input = targetFile.newInputStream();
+            openReaders.add(input);
             Iterator<Page> deserializedPages = PagesSerdeUtil.readPages(serde, new InputStreamSliceInput(input, BUFFER_SIZE));
             Iterator<Page> compactPages = transform(deserializedPages, Page::compact);
             spillerStats.addToTotalSpilledBytesRead(getSpilledPagesInMemorySize());
-            return closeWhenExhausted(compactPages, input);
+            return closeWhenExhausted(compactPages, () -> closeReader(input));
         }
         catch (IOException e) {
             throw new PrestoException(GENERIC_SPILL_FAILURE, format("Failed to read spilled pages: %s", e.getMessage()), e);
@@ -198,6 +248,8 @@ public class FileSingleStreamSpiller
     {
         closer.register(localSpillContext);
         closer.register(() -> memoryContext.setBytes(0));
+        // the streams of unfinished reads are closed first, before the spilled data is removed
+        ImmutableList.copyOf(openReaders).forEach(closer::register);
         try {
             closer.close();
         }
@@ -206,6 +258,14 @@ public class FileSingleStreamSpiller
         }
     }
 
+    private void closeReader(Closeable reader)
+            throws IOException
+    {
+        if (openReaders.remove(reader)) {
+            reader.close();
+        }
+    }
+
     private void checkNoSpillInProgress()
     {
         checkState(spillInProgress.isDone(), "spill in progress");
@@ -234,4 +294,45 @@ public class FileSingleStreamSpiller
             }
         };
     }
+
+    /**
+     * Reads the serialized pages of a mapped spill file. The data of each page is wrapped in a buffer of its own,
+     * so that the blocks deserialized from it without a copy retain the size of the page rather than the size of
+     * the file. The file is unmapped once neither the reader nor any of these blocks reference the mapping, and
+     * the reader drops its reference when it is closed.
+     */
+    private static class MappedFileReader
+            extends AbstractIterator<SerializedPage>
+            implements Closeable
+    {
+        private volatile SliceInput input;
+
+        MappedFileReader(Slice mappedFile)
+        {
+            this.input = mappedFile.getInput();
+        }
+
+        @Override
+        protected SerializedPage computeNext()
+        {
+            SliceInput input = this.input;
+            checkState(input != null, "Spilled pages cannot be read once the spiller is closed");
+            if (!input.isReadable()) {
+                return endOfData();
+            }
+            SerializedPage page = readSerializedPage(input);
+            return new SerializedPage(
+                    Slices.wrappedBuffer(page.getSlice().toByteBuffer()),
+                    page.getPageCodecMarkers(),
+                    page.getPositionCount(),
+                    page.getUncompressedSizeInBytes(),
+                    page.getChecksum());
+        }
+
+        @Override
+        public void close()
+        {
+            input = null;
+        }
+    }
 }
@@ -35,11 +35,13 @@ import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileStore;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
 import static com.facebook.presto.spi.StandardErrorCode.OUT_OF_SPILL_SPACE;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
 import static java.lang.String.format;
 import static java.nio.file.Files.createDirectories;
@@ -63,6 +65,7 @@ public class FileSingleStreamSpillerFactory
     private final ListeningExecutorService executor;
     private final PagesSerdeFactory serdeFactory;
     private final List<Path> spillPaths;
+    private final List<SpillPathLoad> spillPathLoads;
     private final SpillerStats spillerStats;
     private final double maxUsedSpaceThreshold;
     private final boolean spillEncryptionEnabled;
@@ -98,6 +101,9 @@ public class FileSingleStreamSpillerFactory
         this.spillerStats = requireNonNull(spillerStats, "spillerStats can not be null");
         requireNonNull(spillPaths, "spillPaths is null");
         this.spillPaths = ImmutableList.copyOf(spillPaths);
+        this.spillPathLoads = spillPaths.stream()
+                .map(SpillPathLoad::new)
+                .collect(toImmutableList());
         spillPaths.forEach(path -> {
             try {
                 createDirectories(path);
@@ -157,21 +163,52 @@ public class FileSingleStreamSpillerFactory
         return new FileSingleStreamSpiller(serde, executor, getNextSpillPath(), spillerStats, spillContext, memoryContext, spillCipher);
     }
 
-    private synchronized Path getNextSpillPath()
+    /**
+     * Picks the spill path with enough disk space that is expected to complete a new spill the soonest,
+     * that is the one with the least spills in progress relative to its observed write throughput.
+     * Until the throughput of all the paths is known, only the number of spills in progress is compared.
+     * Ties are broken in round robin order.
+     */
+    private synchronized SpillPathLoad getNextSpillPath()
     {
-        int spillPathsCount = spillPaths.size();
+        if (spillPaths.isEmpty()) {
+            throw new PrestoException(OUT_OF_SPILL_SPACE, "No spill paths configured");
+        }
+
+        List<SpillPathLoad> candidates = new ArrayList<>();
+        boolean throughputKnown = true;
+        int spillPathsCount = spillPathLoads.size();
         for (int i = 0; i < spillPathsCount; ++i) {
-            int pathIndex = (roundRobinIndex + i) % spillPathsCount;
-            Path path = spillPaths.get(pathIndex);
-            if (hasEnoughDiskSpace(path)) {
-                roundRobinIndex = (roundRobinIndex + i + 1) % spillPathsCount;
-                return path;
+            SpillPathLoad pathLoad = spillPathLoads.get((roundRobinIndex + i) % spillPathsCount);
+            if (hasEnoughDiskSpace(pathLoad.getPath())) {
+                candidates.add(pathLoad);
+                throughputKnown &= pathLoad.getThroughput().isPresent();
             }
         }
-        if (spillPaths.isEmpty()) {
-            throw new PrestoException(OUT_OF_SPILL_SPACE, "No spill paths configured");
+        if (candidates.isEmpty()) {
+            throw new PrestoException(OUT_OF_SPILL_SPACE, "No free space available for spill");
+        }
+
+        SpillPathLoad selected = null;
+        double selectedCost = Double.POSITIVE_INFINITY;
+        for (SpillPathLoad candidate : candidates) {
+            double cost = candidate.getActiveSpills() + 1;
+            if (throughputKnown) {
+                cost /= candidate.getThroughput().getAsDouble();
+            }
+            if (cost < selectedCost) {
+                selected = candidate;
+                selectedCost = cost;
+            }
         }
-        throw new PrestoException(OUT_OF_SPILL_SPACE, "No free space available for spill");
+        roundRobinIndex = (spillPathLoads.indexOf(selected) + 1) % spillPathsCount;
+        return selected;
+    }
+
+    @VisibleForTesting
+    SpillPathLoad getSpillPathLoad(Path path)
+    {
+        return spillPathLoads.get(spillPaths.indexOf(path));
     }
 
     private boolean hasEnoughDiskSpace(Path path)
@@ -27,6 +27,7 @@ public class NodeSpillConfig
 
     private boolean spillCompressionEnabled;
     private boolean spillEncryptionEnabled;
+    private boolean spillMemoryMappedReadEnabled;
 
     @NotNull
     public DataSize getMaxSpillPerNode()
@@ -91,6 +92,18 @@ public class NodeSpillConfig
         return this;
     }
 
+    public boolean isSpillMemoryMappedReadEnabled()
+    {
+        return spillMemoryMappedReadEnabled;
+    }
+
+    @Config("experimental.spill-memory-mapped-read-enabled")
+    public NodeSpillConfig setSpillMemoryMappedReadEnabled(boolean spillMemoryMappedReadEnabled)
+    {
+        this.spillMemoryMappedReadEnabled = spillMemoryMappedReadEnabled;
+        return this;
+    }
+
     @NotNull
     public DataSize getTempStorageBufferSize()
     {
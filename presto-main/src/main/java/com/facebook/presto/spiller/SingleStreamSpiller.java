@@ -44,7 +44,11 @@ public interface SingleStreamSpiller
     /**
      * Returns list of previously spilled Pages as a single stream. Commits the spill file automatically
      * if not committed. Pages are in the same order as they were spilled. Method requires the
-     * issued spill request to be completed.
+     * issued spill request to be completed. The spilled pages can be read more than once, but no
+     * pages can be spilled after the first read. Every read has its own stream, which is released
+     * once the returned iterator is exhausted, or else when the spiller is closed. Spillers are not
+     * thread safe, so reads from different threads must be synchronized by the caller, including
+     * the iteration of the returned pages.
      */
     Iterator<Page> getSpilledPages();
 
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.spiller;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.nio.file.Path;
+import java.util.OptionalDouble;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Load of a single spill path: the number of spills that are queued or running against it,
+ * and the write throughput observed on it, decayed so that recent writes weigh the most.
+ */
+@ThreadSafe
+final class SpillPathLoad
+{
+    // weight kept by the previous samples each time a write is recorded
+    private static final double DECAY = 0.99;
+    // the observed throughput is not trusted until this many bytes were written to the path
+    private static final long MIN_SAMPLED_BYTES = 4 * 1024 * 1024;
+
+    private final Path path;
+    private final AtomicInteger activeSpills = new AtomicInteger();
+
+    @GuardedBy("this")
+    private double decayedBytes;
+    @GuardedBy("this")
+    private double decayedNanos;
+    @GuardedBy("this")
+    private long sampledBytes;
+
+    public SpillPathLoad(Path path)
+    {
+        this.path = requireNonNull(path, "path is null");
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    public void spillStarted()
+    {
+        activeSpills.incrementAndGet();
+    }
+
+    public void spillFinished()
+    {
+        int active = activeSpills.decrementAndGet();
+        checkState(active >= 0, "more spills finished than started on %s", path);
+    }
+
+    public int getActiveSpills()
+    {
+        return activeSpills.get();
+    }
+
+    public synchronized void recordWrite(long bytes, long nanos)
+    {
+        checkArgument(bytes >= 0, "bytes is negative");
+        checkArgument(nanos >= 0, "nanos is negative");
+        decayedBytes = decayedBytes * DECAY + bytes;
+        decayedNanos = decayedNanos * DECAY + nanos;
+        sampledBytes += bytes;
+    }
+
+    /**
+     * Returns the observed write throughput in bytes per nanosecond, or empty if not enough was written to the path yet.
+     */
+    public synchronized OptionalDouble getThroughput()
+    {
+        if (sampledBytes < MIN_SAMPLED_BYTES || decayedNanos <= 0) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(decayedBytes / decayedNanos);
+    }
+}
@@ -29,6 +29,7 @@ import com.facebook.presto.spi.storage.TempStorage;
 import com.facebook.presto.spi.storage.TempStorageHandle;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
 import com.google.common.io.Closer;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -45,6 +46,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static com.facebook.presto.SystemSessionProperties.getTempStorageSpillerBufferSize;
 import static com.facebook.presto.common.block.PageBuilderStatus.DEFAULT_MAX_PAGE_SIZE_IN_BYTES;
@@ -70,6 +72,8 @@ public class TempStorageSingleStreamSpiller
     private final TempDataOperationContext tempDataOperationContext;
 
     private final Closer closer = Closer.create();
+    // streams of the reads that have not been exhausted yet, they are closed with the spiller
+    private final Set<Closeable> openReaders = Sets.newConcurrentHashSet();
 
     private boolean writable = true;
     private boolean committed;
@@ -192,7 +196,6 @@ public class TempStorageSingleStreamSpiller
 
     private Iterator<Page> readPages()
     {
-        checkState(writable, "Repeated reads are disallowed to prevent potential resource leaks");
         writable = false;
         try {
             if (!committed) {
@@ -200,10 +203,12 @@ public class TempStorageSingleStreamSpiller
             }
 
             checkState(committed, "Cannot read pages since spill file is not committed");
-            InputStream input = closer.register(tempStorage.open(tempDataOperationContext, tempStorageHandle));
+            // every read has its own stream, so that the spilled pages can be read more than once
+            InputStream input = tempStorage.open(tempDataOperationContext, tempStorageHandle);
+            openReaders.add(input);
             Iterator<Page> deserializedPages = PagesSerdeUtil.readPages(serde, new InputStreamSliceInput(input));
             Iterator<Page> compactPages = transform(deserializedPages, Page::compact);
-            return closeWhenExhausted(compactPages, input);
+            return closeWhenExhausted(compactPages, () -> closeReader(input));
         }
         catch (IOException e) {
             throw new PrestoException(GENERIC_INTERNAL_ERROR, "Failed to read spilled pages", e);
@@ -222,6 +227,8 @@ public class TempStorageSingleStreamSpiller
 
         closer.register(localSpillContext);
         closer.register(() -> memoryContext.setBytes(0));
+        // the streams of unfinished reads are closed first, before the spilled data is removed
+        ImmutableList.copyOf(openReaders).forEach(closer::register);
         try {
             closer.close();
         }
@@ -245,6 +252,14 @@ public class TempStorageSingleStreamSpiller
         memoryContext.setBytes(dataSink.getRetainedSizeInBytes());
     }
 
+    private void closeReader(Closeable reader)
+            throws IOException
+    {
+        if (openReaders.remove(reader)) {
+            reader.close();
+        }
+    }
+
     private void checkNoSpillInProgress()
     {
         checkState(spillInProgress.isDone(), "spill in progress");
@@ -18,6 +18,7 @@ import com.facebook.airlift.configuration.ConfigDescription;
 import com.facebook.airlift.configuration.DefunctConfig;
 import com.facebook.airlift.configuration.LegacyConfig;
 import com.facebook.presto.common.function.OperatorType;
+import com.facebook.presto.execution.buffer.ExchangeCompressionCodec;
 import com.facebook.presto.spi.function.FunctionMetadata;
 import com.facebook.presto.sql.tree.CreateView;
 import com.google.common.annotations.VisibleForTesting;
@@ -26,6 +27,7 @@ import com.google.common.collect.ImmutableList;
 import io.airlift.units.DataSize;
 import io.airlift.units.Duration;
 import io.airlift.units.MaxDataSize;
+import io.airlift.units.MinDataSize;
 
 import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.DecimalMax;
@@ -42,6 +44,7 @@ import static com.facebook.presto.sql.analyzer.FeaturesConfig.JoinNotNullInferen
 import static com.facebook.presto.sql.analyzer.FeaturesConfig.TaskSpillingStrategy.ORDER_BY_CREATE_TIME;
 import static com.facebook.presto.sql.tree.CreateView.Security.DEFINER;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.airlift.units.DataSize.Unit.BYTE;
 import static io.airlift.units.DataSize.Unit.KILOBYTE;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static java.util.Objects.requireNonNull;
@@ -83,6 +86,7 @@ public class FeaturesConfig
     private int concurrentLifespansPerTask;
     private boolean spatialJoinsEnabled = true;
     private boolean fastInequalityJoins = true;
+    private boolean bigintJoinHashEnabled = true;
     private TaskSpillingStrategy taskSpillingStrategy = ORDER_BY_CREATE_TIME;
     private boolean queryLimitSpillEnabled;
     private SingleStreamSpillerChoice singleStreamSpillerChoice = SingleStreamSpillerChoice.LOCAL_FILE;
@@ -116,15 +120,22 @@ public class FeaturesConfig
     private boolean pushTableWriteThroughUnion = true;
     private boolean exchangeCompressionEnabled;
     private boolean exchangeChecksumEnabled;
+    private ExchangeCompressionCodec exchangeCompressionCodec = ExchangeCompressionCodec.LZ4;
+    private DataSize exchangeAdaptiveCompressionNetworkThroughput = new DataSize(128, MEGABYTE);
+    private boolean localExchangePartitionViewsEnabled;
     private boolean optimizeMixedDistinctAggregations;
     private boolean forceSingleNodeOutput = true;
     private boolean pagesIndexEagerCompactionEnabled;
+    private boolean pagesIndexNormalizedKeySortEnabled = true;
     private boolean distributedSort = true;
+    private boolean localParallelSort = true;
+    private boolean topNScanFilterEnabled = true;
     private boolean optimizeJoinsWithEmptySources;
     private boolean logFormattedQueryEnabled;
     private boolean logInvokedFunctionNamesEnabled;
 
     private boolean dictionaryAggregation;
+    private boolean flatGroupByHashEnabled = true;
     private boolean spillEnabled;
     private boolean joinSpillingEnabled = true;
     private boolean aggregationSpillEnabled = true;
@@ -135,9 +146,12 @@ public class FeaturesConfig
     private DataSize distinctAggregationLargeBlockSizeThreshold = new DataSize(50, MEGABYTE);
     private boolean orderByAggregationSpillEnabled = true;
     private boolean windowSpillEnabled = true;
+    private boolean semiJoinSpillEnabled = true;
+    private boolean markDistinctSpillEnabled = true;
     private boolean orderBySpillEnabled = true;
     private DataSize aggregationOperatorUnspillMemoryLimit = new DataSize(4, MEGABYTE);
     private DataSize topNOperatorUnspillMemoryLimit = new DataSize(4, MEGABYTE);
+    private DataSize nestedLoopJoinSpillProbeBlockSize = new DataSize(16, MEGABYTE);
     private List<Path> spillerSpillPaths = ImmutableList.of();
     private int spillerThreads = 4;
     private double spillMaxUsedSpaceThreshold = 0.9;
@@ -162,6 +176,7 @@ public class FeaturesConfig
     private double partialAggregationByteReductionThreshold = 0.5;
     private boolean adaptivePartialAggregationEnabled;
     private double adaptivePartialAggregationRowsReductionRatioThreshold = 0.8;
+    private boolean adaptivePartialAggregationContinuousTrackingEnabled;
     private boolean optimizeTopNRowNumber = true;
     private boolean pushLimitThroughOuterJoin = true;
     private boolean optimizeConstantGroupingKeys = true;
@@ -172,6 +187,7 @@ public class FeaturesConfig
     private int dynamicFilteringMaxPerDriverRowCount = 100;
     private DataSize dynamicFilteringMaxPerDriverSize = new DataSize(10, KILOBYTE);
     private int dynamicFilteringRangeRowLimitPerDriver;
+    private DataSize dynamicFilteringBloomFilterSizePerDriver = new DataSize(0, BYTE);
 
     private boolean fragmentResultCachingEnabled;
 
@@ -184,6 +200,7 @@ public class FeaturesConfig
     private boolean jsonSerdeCodeGenerationEnabled;
     private int maxConcurrentMaterializations = 3;
     private boolean optimizedRepartitioningEnabled;
+    private boolean optimizedRepartitioningDictionaryEncodingEnabled;
 
     private boolean pushdownSubfieldsEnabled;
     private boolean pushdownSubfieldsFromLambdaEnabled;
@@ -222,6 +239,12 @@ public class FeaturesConfig
     private boolean partialResultsEnabled;
     private double partialResultsCompletionRatioThreshold = 0.5;
     private double partialResultsMaxExecutionTimeMultiplier = 2.0;
+    private boolean speculativeExecutionEnabled;
+    private double speculativeExecutionStragglerMultiplier = 3.0;
+    private boolean adaptivePartitionCountEnabled;
+    private int minHashPartitionCount = 4;
+    private DataSize targetPartitionInputSize = new DataSize(512, MEGABYTE);
+    private boolean adaptiveJoinDistributionEnabled;
 
     private boolean offsetClauseEnabled;
     private boolean materializedViewDataConsistencyEnabled = true;
@@ -254,6 +277,7 @@ public class FeaturesConfig
     private RandomizeOuterJoinNullKeyStrategy randomizeOuterJoinNullKeyStrategy = RandomizeOuterJoinNullKeyStrategy.DISABLED;
     private ShardedJoinStrategy shardedJoinStrategy = ShardedJoinStrategy.DISABLED;
     private int joinShardCount = 100;
+    private double joinShardHotKeyMinFrequency = 0.01;
     private boolean isOptimizeConditionalAggregationEnabled;
     private boolean isRemoveRedundantDistinctAggregationEnabled = true;
     private boolean inPredicatesAsInnerJoinsEnabled;
@@ -401,6 +425,7 @@ public class FeaturesConfig
     {
         DISABLED,
         COST_BASED,
+        HOT_KEYS,
         ALWAYS
     }
 
@@ -662,6 +687,19 @@ public class FeaturesConfig
         return fastInequalityJoins;
     }
 
+    @Config("bigint-join-hash-enabled")
+    @ConfigDescription("Use a specialized lookup source for joins on a single BIGINT, INTEGER or DATE key")
+    public FeaturesConfig setBigintJoinHashEnabled(boolean bigintJoinHashEnabled)
+    {
+        this.bigintJoinHashEnabled = bigintJoinHashEnabled;
+        return this;
+    }
+
+    public boolean isBigintJoinHashEnabled()
+    {
+        return bigintJoinHashEnabled;
+    }
+
     public JoinReorderingStrategy getJoinReorderingStrategy()
     {
         return joinReorderingStrategy;
@@ -1063,6 +1101,19 @@ public class FeaturesConfig
         return this;
     }
 
+    public boolean isAdaptivePartialAggregationContinuousTrackingEnabled()
+    {
+        return adaptivePartialAggregationContinuousTrackingEnabled;
+    }
+
+    @Config("experimental.adaptive-partial-aggregation-continuous-tracking")
+    @ConfigDescription("Keep tracking the rows reduction ratio of adaptive partial aggregation, and re-enable it as soon as the skipped rows become clustered")
+    public FeaturesConfig setAdaptivePartialAggregationContinuousTrackingEnabled(boolean adaptivePartialAggregationContinuousTrackingEnabled)
+    {
+        this.adaptivePartialAggregationContinuousTrackingEnabled = adaptivePartialAggregationContinuousTrackingEnabled;
+        return this;
+    }
+
     public boolean isOptimizeTopNRowNumber()
     {
         return optimizeTopNRowNumber;
@@ -1123,6 +1174,19 @@ public class FeaturesConfig
         return this;
     }
 
+    public boolean isFlatGroupByHashEnabled()
+    {
+        return flatGroupByHashEnabled;
+    }
+
+    @Config("flat-group-by-hash-enabled")
+    @ConfigDescription("Use the flat row-oriented group by hash for multi-channel keys of fixed-width and short varchar types")
+    public FeaturesConfig setFlatGroupByHashEnabled(boolean flatGroupByHashEnabled)
+    {
+        this.flatGroupByHashEnabled = flatGroupByHashEnabled;
+        return this;
+    }
+
     public boolean isConfidenceBasedBroadcastEnabled()
     {
         return confidenceBasedBroadcastEnabled;
@@ -1287,6 +1351,32 @@ public class FeaturesConfig
         return windowSpillEnabled;
     }
 
+    @Config("experimental.semi-join-spill-enabled")
+    @ConfigDescription("Enable Semi Join Operator Spilling if spill is enabled")
+    public FeaturesConfig setSemiJoinSpillEnabled(boolean semiJoinSpillEnabled)
+    {
+        this.semiJoinSpillEnabled = semiJoinSpillEnabled;
+        return this;
+    }
+
+    public boolean isSemiJoinSpillEnabled()
+    {
+        return semiJoinSpillEnabled;
+    }
+
+    @Config("experimental.mark-distinct-spill-enabled")
+    @ConfigDescription("Enable Mark Distinct Operator Spilling if spill is enabled")
+    public FeaturesConfig setMarkDistinctSpillEnabled(boolean markDistinctSpillEnabled)
+    {
+        this.markDistinctSpillEnabled = markDistinctSpillEnabled;
+        return this;
+    }
+
+    public boolean isMarkDistinctSpillEnabled()
+    {
+        return markDistinctSpillEnabled;
+    }
+
     @Config("experimental.order-by-spill-enabled")
     @ConfigDescription("Enable Order-by Operator Spilling if spill is enabled")
     public FeaturesConfig setOrderBySpillEnabled(boolean orderBySpillEnabled)
@@ -1450,6 +1540,19 @@ public class FeaturesConfig
         return this;
     }
 
+    public DataSize getNestedLoopJoinSpillProbeBlockSize()
+    {
+        return nestedLoopJoinSpillProbeBlockSize;
+    }
+
+    @Config("experimental.nested-loop-join-spill-probe-block-size")
+    @ConfigDescription("Size of the block of probe pages joined with every scan of the spilled build side of a nested loop join")
+    public FeaturesConfig setNestedLoopJoinSpillProbeBlockSize(DataSize nestedLoopJoinSpillProbeBlockSize)
+    {
+        this.nestedLoopJoinSpillProbeBlockSize = nestedLoopJoinSpillProbeBlockSize;
+        return this;
+    }
+
     public DataSize getAggregationOperatorUnspillMemoryLimit()
     {
         return aggregationOperatorUnspillMemoryLimit;
@@ -1590,6 +1693,20 @@ public class FeaturesConfig
         return this;
     }
 
+    @MaxDataSize("128MB")
+    public DataSize getDynamicFilteringBloomFilterSizePerDriver()
+    {
+        return dynamicFilteringBloomFilterSizePerDriver;
+    }
+
+    @Config("dynamic-filtering-bloom-filter-size-per-driver")
+    @ConfigDescription("Size of the Bloom filter built per driver and dynamic filter once the build-side values exceed the limits of the exact filter, 0 to disable Bloom filters")
+    public FeaturesConfig setDynamicFilteringBloomFilterSizePerDriver(DataSize dynamicFilteringBloomFilterSizePerDriver)
+    {
+        this.dynamicFilteringBloomFilterSizePerDriver = dynamicFilteringBloomFilterSizePerDriver;
+        return this;
+    }
+
     public boolean isFragmentResultCachingEnabled()
     {
         return fragmentResultCachingEnabled;
@@ -1640,6 +1757,48 @@ public class FeaturesConfig
         return this;
     }
 
+    @NotNull
+    public ExchangeCompressionCodec getExchangeCompressionCodec()
+    {
+        return exchangeCompressionCodec;
+    }
+
+    @Config("exchange.compression-codec")
+    @ConfigDescription("Codec used to compress the pages sent through exchanges, or ADAPTIVE to choose it for each exchange")
+    public FeaturesConfig setExchangeCompressionCodec(ExchangeCompressionCodec exchangeCompressionCodec)
+    {
+        this.exchangeCompressionCodec = exchangeCompressionCodec;
+        return this;
+    }
+
+    @NotNull
+    @MinDataSize("1MB")
+    public DataSize getExchangeAdaptiveCompressionNetworkThroughput()
+    {
+        return exchangeAdaptiveCompressionNetworkThroughput;
+    }
+
+    @Config("exchange.adaptive-compression-network-throughput")
+    @ConfigDescription("Expected throughput per second of a single exchange, used to weigh the compression cost against the transfer time with the ADAPTIVE codec")
+    public FeaturesConfig setExchangeAdaptiveCompressionNetworkThroughput(DataSize exchangeAdaptiveCompressionNetworkThroughput)
+    {
+        this.exchangeAdaptiveCompressionNetworkThroughput = exchangeAdaptiveCompressionNetworkThroughput;
+        return this;
+    }
+
+    public boolean isLocalExchangePartitionViewsEnabled()
+    {
+        return localExchangePartitionViewsEnabled;
+    }
+
+    @Config("local-exchange.partition-views-enabled")
+    @ConfigDescription("Send views over the input page to the partitions of a local exchange instead of copying their rows")
+    public FeaturesConfig setLocalExchangePartitionViewsEnabled(boolean localExchangePartitionViewsEnabled)
+    {
+        this.localExchangePartitionViewsEnabled = localExchangePartitionViewsEnabled;
+        return this;
+    }
+
     public boolean isEnableIntermediateAggregations()
     {
         return enableIntermediateAggregations;
@@ -1688,6 +1847,19 @@ public class FeaturesConfig
         return this;
     }
 
+    public boolean isPagesIndexNormalizedKeySortEnabled()
+    {
+        return pagesIndexNormalizedKeySortEnabled;
+    }
+
+    @Config("pages-index.normalized-key-sort-enabled")
+    @ConfigDescription("Sort large pages indexes with a radix sort on a normalized key of the first sort channel. The sort buffers take 32 bytes per position, and a comparison sort is used when they cannot be reserved")
+    public FeaturesConfig setPagesIndexNormalizedKeySortEnabled(boolean pagesIndexNormalizedKeySortEnabled)
+    {
+        this.pagesIndexNormalizedKeySortEnabled = pagesIndexNormalizedKeySortEnabled;
+        return this;
+    }
+
     @MaxDataSize("1MB")
     public DataSize getFilterAndProjectMinOutputPageSize()
     {
@@ -1726,6 +1898,32 @@ public class FeaturesConfig
         return this;
     }
 
+    public boolean isLocalParallelSortEnabled()
+    {
+        return localParallelSort;
+    }
+
+    @Config("local-parallel-sort")
+    @ConfigDescription("Sort on multiple drivers of a task and merge the sorted streams, even when the sort is not distributed across nodes")
+    public FeaturesConfig setLocalParallelSortEnabled(boolean enabled)
+    {
+        localParallelSort = enabled;
+        return this;
+    }
+
+    public boolean isTopNScanFilterEnabled()
+    {
+        return topNScanFilterEnabled;
+    }
+
+    @Config("top-n-scan-filter-enabled")
+    @ConfigDescription("Filter the rows read by a table scan on the first sort key of the rows kept by the top N operator of the same driver")
+    public FeaturesConfig setTopNScanFilterEnabled(boolean topNScanFilterEnabled)
+    {
+        this.topNScanFilterEnabled = topNScanFilterEnabled;
+        return this;
+    }
+
     public int getMaxGroupingSets()
     {
         return maxGroupingSets;
@@ -1878,6 +2076,19 @@ public class FeaturesConfig
         return this;
     }
 
+    public boolean isOptimizedRepartitioningDictionaryEncodingEnabled()
+    {
+        return optimizedRepartitioningDictionaryEncodingEnabled;
+    }
+
+    @Config("experimental.optimized-repartitioning-dictionary-encoding-enabled")
+    @ConfigDescription("Experimental: Send the referenced dictionary entries and the ids of dictionary encoded columns in optimized repartitioning")
+    public FeaturesConfig setOptimizedRepartitioningDictionaryEncodingEnabled(boolean optimizedRepartitioningDictionaryEncodingEnabled)
+    {
+        this.optimizedRepartitioningDictionaryEncodingEnabled = optimizedRepartitioningDictionaryEncodingEnabled;
+        return this;
+    }
+
     public boolean isListBuiltInFunctionsOnly()
     {
         return listBuiltInFunctionsOnly;
@@ -2173,6 +2384,87 @@ public class FeaturesConfig
         return this;
     }
 
+    public boolean isSpeculativeExecutionEnabled()
+    {
+        return speculativeExecutionEnabled;
+    }
+
+    @Config("speculative-execution-enabled")
+    @ConfigDescription("Run a copy of the straggler tasks of leaf stages reading from deterministic connectors on another node, and use the output of the first attempt")
+    public FeaturesConfig setSpeculativeExecutionEnabled(boolean speculativeExecutionEnabled)
+    {
+        this.speculativeExecutionEnabled = speculativeExecutionEnabled;
+        return this;
+    }
+
+    @DecimalMin("1.0")
+    public double getSpeculativeExecutionStragglerMultiplier()
+    {
+        return speculativeExecutionStragglerMultiplier;
+    }
+
+    @Config("speculative-execution-straggler-multiplier")
+    @ConfigDescription("A task is a straggler when it runs longer than this multiple of the median time of the finished tasks of its stage")
+    public FeaturesConfig setSpeculativeExecutionStragglerMultiplier(double speculativeExecutionStragglerMultiplier)
+    {
+        this.speculativeExecutionStragglerMultiplier = speculativeExecutionStragglerMultiplier;
+        return this;
+    }
+
+    public boolean isAdaptivePartitionCountEnabled()
+    {
+        return adaptivePartitionCountEnabled;
+    }
+
+    @Config("optimizer.adaptive-partition-count-enabled")
+    @ConfigDescription("Choose the partition count of each hash partitioned stage from the estimated size of its input, up to hash-partition-count")
+    public FeaturesConfig setAdaptivePartitionCountEnabled(boolean adaptivePartitionCountEnabled)
+    {
+        this.adaptivePartitionCountEnabled = adaptivePartitionCountEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getMinHashPartitionCount()
+    {
+        return minHashPartitionCount;
+    }
+
+    @Config("optimizer.min-hash-partition-count")
+    @ConfigDescription("Minimum partition count of a hash partitioned stage when the partition count is chosen from the estimated input size")
+    public FeaturesConfig setMinHashPartitionCount(int minHashPartitionCount)
+    {
+        this.minHashPartitionCount = minHashPartitionCount;
+        return this;
+    }
+
+    @NotNull
+    public DataSize getTargetPartitionInputSize()
+    {
+        return targetPartitionInputSize;
+    }
+
+    @Config("optimizer.target-partition-input-size")
+    @ConfigDescription("Estimated input size of each partition of a hash partitioned stage when the partition count is chosen from the estimated input size")
+    public FeaturesConfig setTargetPartitionInputSize(DataSize targetPartitionInputSize)
+    {
+        this.targetPartitionInputSize = targetPartitionInputSize;
+        return this;
+    }
+
+    public boolean isAdaptiveJoinDistributionEnabled()
+    {
+        return adaptiveJoinDistributionEnabled;
+    }
+
+    @Config("optimizer.adaptive-join-distribution-enabled")
+    @ConfigDescription("With materialized exchanges only, repartition a broadcast join whose materialized build side is larger than join-max-broadcast-table-size. Joins over streaming exchanges are not changed")
+    public FeaturesConfig setAdaptiveJoinDistributionEnabled(boolean adaptiveJoinDistributionEnabled)
+    {
+        this.adaptiveJoinDistributionEnabled = adaptiveJoinDistributionEnabled;
+        return this;
+    }
+
     public boolean isOffsetClauseEnabled()
     {
         return offsetClauseEnabled;
@@ -2528,6 +2820,21 @@ public class FeaturesConfig
         return this;
     }
 
+    @DecimalMin("0.001")
+    @DecimalMax("1.0")
+    public double getJoinShardHotKeyMinFrequency()
+    {
+        return joinShardHotKeyMinFrequency;
+    }
+
+    @Config("optimizer.join-shard-hot-key-min-frequency")
+    @ConfigDescription("Minimum fraction of the probe rows that share a join key for the key to be sharded by the HOT_KEYS sharded join strategy")
+    public FeaturesConfig setJoinShardHotKeyMinFrequency(double joinShardHotKeyMinFrequency)
+    {
+        this.joinShardHotKeyMinFrequency = joinShardHotKeyMinFrequency;
+        return this;
+    }
+
     public boolean isOptimizeConditionalAggregationEnabled()
     {
         return isOptimizeConditionalAggregationEnabled;
@@ -73,12 +73,14 @@ import static com.facebook.presto.bytecode.Access.STATIC;
 import static com.facebook.presto.bytecode.Access.a;
 import static com.facebook.presto.bytecode.Parameter.arg;
 import static com.facebook.presto.bytecode.ParameterizedType.type;
+import static com.facebook.presto.bytecode.expression.BytecodeExpressions.add;
 import static com.facebook.presto.bytecode.expression.BytecodeExpressions.constantFalse;
 import static com.facebook.presto.bytecode.expression.BytecodeExpressions.constantInt;
 import static com.facebook.presto.bytecode.expression.BytecodeExpressions.constantLong;
 import static com.facebook.presto.bytecode.expression.BytecodeExpressions.constantNull;
 import static com.facebook.presto.bytecode.expression.BytecodeExpressions.constantTrue;
 import static com.facebook.presto.bytecode.expression.BytecodeExpressions.getStatic;
+import static com.facebook.presto.bytecode.expression.BytecodeExpressions.lessThan;
 import static com.facebook.presto.bytecode.expression.BytecodeExpressions.newInstance;
 import static com.facebook.presto.bytecode.expression.BytecodeExpressions.notEqual;
 import static com.facebook.presto.sql.analyzer.TypeSignatureProvider.fromTypes;
@@ -223,6 +225,7 @@ public class JoinCompiler
         generateGetChannelCountMethod(classDefinition, outputChannels.size());
         generateGetSizeInBytesMethod(classDefinition, sizeField);
         generateAppendToMethod(classDefinition, callSiteBinder, types, outputChannels, channelFields);
+        generateBatchAppendToMethod(classDefinition, callSiteBinder, types, outputChannels, channelFields);
         generateHashPositionMethod(classDefinition, callSiteBinder, joinChannelTypes, joinChannelFields, hashChannelField);
         generateHashRowMethod(classDefinition, callSiteBinder, joinChannelTypes);
         generateRowEqualsRowMethod(classDefinition, callSiteBinder, joinChannelTypes);
@@ -371,6 +374,41 @@ public class JoinCompiler
         appendToBody.ret();
     }
 
+    private static void generateBatchAppendToMethod(ClassDefinition classDefinition, CallSiteBinder callSiteBinder, List<Type> types, List<Integer> outputChannels, List<FieldDefinition> channelFields)
+    {
+        Parameter blockIndexes = arg("blockIndexes", int[].class);
+        Parameter blockPositions = arg("blockPositions", int[].class);
+        Parameter length = arg("length", int.class);
+        Parameter pageBuilder = arg("pageBuilder", PageBuilder.class);
+        Parameter outputChannelOffset = arg("outputChannelOffset", int.class);
+        MethodDefinition appendToMethod = classDefinition.declareMethod(a(PUBLIC), "appendTo", type(void.class), blockIndexes, blockPositions, length, pageBuilder, outputChannelOffset);
+
+        Variable thisVariable = appendToMethod.getThis();
+        Scope scope = appendToMethod.getScope();
+        BytecodeBlock appendToBody = appendToMethod.getBody();
+        Variable blockBuilder = scope.declareVariable(BlockBuilder.class, "blockBuilder");
+        Variable index = scope.declareVariable(int.class, "index");
+
+        int pageBuilderOutputChannel = 0;
+        for (int outputChannel : outputChannels) {
+            Type type = types.get(outputChannel);
+            BytecodeExpression block = thisVariable
+                    .getField(channelFields.get(outputChannel))
+                    .invoke("get", Object.class, blockIndexes.getElement(index))
+                    .cast(Block.class);
+
+            appendToBody
+                    .comment("for (index = 0; index < length; index++) { %s.appendTo(channel_%s.get(blockIndexes[index]), blockPositions[index], pageBuilder.getBlockBuilder(outputChannelOffset + %s)); }", type.getClass(), outputChannel, pageBuilderOutputChannel)
+                    .append(blockBuilder.set(pageBuilder.invoke("getBlockBuilder", BlockBuilder.class, add(outputChannelOffset, constantInt(pageBuilderOutputChannel++)))))
+                    .append(new ForLoop()
+                            .initialize(index.set(constantInt(0)))
+                            .condition(lessThan(index, length))
+                            .update(index.increment())
+                            .body(constantType(callSiteBinder, type).invoke("appendTo", void.class, block, blockPositions.getElement(index), blockBuilder)));
+        }
+        appendToBody.ret();
+    }
+
     private static void generateIsPositionNull(ClassDefinition classDefinition, List<FieldDefinition> joinChannelFields)
     {
         Parameter blockIndex = arg("blockIndex", int.class);
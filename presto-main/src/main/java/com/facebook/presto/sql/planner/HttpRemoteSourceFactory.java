@@ -27,6 +27,8 @@ import com.facebook.presto.sql.gen.OrderingCompiler;
 
 import java.util.List;
 
+import static com.facebook.presto.SystemSessionProperties.getExchangeAdaptiveCompressionNetworkThroughput;
+import static com.facebook.presto.SystemSessionProperties.getExchangeCompressionCodec;
 import static com.facebook.presto.SystemSessionProperties.isExchangeChecksumEnabled;
 import static com.facebook.presto.SystemSessionProperties.isExchangeCompressionEnabled;
 import static java.util.Objects.requireNonNull;
@@ -52,7 +54,7 @@ public class HttpRemoteSourceFactory
                 operatorId,
                 planNodeId,
                 taskExchangeClientManager,
-                new PagesSerdeFactory(blockEncodingSerde, isExchangeCompressionEnabled(session), isExchangeChecksumEnabled(session)));
+                new PagesSerdeFactory(blockEncodingSerde, isExchangeCompressionEnabled(session), isExchangeChecksumEnabled(session), getExchangeCompressionCodec(session), getExchangeAdaptiveCompressionNetworkThroughput(session)));
     }
 
     @Override
@@ -69,7 +71,7 @@ public class HttpRemoteSourceFactory
                 operatorId,
                 planNodeId,
                 taskExchangeClientManager,
-                new PagesSerdeFactory(blockEncodingSerde, isExchangeCompressionEnabled(session), isExchangeChecksumEnabled(session)),
+                new PagesSerdeFactory(blockEncodingSerde, isExchangeCompressionEnabled(session), isExchangeChecksumEnabled(session), getExchangeCompressionCodec(session), getExchangeAdaptiveCompressionNetworkThroughput(session)),
                 orderingCompiler,
                 types,
                 outputChannels,
@@ -14,20 +14,27 @@
 package com.facebook.presto.sql.planner;
 
 import com.facebook.presto.common.predicate.Domain;
+import com.facebook.presto.common.predicate.Range;
 import com.facebook.presto.common.predicate.TupleDomain;
+import com.facebook.presto.common.type.Type;
 import com.facebook.presto.expressions.DynamicFilters.DynamicFilterExtractResult;
 import com.facebook.presto.expressions.DynamicFilters.DynamicFilterPlaceholder;
+import com.facebook.presto.memory.context.LocalMemoryContext;
+import com.facebook.presto.operator.SplitBlockBloomFilter;
 import com.facebook.presto.spi.plan.FilterNode;
 import com.facebook.presto.spi.plan.PlanNode;
 import com.facebook.presto.spi.relation.VariableReferenceExpression;
 import com.facebook.presto.sql.planner.optimizations.PlanNodeSearcher;
 import com.facebook.presto.sql.planner.plan.AbstractJoinNode;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 
+import javax.annotation.concurrent.GuardedBy;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -35,7 +42,10 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 
+import static com.facebook.presto.common.Utils.nativeValueToBlock;
+import static com.facebook.presto.common.function.OperatorType.EQUAL;
 import static com.facebook.presto.expressions.DynamicFilters.extractDynamicFilters;
+import static com.facebook.presto.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Verify.verify;
 import static java.util.Objects.requireNonNull;
@@ -57,7 +67,35 @@ public class LocalDynamicFilter
     // The resulting predicates from each build-side partition.
     private final List<TupleDomain<String>> partitions;
 
+    // Whether build-side partitions also report Bloom filters of their values.
+    private final boolean bloomFiltersEnabled;
+
+    private final SettableFuture<Multimap<VariableReferenceExpression, SplitBlockBloomFilter>> bloomFiltersFuture;
+
+    // The resulting Bloom filters from each build-side partition.
+    private final List<Map<String, SplitBlockBloomFilter>> bloomFilterPartitions;
+
+    // The merged Bloom filters are held until the task is done.
+    private final LocalMemoryContext bloomFiltersMemoryContext;
+    @GuardedBy("this")
+    private boolean closed;
+
     public LocalDynamicFilter(Multimap<String, DynamicFilterPlaceholder> probeVariables, Map<String, Integer> buildChannels, int partitionCount)
+    {
+        this(probeVariables, buildChannels, partitionCount, false);
+    }
+
+    public LocalDynamicFilter(Multimap<String, DynamicFilterPlaceholder> probeVariables, Map<String, Integer> buildChannels, int partitionCount, boolean bloomFiltersEnabled)
+    {
+        this(probeVariables, buildChannels, partitionCount, bloomFiltersEnabled, newSimpleAggregatedMemoryContext().newLocalMemoryContext(LocalDynamicFilter.class.getSimpleName()));
+    }
+
+    public LocalDynamicFilter(
+            Multimap<String, DynamicFilterPlaceholder> probeVariables,
+            Map<String, Integer> buildChannels,
+            int partitionCount,
+            boolean bloomFiltersEnabled,
+            LocalMemoryContext bloomFiltersMemoryContext)
     {
         this.probeVariables = requireNonNull(probeVariables, "probeVariables is null");
         this.buildChannels = requireNonNull(buildChannels, "buildChannels is null");
@@ -67,6 +105,11 @@ public class LocalDynamicFilter
 
         this.partitionCount = partitionCount;
         this.partitions = new ArrayList<>(partitionCount);
+
+        this.bloomFiltersEnabled = bloomFiltersEnabled;
+        this.bloomFiltersFuture = SettableFuture.create();
+        this.bloomFilterPartitions = new ArrayList<>(bloomFiltersEnabled ? partitionCount : 0);
+        this.bloomFiltersMemoryContext = requireNonNull(bloomFiltersMemoryContext, "bloomFiltersMemoryContext is null");
     }
 
     private synchronized void addPartition(TupleDomain<String> tupleDomain)
@@ -76,11 +119,97 @@ public class LocalDynamicFilter
         // NOTE: may result in a bit more relaxed constraint if there are multiple columns and multiple rows.
         // See the comment at TupleDomain::columnWiseUnion() for more details.
         partitions.add(tupleDomain);
-        if (partitions.size() == partitionCount) {
-            // No more partitions are left to be processed.
-            TupleDomain<VariableReferenceExpression> result = convertTupleDomain(TupleDomain.columnWiseUnion(partitions));
-            verify(resultFuture.set(result), "dynamic filter result is provided more than once");
+        completeIfAllPartitionsAdded();
+    }
+
+    private synchronized void addBloomFilterPartition(Map<String, SplitBlockBloomFilter> bloomFilters)
+    {
+        // Called concurrently by each DynamicFilterSourceOperator instance (when collection is over).
+        verify(bloomFilterPartitions.size() < partitionCount);
+        bloomFilterPartitions.add(bloomFilters);
+        completeIfAllPartitionsAdded();
+    }
+
+    private void completeIfAllPartitionsAdded()
+    {
+        if (partitions.size() < partitionCount || (bloomFiltersEnabled && bloomFilterPartitions.size() < partitionCount)) {
+            return;
+        }
+        // No more partitions are left to be processed.
+        if (bloomFiltersEnabled) {
+            verify(bloomFiltersFuture.set(mergeBloomFilters()), "dynamic filter Bloom filters are provided more than once");
+        }
+        TupleDomain<VariableReferenceExpression> result = convertTupleDomain(TupleDomain.columnWiseUnion(partitions));
+        verify(resultFuture.set(result), "dynamic filter result is provided more than once");
+    }
+
+    @GuardedBy("this")
+    private Multimap<VariableReferenceExpression, SplitBlockBloomFilter> mergeBloomFilters()
+    {
+        ImmutableListMultimap.Builder<VariableReferenceExpression, SplitBlockBloomFilter> builder = ImmutableListMultimap.builder();
+        long retainedSizeInBytes = 0;
+        for (String filterId : buildChannels.keySet()) {
+            SplitBlockBloomFilter merged = null;
+            for (Map<String, SplitBlockBloomFilter> bloomFilters : bloomFilterPartitions) {
+                SplitBlockBloomFilter bloomFilter = bloomFilters.get(filterId);
+                if (bloomFilter == null) {
+                    continue;
+                }
+                if (merged == null) {
+                    merged = bloomFilter.copy();
+                }
+                else {
+                    merged.merge(bloomFilter);
+                }
+            }
+            if (merged == null) {
+                // the values of all partitions fit in the exact predicate
+                continue;
+            }
+
+            // The partitions without a Bloom filter reported their values in the exact predicate.
+            // Values of the other partitions may be added again, which does not change the filter.
+            for (TupleDomain<String> partition : partitions) {
+                if (partition.isNone()) {
+                    continue;
+                }
+                Domain domain = partition.getDomains().get().get(filterId);
+                if (domain != null) {
+                    addSingleValues(merged, domain);
+                }
+            }
+
+            boolean used = false;
+            for (DynamicFilterPlaceholder placeholder : probeVariables.get(filterId)) {
+                // a Bloom filter only tells whether a value is equal to one of the build-side values
+                if (placeholder.getOperator() == EQUAL && placeholder.getInput().getType().equals(merged.getType())) {
+                    builder.put((VariableReferenceExpression) placeholder.getInput(), merged);
+                    used = true;
+                }
+            }
+            if (used) {
+                retainedSizeInBytes += merged.getRetainedSizeInBytes();
+            }
+        }
+        if (!closed) {
+            bloomFiltersMemoryContext.setBytes(retainedSizeInBytes);
         }
+        return builder.build();
+    }
+
+    private static void addSingleValues(SplitBlockBloomFilter bloomFilter, Domain domain)
+    {
+        Type type = domain.getType();
+        domain.getValues().getValuesProcessor().consume(
+                ranges -> ranges.getOrderedRanges().stream()
+                        .filter(Range::isSingleValue)
+                        .forEach(range -> bloomFilter.add(nativeValueToBlock(type, range.getSingleValue()), 0)),
+                discreteValues -> {
+                    if (discreteValues.isWhiteList()) {
+                        discreteValues.getValues().forEach(value -> bloomFilter.add(nativeValueToBlock(type, value), 0));
+                    }
+                },
+                allOrNone -> {});
     }
 
     private TupleDomain<VariableReferenceExpression> convertTupleDomain(TupleDomain<String> result)
@@ -103,6 +232,16 @@ public class LocalDynamicFilter
     }
 
     public static Optional<LocalDynamicFilter> create(AbstractJoinNode planNode, int partitionCount)
+    {
+        return create(planNode, partitionCount, false);
+    }
+
+    public static Optional<LocalDynamicFilter> create(AbstractJoinNode planNode, int partitionCount, boolean bloomFiltersEnabled)
+    {
+        return create(planNode, partitionCount, bloomFiltersEnabled, newSimpleAggregatedMemoryContext().newLocalMemoryContext(LocalDynamicFilter.class.getSimpleName()));
+    }
+
+    public static Optional<LocalDynamicFilter> create(AbstractJoinNode planNode, int partitionCount, boolean bloomFiltersEnabled, LocalMemoryContext bloomFiltersMemoryContext)
     {
         Set<String> joinDynamicFilters = planNode.getDynamicFilters().keySet();
         List<FilterNode> filterNodes = PlanNodeSearcher
@@ -143,7 +282,7 @@ public class LocalDynamicFilter
         if (buildChannels.isEmpty()) {
             return Optional.empty();
         }
-        return Optional.of(new LocalDynamicFilter(probeVariables, buildChannels, partitionCount));
+        return Optional.of(new LocalDynamicFilter(probeVariables, buildChannels, partitionCount, bloomFiltersEnabled, bloomFiltersMemoryContext));
     }
 
     public Map<String, Integer> getBuildChannels()
@@ -161,6 +300,34 @@ public class LocalDynamicFilter
         return this::addPartition;
     }
 
+    /**
+     * Returns the Bloom filters of the probe variables, completed together with the result predicate.
+     * Never completed if Bloom filters are not enabled.
+     */
+    public ListenableFuture<Multimap<VariableReferenceExpression, SplitBlockBloomFilter>> getBloomFiltersFuture()
+    {
+        return bloomFiltersFuture;
+    }
+
+    public Optional<Consumer<Map<String, SplitBlockBloomFilter>>> getBloomFilterConsumer()
+    {
+        if (!bloomFiltersEnabled) {
+            return Optional.empty();
+        }
+        return Optional.of(this::addBloomFilterPartition);
+    }
+
+    /**
+     * Releases the memory of the merged Bloom filters, once the probe side no longer uses them.
+     */
+    public synchronized void close()
+    {
+        if (!closed) {
+            closed = true;
+            bloomFiltersMemoryContext.close();
+        }
+    }
+
     @Override
     public String toString()
     {
@@ -14,7 +14,10 @@
 package com.facebook.presto.sql.planner;
 
 import com.facebook.presto.common.predicate.TupleDomain;
+import com.facebook.presto.operator.SplitBlockBloomFilter;
 import com.facebook.presto.spi.relation.VariableReferenceExpression;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Multimap;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
@@ -29,9 +32,17 @@ public class LocalDynamicFiltersCollector
     @GuardedBy ("this")
     private TupleDomain<VariableReferenceExpression> predicate;
 
+    /**
+     * Bloom filters that the values of the variables must all match.
+     * The filters are no longer modified once they are added.
+     */
+    @GuardedBy ("this")
+    private ImmutableListMultimap<VariableReferenceExpression, SplitBlockBloomFilter> bloomFilters;
+
     public LocalDynamicFiltersCollector()
     {
         this.predicate = TupleDomain.all();
+        this.bloomFilters = ImmutableListMultimap.of();
     }
 
     public synchronized TupleDomain<VariableReferenceExpression> getPredicate()
@@ -43,4 +54,17 @@ public class LocalDynamicFiltersCollector
     {
         this.predicate = this.predicate.intersect(predicate);
     }
+
+    public synchronized Multimap<VariableReferenceExpression, SplitBlockBloomFilter> getBloomFilters()
+    {
+        return bloomFilters;
+    }
+
+    public synchronized void addBloomFilters(Multimap<VariableReferenceExpression, SplitBlockBloomFilter> bloomFilters)
+    {
+        this.bloomFilters = ImmutableListMultimap.<VariableReferenceExpression, SplitBlockBloomFilter>builder()
+                .putAll(this.bloomFilters)
+                .putAll(bloomFilters)
+                .build();
+    }
 }
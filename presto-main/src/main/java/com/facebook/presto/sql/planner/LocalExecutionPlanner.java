@@ -47,6 +47,7 @@ import com.facebook.presto.expressions.DynamicFilters.DynamicFilterPlaceholder;
 import com.facebook.presto.expressions.LogicalRowExpressions;
 import com.facebook.presto.index.IndexManager;
 import com.facebook.presto.memory.MemoryManagerConfig;
+import com.facebook.presto.memory.context.LocalMemoryContext;
 import com.facebook.presto.metadata.AnalyzeTableHandle;
 import com.facebook.presto.metadata.ConnectorMetadataUpdaterManager;
 import com.facebook.presto.metadata.FunctionAndTypeManager;
@@ -57,6 +58,7 @@ import com.facebook.presto.operator.DeleteOperator.DeleteOperatorFactory;
 import com.facebook.presto.operator.DevNullOperator.DevNullOperatorFactory;
 import com.facebook.presto.operator.DriverFactory;
 import com.facebook.presto.operator.DynamicFilterSourceOperator;
+import com.facebook.presto.operator.DynamicTopNFilter;
 import com.facebook.presto.operator.EnforceSingleRowOperator;
 import com.facebook.presto.operator.ExplainAnalyzeOperator.ExplainAnalyzeOperatorFactory;
 import com.facebook.presto.operator.FilterAndProjectOperator.FilterAndProjectOperatorFactory;
@@ -95,6 +97,7 @@ import com.facebook.presto.operator.SourceOperatorFactory;
 import com.facebook.presto.operator.SpatialIndexBuilderOperator.SpatialIndexBuilderOperatorFactory;
 import com.facebook.presto.operator.SpatialIndexBuilderOperator.SpatialPredicate;
 import com.facebook.presto.operator.SpatialJoinOperator.SpatialJoinOperatorFactory;
+import com.facebook.presto.operator.SplitBlockBloomFilter;
 import com.facebook.presto.operator.StageExecutionDescriptor;
 import com.facebook.presto.operator.StatisticsWriterOperator.StatisticsWriterOperatorFactory;
 import com.facebook.presto.operator.StreamingAggregationOperator.StreamingAggregationOperatorFactory;
@@ -222,6 +225,7 @@ import com.google.common.collect.ContiguousSet;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.ImmutableSet;
@@ -255,16 +259,21 @@ import java.util.stream.IntStream;
 import static com.facebook.airlift.concurrent.MoreFutures.addSuccessCallback;
 import static com.facebook.presto.SystemSessionProperties.getAdaptivePartialAggregationRowsReductionRatioThreshold;
 import static com.facebook.presto.SystemSessionProperties.getAggregationOperatorUnspillMemoryLimit;
+import static com.facebook.presto.SystemSessionProperties.getDynamicFilteringBloomFilterSizePerDriver;
 import static com.facebook.presto.SystemSessionProperties.getDynamicFilteringMaxPerDriverRowCount;
 import static com.facebook.presto.SystemSessionProperties.getDynamicFilteringMaxPerDriverSize;
 import static com.facebook.presto.SystemSessionProperties.getDynamicFilteringRangeRowLimitPerDriver;
+import static com.facebook.presto.SystemSessionProperties.getExchangeAdaptiveCompressionNetworkThroughput;
+import static com.facebook.presto.SystemSessionProperties.getExchangeCompressionCodec;
 import static com.facebook.presto.SystemSessionProperties.getFilterAndProjectMinOutputPageRowCount;
 import static com.facebook.presto.SystemSessionProperties.getFilterAndProjectMinOutputPageSize;
 import static com.facebook.presto.SystemSessionProperties.getIndexLoaderTimeout;
+import static com.facebook.presto.SystemSessionProperties.getNestedLoopJoinSpillProbeBlockSize;
 import static com.facebook.presto.SystemSessionProperties.getTaskConcurrency;
 import static com.facebook.presto.SystemSessionProperties.getTaskPartitionedWriterCount;
 import static com.facebook.presto.SystemSessionProperties.getTaskWriterCount;
 import static com.facebook.presto.SystemSessionProperties.getTopNOperatorUnspillMemoryLimit;
+import static com.facebook.presto.SystemSessionProperties.isAdaptivePartialAggregationContinuousTrackingEnabled;
 import static com.facebook.presto.SystemSessionProperties.isAdaptivePartialAggregationEnabled;
 import static com.facebook.presto.SystemSessionProperties.isAggregationSpillEnabled;
 import static com.facebook.presto.SystemSessionProperties.isDistinctAggregationSpillEnabled;
@@ -272,13 +281,17 @@ import static com.facebook.presto.SystemSessionProperties.isEnableDynamicFilteri
 import static com.facebook.presto.SystemSessionProperties.isExchangeChecksumEnabled;
 import static com.facebook.presto.SystemSessionProperties.isExchangeCompressionEnabled;
 import static com.facebook.presto.SystemSessionProperties.isJoinSpillingEnabled;
+import static com.facebook.presto.SystemSessionProperties.isMarkDistinctSpillEnabled;
 import static com.facebook.presto.SystemSessionProperties.isOptimizeCommonSubExpressions;
 import static com.facebook.presto.SystemSessionProperties.isOptimizeJoinProbeForEmptyBuildRuntimeEnabled;
+import static com.facebook.presto.SystemSessionProperties.isOptimizedRepartitioningDictionaryEncodingEnabled;
 import static com.facebook.presto.SystemSessionProperties.isOptimizedRepartitioningEnabled;
 import static com.facebook.presto.SystemSessionProperties.isOrderByAggregationSpillEnabled;
 import static com.facebook.presto.SystemSessionProperties.isOrderBySpillEnabled;
 import static com.facebook.presto.SystemSessionProperties.isQuickDistinctLimitEnabled;
+import static com.facebook.presto.SystemSessionProperties.isSemiJoinSpillEnabled;
 import static com.facebook.presto.SystemSessionProperties.isSpillEnabled;
+import static com.facebook.presto.SystemSessionProperties.isTopNScanFilterEnabled;
 import static com.facebook.presto.SystemSessionProperties.isTopNSpillEnabled;
 import static com.facebook.presto.SystemSessionProperties.isWindowSpillEnabled;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
@@ -546,7 +559,7 @@ public class LocalExecutionPlanner
         }
 
         if (isOptimizedRepartitioningEnabled(taskContext.getSession())) {
-            return new OptimizedPartitionedOutputFactory(outputBuffer, maxPagePartitioningBufferSize);
+            return new OptimizedPartitionedOutputFactory(outputBuffer, maxPagePartitioningBufferSize, isOptimizedRepartitioningDictionaryEncodingEnabled(taskContext.getSession()));
         }
         else {
             return new PartitionedOutputFactory(outputBuffer, maxPagePartitioningBufferSize);
@@ -647,7 +660,7 @@ public class LocalExecutionPlanner
                                 outputTypes,
                                 pagePreprocessor,
                                 outputPartitioning,
-                                new PagesSerdeFactory(blockEncodingSerde, isExchangeCompressionEnabled(session), isExchangeChecksumEnabled(session))))
+                                new PagesSerdeFactory(blockEncodingSerde, isExchangeCompressionEnabled(session), isExchangeChecksumEnabled(session), getExchangeCompressionCodec(session), getExchangeAdaptiveCompressionNetworkThroughput(session))))
                         .build(),
                 context.getDriverInstanceCount(),
                 physicalOperation.getPipelineExecutionStrategy(),
@@ -775,6 +788,11 @@ public class LocalExecutionPlanner
             return indexSourceContext;
         }
 
+        public TaskContext getTaskContext()
+        {
+            return taskContext;
+        }
+
         public LocalDynamicFiltersCollector getDynamicFiltersCollector()
         {
             return dynamicFiltersCollector;
@@ -918,6 +936,8 @@ public class LocalExecutionPlanner
         private final boolean pageSinkCommitRequired;
         private final PlanFragment fragment;
         private final List<CustomPlanTranslator> customPlanTranslators;
+        // the filters on the boundaries of top N operators, by the table scan that is planned in the same driver
+        private final Map<PlanNodeId, DynamicTopNFilter.Factory> topNScanFilters = new HashMap<>();
 
         private Visitor(
                 Session session,
@@ -1222,6 +1242,9 @@ public class LocalExecutionPlanner
         @Override
         public PhysicalOperation visitTopN(TopNNode node, LocalExecutionPlanContext context)
         {
+            // registered before the source is planned, so that the table scan of the source picks it up
+            Optional<DynamicTopNFilter.Factory> scanFilterFactory = isTopNScanFilterEnabled(session) ? createTopNScanFilter(node) : Optional.empty();
+
             PhysicalOperation source = node.getSource().accept(this, context);
 
             List<VariableReferenceExpression> orderByVariables = node.getOrderingScheme().getOrderByVariables();
@@ -1239,11 +1262,54 @@ public class LocalExecutionPlanner
                     source.getTypes(),
                     (int) node.getCount(),
                     sortChannels,
-                    sortOrders);
+                    sortOrders,
+                    scanFilterFactory);
 
             return new PhysicalOperation(operator, source.getLayout(), context, source);
         }
 
+        /**
+         * Creates the filter on the first sort key for the table scan when it is planned in the same driver as the top N,
+         * that is when the source only consists of filters and local projections that pass the sort key through.
+         */
+        private Optional<DynamicTopNFilter.Factory> createTopNScanFilter(TopNNode node)
+        {
+            OrderingScheme orderingScheme = node.getOrderingScheme();
+            List<VariableReferenceExpression> orderByVariables = orderingScheme.getOrderByVariables();
+            VariableReferenceExpression variable = orderByVariables.get(0);
+
+            PlanNode source = node.getSource();
+            // a table scan without a filter or a projection is planned as a table scan operator, which does not filter
+            if (source instanceof TableScanNode) {
+                return Optional.empty();
+            }
+            while (!(source instanceof TableScanNode)) {
+                if (source instanceof FilterNode) {
+                    source = ((FilterNode) source).getSource();
+                }
+                else if (source instanceof ProjectNode && ((ProjectNode) source).getLocality().equals(LOCAL)) {
+                    RowExpression assignment = ((ProjectNode) source).getAssignments().get(variable);
+                    if (!(assignment instanceof VariableReferenceExpression)) {
+                        return Optional.empty();
+                    }
+                    variable = (VariableReferenceExpression) assignment;
+                    source = ((ProjectNode) source).getSource();
+                }
+                else {
+                    return Optional.empty();
+                }
+            }
+
+            TableScanNode tableScan = (TableScanNode) source;
+            DynamicTopNFilter.Factory factory = new DynamicTopNFilter.Factory(
+                    variable.getType(),
+                    orderingScheme.getOrdering(orderByVariables.get(0)),
+                    orderByVariables.size() > 1,
+                    tableScan.getAssignments().get(variable));
+            topNScanFilters.put(tableScan.getId(), factory);
+            return Optional.of(factory);
+        }
+
         @Override
         public PhysicalOperation visitSort(SortNode node, LocalExecutionPlanContext context)
         {
@@ -1388,7 +1454,15 @@ public class LocalExecutionPlanner
 
             List<Integer> channels = getChannelsForVariables(node.getDistinctVariables(), source.getLayout());
             Optional<Integer> hashChannel = node.getHashVariable().map(variableChannelGetter(source));
-            MarkDistinctOperatorFactory operator = new MarkDistinctOperatorFactory(context.getNextOperatorId(), node.getId(), source.getTypes(), channels, hashChannel, joinCompiler);
+            MarkDistinctOperatorFactory operator = new MarkDistinctOperatorFactory(
+                    context.getNextOperatorId(),
+                    node.getId(),
+                    source.getTypes(),
+                    channels,
+                    hashChannel,
+                    joinCompiler,
+                    isMarkDistinctSpillEnabled(context.getSession()),
+                    partitioningSpillerFactory);
             return new PhysicalOperation(operator, makeLayout(node), context, source);
         }
 
@@ -1510,6 +1584,7 @@ public class LocalExecutionPlanner
 
             Optional<List<DynamicFilterPlaceholder>> dynamicFilters = extractDynamicFilterResult.map(DynamicFilterExtractResult::getDynamicConjuncts);
             Optional<Supplier<TupleDomain<ColumnHandle>>> dynamicFilterSupplier = Optional.empty();
+            Optional<Supplier<Multimap<ColumnHandle, SplitBlockBloomFilter>>> dynamicBloomFilterSupplier = Optional.empty();
             if (dynamicFilters.isPresent() && !dynamicFilters.get().isEmpty() && sourceNode instanceof TableScanNode) {
                 TableScanNode tableScanNode = (TableScanNode) sourceNode;
                 LocalDynamicFiltersCollector collector = context.getDynamicFiltersCollector();
@@ -1517,6 +1592,13 @@ public class LocalExecutionPlanner
                     TupleDomain<VariableReferenceExpression> predicate = collector.getPredicate();
                     return predicate.transform(tableScanNode.getAssignments()::get);
                 });
+                if (isDynamicFilteringBloomFilterEnabled(session)) {
+                    dynamicBloomFilterSupplier = Optional.of(() -> {
+                        ImmutableListMultimap.Builder<ColumnHandle, SplitBlockBloomFilter> bloomFilters = ImmutableListMultimap.builder();
+                        collector.getBloomFilters().forEach((variable, bloomFilter) -> bloomFilters.put(tableScanNode.getAssignments().get(variable), bloomFilter));
+                        return bloomFilters.build();
+                    });
+                }
             }
 
             // compiler uses inputs instead of variables, so rewrite the expressions first
@@ -1553,6 +1635,8 @@ public class LocalExecutionPlanner
                             columns,
                             projections.stream().map(RowExpression::getType).collect(toImmutableList()),
                             dynamicFilterSupplier,
+                            dynamicBloomFilterSupplier,
+                            Optional.ofNullable(topNScanFilters.get(sourceNode.getId())),
                             getFilterAndProjectMinOutputPageSize(session),
                             getFilterAndProjectMinOutputPageRowCount(session));
 
@@ -2164,7 +2248,9 @@ public class LocalExecutionPlanner
             NestedLoopBuildOperatorFactory nestedLoopBuildOperatorFactory = new NestedLoopBuildOperatorFactory(
                     buildContext.getNextOperatorId(),
                     node.getId(),
-                    nestedLoopJoinBridgeManager);
+                    nestedLoopJoinBridgeManager,
+                    isSpillEnabled(context.getSession()) && isJoinSpillingEnabled(context.getSession()),
+                    singleStreamSpillerFactory);
 
             int partitionCount = buildContext.getDriverInstanceCount().orElse(1);
             checkArgument(partitionCount == 1, "Expected local execution to not be parallel");
@@ -2193,7 +2279,11 @@ public class LocalExecutionPlanner
                 outputMappings.put(entry.getKey(), offset + entry.getValue());
             }
 
-            OperatorFactory operatorFactory = new NestedLoopJoinOperatorFactory(context.getNextOperatorId(), node.getId(), nestedLoopJoinBridgeManager);
+            OperatorFactory operatorFactory = new NestedLoopJoinOperatorFactory(
+                    context.getNextOperatorId(),
+                    node.getId(),
+                    nestedLoopJoinBridgeManager,
+                    getNestedLoopJoinSpillProbeBlockSize(context.getSession()));
             return new PhysicalOperation(operatorFactory, outputMappings.build(), context, probeSource);
         }
 
@@ -2489,7 +2579,9 @@ public class LocalExecutionPlanner
                     getDynamicFilteringMaxPerDriverRowCount(context.getSession()),
                     getDynamicFilteringMaxPerDriverSize(context.getSession()),
                     getDynamicFilteringRangeRowLimitPerDriver(context.getSession()),
-                    useNewNanDefinition);
+                    useNewNanDefinition,
+                    dynamicFilter.getBloomFilterConsumer(),
+                    getDynamicFilteringBloomFilterSizePerDriver(context.getSession()));
         }
 
         private Optional<LocalDynamicFilter> createDynamicFilter(PhysicalOperation buildSource, AbstractJoinNode node, LocalExecutionPlanContext context, int partitionCount)
@@ -2504,12 +2596,25 @@ public class LocalExecutionPlanner
                 throw new PrestoException(NOT_SUPPORTED, "Dynamic filtering cannot be used with grouped execution");
             }
             LocalDynamicFiltersCollector collector = context.getDynamicFiltersCollector();
-            return LocalDynamicFilter
-                    .create(node, partitionCount)
+            TaskContext taskContext = context.getTaskContext();
+            LocalMemoryContext bloomFiltersMemoryContext = taskContext.getTaskMemoryContext().newSystemMemoryContext(LocalDynamicFilter.class.getSimpleName());
+            Optional<LocalDynamicFilter> dynamicFilter = LocalDynamicFilter.create(node, partitionCount, isDynamicFilteringBloomFilterEnabled(context.getSession()), bloomFiltersMemoryContext);
+            if (!dynamicFilter.isPresent()) {
+                bloomFiltersMemoryContext.close();
+                return Optional.empty();
+            }
+            return dynamicFilter
                     .map(filter -> {
                         // Intersect dynamic filters' predicates when they become ready,
                         // in order to support multiple join nodes in the same plan fragment.
                         addSuccessCallback(filter.getResultFuture(), collector::intersect);
+                        addSuccessCallback(filter.getBloomFiltersFuture(), collector::addBloomFilters);
+                        // the probe side may use the Bloom filters until the task is done
+                        taskContext.addStateChangeListener(state -> {
+                            if (state.isDone()) {
+                                filter.close();
+                            }
+                        });
                         return filter;
                     });
         }
@@ -2655,7 +2760,9 @@ public class LocalExecutionPlanner
                     buildChannel,
                     buildHashChannel,
                     10_000,
-                    joinCompiler);
+                    joinCompiler,
+                    isSemiJoinSpillEnabled(context.getSession()),
+                    partitioningSpillerFactory);
 
             ImmutableList.Builder<OperatorFactory> factoriesBuilder = ImmutableList.builder();
             factoriesBuilder.addAll(buildSource.getOperatorFactories());
@@ -2682,7 +2789,14 @@ public class LocalExecutionPlanner
                     .put(node.getSemiJoinOutput(), probeSource.getLayout().size())
                     .build();
 
-            HashSemiJoinOperatorFactory operator = new HashSemiJoinOperatorFactory(context.getNextOperatorId(), node.getId(), setProvider, probeSource.getTypes(), probeChannel, probeHashChannel);
+            HashSemiJoinOperatorFactory operator = new HashSemiJoinOperatorFactory(
+                    context.getNextOperatorId(),
+                    node.getId(),
+                    setProvider,
+                    probeSource.getTypes(),
+                    probeChannel,
+                    probeHashChannel,
+                    partitioningSpillerFactory);
             return new PhysicalOperation(operator, outputMappings, context, probeSource);
         }
 
@@ -3429,13 +3543,21 @@ public class LocalExecutionPlanner
         }
     }
 
+    private static boolean isDynamicFilteringBloomFilterEnabled(Session session)
+    {
+        return getDynamicFilteringBloomFilterSizePerDriver(session).toBytes() > 0;
+    }
+
     private static Optional<PartialAggregationController> createPartialAggregationController(
             Optional<DataSize> maxPartialAggregationMemorySize,
             AggregationNode.Step step,
             Session session)
     {
         if (maxPartialAggregationMemorySize.isPresent() && step.isOutputPartial() && isAdaptivePartialAggregationEnabled(session)) {
-            return Optional.of(new PartialAggregationController(maxPartialAggregationMemorySize.get(), getAdaptivePartialAggregationRowsReductionRatioThreshold(session)));
+            return Optional.of(new PartialAggregationController(
+                    maxPartialAggregationMemorySize.get(),
+                    getAdaptivePartialAggregationRowsReductionRatioThreshold(session),
+                    isAdaptivePartialAggregationContinuousTrackingEnabled(session)));
         }
         return Optional.empty();
     }
@@ -176,6 +176,18 @@ public class NodePartitioningManager
         return new NodePartitionMap(partitionToNode, bucketToPartition, getSplitToBucket(session, partitioningHandle), cacheable);
     }
 
+    /**
+     * Returns a node partition map of a system partitioning over the given number of partitions instead of hash_partition_count.
+     */
+    public NodePartitionMap getNodePartitioningMap(Session session, PartitioningHandle partitioningHandle, Optional<Predicate<Node>> nodePredicate, int partitionCount)
+    {
+        requireNonNull(session, "session is null");
+        requireNonNull(partitioningHandle, "partitioningHandle is null");
+        checkArgument(partitioningHandle.getConnectorHandle() instanceof SystemPartitioningHandle, "Expected a system partitioning: %s", partitioningHandle);
+
+        return ((SystemPartitioningHandle) partitioningHandle.getConnectorHandle()).getNodePartitionMap(session, nodeScheduler, nodePredicate, partitionCount);
+    }
+
     public BucketNodeMap getBucketNodeMap(Session session, PartitioningHandle partitioningHandle, boolean preferDynamic)
     {
         ConnectorBucketNodeMap connectorBucketNodeMap = getConnectorBucketNodeMap(session, partitioningHandle, Optional.empty());
@@ -140,6 +140,12 @@ public final class SystemPartitioningHandle
 
     public NodePartitionMap getNodePartitionMap(Session session, NodeScheduler nodeScheduler, Optional<Predicate<Node>> nodePredicate)
     {
+        return getNodePartitionMap(session, nodeScheduler, nodePredicate, getHashPartitionCount(session));
+    }
+
+    public NodePartitionMap getNodePartitionMap(Session session, NodeScheduler nodeScheduler, Optional<Predicate<Node>> nodePredicate, int partitionCount)
+    {
+        checkArgument(partitionCount > 0, "partitionCount must be positive");
         NodeSelector nodeSelector = nodeScheduler.createNodeSelector(session, null, nodePredicate);
         List<InternalNode> nodes;
         if (partitioning == SystemPartitioning.COORDINATOR_ONLY) {
@@ -149,7 +155,7 @@ public final class SystemPartitioningHandle
             nodes = nodeSelector.selectRandomNodes(1);
         }
         else if (partitioning == SystemPartitioning.FIXED) {
-            nodes = nodeSelector.selectRandomNodes(min(getHashPartitionCount(session), getMaxTasksPerStage(session)));
+            nodes = nodeSelector.selectRandomNodes(min(partitionCount, getMaxTasksPerStage(session)));
         }
         else {
             throw new IllegalArgumentException("Unsupported plan distribution " + partitioning);
@@ -71,6 +71,7 @@ import static com.facebook.presto.SystemSessionProperties.getTaskWriterCount;
 import static com.facebook.presto.SystemSessionProperties.isDistributedSortEnabled;
 import static com.facebook.presto.SystemSessionProperties.isEnforceFixedDistributionForOutputOperator;
 import static com.facebook.presto.SystemSessionProperties.isJoinSpillingEnabled;
+import static com.facebook.presto.SystemSessionProperties.isLocalParallelSortEnabled;
 import static com.facebook.presto.SystemSessionProperties.isQuickDistinctLimitEnabled;
 import static com.facebook.presto.SystemSessionProperties.isSegmentedAggregationEnabled;
 import static com.facebook.presto.SystemSessionProperties.isSpillEnabled;
@@ -205,7 +206,9 @@ public class AddLocalExchanges
                 }
             }
 
-            if (isDistributedSortEnabled(session)) {
+            // the sort is split across the drivers of the task and the sorted streams are merged, which also applies to a sort
+            // that runs on a single node because it is not distributed
+            if (isDistributedSortEnabled(session) || isLocalParallelSortEnabled(session)) {
                 PlanWithProperties sortPlan = planAndEnforceChildren(node, fixedParallelism(), fixedParallelism());
 
                 if (!sortPlan.getProperties().isSingleStream()) {
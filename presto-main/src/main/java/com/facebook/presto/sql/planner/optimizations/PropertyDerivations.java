@@ -87,6 +87,8 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import static com.facebook.presto.SystemSessionProperties.isJoinSpillingEnabled;
+import static com.facebook.presto.SystemSessionProperties.isMarkDistinctSpillEnabled;
+import static com.facebook.presto.SystemSessionProperties.isSemiJoinSpillEnabled;
 import static com.facebook.presto.SystemSessionProperties.isSpillEnabled;
 import static com.facebook.presto.SystemSessionProperties.planWithTableNodePartitioning;
 import static com.facebook.presto.common.predicate.TupleDomain.toLinkedMap;
@@ -218,7 +220,10 @@ public class PropertyDerivations
         @Override
         public ActualProperties visitMarkDistinct(MarkDistinctNode node, List<ActualProperties> inputProperties)
         {
-            return Iterables.getOnlyElement(inputProperties);
+            // once spilled, the rows are marked one partition at a time
+            return ActualProperties.builderFrom(Iterables.getOnlyElement(inputProperties))
+                    .unordered(isMarkDistinctSpillEnabled(session))
+                    .build();
         }
 
         @Override
@@ -457,7 +462,10 @@ public class PropertyDerivations
         @Override
         public ActualProperties visitSemiJoin(SemiJoinNode node, List<ActualProperties> inputProperties)
         {
-            return inputProperties.get(0);
+            // once the build side spilled, the probe rows that miss the in-memory set are probed one partition at a time
+            return ActualProperties.builderFrom(inputProperties.get(0))
+                    .unordered(isSemiJoinSpillEnabled(session))
+                    .build();
         }
 
         @Override
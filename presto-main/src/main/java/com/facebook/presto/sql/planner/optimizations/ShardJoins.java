@@ -15,7 +15,11 @@ package com.facebook.presto.sql.planner.optimizations;
 
 import com.facebook.presto.Session;
 import com.facebook.presto.common.type.ArrayType;
+import com.facebook.presto.common.type.Type;
+import com.facebook.presto.cost.CachingStatsProvider;
 import com.facebook.presto.cost.StatsCalculator;
+import com.facebook.presto.cost.StatsProvider;
+import com.facebook.presto.cost.VariableStatsEstimate;
 import com.facebook.presto.metadata.FunctionAndTypeManager;
 import com.facebook.presto.metadata.Metadata;
 import com.facebook.presto.spi.VariableAllocator;
@@ -25,32 +29,49 @@ import com.facebook.presto.spi.plan.PlanNode;
 import com.facebook.presto.spi.plan.PlanNodeIdAllocator;
 import com.facebook.presto.spi.relation.RowExpression;
 import com.facebook.presto.spi.relation.VariableReferenceExpression;
+import com.facebook.presto.spi.statistics.ConnectorHistogram;
+import com.facebook.presto.spi.statistics.Estimate;
 import com.facebook.presto.sql.planner.PlannerUtils;
 import com.facebook.presto.sql.planner.TypeProvider;
 import com.facebook.presto.sql.planner.plan.JoinNode;
 import com.facebook.presto.sql.planner.plan.SimplePlanRewriter;
 import com.facebook.presto.sql.planner.plan.UnnestNode;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static com.facebook.presto.SystemSessionProperties.getJoinShardCount;
+import static com.facebook.presto.SystemSessionProperties.getJoinShardHotKeyMinFrequency;
 import static com.facebook.presto.SystemSessionProperties.getShardedJoinStrategy;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
+import static com.facebook.presto.common.type.BooleanType.BOOLEAN;
+import static com.facebook.presto.common.type.DateType.DATE;
+import static com.facebook.presto.common.type.IntegerType.INTEGER;
+import static com.facebook.presto.common.type.SmallintType.SMALLINT;
+import static com.facebook.presto.common.type.TinyintType.TINYINT;
 import static com.facebook.presto.spi.plan.JoinType.FULL;
 import static com.facebook.presto.spi.plan.JoinType.RIGHT;
+import static com.facebook.presto.spi.relation.SpecialFormExpression.Form.IF;
+import static com.facebook.presto.spi.relation.SpecialFormExpression.Form.IN;
 import static com.facebook.presto.sql.analyzer.FeaturesConfig.ShardedJoinStrategy.ALWAYS;
 import static com.facebook.presto.sql.analyzer.FeaturesConfig.ShardedJoinStrategy.COST_BASED;
 import static com.facebook.presto.sql.analyzer.FeaturesConfig.ShardedJoinStrategy.DISABLED;
+import static com.facebook.presto.sql.analyzer.FeaturesConfig.ShardedJoinStrategy.HOT_KEYS;
 import static com.facebook.presto.sql.planner.PlannerUtils.isBroadcastJoin;
 import static com.facebook.presto.sql.relational.Expressions.call;
 import static com.facebook.presto.sql.relational.Expressions.constant;
+import static com.facebook.presto.sql.relational.Expressions.specialForm;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -74,6 +95,17 @@ import static java.util.Objects.requireNonNull;
  *                - T
  * </pre>
  *
+ * With the HOT_KEYS strategy only the keys that have a large fraction of the rows of the probe side, as found from the
+ * histogram of the probe key, are sharded, so the build side is only replicated for the rows of these keys:
+ * <pre>
+ * - Join
+ *      S.key = T.key and leftShard = rightShard
+ *      - Project(leftShard:=IF(S.key IN (hotKeys), random(NumShards), 0))
+ *          - S
+ *      - Unnest(rightShard, seq)
+ *          Project(seq:=sequence(0, IF(T.key IN (hotKeys), NumShards - 1, 0)))
+ *              - T
+ * </pre>
  */
 
 public class ShardJoins
@@ -107,7 +139,8 @@ public class ShardJoins
     public PlanOptimizerResult optimize(PlanNode plan, Session session, TypeProvider types, VariableAllocator variableAllocator, PlanNodeIdAllocator idAllocator, WarningCollector warningCollector)
     {
         if (isEnabled(session)) {
-            Rewriter rewriter = new Rewriter(session, metadata, functionAndTypeManager, idAllocator, variableAllocator);
+            StatsProvider statsProvider = new CachingStatsProvider(statsCalculator, session, types);
+            Rewriter rewriter = new Rewriter(session, metadata, functionAndTypeManager, idAllocator, variableAllocator, statsProvider);
             PlanNode rewrittenPlan = SimplePlanRewriter.rewriteWith(rewriter, plan, new HashSet<>());
             return PlanOptimizerResult.optimizerResult(rewrittenPlan, rewriter.isPlanChanged());
         }
@@ -123,16 +156,18 @@ public class ShardJoins
         private final FunctionAndTypeManager functionAndTypeManager;
         private final PlanNodeIdAllocator planNodeIdAllocator;
         private final VariableAllocator planVariableAllocator;
+        private final StatsProvider statsProvider;
         private boolean planChanged;
 
         private Rewriter(Session session, Metadata metadata,
-                FunctionAndTypeManager functionAndTypeManager, PlanNodeIdAllocator planNodeIdAllocator, VariableAllocator planVariableAllocator)
+                FunctionAndTypeManager functionAndTypeManager, PlanNodeIdAllocator planNodeIdAllocator, VariableAllocator planVariableAllocator, StatsProvider statsProvider)
         {
             this.session = requireNonNull(session, "session is null");
             this.metadata = requireNonNull(metadata, "metadata is null");
             this.functionAndTypeManager = requireNonNull(functionAndTypeManager, "functionAndTypeManager is null");
             this.planNodeIdAllocator = requireNonNull(planNodeIdAllocator, "planNodeIdAllocator is null");
             this.planVariableAllocator = requireNonNull(planVariableAllocator, "planVariableAllocator is null");
+            this.statsProvider = requireNonNull(statsProvider, "statsProvider is null");
         }
 
         public boolean isPlanChanged()
@@ -155,33 +190,61 @@ public class ShardJoins
 
                 PlanNode newLeftChild = PlannerUtils.addProjections(joinNode.getLeft(), planNodeIdAllocator, planVariableAllocator, ImmutableList.of(randomNumber), ImmutableList.of(leftShardVariable));
 
-                PlanNode newRightChild = shardInput(numShards, joinNode.getRight(), rightShardVariable);
-                EquiJoinClause shardEquality = new EquiJoinClause(leftShardVariable, rightShardVariable);
-                List<EquiJoinClause> joinCriteria = new ArrayList<>();
-                joinCriteria.addAll(joinNode.getCriteria());
-                joinCriteria.add(shardEquality);
-                PlanNode result = new JoinNode(
-                        joinNode.getSourceLocation(),
-                        joinNode.getId(),
-                        joinNode.getStatsEquivalentPlanNode(),
-                        joinNode.getType(),
-                        newLeftChild,
-                        newRightChild,
-                        joinCriteria,
-                        joinNode.getOutputVariables(),
-                        joinNode.getFilter(),
-                        joinNode.getLeftHashVariable(),
-                        joinNode.getRightHashVariable(),
-                        joinNode.getDistributionType(),
-                        joinNode.getDynamicFilters());
-
+                PlanNode newRightChild = shardInput(numShards, constant(numShards - 1, BIGINT), joinNode.getRight(), rightShardVariable);
                 planChanged = true;
-                return context.defaultRewrite(result);
+                return context.defaultRewrite(addShardEquality(joinNode, newLeftChild, newRightChild, leftShardVariable, rightShardVariable));
+            }
+
+            if (isHotKeyShardingApplicable(joinNode)) {
+                for (EquiJoinClause clause : joinNode.getCriteria()) {
+                    List<Long> hotKeys = getHotKeys(joinNode.getLeft(), clause);
+                    if (hotKeys.isEmpty()) {
+                        continue;
+                    }
+
+                    long numShards = getNumberOfShards();
+                    RowExpression randomNumber = call(
+                            functionAndTypeManager,
+                            "random",
+                            BIGINT,
+                            constant(numShards, BIGINT));
+                    RowExpression leftShard = specialForm(IF, BIGINT, isHotKey(clause.getLeft(), hotKeys), randomNumber, constant(0L, BIGINT));
+                    RowExpression lastRightShard = specialForm(IF, BIGINT, isHotKey(clause.getRight(), hotKeys), constant(numShards - 1, BIGINT), constant(0L, BIGINT));
+                    VariableReferenceExpression leftShardVariable = planVariableAllocator.newVariable("shard", BIGINT);
+                    VariableReferenceExpression rightShardVariable = planVariableAllocator.newVariable("shard", BIGINT);
+
+                    PlanNode newLeftChild = PlannerUtils.addProjections(joinNode.getLeft(), planNodeIdAllocator, planVariableAllocator, ImmutableList.of(leftShard), ImmutableList.of(leftShardVariable));
+                    PlanNode newRightChild = shardInput(numShards, lastRightShard, joinNode.getRight(), rightShardVariable);
+                    planChanged = true;
+                    return context.defaultRewrite(addShardEquality(joinNode, newLeftChild, newRightChild, leftShardVariable, rightShardVariable));
+                }
             }
 
             return context.defaultRewrite(joinNode);
         }
 
+        private static JoinNode addShardEquality(JoinNode joinNode, PlanNode newLeftChild, PlanNode newRightChild, VariableReferenceExpression leftShardVariable, VariableReferenceExpression rightShardVariable)
+        {
+            EquiJoinClause shardEquality = new EquiJoinClause(leftShardVariable, rightShardVariable);
+            List<EquiJoinClause> joinCriteria = new ArrayList<>();
+            joinCriteria.addAll(joinNode.getCriteria());
+            joinCriteria.add(shardEquality);
+            return new JoinNode(
+                    joinNode.getSourceLocation(),
+                    joinNode.getId(),
+                    joinNode.getStatsEquivalentPlanNode(),
+                    joinNode.getType(),
+                    newLeftChild,
+                    newRightChild,
+                    joinCriteria,
+                    joinNode.getOutputVariables(),
+                    joinNode.getFilter(),
+                    joinNode.getLeftHashVariable(),
+                    joinNode.getRightHashVariable(),
+                    joinNode.getDistributionType(),
+                    joinNode.getDynamicFilters());
+        }
+
         private boolean isApplicable(JoinNode joinNode)
         {
             return joinNode.getType() != FULL && joinNode.getType() != RIGHT && !isBroadcastJoin(joinNode) &&
@@ -189,13 +252,43 @@ public class ShardJoins
                         getShardedJoinStrategy(session).equals(COST_BASED) && shouldShardJoin(joinNode));
         }
 
+        private boolean isHotKeyShardingApplicable(JoinNode joinNode)
+        {
+            return joinNode.getType() != FULL && joinNode.getType() != RIGHT && !isBroadcastJoin(joinNode) && getShardedJoinStrategy(session).equals(HOT_KEYS);
+        }
+
+        private List<Long> getHotKeys(PlanNode probe, EquiJoinClause clause)
+        {
+            Type type = clause.getLeft().getType();
+            if (!type.equals(clause.getRight().getType()) || Stream.of(BIGINT, INTEGER, SMALLINT, TINYINT, DATE).noneMatch(type::equals)) {
+                return ImmutableList.of();
+            }
+            VariableStatsEstimate keyStats = statsProvider.getStats(probe).getVariableStatistics(clause.getLeft());
+            if (!keyStats.getHistogram().isPresent()) {
+                return ImmutableList.of();
+            }
+            double nonNullFraction = Double.isNaN(keyStats.getNullsFraction()) ? 1 : 1 - keyStats.getNullsFraction();
+            return ShardJoins.getHotKeys(keyStats.getHistogram().get(), nonNullFraction, getJoinShardHotKeyMinFrequency(session));
+        }
+
+        private RowExpression isHotKey(VariableReferenceExpression key, List<Long> hotKeys)
+        {
+            List<RowExpression> arguments = ImmutableList.<RowExpression>builder()
+                    .add(key)
+                    .addAll(hotKeys.stream()
+                            .map(hotKey -> constant(hotKey, key.getType()))
+                            .collect(toImmutableList()))
+                    .build();
+            return specialForm(IN, BOOLEAN, arguments);
+        }
+
         private boolean shouldShardJoin(JoinNode joinNode)
         {
             // TODO: implement based on HBO stats
             return false;
         }
 
-        private PlanNode shardInput(long numShards, PlanNode source, VariableReferenceExpression shardVariable)
+        private PlanNode shardInput(long numShards, RowExpression lastShard, PlanNode source, VariableReferenceExpression shardVariable)
         {
             checkState(numShards > 1);
 
@@ -204,7 +297,7 @@ public class ShardJoins
                     "sequence",
                     new ArrayType(BIGINT),
                     constant((long) 0, BIGINT),
-                    constant((long) numShards - 1, BIGINT));
+                    lastShard);
 
             VariableReferenceExpression sequenceVariable = planVariableAllocator.newVariable(sequenceExpression);
             PlanNode projectSequence = PlannerUtils.addProjections(source, planNodeIdAllocator, planVariableAllocator, ImmutableList.of(sequenceExpression), ImmutableList.of(sequenceVariable));
@@ -223,4 +316,34 @@ public class ShardJoins
             return getJoinShardCount(session);
         }
     }
+
+    /**
+     * Returns the values that have at least minFrequency of the rows of an integral column. A value with this frequency spans
+     * an interval of the non-null CDF longer than minFrequency / nonNullFraction, so it is the value of some percentile
+     * probed at half of that step.
+     */
+    @VisibleForTesting
+    static List<Long> getHotKeys(ConnectorHistogram histogram, double nonNullFraction, double minFrequency)
+    {
+        checkArgument(minFrequency > 0 && minFrequency <= 1, "minFrequency must be in (0, 1]: %s", minFrequency);
+        double minNonNullFrequency = minFrequency / nonNullFraction;
+        if (minNonNullFrequency > 1) {
+            return ImmutableList.of();
+        }
+
+        double step = minNonNullFrequency / 2;
+        Set<Long> hotKeys = new LinkedHashSet<>();
+        for (int i = 1; i * step < 1; i++) {
+            Estimate value = histogram.inverseCumulativeProbability(i * step);
+            if (value.isUnknown() || value.getValue() != Math.rint(value.getValue()) || hotKeys.contains((long) value.getValue())) {
+                continue;
+            }
+            Estimate upper = histogram.cumulativeProbability(value.getValue(), true);
+            Estimate lower = histogram.cumulativeProbability(value.getValue(), false);
+            if (!upper.isUnknown() && !lower.isUnknown() && upper.getValue() - lower.getValue() >= minNonNullFrequency) {
+                hotKeys.add((long) value.getValue());
+            }
+        }
+        return ImmutableList.copyOf(hotKeys);
+    }
 }
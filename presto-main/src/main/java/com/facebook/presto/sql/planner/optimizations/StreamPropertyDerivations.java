@@ -77,6 +77,8 @@ import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static com.facebook.presto.SystemSessionProperties.isMarkDistinctSpillEnabled;
+import static com.facebook.presto.SystemSessionProperties.isSemiJoinSpillEnabled;
 import static com.facebook.presto.sql.planner.SystemPartitioningHandle.FIXED_ARBITRARY_DISTRIBUTION;
 import static com.facebook.presto.sql.planner.optimizations.PropertyDerivations.extractFixedValuesToConstantExpressions;
 import static com.facebook.presto.sql.planner.optimizations.StreamPropertyDerivations.StreamProperties.StreamDistribution.FIXED;
@@ -528,7 +530,7 @@ public final class StreamPropertyDerivations
         @Override
         public StreamProperties visitMarkDistinct(MarkDistinctNode node, List<StreamProperties> inputProperties)
         {
-            return Iterables.getOnlyElement(inputProperties);
+            return Iterables.getOnlyElement(inputProperties).unordered(isMarkDistinctSpillEnabled(session));
         }
 
         @Override
@@ -590,7 +592,7 @@ public final class StreamPropertyDerivations
         @Override
         public StreamProperties visitSemiJoin(SemiJoinNode node, List<StreamProperties> inputProperties)
         {
-            return inputProperties.get(0);
+            return inputProperties.get(0).unordered(isSemiJoinSpillEnabled(session));
         }
 
         @Override
@@ -14,23 +14,34 @@
 package com.facebook.presto.execution;
 
 import com.facebook.presto.client.NodeVersion;
+import com.facebook.presto.common.predicate.TupleDomain;
 import com.facebook.presto.cost.StatsAndCosts;
 import com.facebook.presto.execution.scheduler.SplitSchedulerStats;
 import com.facebook.presto.execution.scheduler.TableWriteInfo;
 import com.facebook.presto.failureDetector.NoOpFailureDetector;
 import com.facebook.presto.metadata.InternalNode;
+import com.facebook.presto.metadata.Split;
 import com.facebook.presto.operator.StageExecutionDescriptor;
+import com.facebook.presto.spi.ConnectorId;
 import com.facebook.presto.spi.QueryId;
+import com.facebook.presto.spi.TableHandle;
 import com.facebook.presto.spi.plan.PlanNode;
 import com.facebook.presto.spi.plan.PlanNodeId;
+import com.facebook.presto.spi.plan.TableScanNode;
 import com.facebook.presto.spi.relation.VariableReferenceExpression;
 import com.facebook.presto.sql.planner.Partitioning;
 import com.facebook.presto.sql.planner.PartitioningScheme;
 import com.facebook.presto.sql.planner.PlanFragment;
 import com.facebook.presto.sql.planner.plan.PlanFragmentId;
 import com.facebook.presto.sql.planner.plan.RemoteSourceNode;
+import com.facebook.presto.testing.TestingMetadata.TestingColumnHandle;
+import com.facebook.presto.testing.TestingMetadata.TestingTableHandle;
+import com.facebook.presto.testing.TestingSplit;
+import com.facebook.presto.testing.TestingTransactionHandle;
 import com.facebook.presto.util.FinalizerService;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.SettableFuture;
 import org.testng.annotations.AfterClass;
@@ -38,7 +49,9 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import java.net.URI;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -53,15 +66,20 @@ import static com.facebook.presto.execution.buffer.OutputBuffers.createInitialEm
 import static com.facebook.presto.sql.planner.SystemPartitioningHandle.SINGLE_DISTRIBUTION;
 import static com.facebook.presto.sql.planner.SystemPartitioningHandle.SOURCE_DISTRIBUTION;
 import static com.facebook.presto.sql.planner.plan.ExchangeNode.Type.REPARTITION;
+import static com.google.common.collect.Iterables.getOnlyElement;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
 import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 public class TestSqlStageExecution
 {
+    private static final ConnectorId CONNECTOR_ID = new ConnectorId("connector_id");
+    private static final PlanNodeId TABLE_SCAN_NODE_ID = new PlanNodeId("table_scan");
+
     private ExecutorService executor;
     private ScheduledExecutorService scheduledExecutor;
 
@@ -154,6 +172,82 @@ public class TestSqlStageExecution
         addTasksTask.cancel(true);
     }
 
+    @Test
+    public void testSpeculativeTask()
+    {
+        NodeTaskMap nodeTaskMap = new NodeTaskMap(new FinalizerService());
+        // the mock tasks finish once there are no more splits, their state listeners are never run so that the stage sees them running
+        MockRemoteTaskFactory mockTaskFactory = new MockRemoteTaskFactory(command -> {}, scheduledExecutor);
+        Map<TaskId, Integer> initialSplitCounts = new ConcurrentHashMap<>();
+        RemoteTaskFactory taskFactory = (session, taskId, node, fragment, initialSplits, outputBuffers, nodeStatsTracker, summarizeTaskInfo, tableWriteInfo, schedulerStatsTracker) -> {
+            initialSplitCounts.put(taskId, initialSplits.size());
+            return mockTaskFactory.createRemoteTask(session, taskId, node, fragment, initialSplits, outputBuffers, nodeStatsTracker, summarizeTaskInfo, tableWriteInfo, schedulerStatsTracker);
+        };
+        SqlStageExecution stage = createSqlStageExecution(
+                new StageExecutionId(new StageId(new QueryId("query"), 0), 0),
+                createTableScanPlanFragment(),
+                taskFactory,
+                TEST_SESSION,
+                true,
+                nodeTaskMap,
+                executor,
+                new NoOpFailureDetector(),
+                new SplitSchedulerStats(),
+                new TableWriteInfo(Optional.empty(), Optional.empty(), Optional.empty()));
+        stage.setOutputBuffers(createInitialEmptyOutputBuffers(ARBITRARY));
+        stage.enableSpeculativeExecution();
+
+        InternalNode node = new InternalNode("node", URI.create("http://10.0.0.1:8080"), NodeVersion.UNKNOWN, false);
+        InternalNode otherNode = new InternalNode("other", URI.create("http://10.0.0.2:8080"), NodeVersion.UNKNOWN, false);
+        RemoteTask task = getOnlyElement(stage.scheduleSplits(node, ImmutableMultimap.of(TABLE_SCAN_NODE_ID, createSplit()), ImmutableMultimap.of()));
+        stage.scheduleSplits(node, ImmutableMultimap.of(TABLE_SCAN_NODE_ID, createSplit(), TABLE_SCAN_NODE_ID, createSplit()), ImmutableMultimap.of());
+
+        // the splits of the stage must all be scheduled
+        assertFalse(stage.scheduleSpeculativeTask(task.getTaskId(), otherNode).isPresent());
+        stage.schedulingComplete();
+
+        RemoteTask speculativeTask = stage.scheduleSpeculativeTask(task.getTaskId(), otherNode).get();
+        assertEquals(speculativeTask.getTaskId(), task.getTaskId().withAttemptNumber(1));
+        assertEquals(speculativeTask.getNodeId(), otherNode.getNodeIdentifier());
+        assertEquals(initialSplitCounts.get(speculativeTask.getTaskId()), Integer.valueOf(3));
+        assertEquals(stage.getSpeculativeTasks(), ImmutableMap.of(task.getTaskId(), speculativeTask.getTaskId()));
+        assertEquals(stage.getAllTasks().size(), 2);
+
+        // a task only has one speculative attempt
+        assertFalse(stage.scheduleSpeculativeTask(task.getTaskId(), otherNode).isPresent());
+        stage.abort();
+    }
+
+    private static Split createSplit()
+    {
+        return new Split(CONNECTOR_ID, TestingTransactionHandle.create(), TestingSplit.createRemoteSplit());
+    }
+
+    private static PlanFragment createTableScanPlanFragment()
+    {
+        VariableReferenceExpression variable = new VariableReferenceExpression(Optional.empty(), "column", VARCHAR);
+        PlanNode planNode = new TableScanNode(
+                Optional.empty(),
+                TABLE_SCAN_NODE_ID,
+                new TableHandle(CONNECTOR_ID, new TestingTableHandle(), TestingTransactionHandle.create(), Optional.empty()),
+                ImmutableList.of(variable),
+                ImmutableMap.of(variable, new TestingColumnHandle("column")),
+                TupleDomain.all(),
+                TupleDomain.all());
+
+        return new PlanFragment(
+                new PlanFragmentId(0),
+                planNode,
+                ImmutableSet.copyOf(planNode.getOutputVariables()),
+                SOURCE_DISTRIBUTION,
+                ImmutableList.of(planNode.getId()),
+                new PartitioningScheme(Partitioning.create(SINGLE_DISTRIBUTION, ImmutableList.of()), planNode.getOutputVariables()),
+                StageExecutionDescriptor.ungroupedExecution(),
+                false,
+                Optional.of(StatsAndCosts.empty()),
+                Optional.empty());
+    }
+
     private static PlanFragment createExchangePlanFragment()
     {
         PlanNode planNode = new RemoteSourceNode(
@@ -47,6 +47,7 @@ public class TestTaskManagerConfig
                 .setPerOperatorAllocationTrackingEnabled(false)
                 .setTaskAllocationTrackingEnabled(false)
                 .setMaxWorkerThreads("2C")
+                .setBlockingIoThreads(0)
                 .setMinDrivers(Runtime.getRuntime().availableProcessors() * 2 * 2)
                 .setMinDriversPerTask(3)
                 .setMaxDriversPerTask(Integer.MAX_VALUE)
@@ -68,6 +69,8 @@ public class TestTaskManagerConfig
                 .setTaskNotificationThreads(5)
                 .setTaskYieldThreads(3)
                 .setLevelTimeMultiplier(new BigDecimal("2"))
+                .setSplitQueueShards(1)
+                .setNumaNodeCount(1)
                 .setStatisticsCpuTimerEnabled(true)
                 .setLegacyLifespanCompletionCondition(false)
                 .setTaskPriorityTracking(TASK_FAIR)
@@ -98,6 +101,7 @@ public class TestTaskManagerConfig
                 .put("task.max-partial-aggregation-memory", "32MB")
                 .put("task.max-local-exchange-buffer-size", "33MB")
                 .put("task.max-worker-threads", "3")
+                .put("task.blocking-io-threads", "64")
                 .put("task.min-drivers", "2")
                 .put("task.min-drivers-per-task", "5")
                 .put("task.max-drivers-per-task", "13")
@@ -115,6 +119,8 @@ public class TestTaskManagerConfig
                 .put("task.task-notification-threads", "13")
                 .put("task.task-yield-threads", "8")
                 .put("task.level-time-multiplier", "2.1")
+                .put("task.split-queue-shards", "8")
+                .put("task.numa-node-count", "2")
                 .put("task.statistics-cpu-timer-enabled", "false")
                 .put("task.legacy-lifespan-completion-condition", "true")
                 .put("task.task-priority-tracking", "QUERY_FAIR")
@@ -142,6 +148,7 @@ public class TestTaskManagerConfig
                 .setMaxPartialAggregationMemoryUsage(new DataSize(32, Unit.MEGABYTE))
                 .setMaxLocalExchangeBufferSize(new DataSize(33, Unit.MEGABYTE))
                 .setMaxWorkerThreads("3")
+                .setBlockingIoThreads(64)
                 .setMinDrivers(2)
                 .setMinDriversPerTask(5)
                 .setMaxDriversPerTask(13)
@@ -159,6 +166,8 @@ public class TestTaskManagerConfig
                 .setTaskNotificationThreads(13)
                 .setTaskYieldThreads(8)
                 .setLevelTimeMultiplier(new BigDecimal("2.1"))
+                .setSplitQueueShards(8)
+                .setNumaNodeCount(2)
                 .setStatisticsCpuTimerEnabled(false)
                 .setLegacyLifespanCompletionCondition(true)
                 .setTaskPriorityTracking(QUERY_FAIR)
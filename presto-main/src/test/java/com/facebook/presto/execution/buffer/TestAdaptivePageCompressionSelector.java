@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution.buffer;
+
+import com.facebook.presto.spi.page.PageCompressionCodec;
+import org.testng.annotations.Test;
+
+import java.util.Optional;
+
+import static com.facebook.presto.execution.buffer.AdaptivePageCompressionSelector.EXPLORATION_INTERVAL;
+import static com.facebook.presto.spi.page.PageCompressionCodec.LZ4;
+import static com.facebook.presto.spi.page.PageCompressionCodec.ZSTD;
+import static org.testng.Assert.assertEquals;
+
+public class TestAdaptivePageCompressionSelector
+{
+    private static final int PAGE_SIZE = 1_000_000;
+
+    @Test
+    public void testSlowNetworkPrefersHigherCompression()
+    {
+        // 10MB/s: transferring a byte costs 100ns, much more than compressing it
+        AdaptivePageCompressionSelector selector = new AdaptivePageCompressionSelector(10_000_000);
+        warmUp(selector, 0.5, 1, 0.3, 5);
+        assertEquals(selector.getSelectedCodec(), Optional.of(ZSTD));
+    }
+
+    @Test
+    public void testFastNetworkPrefersCheaperCompression()
+    {
+        // 1GB/s: transferring a byte costs 1ns, so the cost of ZSTD is not worth its better ratio
+        AdaptivePageCompressionSelector selector = new AdaptivePageCompressionSelector(1_000_000_000);
+        warmUp(selector, 0.5, 0.2, 0.3, 5);
+        assertEquals(selector.getSelectedCodec(), Optional.of(LZ4));
+    }
+
+    @Test
+    public void testIncompressibleDataIsNotCompressed()
+    {
+        AdaptivePageCompressionSelector selector = new AdaptivePageCompressionSelector(1_000_000_000);
+        // pages not compressible enough are sent uncompressed, so compressing them is pure cost
+        warmUp(selector, 1, 0.2, 1, 5);
+        assertEquals(selector.getSelectedCodec(), Optional.empty());
+
+        // a codec is still tried periodically, so that compression resumes when the data changes
+        int explored = 0;
+        for (int i = 0; i < EXPLORATION_INTERVAL; i++) {
+            if (selector.selectCodec(PAGE_SIZE).isPresent()) {
+                explored++;
+            }
+        }
+        assertEquals(explored, 1);
+    }
+
+    private static void warmUp(AdaptivePageCompressionSelector selector, double lz4Ratio, double lz4NanosPerByte, double zstdRatio, double zstdNanosPerByte)
+    {
+        for (int i = 0; i < 2 * EXPLORATION_INTERVAL; i++) {
+            Optional<PageCompressionCodec> codec = selector.selectCodec(PAGE_SIZE);
+            if (!codec.isPresent()) {
+                continue;
+            }
+            if (codec.get() == LZ4) {
+                selector.recordCompression(LZ4, PAGE_SIZE, (int) (PAGE_SIZE * lz4Ratio), (long) (PAGE_SIZE * lz4NanosPerByte));
+            }
+            else {
+                selector.recordCompression(ZSTD, PAGE_SIZE, (int) (PAGE_SIZE * zstdRatio), (long) (PAGE_SIZE * zstdNanosPerByte));
+            }
+        }
+    }
+}
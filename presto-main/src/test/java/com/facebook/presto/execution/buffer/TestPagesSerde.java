@@ -16,11 +16,16 @@ package com.facebook.presto.execution.buffer;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.common.block.Block;
 import com.facebook.presto.common.block.BlockBuilder;
+import com.facebook.presto.common.block.BlockEncodingManager;
 import com.facebook.presto.common.type.Type;
+import com.facebook.presto.spi.page.PageCodecMarker;
+import com.facebook.presto.spi.page.PageCompressionCodec;
 import com.facebook.presto.spi.page.PagesSerde;
+import com.facebook.presto.spi.page.SerializedPage;
 import com.google.common.collect.ImmutableList;
 import io.airlift.slice.DynamicSliceOutput;
 import io.airlift.slice.Slice;
+import io.airlift.units.DataSize;
 import org.testng.annotations.Test;
 
 import java.util.Iterator;
@@ -31,8 +36,10 @@ import java.util.stream.LongStream;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
 import static com.facebook.presto.common.type.VarcharType.VARCHAR;
 import static com.facebook.presto.operator.PageAssertions.assertPageEquals;
+import static com.facebook.presto.spi.page.PageCodecMarker.COMPRESSED;
 import static com.facebook.presto.spi.page.PagesSerdeUtil.readPages;
 import static com.facebook.presto.spi.page.PagesSerdeUtil.writePages;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
@@ -63,6 +70,33 @@ public class TestPagesSerde
         assertFalse(pageIterator.hasNext());
     }
 
+    @Test
+    public void testCompressionCodecs()
+    {
+        BlockBuilder builder = VARCHAR.createBlockBuilder(null, 1000);
+        for (int i = 0; i < 1000; i++) {
+            VARCHAR.writeString(builder, "value " + (i % 10));
+        }
+        Page page = new Page(builder.build());
+
+        for (ExchangeCompressionCodec codec : ExchangeCompressionCodec.values()) {
+            PagesSerde serde = new PagesSerdeFactory(new BlockEncodingManager(), true, false, codec, new DataSize(1, MEGABYTE)).createPagesSerde();
+            SerializedPage serializedPage = serde.serialize(page);
+            assertTrue(COMPRESSED.isSet(serializedPage.getPageCodecMarkers()), codec.name());
+            if (codec.getFixedCodec().isPresent()) {
+                assertEquals(PageCompressionCodec.fromMarkers(serializedPage.getPageCodecMarkers()), codec.getFixedCodec().get());
+            }
+
+            // any serde with compression enabled reads the pages of all codecs
+            PagesSerde readerSerde = new PagesSerdeFactory(new BlockEncodingManager(), true).createPagesSerde();
+            assertPageEquals(ImmutableList.of(VARCHAR), readerSerde.deserialize(serializedPage), page);
+        }
+
+        // LZ4 pages are only marked as compressed, so that serdes that only support LZ4 read them
+        SerializedPage lz4Page = new TestingPagesSerdeFactory().createPagesSerde().serialize(page);
+        assertEquals(lz4Page.getPageCodecMarkers(), COMPRESSED.set(PageCodecMarker.none()));
+    }
+
     @Test
     public void testBigintSerializedSize()
     {
@@ -13,9 +13,12 @@
  */
 package com.facebook.presto.execution.executor;
 
+import com.facebook.airlift.stats.CounterStat;
+import com.facebook.airlift.stats.TimeStat;
 import com.facebook.airlift.testing.TestingTicker;
 import com.facebook.presto.execution.SplitRunner;
 import com.facebook.presto.execution.TaskId;
+import com.facebook.presto.memory.NumaNodeMemoryTracker;
 import com.facebook.presto.server.ServerConfig;
 import com.facebook.presto.version.EmbedVersion;
 import com.google.common.base.Ticker;
@@ -29,6 +32,8 @@ import org.testng.annotations.Test;
 import java.util.Arrays;
 import java.util.List;
 import java.util.OptionalInt;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.Phaser;
 import java.util.concurrent.TimeUnit;
@@ -42,11 +47,13 @@ import static com.facebook.presto.execution.TaskManagerConfig.TaskPriorityTracki
 import static com.facebook.presto.execution.executor.MultilevelSplitQueue.LEVEL_CONTRIBUTION_CAP;
 import static com.facebook.presto.execution.executor.MultilevelSplitQueue.LEVEL_THRESHOLD_SECONDS;
 import static com.google.common.collect.Iterables.getOnlyElement;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 public class TestTaskExecutor
@@ -376,6 +383,146 @@ public class TestTaskExecutor
         }
     }
 
+    @Test(timeOut = 30_000)
+    public void testSplitQueueShards()
+            throws Exception
+    {
+        MultilevelSplitQueue splitQueue = new MultilevelSplitQueue(2, 2);
+        TaskHandle handle = new TaskHandle(new TaskId("test", 0, 0, 0, 0), new TaskPriorityTracker(splitQueue), () -> 1, 1, new Duration(1, SECONDS), OptionalInt.empty());
+        PrioritizedSplitRunner localSplit = createPrioritizedSplitRunner(handle);
+        PrioritizedSplitRunner otherSplit = createPrioritizedSplitRunner(handle);
+
+        splitQueue.offer(localSplit, 1);
+        splitQueue.offer(otherSplit, 0);
+        assertEquals(splitQueue.size(), 2);
+
+        // the split of the own shard is taken first, the other one is stolen
+        assertSame(splitQueue.take(1), localSplit);
+        assertEquals(splitQueue.getStolenSplits().getTotalCount(), 0);
+        assertSame(splitQueue.take(1), otherSplit);
+        assertEquals(splitQueue.getStolenSplits().getTotalCount(), 1);
+        assertEquals(splitQueue.size(), 0);
+
+        // a runner waiting on an empty queue is woken up by a split added to any shard
+        ExecutorService executor = newSingleThreadExecutor();
+        try {
+            Future<PrioritizedSplitRunner> taken = executor.submit(() -> splitQueue.take(0));
+            splitQueue.offer(localSplit, 1);
+            assertSame(taken.get(10, SECONDS), localSplit);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSplitQueueNumaNodes()
+            throws Exception
+    {
+        MultilevelSplitQueue splitQueue = new MultilevelSplitQueue(2, 4, 2);
+        assertEquals(splitQueue.getNode(0), 0);
+        assertEquals(splitQueue.getNode(1), 1);
+        assertEquals(splitQueue.getNode(2), 0);
+        assertEquals(splitQueue.getNode(3), 1);
+
+        TaskHandle handle = new TaskHandle(new TaskId("test", 0, 0, 0, 0), new TaskPriorityTracker(splitQueue), () -> 1, 1, new Duration(1, SECONDS), OptionalInt.empty());
+        PrioritizedSplitRunner otherNodeSplit = createPrioritizedSplitRunner(handle);
+        PrioritizedSplitRunner sameNodeSplit = createPrioritizedSplitRunner(handle);
+
+        // a runner steals from the shards of its own node first
+        splitQueue.offer(otherNodeSplit, 1);
+        splitQueue.offer(sameNodeSplit, 2);
+        assertSame(splitQueue.take(0), sameNodeSplit);
+        assertSame(splitQueue.take(0), otherNodeSplit);
+
+        // the splits offered to a node are added to the shards of the node
+        for (int i = 0; i < 4; i++) {
+            splitQueue.offerToNode(createPrioritizedSplitRunner(handle), 1);
+        }
+        long stolenSplits = splitQueue.getStolenSplits().getTotalCount();
+        for (int i = 0; i < 2; i++) {
+            splitQueue.take(1);
+            splitQueue.take(3);
+        }
+        assertEquals(splitQueue.getStolenSplits().getTotalCount(), stolenSplits);
+        assertEquals(splitQueue.size(), 0);
+    }
+
+    @Test(timeOut = 30_000)
+    public void testTasksCompleteWithSplitQueueShards()
+            throws Exception
+    {
+        TestingTicker ticker = new TestingTicker();
+        TaskExecutor taskExecutor = new TaskExecutor(4, 8, 3, 4, TASK_FAIR, new MultilevelSplitQueue(2, 3), ticker);
+        taskExecutor.start();
+        try {
+            TaskHandle taskHandle = taskExecutor.addTask(new TaskId("test", 0, 0, 0, 0), () -> 0, 10, new Duration(1, MILLISECONDS), OptionalInt.empty());
+
+            ImmutableList.Builder<TestingJob> jobs = ImmutableList.builder();
+            for (int i = 0; i < 20; i++) {
+                jobs.add(new TestingJob(ticker, new Phaser(), new Phaser(), new Phaser(), 5, 1));
+            }
+            List<ListenableFuture<?>> futures = taskExecutor.enqueueSplits(taskHandle, false, jobs.build());
+            for (ListenableFuture<?> future : futures) {
+                future.get(10, SECONDS);
+            }
+            assertEquals(taskExecutor.getWaitingSplits(), 0);
+        }
+        finally {
+            taskExecutor.stop();
+        }
+    }
+
+    @Test(timeOut = 30_000)
+    public void testBlockingIoSplits()
+            throws Exception
+    {
+        TaskExecutor taskExecutor = new TaskExecutor(
+                1,
+                2,
+                4,
+                3,
+                8,
+                TASK_FAIR,
+                new Duration(600, SECONDS),
+                elements -> false,
+                new Duration(1, SECONDS),
+                new EmbedVersion(new ServerConfig()),
+                new MultilevelSplitQueue(2),
+                new NumaNodeMemoryTracker(1),
+                Ticker.systemTicker());
+        taskExecutor.start();
+        try {
+            TaskHandle taskHandle = taskExecutor.addTask(new TaskId("test", 0, 0, 0, 0), () -> 0, 10, new Duration(1, MILLISECONDS), OptionalInt.empty());
+
+            // both blocking I/O threads wait on a read
+            CountDownLatch readsStarted = new CountDownLatch(2);
+            CountDownLatch dataAvailable = new CountDownLatch(1);
+            List<ListenableFuture<?>> blockingFutures = taskExecutor.enqueueSplits(taskHandle, false, ImmutableList.of(
+                    new BlockingReadSplitRunner(true, readsStarted, dataAvailable),
+                    new BlockingReadSplitRunner(true, readsStarted, dataAvailable)));
+            assertTrue(readsStarted.await(10, SECONDS));
+            assertEquals(taskExecutor.getBlockingIoSplits(), 2);
+
+            // the single runner thread is still free for the other splits
+            CountDownLatch cpuSplitStarted = new CountDownLatch(1);
+            List<ListenableFuture<?>> cpuFutures = taskExecutor.enqueueSplits(taskHandle, false, ImmutableList.of(
+                    new BlockingReadSplitRunner(false, cpuSplitStarted, new CountDownLatch(0))));
+            getOnlyElement(cpuFutures).get(10, SECONDS);
+            for (ListenableFuture<?> future : blockingFutures) {
+                assertFalse(future.isDone());
+            }
+
+            dataAvailable.countDown();
+            for (ListenableFuture<?> future : blockingFutures) {
+                future.get(10, SECONDS);
+            }
+        }
+        finally {
+            taskExecutor.stop();
+        }
+    }
+
     @Test(timeOut = 30_000)
     public void testMinMaxDriversPerTask()
     {
@@ -461,6 +608,7 @@ public class TestTaskExecutor
     {
         TaskExecutor taskExecutor = new TaskExecutor(
                 8,
+                0,
                 16,
                 3,
                 4,
@@ -471,6 +619,7 @@ public class TestTaskExecutor
                 new Duration(1, SECONDS),
                 new EmbedVersion(new ServerConfig()),
                 new MultilevelSplitQueue(2),
+                new NumaNodeMemoryTracker(1),
                 Ticker.systemTicker());
         taskExecutor.start();
 
@@ -516,6 +665,11 @@ public class TestTaskExecutor
         }
     }
 
+    private static PrioritizedSplitRunner createPrioritizedSplitRunner(TaskHandle taskHandle)
+    {
+        return new PrioritizedSplitRunner(taskHandle, new MockSplitRunner(), new TestingTicker(), new CounterStat(), new CounterStat(), new TimeStat(), new TimeStat());
+    }
+
     private static class TestingJob
             implements SplitRunner
     {
@@ -613,6 +767,59 @@ public class TestTaskExecutor
         }
     }
 
+    private static class BlockingReadSplitRunner
+            implements SplitRunner
+    {
+        private final boolean blockingIo;
+        private final CountDownLatch started;
+        private final CountDownLatch dataAvailable;
+        private volatile boolean finished;
+
+        private BlockingReadSplitRunner(boolean blockingIo, CountDownLatch started, CountDownLatch dataAvailable)
+        {
+            this.blockingIo = blockingIo;
+            this.started = started;
+            this.dataAvailable = dataAvailable;
+        }
+
+        @Override
+        public boolean isFinished()
+        {
+            return finished;
+        }
+
+        @Override
+        public ListenableFuture<?> processFor(Duration duration)
+        {
+            started.countDown();
+            try {
+                dataAvailable.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished = true;
+            return Futures.immediateFuture(null);
+        }
+
+        @Override
+        public boolean isBlockingIo()
+        {
+            return blockingIo;
+        }
+
+        @Override
+        public String getInfo()
+        {
+            return "";
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
     private static class MockSplitRunner
             implements SplitRunner
     {
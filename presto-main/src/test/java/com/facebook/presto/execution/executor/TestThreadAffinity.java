@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution.executor;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static com.google.common.io.MoreFiles.deleteRecursively;
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
+import static java.nio.file.Files.createDirectory;
+import static java.nio.file.Files.createFile;
+import static java.nio.file.Files.createTempDirectory;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test(singleThreaded = true)
+public class TestThreadAffinity
+{
+    private Path tempDirectory;
+    private Path nodesDirectory;
+    private Path threadSelf;
+    private Path binDirectory;
+
+    @BeforeMethod
+    public void setUp()
+            throws IOException
+    {
+        tempDirectory = createTempDirectory(getClass().getSimpleName());
+        nodesDirectory = tempDirectory.resolve("node");
+        threadSelf = tempDirectory.resolve("thread-self");
+        binDirectory = tempDirectory.resolve("bin");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown()
+            throws IOException
+    {
+        deleteRecursively(tempDirectory, ALLOW_INSECURE);
+    }
+
+    @Test
+    public void testUnsupportedWithoutNodes()
+            throws IOException
+    {
+        createFile(threadSelf);
+        createTaskset();
+
+        ThreadAffinity affinity = new ThreadAffinity(nodesDirectory, threadSelf, binDirectory.toString());
+        assertFalse(affinity.isSupported());
+        assertFalse(affinity.pinCurrentThread(0));
+    }
+
+    @Test
+    public void testUnsupportedWithoutTaskset()
+            throws IOException
+    {
+        createDirectory(nodesDirectory);
+        createFile(threadSelf);
+
+        ThreadAffinity affinity = new ThreadAffinity(nodesDirectory, threadSelf, binDirectory.toString());
+        assertFalse(affinity.isSupported());
+        assertFalse(affinity.pinCurrentThread(0));
+    }
+
+    @Test
+    public void testSupportCheckedOnce()
+            throws IOException
+    {
+        createFile(threadSelf);
+        createTaskset();
+
+        ThreadAffinity affinity = new ThreadAffinity(nodesDirectory, threadSelf, binDirectory.toString());
+        assertFalse(affinity.isSupported());
+
+        // the check is not repeated for later threads
+        createDirectory(nodesDirectory);
+        assertFalse(affinity.isSupported());
+        assertFalse(affinity.pinCurrentThread(0));
+    }
+
+    @Test
+    public void testDisabledAfterFailure()
+            throws IOException
+    {
+        createDirectory(nodesDirectory);
+        createFile(threadSelf);
+        createTaskset();
+
+        ThreadAffinity affinity = new ThreadAffinity(nodesDirectory, threadSelf, binDirectory.toString());
+        assertTrue(affinity.isSupported());
+
+        // the node has no cpulist, so pinning fails before taskset is run
+        assertFalse(affinity.pinCurrentThread(7));
+        assertFalse(affinity.isSupported());
+    }
+
+    private void createTaskset()
+            throws IOException
+    {
+        createDirectory(binDirectory);
+        assertTrue(createFile(binDirectory.resolve("taskset")).toFile().setExecutable(true));
+    }
+}
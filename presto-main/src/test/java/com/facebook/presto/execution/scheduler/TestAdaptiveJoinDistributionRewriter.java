@@ -0,0 +1,249 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution.scheduler;
+
+import com.facebook.presto.Session;
+import com.facebook.presto.metadata.AbstractMockMetadata;
+import com.facebook.presto.operator.StageExecutionDescriptor;
+import com.facebook.presto.spi.ColumnHandle;
+import com.facebook.presto.spi.ConnectorId;
+import com.facebook.presto.spi.ConnectorTableMetadata;
+import com.facebook.presto.spi.Constraint;
+import com.facebook.presto.spi.SchemaTableName;
+import com.facebook.presto.spi.TableHandle;
+import com.facebook.presto.spi.TableMetadata;
+import com.facebook.presto.spi.plan.EquiJoinClause;
+import com.facebook.presto.spi.plan.PlanNode;
+import com.facebook.presto.spi.plan.PlanNodeIdAllocator;
+import com.facebook.presto.spi.plan.TableScanNode;
+import com.facebook.presto.spi.relation.VariableReferenceExpression;
+import com.facebook.presto.spi.statistics.Estimate;
+import com.facebook.presto.spi.statistics.TableStatistics;
+import com.facebook.presto.sql.planner.Partitioning;
+import com.facebook.presto.sql.planner.PartitioningHandle;
+import com.facebook.presto.sql.planner.PartitioningScheme;
+import com.facebook.presto.sql.planner.PlanFragment;
+import com.facebook.presto.sql.planner.iterative.rule.test.PlanBuilder;
+import com.facebook.presto.sql.planner.plan.JoinNode;
+import com.facebook.presto.sql.planner.plan.PlanFragmentId;
+import com.facebook.presto.sql.planner.plan.RemoteSourceNode;
+import com.facebook.presto.sql.planner.plan.TableFinishNode;
+import com.facebook.presto.sql.planner.plan.TableWriterNode.InsertReference;
+import com.facebook.presto.testing.TestingMetadata.TestingColumnHandle;
+import com.facebook.presto.testing.TestingMetadata.TestingTableHandle;
+import com.facebook.presto.testing.TestingTransactionHandle;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.facebook.presto.SystemSessionProperties.JOIN_MAX_BROADCAST_TABLE_SIZE;
+import static com.facebook.presto.metadata.FunctionAndTypeManager.createTestFunctionAndTypeManager;
+import static com.facebook.presto.spi.plan.JoinDistributionType.PARTITIONED;
+import static com.facebook.presto.spi.plan.JoinDistributionType.REPLICATED;
+import static com.facebook.presto.spi.plan.JoinType.INNER;
+import static com.facebook.presto.sql.planner.SystemPartitioningHandle.FIXED_BROADCAST_DISTRIBUTION;
+import static com.facebook.presto.sql.planner.SystemPartitioningHandle.FIXED_HASH_DISTRIBUTION;
+import static com.facebook.presto.sql.planner.SystemPartitioningHandle.SINGLE_DISTRIBUTION;
+import static com.facebook.presto.sql.planner.SystemPartitioningHandle.SOURCE_DISTRIBUTION;
+import static com.facebook.presto.sql.planner.VariablesExtractor.extractOutputVariables;
+import static com.facebook.presto.sql.planner.optimizations.PlanNodeSearcher.searchFrom;
+import static com.facebook.presto.sql.planner.plan.ExchangeNode.Type.REPARTITION;
+import static com.facebook.presto.sql.planner.plan.ExchangeNode.Type.REPLICATE;
+import static com.facebook.presto.testing.TestingSession.testSessionBuilder;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestAdaptiveJoinDistributionRewriter
+{
+    private static final Session SESSION = testSessionBuilder()
+            .setSystemProperty(JOIN_MAX_BROADCAST_TABLE_SIZE, "1MB")
+            .build();
+    private static final SchemaTableName PROBE_TABLE = new SchemaTableName("test", "probe");
+    private static final SchemaTableName MATERIALIZED_TABLE = new SchemaTableName("test", "materialized");
+    private static final SchemaTableName OTHER_TABLE = new SchemaTableName("test", "other");
+    private static final PlanFragmentId JOIN_FRAGMENT_ID = new PlanFragmentId(1);
+    private static final PlanFragmentId BUILD_FRAGMENT_ID = new PlanFragmentId(2);
+    private static final PlanFragmentId WRITE_FRAGMENT_ID = new PlanFragmentId(3);
+    private static final PlanFragmentId PROBE_FRAGMENT_ID = new PlanFragmentId(4);
+
+    @Test
+    public void testRepartitionLargeBuild()
+    {
+        PlanNodeIdAllocator idAllocator = new PlanNodeIdAllocator();
+        StreamingPlanSection section = createSection(idAllocator, MATERIALIZED_TABLE);
+        Optional<StreamingSubPlan> rewritten = rewrite(idAllocator, section, ImmutableMap.of(MATERIALIZED_TABLE, Estimate.of(10_000_000)));
+        assertTrue(rewritten.isPresent());
+
+        PlanFragment joinFragment = rewritten.get().getFragment();
+        assertEquals(joinFragment.getId(), JOIN_FRAGMENT_ID);
+        assertEquals(joinFragment.getPartitioning(), FIXED_HASH_DISTRIBUTION);
+        assertEquals(joinFragment.getTableScanSchedulingOrder(), ImmutableList.of());
+        JoinNode join = (JoinNode) joinFragment.getRoot();
+        assertEquals(join.getDistributionType(), Optional.of(PARTITIONED));
+        RemoteSourceNode probeSource = (RemoteSourceNode) join.getLeft();
+        assertEquals(probeSource.getSourceFragmentIds(), ImmutableList.of(PROBE_FRAGMENT_ID));
+        assertEquals(probeSource.getExchangeType(), REPARTITION);
+        RemoteSourceNode buildSource = (RemoteSourceNode) join.getRight();
+        assertEquals(buildSource.getSourceFragmentIds(), ImmutableList.of(BUILD_FRAGMENT_ID));
+        assertEquals(buildSource.getExchangeType(), REPARTITION);
+
+        List<StreamingSubPlan> children = rewritten.get().getChildren();
+        assertEquals(children.size(), 2);
+
+        // the build fragment partitions its output on the build key of its own output layout
+        PlanFragment buildFragment = children.get(0).getFragment();
+        assertEquals(buildFragment.getId(), BUILD_FRAGMENT_ID);
+        assertEquals(buildFragment.getPartitioningScheme().getPartitioning().getHandle(), FIXED_HASH_DISTRIBUTION);
+        assertEquals(buildFragment.getPartitioningScheme().getPartitioning().getVariableReferences(), buildFragment.getPartitioningScheme().getOutputLayout());
+
+        // the probe fragment reads the splits of the join fragment
+        PlanFragment probeFragment = children.get(1).getFragment();
+        assertEquals(probeFragment.getId(), PROBE_FRAGMENT_ID);
+        assertEquals(probeFragment.getPartitioning(), SOURCE_DISTRIBUTION);
+        assertTrue(probeFragment.getRoot() instanceof TableScanNode);
+        assertEquals(probeFragment.getTableScanSchedulingOrder(), ImmutableList.of(probeFragment.getRoot().getId()));
+        assertEquals(probeFragment.getPartitioningScheme().getPartitioning().getHandle(), FIXED_HASH_DISTRIBUTION);
+        assertEquals(probeFragment.getPartitioningScheme().getPartitioning().getVariableReferences(), probeFragment.getRoot().getOutputVariables());
+    }
+
+    @Test
+    public void testSmallBuild()
+    {
+        PlanNodeIdAllocator idAllocator = new PlanNodeIdAllocator();
+        StreamingPlanSection section = createSection(idAllocator, MATERIALIZED_TABLE);
+        assertFalse(rewrite(idAllocator, section, ImmutableMap.of(MATERIALIZED_TABLE, Estimate.of(100_000))).isPresent());
+    }
+
+    @Test
+    public void testUnknownBuildSize()
+    {
+        PlanNodeIdAllocator idAllocator = new PlanNodeIdAllocator();
+        StreamingPlanSection section = createSection(idAllocator, MATERIALIZED_TABLE);
+        assertFalse(rewrite(idAllocator, section, ImmutableMap.of(MATERIALIZED_TABLE, Estimate.unknown())).isPresent());
+    }
+
+    @Test
+    public void testBuildNotMaterialized()
+    {
+        // the size of a table that is not written by the children of the section is not the actual size of the build input
+        PlanNodeIdAllocator idAllocator = new PlanNodeIdAllocator();
+        StreamingPlanSection section = createSection(idAllocator, OTHER_TABLE);
+        assertFalse(rewrite(idAllocator, section, ImmutableMap.of(OTHER_TABLE, Estimate.of(10_000_000))).isPresent());
+    }
+
+    private static Optional<StreamingSubPlan> rewrite(PlanNodeIdAllocator idAllocator, StreamingPlanSection section, Map<SchemaTableName, Estimate> tableSizes)
+    {
+        AdaptiveJoinDistributionRewriter rewriter = new AdaptiveJoinDistributionRewriter(new MockMetadata(tableSizes), createTestFunctionAndTypeManager(), idAllocator);
+        AtomicInteger nextFragmentId = new AtomicInteger(PROBE_FRAGMENT_ID.getId());
+        return rewriter.rewrite(SESSION, section, () -> new PlanFragmentId(nextFragmentId.getAndIncrement()));
+    }
+
+    private static StreamingPlanSection createSection(PlanNodeIdAllocator idAllocator, SchemaTableName buildTable)
+    {
+        PlanBuilder planBuilder = new PlanBuilder(SESSION, idAllocator, new MockMetadata(ImmutableMap.of()));
+        VariableReferenceExpression probeKey = planBuilder.variable("probe_key");
+        VariableReferenceExpression buildKey = planBuilder.variable("build_key");
+        VariableReferenceExpression exchangeKey = planBuilder.variable("exchange_key");
+        VariableReferenceExpression rows = planBuilder.variable("rows");
+
+        TableScanNode buildScan = planBuilder.tableScan(createTableHandle(buildTable), ImmutableList.of(buildKey), ImmutableMap.of(buildKey, new TestingColumnHandle("build_key")));
+        PlanFragment buildFragment = createFragment(BUILD_FRAGMENT_ID, buildScan, SOURCE_DISTRIBUTION, FIXED_BROADCAST_DISTRIBUTION);
+
+        TableScanNode probeScan = planBuilder.tableScan(createTableHandle(PROBE_TABLE), ImmutableList.of(probeKey), ImmutableMap.of(probeKey, new TestingColumnHandle("probe_key")));
+        RemoteSourceNode buildSource = new RemoteSourceNode(Optional.empty(), idAllocator.getNextId(), BUILD_FRAGMENT_ID, ImmutableList.of(exchangeKey), false, Optional.empty(), REPLICATE);
+        JoinNode join = planBuilder.join(
+                INNER,
+                probeScan,
+                buildSource,
+                ImmutableList.of(new EquiJoinClause(probeKey, exchangeKey)),
+                ImmutableList.of(probeKey, exchangeKey),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.of(REPLICATED),
+                ImmutableMap.of());
+        PlanFragment joinFragment = createFragment(JOIN_FRAGMENT_ID, join, SOURCE_DISTRIBUTION, SINGLE_DISTRIBUTION);
+
+        TableFinishNode write = new TableFinishNode(
+                Optional.empty(),
+                idAllocator.getNextId(),
+                planBuilder.values(rows),
+                Optional.of(new InsertReference(createTableHandle(MATERIALIZED_TABLE), MATERIALIZED_TABLE)),
+                rows,
+                Optional.empty(),
+                Optional.empty());
+        PlanFragment writeFragment = createFragment(WRITE_FRAGMENT_ID, write, SINGLE_DISTRIBUTION, SINGLE_DISTRIBUTION);
+
+        return new StreamingPlanSection(
+                new StreamingSubPlan(joinFragment, ImmutableList.of(new StreamingSubPlan(buildFragment, ImmutableList.of()))),
+                ImmutableList.of(new StreamingPlanSection(new StreamingSubPlan(writeFragment, ImmutableList.of()), ImmutableList.of())));
+    }
+
+    private static PlanFragment createFragment(PlanFragmentId id, PlanNode root, PartitioningHandle partitioning, PartitioningHandle outputPartitioning)
+    {
+        return new PlanFragment(
+                id,
+                root,
+                extractOutputVariables(root),
+                partitioning,
+                searchFrom(root).where(TableScanNode.class::isInstance).findAll().stream().map(PlanNode::getId).collect(toImmutableList()),
+                new PartitioningScheme(Partitioning.create(outputPartitioning, ImmutableList.of()), root.getOutputVariables()),
+                StageExecutionDescriptor.ungroupedExecution(),
+                false,
+                Optional.empty(),
+                Optional.empty());
+    }
+
+    private static TableHandle createTableHandle(SchemaTableName tableName)
+    {
+        return new TableHandle(new ConnectorId("test"), new TestingTableHandle(tableName), TestingTransactionHandle.create(), Optional.empty());
+    }
+
+    private static class MockMetadata
+            extends AbstractMockMetadata
+    {
+        private final Map<SchemaTableName, Estimate> tableSizes;
+
+        public MockMetadata(Map<SchemaTableName, Estimate> tableSizes)
+        {
+            this.tableSizes = ImmutableMap.copyOf(tableSizes);
+        }
+
+        @Override
+        public TableMetadata getTableMetadata(Session session, TableHandle tableHandle)
+        {
+            return new TableMetadata(tableHandle.getConnectorId(), new ConnectorTableMetadata(getTableName(tableHandle), ImmutableList.of()));
+        }
+
+        @Override
+        public TableStatistics getTableStatistics(Session session, TableHandle tableHandle, List<ColumnHandle> columnHandles, Constraint<ColumnHandle> constraint)
+        {
+            return TableStatistics.builder()
+                    .setTotalSize(tableSizes.getOrDefault(getTableName(tableHandle), Estimate.unknown()))
+                    .build();
+        }
+
+        private static SchemaTableName getTableName(TableHandle tableHandle)
+        {
+            return ((TestingTableHandle) tableHandle.getConnectorHandle()).getTableName();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution.scheduler;
+
+import com.facebook.presto.cost.PlanNodeStatsEstimate;
+import com.facebook.presto.cost.StatsAndCosts;
+import com.facebook.presto.cost.VariableStatsEstimate;
+import com.facebook.presto.operator.StageExecutionDescriptor;
+import com.facebook.presto.spi.plan.PlanNodeId;
+import com.facebook.presto.spi.relation.VariableReferenceExpression;
+import com.facebook.presto.sql.planner.Partitioning;
+import com.facebook.presto.sql.planner.PartitioningScheme;
+import com.facebook.presto.sql.planner.PlanFragment;
+import com.facebook.presto.sql.planner.plan.ExchangeNode;
+import com.facebook.presto.sql.planner.plan.PlanFragmentId;
+import com.facebook.presto.sql.planner.plan.RemoteSourceNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.units.DataSize;
+import org.testng.annotations.Test;
+
+import java.util.Optional;
+import java.util.OptionalInt;
+
+import static com.facebook.presto.common.type.BigintType.BIGINT;
+import static com.facebook.presto.execution.scheduler.PartitionCountEstimator.estimatePartitionCount;
+import static com.facebook.presto.execution.scheduler.PartitionCountEstimator.getPartitionCount;
+import static com.facebook.presto.sql.planner.SystemPartitioningHandle.FIXED_HASH_DISTRIBUTION;
+import static com.facebook.presto.sql.planner.SystemPartitioningHandle.SINGLE_DISTRIBUTION;
+import static com.facebook.presto.sql.planner.plan.ExchangeNode.Type.REPARTITION;
+import static com.facebook.presto.sql.planner.plan.ExchangeNode.Type.REPLICATE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static org.testng.Assert.assertEquals;
+
+public class TestPartitionCountEstimator
+{
+    private static final DataSize TARGET_PARTITION_INPUT_SIZE = new DataSize(100, MEGABYTE);
+    private static final VariableReferenceExpression VARIABLE = new VariableReferenceExpression(Optional.empty(), "column", BIGINT);
+    private static final PlanNodeId REMOTE_SOURCE_ID = new PlanNodeId("remote");
+
+    @Test
+    public void testGetPartitionCount()
+    {
+        assertEquals(getPartitionCount(0, 4, 100, TARGET_PARTITION_INPUT_SIZE), 4);
+        assertEquals(getPartitionCount(TARGET_PARTITION_INPUT_SIZE.toBytes() * 10.5, 4, 100, TARGET_PARTITION_INPUT_SIZE), 11);
+        assertEquals(getPartitionCount(TARGET_PARTITION_INPUT_SIZE.toBytes() * 1000, 4, 100, TARGET_PARTITION_INPUT_SIZE), 100);
+
+        // hash_partition_count is an upper bound, even below the minimum
+        assertEquals(getPartitionCount(0, 4, 2, TARGET_PARTITION_INPUT_SIZE), 2);
+    }
+
+    @Test
+    public void testEstimatePartitionCount()
+    {
+        // a bigint row takes 9 bytes with its null flag
+        PlanNodeStatsEstimate stats = PlanNodeStatsEstimate.builder()
+                .setOutputRowCount(100_000_000)
+                .addVariableStatistics(VARIABLE, VariableStatsEstimate.unknown())
+                .build();
+        assertEquals(estimatePartitionCount(createFragment(REPARTITION, Optional.of(stats)), 4, 100, TARGET_PARTITION_INPUT_SIZE), OptionalInt.of(9));
+
+        // every partition reads the whole replicated input
+        assertEquals(estimatePartitionCount(createFragment(REPLICATE, Optional.of(stats)), 4, 100, TARGET_PARTITION_INPUT_SIZE), OptionalInt.of(4));
+    }
+
+    @Test
+    public void testUnknownInputSize()
+    {
+        assertEquals(estimatePartitionCount(createFragment(REPARTITION, Optional.empty()), 4, 100, TARGET_PARTITION_INPUT_SIZE), OptionalInt.empty());
+        assertEquals(estimatePartitionCount(createFragment(REPARTITION, Optional.of(PlanNodeStatsEstimate.unknown())), 4, 100, TARGET_PARTITION_INPUT_SIZE), OptionalInt.empty());
+    }
+
+    private static PlanFragment createFragment(ExchangeNode.Type exchangeType, Optional<PlanNodeStatsEstimate> remoteSourceStats)
+    {
+        RemoteSourceNode remoteSource = new RemoteSourceNode(
+                Optional.empty(),
+                REMOTE_SOURCE_ID,
+                new PlanFragmentId(1),
+                ImmutableList.of(VARIABLE),
+                false,
+                Optional.empty(),
+                exchangeType);
+        StatsAndCosts statsAndCosts = new StatsAndCosts(
+                remoteSourceStats.map(stats -> ImmutableMap.of(REMOTE_SOURCE_ID, stats)).orElse(ImmutableMap.of()),
+                ImmutableMap.of());
+        return new PlanFragment(
+                new PlanFragmentId(0),
+                remoteSource,
+                ImmutableSet.of(VARIABLE),
+                FIXED_HASH_DISTRIBUTION,
+                ImmutableList.of(),
+                new PartitioningScheme(Partitioning.create(SINGLE_DISTRIBUTION, ImmutableList.of()), ImmutableList.of(VARIABLE)),
+                StageExecutionDescriptor.ungroupedExecution(),
+                false,
+                Optional.of(statsAndCosts),
+                Optional.empty());
+    }
+}
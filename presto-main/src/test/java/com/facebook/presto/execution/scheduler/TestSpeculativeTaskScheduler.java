@@ -0,0 +1,92 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution.scheduler;
+
+import com.facebook.presto.execution.TaskId;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.facebook.presto.execution.scheduler.SpeculativeTaskScheduler.MIN_STRAGGLER_MILLIS;
+import static com.facebook.presto.execution.scheduler.SpeculativeTaskScheduler.selectStragglers;
+import static org.testng.Assert.assertEquals;
+
+public class TestSpeculativeTaskScheduler
+{
+    private static final TaskId TASK_0 = TaskId.valueOf("query.0.0.0.0");
+    private static final TaskId TASK_1 = TaskId.valueOf("query.0.0.1.0");
+    private static final TaskId TASK_2 = TaskId.valueOf("query.0.0.2.0");
+    private static final List<Long> FINISHED_TASK_MILLIS = ImmutableList.of(9_000L, 10_000L, 12_000L, 10_000L, 11_000L, 8_000L, 10_000L, 9_000L, 10_000L, 13_000L);
+
+    @Test
+    public void testSelectStragglers()
+    {
+        // the median of the finished tasks is 10s, so tasks running longer than 30s are stragglers
+        assertEquals(
+                selectStragglers(
+                        ImmutableMap.of(TASK_0, 31_000L, TASK_1, 29_000L, TASK_2, 45_000L),
+                        FINISHED_TASK_MILLIS,
+                        20,
+                        0,
+                        3),
+                ImmutableList.of(TASK_2, TASK_0));
+
+        // at most a tenth of the tasks are speculated
+        assertEquals(
+                selectStragglers(
+                        ImmutableMap.of(TASK_0, 31_000L, TASK_1, 29_000L, TASK_2, 45_000L),
+                        FINISHED_TASK_MILLIS,
+                        13,
+                        0,
+                        3),
+                ImmutableList.of(TASK_2));
+        assertEquals(
+                selectStragglers(
+                        ImmutableMap.of(TASK_0, 31_000L, TASK_2, 45_000L),
+                        FINISHED_TASK_MILLIS,
+                        13,
+                        1,
+                        3),
+                ImmutableList.of());
+    }
+
+    @Test
+    public void testTooFewFinishedTasks()
+    {
+        assertEquals(
+                selectStragglers(ImmutableMap.of(TASK_0, 100_000L), Collections.nCopies(4, 1_000L), 10, 0, 3),
+                ImmutableList.of());
+        assertEquals(
+                selectStragglers(ImmutableMap.of(TASK_0, 100_000L), Collections.nCopies(5, 1_000L), 10, 0, 3),
+                ImmutableList.of(TASK_0));
+        assertEquals(
+                selectStragglers(ImmutableMap.of(TASK_0, 100_000L), ImmutableList.of(), 1, 0, 3),
+                ImmutableList.of());
+    }
+
+    @Test
+    public void testShortTasks()
+    {
+        // short tasks are not speculated, even far beyond the median time
+        assertEquals(
+                selectStragglers(ImmutableMap.of(TASK_0, MIN_STRAGGLER_MILLIS), ImmutableList.of(10L, 10L, 10L), 4, 0, 3),
+                ImmutableList.of());
+        assertEquals(
+                selectStragglers(ImmutableMap.of(TASK_0, MIN_STRAGGLER_MILLIS + 1), ImmutableList.of(10L, 10L, 10L), 4, 0, 3),
+                ImmutableList.of(TASK_0));
+    }
+}
@@ -13,6 +13,7 @@
  */
 package com.facebook.presto.memory;
 
+import com.google.common.collect.ImmutableMap;
 import io.airlift.units.DataSize;
 import org.testng.annotations.Test;
 
@@ -52,6 +53,23 @@ public class TestLocalMemoryManager
         assertEquals(localMemoryManager.getPools().size(), 2);
     }
 
+    @Test
+    public void testNumaNodeMemory()
+    {
+        NodeMemoryConfig config = new NodeMemoryConfig()
+                .setHeapHeadroom(new DataSize(10, GIGABYTE))
+                .setMaxQueryMemoryPerNode(new DataSize(20, GIGABYTE))
+                .setMaxQueryTotalMemoryPerNode(new DataSize(20, GIGABYTE));
+
+        assertTrue(new LocalMemoryManager(config, new DataSize(60, GIGABYTE).toBytes()).getInfo().getNumaNodeReservedBytes().isEmpty());
+
+        NumaNodeMemoryTracker tracker = new NumaNodeMemoryTracker(2);
+        LocalMemoryManager localMemoryManager = new LocalMemoryManager(config, new DataSize(60, GIGABYTE).toBytes(), tracker);
+        tracker.update(1, 100);
+        tracker.update(1, -40);
+        assertEquals(localMemoryManager.getInfo().getNumaNodeReservedBytes(), ImmutableMap.of(0, 0L, 1, 60L));
+    }
+
     @Test(expectedExceptions = IllegalArgumentException.class)
     public void testMaxQueryMemoryPerNodeBiggerQueryTotalMemoryPerNode()
     {
@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.common.block.Block;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static com.facebook.presto.block.BlockAssertions.createLongsBlock;
+import static com.facebook.presto.common.type.BigintType.BIGINT;
+import static com.facebook.presto.common.type.VarcharType.VARCHAR;
+import static com.facebook.presto.operator.TestPagesHash.createAddresses;
+import static com.facebook.presto.operator.TestPagesHash.createPagesHashStrategy;
+import static io.airlift.slice.SizeOf.sizeOf;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestBigintPagesHash
+{
+    @Test
+    public void testSupportedTypes()
+    {
+        assertTrue(BigintPagesHash.isSupportedType(BIGINT));
+        assertFalse(BigintPagesHash.isSupportedType(VARCHAR));
+    }
+
+    @Test
+    public void testDirectAddressing()
+    {
+        // keys 10..14 with a duplicate and a null are dense enough to be addressed directly
+        Block keys = createLongsBlock(10L, 12L, null, 14L, 12L, 11L);
+        PositionLinks.FactoryBuilder positionLinks = ArrayPositionLinks.builder(keys.getPositionCount());
+        BigintPagesHash pagesHash = createPagesHash(keys, positionLinks);
+
+        assertTrue(pagesHash.isDirectAddressed());
+        assertEquals(pagesHash.getPositionIsNullCount(), 1);
+        assertLookups(pagesHash, keys, positionLinks);
+    }
+
+    @Test
+    public void testDirectAddressingSize()
+    {
+        // 1000 keys spread over a range of 3997 values are addressed directly by a table of 3997 ints
+        Long[] values = new Long[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 4L;
+        }
+        Block keys = createLongsBlock(values);
+        BigintPagesHash pagesHash = createPagesHash(keys, ArrayPositionLinks.builder(keys.getPositionCount()));
+        assertTrue(pagesHash.isDirectAddressed());
+
+        PagesHashStrategy pagesHashStrategy = createPagesHashStrategy(ImmutableList.of(BIGINT), keys);
+        long sizeWithoutTable = createAddresses(keys.getPositionCount()).getRetainedSizeInBytes() + pagesHashStrategy.getSizeInBytes();
+        assertTrue(pagesHash.getInMemorySizeInBytes() >= sizeWithoutTable + sizeOf(new int[3997]));
+    }
+
+    @Test
+    public void testHashAddressing()
+    {
+        // sparse keys, including values whose difference overflows a long
+        Block keys = createLongsBlock(Long.MIN_VALUE, 1_000_000_000_000L, null, -7L, Long.MAX_VALUE, 1_000_000_000_000L, 0L);
+        PositionLinks.FactoryBuilder positionLinks = ArrayPositionLinks.builder(keys.getPositionCount());
+        BigintPagesHash pagesHash = createPagesHash(keys, positionLinks);
+
+        assertFalse(pagesHash.isDirectAddressed());
+        assertEquals(pagesHash.getPositionIsNullCount(), 1);
+        assertLookups(pagesHash, keys, positionLinks);
+    }
+
+    @Test
+    public void testBatchedLookup()
+    {
+        Block buildKeys = createLongsBlock(5L, 6L, 7L, 100_000L);
+        BigintPagesHash pagesHash = createPagesHash(buildKeys, ArrayPositionLinks.builder(buildKeys.getPositionCount()));
+
+        Block probeKeys = createLongsBlock(7L, 8L, null, Long.MIN_VALUE, 5L, 100_000L);
+        int[] positions = {0, 1, 3, 4, 5};
+        long[] addressIndexes = new long[probeKeys.getPositionCount()];
+        Arrays.fill(addressIndexes, -2);
+        pagesHash.getAddressIndexes(positions, positions.length, probeKeys, addressIndexes);
+
+        assertEquals(addressIndexes, new long[] {2, -1, -2, -1, 0, 3});
+    }
+
+    private static void assertLookups(BigintPagesHash pagesHash, Block keys, PositionLinks.FactoryBuilder positionLinksBuilder)
+    {
+        PositionLinks positionLinks = positionLinksBuilder.build().create(ImmutableList.of());
+        for (int position = 0; position < keys.getPositionCount(); position++) {
+            if (keys.isNull(position)) {
+                continue;
+            }
+            long key = BIGINT.getLong(keys, position);
+            int count = 0;
+            for (int addressIndex = positionLinks.start(pagesHash.getAddressIndex(key), 0, null); addressIndex >= 0; addressIndex = positionLinks.next(addressIndex, 0, null)) {
+                assertEquals(BIGINT.getLong(keys, addressIndex), key);
+                count++;
+            }
+            assertEquals(count, countKey(keys, key));
+        }
+        assertEquals(pagesHash.getAddressIndex(42L), -1);
+    }
+
+    private static int countKey(Block keys, long key)
+    {
+        int count = 0;
+        for (int position = 0; position < keys.getPositionCount(); position++) {
+            if (!keys.isNull(position) && BIGINT.getLong(keys, position) == key) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static BigintPagesHash createPagesHash(Block keys, PositionLinks.FactoryBuilder positionLinks)
+    {
+        return new BigintPagesHash(
+                createAddresses(keys.getPositionCount()),
+                keys.getPositionCount(),
+                createPagesHashStrategy(ImmutableList.of(BIGINT), keys),
+                ImmutableList.of(keys),
+                BIGINT,
+                positionLinks);
+    }
+}
@@ -32,8 +32,11 @@ import org.testng.annotations.Test;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
 import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
@@ -66,11 +69,13 @@ import static com.facebook.presto.testing.assertions.Assert.assertEquals;
 import static com.facebook.presto.type.ColorType.COLOR;
 import static com.google.common.base.Strings.repeat;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.Iterables.getOnlyElement;
 import static io.airlift.slice.Slices.utf8Slice;
 import static io.airlift.units.DataSize.Unit.KILOBYTE;
 import static java.lang.Float.floatToRawIntBits;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static org.testng.Assert.assertTrue;
 
 @Test(singleThreaded = true)
 public class TestDynamicFilterSourceOperator
@@ -141,6 +146,27 @@ public class TestDynamicFilterSourceOperator
                 useNewNanDefinition);
     }
 
+    private OperatorFactory createOperatorFactory(
+            int maxFilterPositionsCount,
+            DataSize maxFilterSize,
+            int minMaxCollectionLimit,
+            Iterable<DynamicFilterSourceOperator.Channel> buildChannels,
+            boolean useNewNanDefinition,
+            Consumer<Map<String, SplitBlockBloomFilter>> bloomFilterConsumer)
+    {
+        return new DynamicFilterSourceOperator.DynamicFilterSourceOperatorFactory(
+                0,
+                new PlanNodeId("PLAN_NODE_ID"),
+                this::consumePredicate,
+                ImmutableList.copyOf(buildChannels),
+                maxFilterPositionsCount,
+                maxFilterSize,
+                minMaxCollectionLimit,
+                useNewNanDefinition,
+                Optional.of(bloomFilterConsumer),
+                new DataSize(1, KILOBYTE));
+    }
+
     private void consumePredicate(TupleDomain<String> partitionPredicate)
     {
         partitions.add(partitionPredicate);
@@ -582,4 +608,46 @@ public class TestDynamicFilterSourceOperator
                         new Page(createLongSequenceBlock(0, maxPositionsCount + 1))),
                 ImmutableList.of(TupleDomain.all()));
     }
+
+    @Test
+    public void testCollectBloomFilterWhenTooManyPositions()
+    {
+        int maxPositionsCount = 100;
+        ImmutableList.Builder<Map<String, SplitBlockBloomFilter>> bloomFilters = ImmutableList.builder();
+        OperatorFactory operatorFactory = createOperatorFactory(maxPositionsCount, new DataSize(10, KILOBYTE), 0, ImmutableList.of(channel(0, BIGINT)), true, bloomFilters::add);
+        verifyPassthrough(createOperator(operatorFactory),
+                ImmutableList.of(BIGINT),
+                new Page(createLongSequenceBlock(0, maxPositionsCount + 1)),
+                new Page(createLongSequenceBlock(1000, 1000 + maxPositionsCount)));
+        operatorFactory.noMoreOperators();
+
+        assertEquals(partitions.build(), ImmutableList.of(TupleDomain.all()));
+        SplitBlockBloomFilter bloomFilter = getOnlyElement(bloomFilters.build()).get("0");
+        // values collected both before and after the exact predicate became too large are in the filter
+        assertMightContainAll(bloomFilter, createLongSequenceBlock(0, maxPositionsCount + 1));
+        assertMightContainAll(bloomFilter, createLongSequenceBlock(1000, 1000 + maxPositionsCount));
+    }
+
+    @Test
+    public void testCollectNoBloomFilterForSmallBuildSide()
+    {
+        ImmutableList.Builder<Map<String, SplitBlockBloomFilter>> bloomFilters = ImmutableList.builder();
+        OperatorFactory operatorFactory = createOperatorFactory(100, new DataSize(10, KILOBYTE), 0, ImmutableList.of(channel(0, BIGINT)), true, bloomFilters::add);
+        verifyPassthrough(createOperator(operatorFactory),
+                ImmutableList.of(BIGINT),
+                new Page(createLongsBlock(1, 2)));
+        operatorFactory.noMoreOperators();
+
+        assertEquals(partitions.build(), ImmutableList.of(
+                TupleDomain.withColumnDomains(ImmutableMap.of("0", Domain.multipleValues(BIGINT, ImmutableList.of(1L, 2L))))));
+        // the exact predicate is enough, but the operator still reports it has no Bloom filter
+        assertEquals(bloomFilters.build(), ImmutableList.of(ImmutableMap.of()));
+    }
+
+    private static void assertMightContainAll(SplitBlockBloomFilter bloomFilter, Block block)
+    {
+        for (int position = 0; position < block.getPositionCount(); position++) {
+            assertTrue(bloomFilter.mightContain(block, position));
+        }
+    }
 }
@@ -19,6 +19,7 @@ import com.facebook.airlift.http.client.testing.TestingHttpClient;
 import com.facebook.presto.block.BlockAssertions;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.execution.TaskId;
+import com.facebook.presto.memory.context.LocalMemoryContext;
 import com.facebook.presto.memory.context.SimpleLocalMemoryContext;
 import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.page.PagesSerde;
@@ -159,6 +160,38 @@ public class TestExchangeClient
         assertStatus(status.getPageBufferClientStatuses().get(0), location, "closed", 3, 3, 3, "not scheduled");
     }
 
+    @Test(timeOut = 10000)
+    public void testAdaptiveRequestConcurrency()
+    {
+        DataSize bufferCapacity = new DataSize(32, MEGABYTE);
+        DataSize maxResponseSize = new DataSize(10, MEGABYTE);
+        MockExchangeRequestProcessor processor = new MockExchangeRequestProcessor(maxResponseSize);
+
+        ExchangeClient exchangeClient = createExchangeClient(processor, bufferCapacity, maxResponseSize, true);
+        List<URI> locations = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            URI location = URI.create("http://localhost:" + (8080 + i));
+            locations.add(location);
+            processor.addPage(location, createPage(i));
+            processor.addPage(location, createPage(i));
+            processor.setComplete(location);
+            exchangeClient.addLocation(location, TaskId.valueOf("queryid.0.0." + i + ".0"));
+        }
+        exchangeClient.noMoreLocations();
+
+        int pageCount = 0;
+        while (getNextPage(exchangeClient) != null) {
+            pageCount++;
+        }
+        assertEquals(pageCount, 20);
+        assertTrue(exchangeClient.isClosed());
+
+        ExchangeClientStatus status = exchangeClient.getStatus();
+        assertEquals(status.getBufferedPages(), 0);
+        assertEquals(status.getBufferedBytes(), 0);
+        assertEquals(status.getPageBufferClientStatuses().size(), locations.size());
+    }
+
     @Test(timeOut = 10000)
     public void testAddLocation()
             throws Exception
@@ -290,6 +323,39 @@ public class TestExchangeClient
         assertStatus(exchangeClient.getStatus().getPageBufferClientStatuses().get(0), location, "closed", 3, 5, 5, "not scheduled");
     }
 
+    @Test(timeOut = 10000)
+    public void testSystemMemoryTracksBufferedPages()
+    {
+        DataSize bufferCapacity = new DataSize(1, BYTE);
+        DataSize maxResponseSize = new DataSize(1, BYTE);
+        MockExchangeRequestProcessor processor = new MockExchangeRequestProcessor(maxResponseSize);
+
+        URI location = URI.create("http://localhost:8080");
+        processor.addPage(location, createPage(1));
+        processor.addPage(location, createPage(2));
+        processor.addPage(location, createPage(3));
+        processor.setComplete(location);
+
+        LocalMemoryContext systemMemoryContext = newSimpleAggregatedMemoryContext().newLocalMemoryContext("test");
+        ExchangeClient exchangeClient = createExchangeClient(processor, bufferCapacity, maxResponseSize, false, systemMemoryContext);
+        exchangeClient.addLocation(location, TaskId.valueOf("taskid.0.0.0.0"));
+        exchangeClient.noMoreLocations();
+        exchangeClient.scheduleRequestIfNecessary();
+
+        for (int i = 1; i <= 3; i++) {
+            // a single page fills the buffer, so no other page is added until it is polled
+            while (exchangeClient.getStatus().getBufferedPages() == 0) {
+                sleepUninterruptibly(10, MILLISECONDS);
+            }
+            assertEquals(systemMemoryContext.getBytes(), exchangeClient.getStatus().getBufferedBytes());
+            assertPageEquals(exchangeClient.pollPage(), createPage(i));
+        }
+
+        assertNull(getNextPage(exchangeClient));
+        assertTrue(exchangeClient.isClosed());
+        assertEquals(systemMemoryContext.getBytes(), 0);
+    }
+
     @Test
     public void testClose()
             throws Exception
@@ -489,6 +555,60 @@ public class TestExchangeClient
         assertStatus(clientStatusOptional2.get(), "closed", "not scheduled");
     }
 
+    @Test(timeOut = 10000)
+    public void testSpeculativeAttempts()
+            throws Exception
+    {
+        DataSize bufferCapacity = new DataSize(32, MEGABYTE);
+        DataSize maxResponseSize = new DataSize(10, MEGABYTE);
+        MockExchangeRequestProcessor processor = new MockExchangeRequestProcessor(maxResponseSize);
+
+        URI location1 = URI.create("http://localhost:8081/foo.0.0.0.0");
+        URI speculativeLocation1 = URI.create("http://localhost:8082/foo.0.0.0.1");
+        URI location2 = URI.create("http://localhost:8083/foo.0.0.1.0");
+        URI speculativeLocation2 = URI.create("http://localhost:8084/foo.0.0.1.1");
+
+        ExchangeClient exchangeClient = createExchangeClient(processor, bufferCapacity, maxResponseSize);
+        exchangeClient.addLocation(location1, TaskId.valueOf("foo.0.0.0.0"));
+        exchangeClient.addLocation(location2, TaskId.valueOf("foo.0.0.1.0"));
+
+        // the speculative attempt of the first task delivers its pages first
+        exchangeClient.addLocation(speculativeLocation1, TaskId.valueOf("foo.0.0.0.1"));
+        processor.addPage(speculativeLocation1, createPage(1));
+        processor.addPage(speculativeLocation1, createPage(2));
+        processor.setComplete(speculativeLocation1);
+        assertPageEquals(getNextPage(exchangeClient), createPage(1));
+        assertPageEquals(getNextPage(exchangeClient), createPage(2));
+
+        // the second task delivers its pages before its speculative attempt is added
+        processor.addPage(location2, createPage(3));
+        assertPageEquals(getNextPage(exchangeClient), createPage(3));
+        exchangeClient.addLocation(speculativeLocation2, TaskId.valueOf("foo.0.0.1.1"));
+
+        // the pages of the other attempts are not used
+        processor.addPage(location1, createPage(1));
+        processor.addPage(location1, createPage(2));
+        processor.setComplete(location1);
+        processor.addPage(speculativeLocation2, createPage(3));
+        processor.addPage(speculativeLocation2, createPage(4));
+        processor.setComplete(speculativeLocation2);
+        processor.addPage(location2, createPage(4));
+        processor.setComplete(location2);
+        assertPageEquals(getNextPage(exchangeClient), createPage(4));
+
+        exchangeClient.noMoreLocations();
+        while (!exchangeClient.isClosed()) {
+            Thread.sleep(1);
+        }
+        assertNull(exchangeClient.pollPage());
+
+        ImmutableMap<URI, PageBufferClientStatus> statuses = uniqueIndex(exchangeClient.getStatus().getPageBufferClientStatuses(), PageBufferClientStatus::getUri);
+        assertEquals(statuses.get(location1).getPagesReceived(), 0);
+        assertEquals(statuses.get(speculativeLocation1).getPagesReceived(), 2);
+        assertEquals(statuses.get(location2).getPagesReceived(), 2);
+        assertEquals(statuses.get(speculativeLocation2).getPagesReceived(), 0);
+    }
+
     private static Page createPage(int size)
     {
         return new Page(BlockAssertions.createLongSequenceBlock(0, size));
@@ -551,18 +671,34 @@ public class TestExchangeClient
     }
 
     private ExchangeClient createExchangeClient(MockExchangeRequestProcessor processor, DataSize bufferCapacity, DataSize maxResponseSize)
+    {
+        return createExchangeClient(processor, bufferCapacity, maxResponseSize, false);
+    }
+
+    private ExchangeClient createExchangeClient(MockExchangeRequestProcessor processor, DataSize bufferCapacity, DataSize maxResponseSize, boolean adaptiveRequestConcurrencyEnabled)
+    {
+        return createExchangeClient(processor, bufferCapacity, maxResponseSize, adaptiveRequestConcurrencyEnabled, new SimpleLocalMemoryContext(newSimpleAggregatedMemoryContext(), "test"));
+    }
+
+    private ExchangeClient createExchangeClient(
+            MockExchangeRequestProcessor processor,
+            DataSize bufferCapacity,
+            DataSize maxResponseSize,
+            boolean adaptiveRequestConcurrencyEnabled,
+            LocalMemoryContext systemMemoryContext)
     {
         return new ExchangeClient(
                 bufferCapacity,
                 maxResponseSize,
                 1,
+                adaptiveRequestConcurrencyEnabled,
                 new Duration(1, MINUTES),
                 true,
                 0.2,
                 new TestingHttpClient(processor, testingHttpClientExecutor),
                 new TestingDriftClient<>(),
                 scheduler,
-                new SimpleLocalMemoryContext(newSimpleAggregatedMemoryContext(), "test"),
+                systemMemoryContext,
                 pageBufferClientCallbackExecutor);
     }
 }
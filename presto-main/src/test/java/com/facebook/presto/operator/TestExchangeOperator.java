@@ -90,6 +90,7 @@ public class TestExchangeOperator
                 new DataSize(32, MEGABYTE),
                 new DataSize(10, MEGABYTE),
                 3,
+                false,
                 new Duration(1, TimeUnit.MINUTES),
                 true,
                 0.2,
@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import org.testng.annotations.Test;
+
+import static com.facebook.presto.operator.ExchangeRequestConcurrencyController.MAX_MULTIPLIER;
+import static com.facebook.presto.operator.ExchangeRequestConcurrencyController.MIN_MULTIPLIER;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestExchangeRequestConcurrencyController
+{
+    private static final long BUFFER_CAPACITY = 1000;
+
+    @Test
+    public void testIncreaseWhileBufferIsLow()
+    {
+        ExchangeRequestConcurrencyController controller = new ExchangeRequestConcurrencyController(3);
+        controller.responseReceived(100, 0, BUFFER_CAPACITY);
+        assertTrue(controller.getMultiplier() > 3);
+
+        // no change while the buffer is neither low nor high
+        double multiplier = controller.getMultiplier();
+        controller.responseReceived(100, 500, BUFFER_CAPACITY);
+        assertEquals(controller.getMultiplier(), multiplier);
+
+        for (int i = 0; i < 1000; i++) {
+            controller.responseReceived(100, 0, BUFFER_CAPACITY);
+        }
+        assertEquals(controller.getMultiplier(), MAX_MULTIPLIER);
+    }
+
+    @Test
+    public void testDecreaseWhenBufferIsFull()
+    {
+        ExchangeRequestConcurrencyController controller = new ExchangeRequestConcurrencyController(8);
+        controller.responseReceived(100, 900, BUFFER_CAPACITY);
+        assertTrue(controller.getMultiplier() < 8);
+
+        for (int i = 0; i < 100; i++) {
+            controller.responseReceived(100, 900, BUFFER_CAPACITY);
+        }
+        assertEquals(controller.getMultiplier(), MIN_MULTIPLIER);
+    }
+
+    @Test
+    public void testDecreaseWhenLatencyRises()
+    {
+        ExchangeRequestConcurrencyController controller = new ExchangeRequestConcurrencyController(8);
+        for (int i = 0; i < 10; i++) {
+            controller.responseReceived(100, 0, BUFFER_CAPACITY);
+        }
+        double multiplier = controller.getMultiplier();
+
+        // the buffer is still low, but the upstream tasks take much longer to respond
+        for (int i = 0; i < 10; i++) {
+            controller.responseReceived(10_000, 0, BUFFER_CAPACITY);
+        }
+        assertTrue(controller.getMultiplier() < multiplier);
+    }
+}
@@ -42,6 +42,8 @@ public class TestFileFragmentResultCacheConfig
                 .setMaxInFlightSize(new DataSize(1, GIGABYTE))
                 .setMaxSinglePagesSize(new DataSize(500, MEGABYTE))
                 .setMaxCacheSize(new DataSize(100, GIGABYTE))
+                .setMaxMemoryCacheSize(new DataSize(0, MEGABYTE))
+                .setMaxMemoryCacheEntrySize(new DataSize(1, MEGABYTE))
                 .setInputDataStatsEnabled(false));
     }
 
@@ -58,6 +60,8 @@ public class TestFileFragmentResultCacheConfig
                 .put("fragment-result-cache.max-in-flight-size", "2GB")
                 .put("fragment-result-cache.max-single-pages-size", "200MB")
                 .put("fragment-result-cache.max-cache-size", "200GB")
+                .put("fragment-result-cache.max-memory-cache-size", "1GB")
+                .put("fragment-result-cache.max-memory-cache-entry-size", "4MB")
                 .put("fragment-result-cache.input-data-stats-enabled", "true")
                 .build();
 
@@ -70,6 +74,8 @@ public class TestFileFragmentResultCacheConfig
                 .setMaxInFlightSize(new DataSize(2, GIGABYTE))
                 .setMaxSinglePagesSize(new DataSize(200, MEGABYTE))
                 .setMaxCacheSize(new DataSize(200, GIGABYTE))
+                .setMaxMemoryCacheSize(new DataSize(1, GIGABYTE))
+                .setMaxMemoryCacheEntrySize(new DataSize(4, MEGABYTE))
                 .setInputDataStatsEnabled(true);
 
         assertFullMapping(properties, expected);
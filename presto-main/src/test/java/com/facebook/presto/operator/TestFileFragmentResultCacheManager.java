@@ -16,6 +16,7 @@ package com.facebook.presto.operator;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.common.block.TestingBlockEncodingSerde;
 import com.facebook.presto.metadata.Split;
+import com.facebook.presto.operator.FileFragmentResultCacheManager.CacheKey;
 import com.facebook.presto.spi.ConnectorId;
 import com.facebook.presto.spi.ConnectorSplit;
 import com.facebook.presto.spi.HostAddress;
@@ -23,6 +24,7 @@ import com.facebook.presto.spi.NodeProvider;
 import com.facebook.presto.spi.connector.ConnectorTransactionHandle;
 import com.facebook.presto.spi.schedule.NodeSelectionStrategy;
 import com.google.common.collect.ImmutableList;
+import io.airlift.slice.Slices;
 import io.airlift.units.DataSize;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.Test;
@@ -41,6 +43,7 @@ import java.util.concurrent.TimeUnit;
 
 import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
 import static com.facebook.presto.block.BlockAssertions.createStringsBlock;
+import static com.facebook.presto.operator.FragmentResultMemoryCache.getRetainedSizeInBytes;
 import static com.facebook.presto.spi.schedule.NodeSelectionStrategy.NO_PREFERENCE;
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Preconditions.checkState;
@@ -215,6 +218,79 @@ public class TestFileFragmentResultCacheManager
         cleanupCacheDirectory(cacheDirectory);
     }
 
+    @Test(timeOut = 30_000)
+    public void testMemoryTier()
+            throws Exception
+    {
+        List<Page> pages = ImmutableList.of(new Page(createStringsBlock("plan-1-split-1")));
+
+        URI cacheDirectory = getNewCacheDirectory("testMemoryTier");
+        FragmentCacheStats stats = new FragmentCacheStats();
+        FileFragmentResultCacheConfig config = new FileFragmentResultCacheConfig();
+        config.setMaxMemoryCacheSize(new DataSize(1, DataSize.Unit.MEGABYTE));
+        FileFragmentResultCacheManager cacheManager = fileFragmentResultCacheManager(stats, config, cacheDirectory);
+
+        cacheManager.put(SERIALIZED_PLAN_FRAGMENT_1, SPLIT_1, pages, INPUT_DATA_SIZE_1).get();
+        assertEquals(stats.getCacheEntries(), 1);
+        assertEquals(stats.getMemoryCacheEntries(), 1);
+        assertEquals(stats.getMemoryCacheSizeInBytes(), getRetainedSizeInBytes(getCachePhysicalSize(cacheDirectory)));
+
+        // the result is read from memory, even when its file is gone
+        cleanupCacheDirectory(cacheDirectory);
+        FragmentCacheResult fragmentCacheResult = cacheManager.get(SERIALIZED_PLAN_FRAGMENT_1, SPLIT_1);
+        Optional<Iterator<Page>> result = fragmentCacheResult.getPages();
+        assertTrue(result.isPresent());
+        assertPagesEqual(result.get(), pages.iterator());
+        assertEquals(fragmentCacheResult.getInputDataSize(), INPUT_DATA_SIZE_1);
+        assertEquals(stats.getCacheHit(), 1);
+        assertEquals(stats.getMemoryCacheHit(), 1);
+        assertEquals(stats.getFileCacheHit(), 0);
+
+        // the memory tier is only consulted for results of the file tier
+        assertFalse(cacheManager.get(SERIALIZED_PLAN_FRAGMENT_2, SPLIT_1).getPages().isPresent());
+        assertEquals(stats.getCacheMiss(), 1);
+        assertEquals(stats.getFileCacheMiss(), 1);
+        assertEquals(stats.getMemoryCacheMiss(), 0);
+
+        cacheManager.invalidateAllCache();
+        assertEquals(stats.getCacheEntries(), 0);
+        assertEquals(stats.getMemoryCacheEntries(), 0);
+        assertEquals(stats.getMemoryCacheSizeInBytes(), 0);
+    }
+
+    @Test
+    public void testMemoryTierAdmission()
+    {
+        FragmentCacheStats stats = new FragmentCacheStats();
+        // the cache is charged for the objects holding an entry, not only for its serialized pages
+        FragmentResultMemoryCache memoryCache = new FragmentResultMemoryCache(getRetainedSizeInBytes(100), getRetainedSizeInBytes(100), stats);
+        CacheKey key1 = new CacheKey(SERIALIZED_PLAN_FRAGMENT_1, SPLIT_1.getSplitIdentifier());
+        CacheKey key2 = new CacheKey(SERIALIZED_PLAN_FRAGMENT_1, SPLIT_2.getSplitIdentifier());
+
+        // the cache has room for the first result
+        assertFalse(memoryCache.get(key1).isPresent());
+        assertTrue(memoryCache.put(key1, Slices.allocate(60), 0));
+        assertTrue(memoryCache.get(key1).isPresent());
+
+        // the second result would evict a result that is accessed more often
+        assertFalse(memoryCache.get(key2).isPresent());
+        assertFalse(memoryCache.put(key2, Slices.allocate(60), 0));
+        assertEquals(stats.getMemoryCacheAdmissionRejected(), 1);
+
+        // once it is accessed more often, it replaces the first result
+        for (int i = 0; i < 3; i++) {
+            assertFalse(memoryCache.get(key2).isPresent());
+        }
+        assertTrue(memoryCache.put(key2, Slices.allocate(60), 0));
+        assertTrue(memoryCache.get(key2).isPresent());
+        assertFalse(memoryCache.get(key1).isPresent());
+        assertEquals(stats.getMemoryCacheEntries(), 1);
+        assertEquals(stats.getMemoryCacheSizeInBytes(), getRetainedSizeInBytes(60));
+
+        // a result larger than the cache is never admitted
+        assertFalse(memoryCache.put(key1, Slices.allocate(101), 0));
+    }
+
     private static void assertPagesEqual(Iterator<Page> pages1, Iterator<Page> pages2)
     {
         while (pages1.hasNext() && pages2.hasNext()) {
@@ -37,16 +37,20 @@ import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
+import static com.facebook.presto.SystemSessionProperties.FLAT_GROUP_BY_HASH_ENABLED;
 import static com.facebook.presto.block.BlockAssertions.createLongSequenceBlock;
 import static com.facebook.presto.block.BlockAssertions.createLongsBlock;
 import static com.facebook.presto.block.BlockAssertions.createStringSequenceBlock;
+import static com.facebook.presto.block.BlockAssertions.createStringsBlock;
 import static com.facebook.presto.common.block.DictionaryId.randomDictionaryId;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
 import static com.facebook.presto.common.type.DoubleType.DOUBLE;
 import static com.facebook.presto.common.type.VarcharType.VARCHAR;
+import static com.facebook.presto.common.type.VarcharType.createVarcharType;
 import static com.facebook.presto.operator.GroupByHash.createGroupByHash;
 import static com.facebook.presto.type.TypeUtils.getHashBlock;
 import static com.google.common.math.DoubleMath.log2;
+import static java.lang.Math.toIntExact;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
@@ -232,6 +236,124 @@ public class TestGroupByHash
         assertTrue(groupByHash.contains(0, new Page(testValuesBlock, testStringValuesBlock, testHashBlock), hashChannels));
     }
 
+    @Test
+    public void testFlatGroupByHash()
+    {
+        List<Type> types = ImmutableList.of(BIGINT, createVarcharType(16));
+        Block longsBlock = createLongsBlock(1L, 2L, null, 1L, 2L, null, 1L);
+        // the last two values exceed the inline width of the flat rows
+        Block stringsBlock = createStringsBlock("a", "b", "a", "a", null, "\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9", "\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9");
+        Block hashBlock = getHashBlock(types, longsBlock, stringsBlock);
+        Page page = new Page(longsBlock, stringsBlock, hashBlock);
+
+        GroupByHash groupByHash = createGroupByHash(TEST_SESSION, types, new int[] {0, 1}, Optional.of(2), 1, JOIN_COMPILER);
+        assertTrue(groupByHash instanceof FlatGroupByHash);
+
+        Work<GroupByIdBlock> work = groupByHash.getGroupIds(page);
+        assertTrue(work.process());
+        GroupByIdBlock groupIds = work.getResult();
+        assertEquals(groupByHash.getGroupCount(), 6);
+        long[] expectedGroupIds = {0, 1, 2, 0, 3, 4, 5};
+        for (int position = 0; position < groupIds.getPositionCount(); position++) {
+            assertEquals(groupIds.getGroupId(position), expectedGroupIds[position]);
+            assertTrue(groupByHash.contains(position, page, new int[] {0, 1}));
+            assertEquals(groupByHash.getRawHash(toIntExact(groupIds.getGroupId(position))), BIGINT.getLong(hashBlock, position));
+        }
+
+        PageBuilder pageBuilder = new PageBuilder(groupByHash.getTypes());
+        for (int groupId = 0; groupId < groupByHash.getGroupCount(); groupId++) {
+            pageBuilder.declarePosition();
+            groupByHash.appendValuesTo(groupId, pageBuilder, 0);
+        }
+        Page outputPage = pageBuilder.build();
+        int[] firstPositions = {0, 1, 2, 4, 5, 6};
+        Page expectedPage = new Page(longsBlock, stringsBlock, hashBlock).getPositions(firstPositions, 0, firstPositions.length);
+        for (int channel = 0; channel < groupByHash.getTypes().size(); channel++) {
+            BlockAssertions.assertBlockEquals(groupByHash.getTypes().get(channel), outputPage.getBlock(channel), expectedPage.getBlock(channel));
+        }
+
+        Block missingLongsBlock = createLongsBlock(2L);
+        Block missingStringsBlock = createStringsBlock("a");
+        assertFalse(groupByHash.contains(0, new Page(missingLongsBlock, missingStringsBlock), new int[] {0, 1}));
+    }
+
+    @Test
+    public void testFlatGroupByHashDictionary()
+    {
+        List<Type> types = ImmutableList.of(BIGINT, createVarcharType(16));
+        Block longsDictionary = createLongsBlock(1L, 2L, null, 1L);
+        Block stringsDictionary = createStringsBlock("a", "b", "a", "b");
+        Block hashDictionary = getHashBlock(types, longsDictionary, stringsDictionary);
+        int[] ids = {3, 0, 1, 0, 2, 3, 2, 1};
+        long[] expectedGroupIds = {0, 1, 2, 1, 3, 0, 3, 2};
+
+        // the key and hash channels share the dictionary source, so the dictionary rows are grouped
+        DictionaryId dictionaryId = randomDictionaryId();
+        Page page = new Page(
+                new DictionaryBlock(ids.length, longsDictionary, ids, dictionaryId),
+                new DictionaryBlock(ids.length, stringsDictionary, ids, dictionaryId),
+                new DictionaryBlock(ids.length, hashDictionary, ids, dictionaryId));
+        GroupByHash groupByHash = createGroupByHash(types, new int[] {0, 1}, Optional.of(2), 1, true, JOIN_COMPILER, UpdateMemory.NOOP);
+        assertTrue(groupByHash instanceof FlatGroupByHash);
+        assertGroupIds(groupByHash, page, expectedGroupIds);
+
+        // a second page over the same dictionaries reuses the groups
+        assertGroupIds(groupByHash, page, expectedGroupIds);
+        assertEquals(groupByHash.getGroupCount(), 4);
+
+        // the dictionaries of different sources do not line up, so the rows are grouped one by one
+        page = new Page(
+                new DictionaryBlock(ids.length, longsDictionary, ids, randomDictionaryId()),
+                new DictionaryBlock(ids.length, stringsDictionary, ids, randomDictionaryId()),
+                new DictionaryBlock(ids.length, hashDictionary, ids, randomDictionaryId()));
+        groupByHash = createGroupByHash(types, new int[] {0, 1}, Optional.of(2), 1, true, JOIN_COMPILER, UpdateMemory.NOOP);
+        assertTrue(groupByHash.addPage(page).process());
+        assertGroupIds(groupByHash, page, expectedGroupIds);
+        assertEquals(groupByHash.getGroupCount(), 4);
+    }
+
+    private static void assertGroupIds(GroupByHash groupByHash, Page page, long[] expectedGroupIds)
+    {
+        Work<GroupByIdBlock> work = groupByHash.getGroupIds(page);
+        assertTrue(work.process());
+        GroupByIdBlock groupIds = work.getResult();
+        assertEquals(groupIds.getPositionCount(), expectedGroupIds.length);
+        for (int position = 0; position < groupIds.getPositionCount(); position++) {
+            assertEquals(groupIds.getGroupId(position), expectedGroupIds[position]);
+        }
+    }
+
+    @Test
+    public void testFlatGroupByHashRehash()
+    {
+        List<Type> types = ImmutableList.of(BIGINT, BIGINT);
+        Block valuesBlock = createLongSequenceBlock(0, 10_000);
+        GroupByHash groupByHash = createGroupByHash(TEST_SESSION, types, new int[] {0, 1}, Optional.empty(), 4, JOIN_COMPILER);
+        assertTrue(groupByHash instanceof FlatGroupByHash);
+
+        Page page = new Page(valuesBlock, valuesBlock);
+        assertTrue(groupByHash.addPage(page).process());
+        assertEquals(groupByHash.getGroupCount(), 10_000);
+        for (int position = 0; position < valuesBlock.getPositionCount(); position++) {
+            assertTrue(groupByHash.contains(position, page, new int[] {0, 1}));
+        }
+
+        List<Page> bufferedPages = groupByHash.getBufferedPages();
+        assertEquals(bufferedPages.stream().mapToInt(Page::getPositionCount).sum(), 10_000);
+        assertEquals(bufferedPages.get(0).getChannelCount(), 2);
+    }
+
+    @Test
+    public void testFlatGroupByHashDisabled()
+    {
+        List<Type> types = ImmutableList.of(BIGINT, BIGINT);
+        Session session = TestingSession.testSessionBuilder()
+                .setSystemProperty(FLAT_GROUP_BY_HASH_ENABLED, "false")
+                .build();
+        GroupByHash groupByHash = createGroupByHash(session, types, new int[] {0, 1}, Optional.empty(), 4, JOIN_COMPILER);
+        assertTrue(groupByHash instanceof MultiChannelGroupByHash);
+    }
+
     @Test
     public void testForceRehash()
     {
@@ -62,6 +62,7 @@ import static com.facebook.airlift.testing.Assertions.assertGreaterThan;
 import static com.facebook.presto.RowPagesBuilder.rowPagesBuilder;
 import static com.facebook.presto.SessionTestUtils.TEST_SESSION;
 import static com.facebook.presto.block.BlockAssertions.createLongRepeatBlock;
+import static com.facebook.presto.block.BlockAssertions.createLongSequenceBlock;
 import static com.facebook.presto.block.BlockAssertions.createLongsBlock;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
 import static com.facebook.presto.common.type.BooleanType.BOOLEAN;
@@ -76,6 +77,7 @@ import static com.facebook.presto.operator.OperatorAssertion.dropChannel;
 import static com.facebook.presto.operator.OperatorAssertion.toMaterializedResult;
 import static com.facebook.presto.operator.OperatorAssertion.toPages;
 import static com.facebook.presto.operator.aggregation.GenericAccumulatorFactory.generateAccumulatorFactory;
+import static com.facebook.presto.operator.aggregation.partial.PartialAggregationController.MIN_SAMPLED_ROWS_TO_ENABLE_AGGREGATION;
 import static com.facebook.presto.sql.analyzer.TypeSignatureProvider.fromTypes;
 import static com.facebook.presto.testing.MaterializedResult.resultBuilder;
 import static com.facebook.presto.testing.TestingTaskContext.createTaskContext;
@@ -902,6 +904,72 @@ public class TestHashAggregationOperator
         assertFalse(partialAggregationController.isPartialAggregationDisabled());
     }
 
+    @Test
+    public void testAdaptivePartialAggregationContinuousTracking()
+    {
+        List<Integer> hashChannels = Ints.asList(0);
+        // the periodic re-enabling only happens after 1.5 * 200 KB of input, which these tests never reach
+        DataSize maxPartialMemory = succinctDataSize(1, KILOBYTE);
+        int rows = MIN_SAMPLED_ROWS_TO_ENABLE_AGGREGATION;
+        List<Page> input = rowPagesBuilder(false, hashChannels, BIGINT)
+                .addBlocksPage(createLongSequenceBlock(0, rows))
+                .addBlocksPage(createLongSequenceBlock(rows, 2 * rows))
+                .addBlocksPage(createLongRepeatBlock(1, rows))
+                .build();
+
+        // the first page disables partial aggregation, the second one is distinct and keeps it disabled
+        PartialAggregationController partialAggregationController = new PartialAggregationController(maxPartialMemory, 0.8, true);
+        toPages(createAdaptivePartialAggregationOperatorFactory(hashChannels, maxPartialMemory, partialAggregationController), createDriverContext(), input.subList(0, 2));
+        assertTrue(partialAggregationController.isPartialAggregationDisabled());
+
+        // the clustered rows of the third page re-enable it right away
+        toPages(createAdaptivePartialAggregationOperatorFactory(hashChannels, maxPartialMemory, partialAggregationController), createDriverContext(), input.subList(2, 3));
+        assertFalse(partialAggregationController.isPartialAggregationDisabled());
+
+        // the rows sampled from smaller pages are reported together
+        partialAggregationController = new PartialAggregationController(maxPartialMemory, 0.8, true);
+        toPages(createAdaptivePartialAggregationOperatorFactory(hashChannels, maxPartialMemory, partialAggregationController), createDriverContext(), input.subList(0, 2));
+        assertTrue(partialAggregationController.isPartialAggregationDisabled());
+        List<Page> smallPages = rowPagesBuilder(false, hashChannels, BIGINT)
+                .addBlocksPage(createLongRepeatBlock(1, rows / 4))
+                .addBlocksPage(createLongRepeatBlock(2, rows / 4))
+                .addBlocksPage(createLongRepeatBlock(3, rows / 4))
+                .addBlocksPage(createLongRepeatBlock(4, rows / 4))
+                .build();
+        toPages(createAdaptivePartialAggregationOperatorFactory(hashChannels, maxPartialMemory, partialAggregationController), createDriverContext(), smallPages);
+        assertFalse(partialAggregationController.isPartialAggregationDisabled());
+
+        // without continuous tracking, partial aggregation stays disabled
+        partialAggregationController = new PartialAggregationController(maxPartialMemory, 0.8);
+        toPages(createAdaptivePartialAggregationOperatorFactory(hashChannels, maxPartialMemory, partialAggregationController), createDriverContext(), input);
+        assertTrue(partialAggregationController.isPartialAggregationDisabled());
+    }
+
+    private HashAggregationOperatorFactory createAdaptivePartialAggregationOperatorFactory(List<Integer> hashChannels, DataSize maxPartialMemory, PartialAggregationController partialAggregationController)
+    {
+        return new HashAggregationOperatorFactory(
+                0,
+                new PlanNodeId("test"),
+                ImmutableList.of(BIGINT),
+                hashChannels,
+                ImmutableList.of(),
+                ImmutableList.of(),
+                Step.PARTIAL,
+                false,
+                ImmutableList.of(generateAccumulatorFactory(LONG_SUM, ImmutableList.of(0), Optional.empty())),
+                Optional.empty(),
+                Optional.empty(),
+                100,
+                Optional.of(maxPartialMemory),
+                false,
+                Optional.of(partialAggregationController),
+                new DataSize(0, MEGABYTE),
+                new DataSize(0, MEGABYTE),
+                new FailingSpillerFactory(),
+                joinCompiler,
+                false);
+    }
+
     @Test
     public void testAdaptivePartialAggregationIsTriggeredOnlyOnFlush()
     {
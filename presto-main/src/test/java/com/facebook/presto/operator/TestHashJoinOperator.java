@@ -67,6 +67,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.IntStream;
 
@@ -95,6 +96,7 @@ import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
 import static com.google.common.util.concurrent.Futures.immediateFuture;
 import static io.airlift.units.DataSize.Unit.BYTE;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.lang.Math.toIntExact;
 import static java.lang.String.format;
 import static java.util.Arrays.asList;
 import static java.util.Collections.nCopies;
@@ -273,6 +275,55 @@ public class TestHashJoinOperator
 
         // make sure we have all 4 entries
         assertEquals(output.getPositionCount(), entries);
+        // the build rows kept pending across the yields are copied next to their probe rows
+        for (int position = 0; position < entries; position++) {
+            assertEquals(BIGINT.getLong(output.getBlock(1), position), BIGINT.getLong(output.getBlock(0), position));
+        }
+    }
+
+    @Test
+    public void testInnerJoinWithFullOutputPages()
+    {
+        TaskContext taskContext = createTaskContext();
+
+        // every build row has the same key
+        int buildEntries = 500;
+        RowPagesBuilder buildPages = rowPagesBuilder(false, Ints.asList(0), ImmutableList.of(BIGINT, BIGINT));
+        for (int i = 0; i < buildEntries; i++) {
+            buildPages.row(1L, (long) i);
+        }
+        BuildSideSetup buildSideSetup = setupBuildSide(false, taskContext, Ints.asList(0), buildPages, Optional.empty(), false, SINGLE_STREAM_SPILLER_FACTORY);
+        JoinBridgeManager<PartitionedLookupSourceFactory> lookupSourceFactory = buildSideSetup.getLookupSourceFactoryManager();
+
+        // every probe row matches all the build rows, so the output fills several pages
+        int probeEntries = 200;
+        RowPagesBuilder probePages = rowPagesBuilder(false, Ints.asList(0), ImmutableList.of(BIGINT));
+        for (int i = 0; i < probeEntries; i++) {
+            probePages.row(1L);
+        }
+        List<Page> probeInput = probePages.build();
+        OperatorFactory joinOperatorFactory = innerJoinOperatorFactory(lookupSourceFactory, probePages, PARTITIONING_SPILLER_FACTORY);
+
+        instantiateBuildDrivers(buildSideSetup, taskContext);
+        buildLookupSource(buildSideSetup);
+
+        List<Page> output = OperatorAssertion.toPages(joinOperatorFactory, taskContext.addPipelineContext(0, true, true, false).addDriverContext(), probeInput);
+        assertTrue(output.size() > 1, "Expected the output to span several pages");
+
+        long[] buildValueCounts = new long[buildEntries];
+        int outputPositions = 0;
+        for (Page page : output) {
+            for (int position = 0; position < page.getPositionCount(); position++) {
+                assertEquals(BIGINT.getLong(page.getBlock(0), position), 1L);
+                assertEquals(BIGINT.getLong(page.getBlock(1), position), 1L);
+                buildValueCounts[toIntExact(BIGINT.getLong(page.getBlock(2), position))]++;
+            }
+            outputPositions += page.getPositionCount();
+        }
+        assertEquals(outputPositions, buildEntries * probeEntries);
+        for (long count : buildValueCounts) {
+            assertEquals(count, probeEntries);
+        }
     }
 
     private enum WhenSpill
@@ -1774,12 +1825,18 @@ public class TestHashJoinOperator
         }
     }
 
-    private static class DummySpillerFactory
+    static class DummySpillerFactory
             implements SingleStreamSpillerFactory
     {
+        private final AtomicLong spilledPages = new AtomicLong();
         private volatile boolean failSpill;
         private volatile boolean failUnspill;
 
+        long getSpilledPages()
+        {
+            return spilledPages.get();
+        }
+
         void failSpill()
         {
             failSpill = true;
@@ -1805,7 +1862,9 @@ public class TestHashJoinOperator
                     if (failSpill) {
                         return immediateFailedFuture(new PrestoException(GENERIC_INTERNAL_ERROR, "Spill failed"));
                     }
+                    int count = spills.size();
                     Iterators.addAll(spills, pageIterator);
+                    spilledPages.addAndGet(spills.size() - count);
                     return immediateFuture(null);
                 }
 
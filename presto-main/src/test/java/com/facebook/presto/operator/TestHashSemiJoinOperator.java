@@ -17,9 +17,13 @@ import com.facebook.presto.ExceededMemoryLimitException;
 import com.facebook.presto.RowPagesBuilder;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.common.type.Type;
+import com.facebook.presto.memory.context.AggregatedMemoryContext;
 import com.facebook.presto.operator.HashSemiJoinOperator.HashSemiJoinOperatorFactory;
 import com.facebook.presto.operator.SetBuilderOperator.SetBuilderOperatorFactory;
 import com.facebook.presto.spi.plan.PlanNodeId;
+import com.facebook.presto.spiller.GenericPartitioningSpillerFactory;
+import com.facebook.presto.spiller.PartitioningSpiller;
+import com.facebook.presto.spiller.PartitioningSpillerFactory;
 import com.facebook.presto.sql.gen.JoinCompiler;
 import com.facebook.presto.testing.MaterializedResult;
 import com.google.common.collect.ImmutableList;
@@ -35,6 +39,7 @@ import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
+import static com.facebook.airlift.concurrent.MoreFutures.getFutureValue;
 import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
 import static com.facebook.airlift.testing.Assertions.assertGreaterThan;
 import static com.facebook.airlift.testing.Assertions.assertGreaterThanOrEqual;
@@ -43,6 +48,7 @@ import static com.facebook.presto.SessionTestUtils.TEST_SESSION;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
 import static com.facebook.presto.common.type.BooleanType.BOOLEAN;
 import static com.facebook.presto.common.type.VarcharType.VARCHAR;
+import static com.facebook.presto.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
 import static com.facebook.presto.metadata.MetadataManager.createTestMetadataManager;
 import static com.facebook.presto.operator.GroupByHashYieldAssertion.createPagesWithDistinctHashKeys;
 import static com.facebook.presto.operator.GroupByHashYieldAssertion.finishOperatorWithYieldingGroupByHash;
@@ -53,6 +59,7 @@ import static io.airlift.units.DataSize.Unit.BYTE;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 
 @Test(singleThreaded = true)
 public class TestHashSemiJoinOperator
@@ -421,6 +428,101 @@ public class TestHashSemiJoinOperator
         OperatorAssertion.assertOperatorEquals(joinOperatorFactory, driverContext, probeInput, expected, hashEnabled, ImmutableList.of(probeTypes.size()));
     }
 
+    @Test(dataProvider = "hashEnabledValues")
+    public void testSemiJoinWithSpill(boolean hashEnabled)
+    {
+        DriverContext driverContext = taskContext.addPipelineContext(0, true, true, false).addDriverContext();
+        TestHashJoinOperator.DummySpillerFactory spillerFactory = new TestHashJoinOperator.DummySpillerFactory();
+        PartitioningSpillerFactory partitioningSpillerFactory = new GenericPartitioningSpillerFactory(spillerFactory);
+
+        // build, revoking memory after every page
+        List<Type> buildTypes = ImmutableList.of(BIGINT);
+        RowPagesBuilder rowPagesBuilder = rowPagesBuilder(hashEnabled, Ints.asList(0), buildTypes);
+        List<Page> buildInput = rowPagesBuilder
+                .row(0L)
+                .row(1L)
+                .pageBreak()
+                .row((Object) null)
+                .row(3L)
+                .pageBreak()
+                .row(5L)
+                .build();
+        SetBuilderOperatorFactory setBuilderOperatorFactory = new SetBuilderOperatorFactory(
+                1,
+                new PlanNodeId("test"),
+                buildTypes.get(0),
+                0,
+                rowPagesBuilder.getHashChannel(),
+                10,
+                new JoinCompiler(createTestMetadataManager()),
+                true,
+                partitioningSpillerFactory);
+        OperatorAssertion.toPages(setBuilderOperatorFactory, driverContext, buildInput, true);
+
+        // probe
+        List<Type> probeTypes = ImmutableList.of(BIGINT);
+        RowPagesBuilder rowPagesBuilderProbe = rowPagesBuilder(hashEnabled, Ints.asList(0), probeTypes);
+        List<Page> probeInput = rowPagesBuilderProbe
+                .row(0L)
+                .row((Object) null)
+                .row(1L)
+                .row(2L)
+                .pageBreak()
+                .row(3L)
+                .row(4L)
+                .row(5L)
+                .build();
+        Optional<Integer> probeHashChannel = hashEnabled ? Optional.of(probeTypes.size()) : Optional.empty();
+        HashSemiJoinOperatorFactory joinOperatorFactory = new HashSemiJoinOperatorFactory(
+                2,
+                new PlanNodeId("test"),
+                setBuilderOperatorFactory.getSetProvider(),
+                rowPagesBuilderProbe.getTypes(),
+                0,
+                probeHashChannel,
+                partitioningSpillerFactory);
+
+        // expected
+        MaterializedResult expected = resultBuilder(driverContext.getSession(), concat(probeTypes, ImmutableList.of(BOOLEAN)))
+                .row(0L, true)
+                .row(null, null)
+                .row(1L, true)
+                .row(2L, null)
+                .row(3L, true)
+                .row(4L, null)
+                .row(5L, true)
+                .build();
+
+        OperatorAssertion.assertOperatorEqualsIgnoreOrder(joinOperatorFactory, driverContext, probeInput, expected, hashEnabled, Optional.of(probeTypes.size()));
+        assertGreaterThan(spillerFactory.getSpilledPages(), 0L);
+    }
+
+    @Test
+    public void testSpilledPartitionMemory()
+    {
+        DriverContext driverContext = taskContext.addPipelineContext(0, true, true, false).addDriverContext();
+        OperatorContext operatorContext = driverContext.addOperatorContext(1, new PlanNodeId("test"), "test");
+        PartitioningSpiller spiller = new GenericPartitioningSpillerFactory(new TestHashJoinOperator.DummySpillerFactory()).create(
+                ImmutableList.of(BIGINT),
+                SpilledChannelSet.createPartitionGenerator(BIGINT, 0, Optional.empty(), 1),
+                operatorContext.getSpillContext(),
+                operatorContext.aggregateSystemMemoryContext());
+        Page page = rowPagesBuilder(BIGINT).row(1L).row(2L).build().get(0);
+        getFutureValue(spiller.partitionAndSpill(page, partition -> true).getSpillingFuture());
+        SpilledChannelSet spilledChannelSet = new SpilledChannelSet(BIGINT, Optional.empty(), 1, false, false, TEST_SESSION, new JoinCompiler(createTestMetadataManager()), spiller);
+
+        // the partition is loaded once, and its memory is reserved once for both probe operators
+        AggregatedMemoryContext memoryContext = newSimpleAggregatedMemoryContext();
+        ChannelSet partition = spilledChannelSet.getPartition(0, memoryContext);
+        assertSame(spilledChannelSet.getPartition(0, memoryContext), partition);
+        assertEquals(memoryContext.getBytes(), partition.getEstimatedSizeInBytes());
+
+        spilledChannelSet.releasePartition(0, 2);
+        assertEquals(memoryContext.getBytes(), partition.getEstimatedSizeInBytes());
+        spilledChannelSet.releasePartition(0, 2);
+        assertEquals(memoryContext.getBytes(), 0);
+    }
+
     @Test(dataProvider = "hashEnabledValues", expectedExceptions = ExceededMemoryLimitException.class, expectedExceptionsMessageRegExp = "Query exceeded per-node user memory limit of.*")
     public void testMemoryLimit(boolean hashEnabled)
     {
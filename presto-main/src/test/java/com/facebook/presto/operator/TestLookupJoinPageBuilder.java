@@ -155,6 +155,50 @@ public class TestLookupJoinPageBuilder
         }
     }
 
+    @Test
+    public void testPendingBuildRows()
+    {
+        int entries = 1000;
+        BlockBuilder blockBuilder = BIGINT.createBlockBuilder(null, entries);
+        BlockBuilder otherBlockBuilder = BIGINT.createBlockBuilder(null, entries);
+        for (int i = 0; i < entries; i++) {
+            BIGINT.writeLong(blockBuilder, i);
+            BIGINT.writeLong(otherBlockBuilder, entries + i);
+        }
+        Page page = new Page(blockBuilder.build());
+        LookupSource lookupSource = new TestLookupSource(ImmutableList.of(BIGINT), page);
+        LookupSource otherLookupSource = new TestLookupSource(ImmutableList.of(BIGINT), new Page(otherBlockBuilder.build()));
+        JoinProbe probe = new JoinProbeFactory(new int[] {0}, ImmutableList.of(0), OptionalInt.empty()).createJoinProbe(page);
+        LookupJoinPageBuilder lookupJoinPageBuilder = new LookupJoinPageBuilder(ImmutableList.of(BIGINT));
+
+        // the rows span several batches, switch lookup sources, and mix null build rows in
+        for (int joinPosition = 0; probe.advanceNextPosition(); joinPosition++) {
+            if (joinPosition % 7 == 0) {
+                lookupJoinPageBuilder.appendNullForBuild(probe);
+            }
+            else {
+                lookupJoinPageBuilder.appendRow(probe, joinPosition / 300 % 2 == 0 ? lookupSource : otherLookupSource, joinPosition);
+            }
+            if (joinPosition == 500) {
+                // pending rows flushed in the middle of a batch keep their order
+                lookupJoinPageBuilder.flushBuildRows();
+            }
+        }
+        assertTrue(lookupJoinPageBuilder.toString().contains("positionCount=" + entries));
+
+        Page output = lookupJoinPageBuilder.build(probe);
+        assertEquals(output.getPositionCount(), entries);
+        for (int i = 0; i < entries; i++) {
+            assertEquals(output.getBlock(0).getLong(i), i);
+            if (i % 7 == 0) {
+                assertTrue(output.getBlock(1).isNull(i));
+            }
+            else {
+                assertEquals(output.getBlock(1).getLong(i), i / 300 % 2 == 0 ? i : entries + i);
+            }
+        }
+    }
+
     @Test
     public void testCrossJoinWithEmptyBuild()
     {
@@ -21,6 +21,7 @@ import com.facebook.presto.common.type.Type;
 import com.facebook.presto.metadata.MetadataManager;
 import com.facebook.presto.operator.MarkDistinctOperator.MarkDistinctOperatorFactory;
 import com.facebook.presto.spi.plan.PlanNodeId;
+import com.facebook.presto.spiller.GenericPartitioningSpillerFactory;
 import com.facebook.presto.sql.gen.JoinCompiler;
 import com.facebook.presto.testing.MaterializedResult;
 import com.google.common.collect.ImmutableList;
@@ -111,6 +112,38 @@ public class TestMarkDistinctOperator
         OperatorAssertion.assertOperatorEqualsIgnoreOrder(operatorFactory, driverContext, input, expected.build(), hashEnabled, Optional.of(1));
     }
 
+    @Test(dataProvider = "hashEnabledValues")
+    public void testMarkDistinctWithSpill(boolean hashEnabled)
+    {
+        RowPagesBuilder rowPagesBuilder = rowPagesBuilder(hashEnabled, Ints.asList(0), BIGINT, VARCHAR);
+        List<Page> input = rowPagesBuilder
+                .addSequencePage(100, 0, 0)
+                .addSequencePage(100, 50, 0)
+                .addSequencePage(100, 100, 0)
+                .build();
+
+        TestHashJoinOperator.DummySpillerFactory spillerFactory = new TestHashJoinOperator.DummySpillerFactory();
+        OperatorFactory operatorFactory = new MarkDistinctOperatorFactory(
+                0,
+                new PlanNodeId("test"),
+                rowPagesBuilder.getTypes(),
+                ImmutableList.of(0),
+                rowPagesBuilder.getHashChannel(),
+                joinCompiler,
+                true,
+                new GenericPartitioningSpillerFactory(spillerFactory));
+
+        MaterializedResult.Builder expected = resultBuilder(driverContext.getSession(), BIGINT, VARCHAR, BOOLEAN);
+        for (long i = 0; i < 300; i++) {
+            long value = i < 100 ? i : i - 50 * (i / 100);
+            expected.row(value, String.valueOf(i % 100), i < 100 || (i >= 150 && i < 200) || i >= 250);
+        }
+
+        // memory is revoked after every input page, so the values marked before spilling have to be carried over to the spilled input
+        OperatorAssertion.assertOperatorEqualsIgnoreOrder(operatorFactory, driverContext, input, expected.build(), hashEnabled, Optional.of(2), true);
+        assertGreaterThan(spillerFactory.getSpilledPages(), 0L);
+    }
+
     @Test(dataProvider = "hashEnabledValues")
     public void testRleDistinctMask(boolean hashEnabled)
     {
@@ -29,7 +29,9 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
+import static com.facebook.airlift.concurrent.MoreFutures.getFutureValue;
 import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static com.facebook.airlift.testing.Assertions.assertGreaterThan;
 import static com.facebook.presto.SessionTestUtils.TEST_SESSION;
 import static com.facebook.presto.block.BlockAssertions.createLongSequenceBlock;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
@@ -132,6 +134,53 @@ public class TestNestedLoopBuildOperator
         assertEquals(buildPages.get(0).getPositionCount(), 3003);
     }
 
+    @Test
+    public void testNestedLoopBuildWithSpill()
+            throws Exception
+    {
+        TaskContext taskContext = createTaskContext();
+        List<Type> buildTypes = ImmutableList.of(BIGINT);
+        JoinBridgeManager<NestedLoopJoinBridge> nestedLoopJoinBridgeManager = new JoinBridgeManager<>(
+                false,
+                PipelineExecutionStrategy.UNGROUPED_EXECUTION,
+                PipelineExecutionStrategy.UNGROUPED_EXECUTION,
+                NestedLoopJoinPagesSupplier::new,
+                buildTypes);
+        NestedLoopBuildOperatorFactory nestedLoopBuildOperatorFactory = new NestedLoopBuildOperatorFactory(
+                3,
+                new PlanNodeId("test"),
+                nestedLoopJoinBridgeManager,
+                true,
+                new TestHashJoinOperator.DummySpillerFactory());
+        DriverContext driverContext = taskContext.addPipelineContext(0, true, true, false).addDriverContext();
+        NestedLoopBuildOperator nestedLoopBuildOperator = (NestedLoopBuildOperator) nestedLoopBuildOperatorFactory.createOperator(driverContext);
+        NestedLoopJoinBridge nestedLoopJoinBridge = nestedLoopJoinBridgeManager.getJoinBridge(Lifespan.taskWide());
+
+        // build pages
+        Page buildPage1 = new Page(3, createLongSequenceBlock(11, 14));
+        Page buildPage2 = new Page(3000, createLongSequenceBlock(4000, 7000));
+
+        nestedLoopBuildOperator.addInput(buildPage1);
+        assertGreaterThan(nestedLoopBuildOperator.getOperatorContext().getReservedRevocableBytes(), 0L);
+        getFutureValue(nestedLoopBuildOperator.startMemoryRevoke());
+        nestedLoopBuildOperator.finishMemoryRevoke();
+        assertEquals(nestedLoopBuildOperator.getOperatorContext().getReservedRevocableBytes(), 0L);
+
+        nestedLoopBuildOperator.addInput(buildPage2);
+        nestedLoopBuildOperator.finish();
+
+        assertTrue(nestedLoopJoinBridge.getPagesFuture().isDone());
+        NestedLoopJoinPages nestedLoopJoinPages = nestedLoopJoinBridge.getPagesFuture().get();
+        assertTrue(nestedLoopJoinPages.isSpilled());
+        assertEquals(nestedLoopJoinPages.getPages().size(), 0);
+        assertEquals(nestedLoopBuildOperator.getOperatorContext().getReservedRevocableBytes(), 0L);
+
+        // the spilled pages can be scanned repeatedly
+        for (int scan = 0; scan < 2; scan++) {
+            assertEquals(ImmutableList.copyOf(nestedLoopJoinPages.readSpilledPages()), ImmutableList.of(buildPage1, buildPage2));
+        }
+    }
+
     @Test
     public void testNestedLoopNoBlocksMaxSizeLimit()
             throws Exception
@@ -15,6 +15,7 @@ package com.facebook.presto.operator;
 
 import com.facebook.presto.RowPagesBuilder;
 import com.facebook.presto.common.Page;
+import com.facebook.presto.common.RuntimeMetric;
 import com.facebook.presto.common.type.Type;
 import com.facebook.presto.operator.NestedLoopBuildOperator.NestedLoopBuildOperatorFactory;
 import com.facebook.presto.operator.NestedLoopJoinOperator.NestedLoopJoinOperatorFactory;
@@ -23,6 +24,7 @@ import com.facebook.presto.spi.plan.PlanNodeId;
 import com.facebook.presto.testing.MaterializedResult;
 import com.facebook.presto.testing.TestingTaskContext;
 import com.google.common.collect.ImmutableList;
+import io.airlift.units.DataSize;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -31,16 +33,22 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
+import static com.facebook.airlift.concurrent.MoreFutures.getFutureValue;
 import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
 import static com.facebook.presto.RowPagesBuilder.rowPagesBuilder;
 import static com.facebook.presto.SessionTestUtils.TEST_SESSION;
+import static com.facebook.presto.common.RuntimeMetricName.NESTED_LOOP_JOIN_BUILD_RESCAN_COUNT;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
 import static com.facebook.presto.common.type.VarcharType.VARCHAR;
 import static com.facebook.presto.operator.NestedLoopJoinOperator.createNestedLoopOutputIterator;
 import static com.facebook.presto.operator.OperatorAssertion.assertOperatorEquals;
+import static com.facebook.presto.operator.OperatorAssertion.assertOperatorEqualsIgnoreOrder;
 import static com.facebook.presto.operator.ValuesOperator.ValuesOperatorFactory;
 import static com.facebook.presto.testing.MaterializedResult.resultBuilder;
 import static com.google.common.collect.Iterables.concat;
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static io.airlift.units.DataSize.Unit.BYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
 import static org.testng.Assert.assertEquals;
@@ -383,6 +391,91 @@ public class TestNestedLoopJoinOperator
         assertOperatorEquals(joinOperatorFactory, taskContext.addPipelineContext(0, true, true, false).addDriverContext(), probeInput, expected);
     }
 
+    @Test
+    public void testProbeAndBuildMultiplePagesWithSpilledBuild()
+    {
+        TaskContext taskContext = createTaskContext();
+
+        // build
+        List<Type> buildTypes = ImmutableList.of(VARCHAR);
+        RowPagesBuilder buildPages = rowPagesBuilder(buildTypes)
+                .row("A")
+                .row("B")
+                .pageBreak()
+                .row("C");
+
+        // probe
+        List<Type> probeTypes = ImmutableList.of(VARCHAR);
+        RowPagesBuilder probePages = rowPagesBuilder(probeTypes);
+        List<Page> probeInput = probePages
+                .row("a")
+                .pageBreak()
+                .row((String) null)
+                .row("b")
+                .pageBreak()
+                .row("c")
+                .build();
+        NestedLoopJoinOperatorFactory joinOperatorFactory = newJoinOperatorFactoryWithSpilledBuild(taskContext, buildPages);
+
+        // expected
+        MaterializedResult expected = resultBuilder(taskContext.getSession(), concat(probeTypes, buildPages.getTypes()))
+                .row("a", "A")
+                .row("a", "B")
+                .row("a", "C")
+                .row(null, "A")
+                .row(null, "B")
+                .row(null, "C")
+                .row("b", "A")
+                .row("b", "B")
+                .row("b", "C")
+                .row("c", "A")
+                .row("c", "B")
+                .row("c", "C")
+                .build();
+
+        assertOperatorEqualsIgnoreOrder(joinOperatorFactory, taskContext.addPipelineContext(0, true, true, false).addDriverContext(), probeInput, expected);
+    }
+
+    @Test
+    public void testSpilledBuildRescannedForEveryProbeBlock()
+    {
+        TaskContext taskContext = createTaskContext();
+
+        // build
+        List<Type> buildTypes = ImmutableList.of(VARCHAR);
+        RowPagesBuilder buildPages = rowPagesBuilder(buildTypes)
+                .row("A")
+                .pageBreak()
+                .row("B");
+
+        // probe
+        List<Type> probeTypes = ImmutableList.of(VARCHAR);
+        List<Page> probeInput = rowPagesBuilder(probeTypes)
+                .row("a")
+                .pageBreak()
+                .row("b")
+                .pageBreak()
+                .row("c")
+                .build();
+        // every probe page fills a block, so the build pages are read once per probe page
+        NestedLoopJoinOperatorFactory joinOperatorFactory = newJoinOperatorFactoryWithSpilledBuild(taskContext, buildPages, new DataSize(1, BYTE));
+
+        // expected
+        MaterializedResult expected = resultBuilder(taskContext.getSession(), concat(probeTypes, buildPages.getTypes()))
+                .row("a", "A")
+                .row("a", "B")
+                .row("b", "A")
+                .row("b", "B")
+                .row("c", "A")
+                .row("c", "B")
+                .build();
+
+        DriverContext driverContext = taskContext.addPipelineContext(0, true, true, false).addDriverContext();
+        assertOperatorEqualsIgnoreOrder(joinOperatorFactory, driverContext, probeInput, expected);
+        RuntimeMetric rescanCount = getOnlyElement(driverContext.getOperatorContexts()).getRuntimeStats().getMetric(NESTED_LOOP_JOIN_BUILD_RESCAN_COUNT);
+        assertEquals(rescanCount.getSum(), 3);
+    }
+
     @Test
     public void testEmptyProbePage()
     {
@@ -470,6 +563,42 @@ public class TestNestedLoopJoinOperator
         return TestingTaskContext.createTaskContext(executor, scheduledExecutor, TEST_SESSION);
     }
 
+    private static NestedLoopJoinOperatorFactory newJoinOperatorFactoryWithSpilledBuild(TaskContext taskContext, RowPagesBuilder buildPages)
+    {
+        return newJoinOperatorFactoryWithSpilledBuild(taskContext, buildPages, new DataSize(16, MEGABYTE));
+    }
+
+    private static NestedLoopJoinOperatorFactory newJoinOperatorFactoryWithSpilledBuild(TaskContext taskContext, RowPagesBuilder buildPages, DataSize probeBlockSize)
+    {
+        DriverContext driverContext = taskContext.addPipelineContext(0, true, true, false).addDriverContext();
+
+        JoinBridgeManager<NestedLoopJoinBridge> nestedLoopJoinBridgeManager = new JoinBridgeManager<>(
+                false,
+                PipelineExecutionStrategy.UNGROUPED_EXECUTION,
+                PipelineExecutionStrategy.UNGROUPED_EXECUTION,
+                NestedLoopJoinPagesSupplier::new,
+                buildPages.getTypes());
+        NestedLoopBuildOperatorFactory nestedLoopBuildOperatorFactory = new NestedLoopBuildOperatorFactory(
+                1,
+                new PlanNodeId("test"),
+                nestedLoopJoinBridgeManager,
+                true,
+                new TestHashJoinOperator.DummySpillerFactory());
+        NestedLoopJoinOperatorFactory joinOperatorFactory = new NestedLoopJoinOperatorFactory(3, new PlanNodeId("test"), nestedLoopJoinBridgeManager, probeBlockSize);
+
+        // revoke the memory after every build page
+        Operator nestedLoopBuildOperator = nestedLoopBuildOperatorFactory.createOperator(driverContext);
+        for (Page page : buildPages.build()) {
+            nestedLoopBuildOperator.addInput(page);
+            getFutureValue(nestedLoopBuildOperator.startMemoryRevoke());
+            nestedLoopBuildOperator.finishMemoryRevoke();
+        }
+        nestedLoopBuildOperator.finish();
+        nestedLoopBuildOperatorFactory.noMoreOperators();
+
+        return joinOperatorFactory;
+    }
+
     private static NestedLoopJoinOperatorFactory newJoinOperatorFactoryWithCompletedBuild(TaskContext taskContext, RowPagesBuilder buildPages)
     {
         DriverContext driverContext = taskContext.addPipelineContext(0, true, true, false).addDriverContext();
@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.common.Page;
+import com.facebook.presto.common.PageBuilder;
+import com.facebook.presto.common.array.AdaptiveLongBigArray;
+import com.facebook.presto.common.block.Block;
+import com.facebook.presto.common.type.Type;
+import com.facebook.presto.metadata.MetadataManager;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.stream.IntStream;
+
+import static com.facebook.presto.block.BlockAssertions.createLongsBlock;
+import static com.facebook.presto.block.BlockAssertions.createStringsBlock;
+import static com.facebook.presto.common.type.BigintType.BIGINT;
+import static com.facebook.presto.common.type.VarcharType.VARCHAR;
+import static com.facebook.presto.operator.SyntheticAddress.encodeSyntheticAddress;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static org.testng.Assert.assertEquals;
+
+public class TestPagesHash
+{
+    @Test
+    public void testBatchedLookup()
+    {
+        Block buildLongs = createLongsBlock(1L, 2L, 2L, 3L, 4L);
+        Block buildStrings = createStringsBlock("a", "b", "c", "b", "a");
+        PagesHashStrategy strategy = createStrategy(buildLongs, buildStrings);
+        PagesHash pagesHash = createPagesHash(strategy, buildLongs.getPositionCount());
+
+        Page probe = new Page(
+                createLongsBlock(2L, 1L, 4L, 2L, 3L, 9L),
+                createStringsBlock("c", "b", "a", "b", "b", "a"));
+        int[] positions = {0, 1, 2, 4, 5};
+
+        long[] expected = new long[probe.getPositionCount()];
+        Arrays.fill(expected, -2);
+        for (int position : positions) {
+            expected[position] = pagesHash.getAddressIndex(position, probe);
+        }
+        assertEquals(expected, new long[] {2, -1, 4, -2, 3, -1});
+
+        long[] addressIndexes = new long[probe.getPositionCount()];
+        Arrays.fill(addressIndexes, -2);
+        pagesHash.getAddressIndexes(positions, positions.length, probe, null, addressIndexes);
+        assertEquals(addressIndexes, expected);
+
+        // with precomputed hashes
+        long[] rawHashes = new long[probe.getPositionCount()];
+        for (int position : positions) {
+            rawHashes[position] = strategy.hashRow(position, probe);
+        }
+        Arrays.fill(addressIndexes, -2);
+        pagesHash.getAddressIndexes(positions, positions.length, probe, rawHashes, addressIndexes);
+        assertEquals(addressIndexes, expected);
+    }
+
+    @Test
+    public void testBatchedAppend()
+    {
+        Block buildLongs = createLongsBlock(10L, 20L, 30L);
+        Block buildStrings = createStringsBlock("x", "y", "z");
+        PagesHash pagesHash = createPagesHash(createStrategy(buildLongs, buildStrings), buildLongs.getPositionCount());
+
+        PageBuilder pageBuilder = new PageBuilder(ImmutableList.of(BIGINT, VARCHAR));
+        long[] positions = {-1, 2, 0, 2, -1};
+        pagesHash.appendTo(positions, 1, 3, pageBuilder, 0);
+        pageBuilder.declarePositions(3);
+
+        Page page = pageBuilder.build();
+        assertEquals(page.getPositionCount(), 3);
+        assertEquals(BIGINT.getLong(page.getBlock(0), 0), 30L);
+        assertEquals(BIGINT.getLong(page.getBlock(0), 1), 10L);
+        assertEquals(BIGINT.getLong(page.getBlock(0), 2), 30L);
+        assertEquals(VARCHAR.getSlice(page.getBlock(1), 1).toStringUtf8(), "x");
+    }
+
+    private static PagesHashStrategy createStrategy(Block... blocks)
+    {
+        return createPagesHashStrategy(ImmutableList.of(BIGINT, VARCHAR), blocks);
+    }
+
+    private static PagesHash createPagesHash(PagesHashStrategy strategy, int positionCount)
+    {
+        return new PagesHash(createAddresses(positionCount), positionCount, strategy, ArrayPositionLinks.builder(positionCount));
+    }
+
+    /**
+     * Creates a strategy over a single page made of the given blocks, whose channels are all join and output channels.
+     */
+    static PagesHashStrategy createPagesHashStrategy(List<Type> types, Block... blocks)
+    {
+        ImmutableList.Builder<List<Block>> channels = ImmutableList.builder();
+        for (Block block : blocks) {
+            channels.add(ImmutableList.of(block));
+        }
+        List<Integer> allChannels = IntStream.range(0, blocks.length).boxed().collect(toImmutableList());
+        return new SimplePagesHashStrategy(
+                types,
+                allChannels,
+                channels.build(),
+                allChannels,
+                OptionalInt.empty(),
+                Optional.empty(),
+                MetadataManager.createTestMetadataManager().getFunctionAndTypeManager());
+    }
+
+    /**
+     * Creates the addresses of the first {@code positionCount} positions of a single page.
+     */
+    static AdaptiveLongBigArray createAddresses(int positionCount)
+    {
+        AdaptiveLongBigArray addresses = new AdaptiveLongBigArray();
+        addresses.ensureCapacity(positionCount);
+        for (int position = 0; position < positionCount; position++) {
+            addresses.set(position, encodeSyntheticAddress(0, position));
+        }
+        return addresses;
+    }
+}
@@ -14,16 +14,29 @@
 package com.facebook.presto.operator;
 
 import com.facebook.presto.common.Page;
+import com.facebook.presto.common.PageBuilder;
+import com.facebook.presto.common.block.BlockBuilder;
+import com.facebook.presto.common.block.SortOrder;
 import com.facebook.presto.common.type.Type;
+import com.facebook.presto.memory.context.LocalMemoryContext;
+import com.facebook.presto.memory.context.MemoryReservationHandler;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static com.facebook.presto.SequencePageBuilder.createSequencePage;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
+import static com.facebook.presto.common.type.DoubleType.DOUBLE;
 import static com.facebook.presto.common.type.VarcharType.VARCHAR;
+import static com.facebook.presto.memory.context.AggregatedMemoryContext.newRootAggregatedMemoryContext;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static io.airlift.slice.Slices.utf8Slice;
 import static java.lang.String.format;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
@@ -82,6 +95,126 @@ public class TestPagesIndex
         assertEquals(lazyCompactPagesIndex.getEstimatedSize(), eagerCompactPagesIndex.getEstimatedSize());
     }
 
+    @DataProvider
+    public static Object[][] sortOrders()
+    {
+        return Arrays.stream(SortOrder.values())
+                .map(sortOrder -> new Object[] {sortOrder})
+                .toArray(Object[][]::new);
+    }
+
+    @Test(dataProvider = "sortOrders")
+    public void testNormalizedKeySort(SortOrder sortOrder)
+    {
+        List<Type> types = ImmutableList.of(BIGINT, DOUBLE, VARCHAR);
+        List<Page> pages = randomPages(types, 5, 1000);
+
+        for (List<Integer> sortChannels : ImmutableList.<List<Integer>>of(
+                ImmutableList.of(0),
+                ImmutableList.of(1),
+                ImmutableList.of(2),
+                ImmutableList.of(0, 2),
+                ImmutableList.of(2, 1, 0))) {
+            List<SortOrder> sortOrders = ImmutableList.of(sortOrder, SortOrder.ASC_NULLS_FIRST, SortOrder.DESC_NULLS_LAST).subList(0, sortChannels.size());
+
+            PagesIndex expected = new PagesIndex.TestingFactory(false, false).newPagesIndex(types, 5000);
+            PagesIndex actual = new PagesIndex.TestingFactory(false, true).newPagesIndex(types, 5000);
+            pages.forEach(expected::addPage);
+            pages.forEach(actual::addPage);
+            expected.sort(sortChannels, sortOrders);
+            TestingMemoryReservationHandler reservationHandler = new TestingMemoryReservationHandler(true);
+            LocalMemoryContext sortMemoryContext = newRootAggregatedMemoryContext(reservationHandler, 0).newLocalMemoryContext("test");
+            actual.sort(sortChannels, sortOrders, sortMemoryContext);
+
+            // the buffers of the sort are reserved while sorting, and released once it is done
+            assertEquals(reservationHandler.getPeakReservedBytes(), NormalizedKeySort.getRetainedSizeInBytes(actual.getPositionCount()));
+            assertEquals(sortMemoryContext.getBytes(), 0);
+            assertSortChannelsEqual(actual, expected, sortChannels, sortOrders);
+        }
+    }
+
+    @Test
+    public void testNormalizedKeySortWithoutMemory()
+    {
+        List<Type> types = ImmutableList.of(BIGINT, DOUBLE, VARCHAR);
+        List<Page> pages = randomPages(types, 5, 1000);
+        List<Integer> sortChannels = ImmutableList.of(0, 2);
+        List<SortOrder> sortOrders = ImmutableList.of(SortOrder.DESC_NULLS_FIRST, SortOrder.ASC_NULLS_LAST);
+
+        PagesIndex expected = new PagesIndex.TestingFactory(false, false).newPagesIndex(types, 5000);
+        PagesIndex actual = new PagesIndex.TestingFactory(false, true).newPagesIndex(types, 5000);
+        pages.forEach(expected::addPage);
+        pages.forEach(actual::addPage);
+        expected.sort(sortChannels, sortOrders);
+        TestingMemoryReservationHandler reservationHandler = new TestingMemoryReservationHandler(false);
+        LocalMemoryContext sortMemoryContext = newRootAggregatedMemoryContext(reservationHandler, 0).newLocalMemoryContext("test");
+        actual.sort(sortChannels, sortOrders, sortMemoryContext);
+
+        // the positions are sorted with comparisons when the buffers of the normalized key sort cannot be reserved
+        assertEquals(reservationHandler.getPeakReservedBytes(), 0);
+        assertSortChannelsEqual(actual, expected, sortChannels, sortOrders);
+    }
+
+    private static void assertSortChannelsEqual(PagesIndex actual, PagesIndex expected, List<Integer> sortChannels, List<SortOrder> sortOrders)
+    {
+        // positions that have the same sort key can be in any order, so only the sort channels are compared
+        for (int position = 0; position < expected.getPositionCount(); position++) {
+            for (int channel : sortChannels) {
+                assertEquals(
+                        getValue(actual, channel, position),
+                        getValue(expected, channel, position),
+                        format("Mismatch at position %s of channel %s sorted by %s %s", position, channel, sortChannels, sortOrders));
+            }
+        }
+    }
+
+    private static List<Page> randomPages(List<Type> types, int pageCount, int positionCount)
+    {
+        Random random = new Random(42);
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < pageCount; i++) {
+            PageBuilder pageBuilder = new PageBuilder(types);
+            for (int position = 0; position < positionCount; position++) {
+                pageBuilder.declarePosition();
+                for (int channel = 0; channel < types.size(); channel++) {
+                    BlockBuilder blockBuilder = pageBuilder.getBlockBuilder(channel);
+                    if (random.nextInt(20) == 0) {
+                        blockBuilder.appendNull();
+                        continue;
+                    }
+                    switch (channel) {
+                        case 0:
+                            BIGINT.writeLong(blockBuilder, random.nextInt(200) - 100 + (random.nextBoolean() ? 0 : random.nextLong()));
+                            break;
+                        case 1:
+                            DOUBLE.writeDouble(blockBuilder, random.nextInt(50) == 0 ? Double.NaN : (random.nextInt(100) - 50) / 4.0);
+                            break;
+                        default:
+                            // values longer than the normalized key that only differ after it
+                            VARCHAR.writeSlice(blockBuilder, utf8Slice((random.nextBoolean() ? "shared_prefix_" : "") + random.nextInt(100)));
+                    }
+                }
+            }
+            pages.add(pageBuilder.build());
+        }
+        return pages;
+    }
+
+    private static Object getValue(PagesIndex pagesIndex, int channel, int position)
+    {
+        if (pagesIndex.isNull(channel, position)) {
+            return null;
+        }
+        Type type = pagesIndex.getType(channel);
+        if (type.equals(BIGINT)) {
+            return pagesIndex.getLong(channel, position);
+        }
+        if (type.equals(DOUBLE)) {
+            return pagesIndex.getDouble(channel, position);
+        }
+        return pagesIndex.getSlice(channel, position).toStringUtf8();
+    }
+
     private static PagesIndex newPagesIndex(List<Type> types, int expectedPositions, boolean eagerCompact)
     {
         return new PagesIndex.TestingFactory(eagerCompact).newPagesIndex(types, expectedPositions);
@@ -93,4 +226,40 @@ public class TestPagesIndex
         Arrays.setAll(initialValues, i -> 100 * i);
         return createSequencePage(types, 7, initialValues);
     }
+
+    private static class TestingMemoryReservationHandler
+            implements MemoryReservationHandler
+    {
+        private final boolean allowTryReserve;
+        private long reservedBytes;
+        private long peakReservedBytes;
+
+        TestingMemoryReservationHandler(boolean allowTryReserve)
+        {
+            this.allowTryReserve = allowTryReserve;
+        }
+
+        @Override
+        public ListenableFuture<?> reserveMemory(String allocationTag, long delta, boolean enforceBroadcastMemoryLimit)
+        {
+            reservedBytes += delta;
+            peakReservedBytes = Math.max(peakReservedBytes, reservedBytes);
+            return immediateFuture(null);
+        }
+
+        @Override
+        public boolean tryReserveMemory(String allocationTag, long delta, boolean enforceBroadcastMemoryLimit)
+        {
+            if (!allowTryReserve) {
+                return false;
+            }
+            reserveMemory(allocationTag, delta, enforceBroadcastMemoryLimit);
+            return true;
+        }
+
+        public long getPeakReservedBytes()
+        {
+            return peakReservedBytes;
+        }
+    }
 }
@@ -32,6 +32,7 @@ import com.facebook.presto.operator.project.PageProjectionWithOutputs;
 import com.facebook.presto.operator.project.TestPageProcessor.LazyPagePageProjection;
 import com.facebook.presto.operator.project.TestPageProcessor.SelectAllFilter;
 import com.facebook.presto.operator.scalar.AbstractTestFunctions;
+import com.facebook.presto.spi.ColumnHandle;
 import com.facebook.presto.spi.ConnectorId;
 import com.facebook.presto.spi.ConnectorPageSource;
 import com.facebook.presto.spi.ConnectorTableHandle;
@@ -44,9 +45,11 @@ import com.facebook.presto.spi.relation.RowExpression;
 import com.facebook.presto.sql.gen.ExpressionCompiler;
 import com.facebook.presto.sql.gen.PageFunctionCompiler;
 import com.facebook.presto.testing.MaterializedResult;
+import com.facebook.presto.testing.TestingMetadata.TestingColumnHandle;
 import com.facebook.presto.testing.TestingSplit;
 import com.facebook.presto.testing.TestingTransactionHandle;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.Iterators;
 import io.airlift.units.DataSize;
 import org.testng.annotations.Test;
@@ -245,6 +248,55 @@ public class TestScanFilterAndProjectOperator
         assertEquals(actual, expected);
     }
 
+    @Test
+    public void testPageSourceBloomFilter()
+    {
+        Block keyBlock = BlockAssertions.createLongSequenceBlock(0, 100);
+        // Only the filtered column is loaded to apply the Bloom filter
+        Page input = new Page(100, keyBlock, new LazyBlock(100, lazyBlock -> {
+            throw new AssertionError("Lazy block should not be loaded");
+        }));
+        DriverContext driverContext = newDriverContext();
+
+        SplitBlockBloomFilter bloomFilter = new SplitBlockBloomFilter(BIGINT, 1024);
+        Block filterValues = BlockAssertions.createLongSequenceBlock(10, 20);
+        for (int position = 0; position < filterValues.getPositionCount(); position++) {
+            bloomFilter.add(filterValues, position);
+        }
+        ColumnHandle keyColumn = new TestingColumnHandle("key");
+
+        List<RowExpression> projections = ImmutableList.of(field(0, BIGINT));
+        Supplier<CursorProcessor> cursorProcessor = expressionCompiler.compileCursorProcessor(driverContext.getSession().getSqlFunctionProperties(), Optional.empty(), projections, "key");
+        Supplier<PageProcessor> pageProcessor = expressionCompiler.compilePageProcessor(driverContext.getSession().getSqlFunctionProperties(), Optional.empty(), projections);
+
+        ScanFilterAndProjectOperator.ScanFilterAndProjectOperatorFactory factory = new ScanFilterAndProjectOperator.ScanFilterAndProjectOperatorFactory(
+                0,
+                new PlanNodeId("test"),
+                new PlanNodeId("0"),
+                (session, split, table, columns, runtimeStats) -> new SinglePagePageSource(input),
+                cursorProcessor,
+                pageProcessor,
+                TESTING_TABLE_HANDLE,
+                ImmutableList.of(keyColumn, new TestingColumnHandle("value")),
+                ImmutableList.of(BIGINT),
+                Optional.empty(),
+                Optional.of(() -> ImmutableListMultimap.of(keyColumn, bloomFilter)),
+                new DataSize(0, BYTE),
+                0);
+
+        SourceOperator operator = factory.createOperator(driverContext);
+        operator.addSplit(
+                new ScheduledSplit(
+                        0,
+                        operator.getSourceId(),
+                        new Split(new ConnectorId("test"), TestingTransactionHandle.create(), TestingSplit.createLocalSplit())));
+        operator.noMoreSplits();
+
+        MaterializedResult expected = toMaterializedResult(driverContext.getSession(), ImmutableList.of(BIGINT), ImmutableList.of(new Page(filterValues)));
+        MaterializedResult actual = toMaterializedResult(driverContext.getSession(), ImmutableList.of(BIGINT), toPages(operator));
+        assertEquals(actual, expected);
+    }
+
     @Test
     public void testPageSourceLazyBlock()
     {
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.common.block.Block;
+import org.testng.annotations.Test;
+
+import static com.facebook.presto.block.BlockAssertions.createLongSequenceBlock;
+import static com.facebook.presto.block.BlockAssertions.createLongsBlock;
+import static com.facebook.presto.block.BlockAssertions.createStringsBlock;
+import static com.facebook.presto.common.type.BigintType.BIGINT;
+import static com.facebook.presto.common.type.VarcharType.VARCHAR;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestSplitBlockBloomFilter
+{
+    @Test
+    public void testNoFalseNegatives()
+    {
+        SplitBlockBloomFilter bloomFilter = new SplitBlockBloomFilter(BIGINT, 64 * 1024);
+        Block values = createLongSequenceBlock(0, 10_000);
+        addAll(bloomFilter, values);
+        for (int position = 0; position < values.getPositionCount(); position++) {
+            assertTrue(bloomFilter.mightContain(values, position));
+        }
+
+        // 64kB for 10k values is about 52 bits per value, few other values may match
+        Block otherValues = createLongSequenceBlock(1_000_000, 1_010_000);
+        int falsePositives = 0;
+        for (int position = 0; position < otherValues.getPositionCount(); position++) {
+            if (bloomFilter.mightContain(otherValues, position)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 100, "too many false positives: " + falsePositives);
+    }
+
+    @Test
+    public void testNulls()
+    {
+        SplitBlockBloomFilter bloomFilter = new SplitBlockBloomFilter(VARCHAR, 1024);
+        Block values = createStringsBlock("a", null, "b");
+        addAll(bloomFilter, values);
+        assertTrue(bloomFilter.mightContain(values, 0));
+        assertFalse(bloomFilter.mightContain(values, 1));
+        assertTrue(bloomFilter.mightContain(values, 2));
+    }
+
+    @Test
+    public void testFilterPositions()
+    {
+        SplitBlockBloomFilter bloomFilter = new SplitBlockBloomFilter(BIGINT, 1024);
+        addAll(bloomFilter, createLongsBlock(3L, 5L));
+
+        Block probe = createLongsBlock(5L, null, 3L, 5L, 3L);
+        int[] positions = {0, 1, 2, 3};
+        int selectedCount = bloomFilter.filterPositions(probe, positions, 3);
+        assertEquals(selectedCount, 2);
+        assertEquals(positions[0], 0);
+        assertEquals(positions[1], 2);
+    }
+
+    @Test
+    public void testMerge()
+    {
+        SplitBlockBloomFilter first = new SplitBlockBloomFilter(BIGINT, 1024);
+        addAll(first, createLongsBlock(1L));
+        SplitBlockBloomFilter second = new SplitBlockBloomFilter(BIGINT, 1024);
+        addAll(second, createLongsBlock(2L));
+
+        SplitBlockBloomFilter merged = first.copy();
+        merged.merge(second);
+        assertTrue(merged.mightContain(createLongsBlock(1L), 0));
+        assertTrue(merged.mightContain(createLongsBlock(2L), 0));
+
+        assertThatThrownBy(() -> first.merge(new SplitBlockBloomFilter(BIGINT, 2048)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Cannot merge filters of different sizes");
+        assertThatThrownBy(() -> first.merge(new SplitBlockBloomFilter(VARCHAR, 1024)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void addAll(SplitBlockBloomFilter bloomFilter, Block block)
+    {
+        for (int position = 0; position < block.getPositionCount(); position++) {
+            bloomFilter.add(block, position);
+        }
+    }
+}
@@ -14,23 +14,31 @@
 package com.facebook.presto.operator;
 
 import com.facebook.presto.ExceededMemoryLimitException;
+import com.facebook.presto.RowPagesBuilder;
 import com.facebook.presto.common.Page;
+import com.facebook.presto.common.block.Block;
 import com.facebook.presto.operator.TopNOperator.TopNOperatorFactory;
 import com.facebook.presto.spi.plan.PlanNodeId;
 import com.facebook.presto.testing.MaterializedResult;
+import com.facebook.presto.testing.TestingMetadata.TestingColumnHandle;
 import com.google.common.collect.ImmutableList;
 import io.airlift.units.DataSize;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
 import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
 import static com.facebook.presto.RowPagesBuilder.rowPagesBuilder;
 import static com.facebook.presto.SessionTestUtils.TEST_SESSION;
+import static com.facebook.presto.block.BlockAssertions.createLongsBlock;
 import static com.facebook.presto.common.block.SortOrder.ASC_NULLS_LAST;
 import static com.facebook.presto.common.block.SortOrder.DESC_NULLS_LAST;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
@@ -39,9 +47,11 @@ import static com.facebook.presto.common.type.VarcharType.VARCHAR;
 import static com.facebook.presto.operator.OperatorAssertion.assertOperatorEquals;
 import static com.facebook.presto.testing.MaterializedResult.resultBuilder;
 import static com.facebook.presto.testing.TestingTaskContext.createTaskContext;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static io.airlift.units.DataSize.Unit.BYTE;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
@@ -167,6 +177,67 @@ public class TestTopNOperator
         assertOperatorEquals(operatorFactory, driverContext, input, expected);
     }
 
+    @Test
+    public void testManyPages()
+    {
+        Random random = new Random(0);
+        RowPagesBuilder rowPagesBuilder = rowPagesBuilder(BIGINT);
+        ImmutableList.Builder<Long> values = ImmutableList.builder();
+        for (int page = 0; page < 20; page++) {
+            for (int position = 0; position < 1000; position++) {
+                // ascending on average, so that the boundary keeps moving and pages are compacted
+                long value = page * 100L + random.nextInt(10_000);
+                rowPagesBuilder.row(value);
+                values.add(value);
+            }
+            rowPagesBuilder.pageBreak();
+        }
+
+        TopNOperatorFactory operatorFactory = new TopNOperatorFactory(
+                0,
+                new PlanNodeId("test"),
+                ImmutableList.of(BIGINT),
+                1500,
+                ImmutableList.of(0),
+                ImmutableList.of(DESC_NULLS_LAST));
+
+        MaterializedResult.Builder expected = resultBuilder(driverContext.getSession(), BIGINT);
+        values.build().stream()
+                .sorted(Comparator.reverseOrder())
+                .limit(1500)
+                .forEach(expected::row);
+
+        assertOperatorEquals(operatorFactory, driverContext, rowPagesBuilder.build(), expected.build());
+    }
+
+    @Test
+    public void testScanFilter()
+            throws Exception
+    {
+        DynamicTopNFilter.Factory scanFilterFactory = new DynamicTopNFilter.Factory(BIGINT, DESC_NULLS_LAST, false, new TestingColumnHandle("value"));
+        TopNOperatorFactory operatorFactory = new TopNOperatorFactory(
+                0,
+                new PlanNodeId("test"),
+                ImmutableList.of(BIGINT),
+                2,
+                ImmutableList.of(0),
+                ImmutableList.of(DESC_NULLS_LAST),
+                Optional.of(scanFilterFactory));
+
+        DynamicTopNFilter filter = scanFilterFactory.getFilter(driverContext);
+        try (Operator operator = operatorFactory.createOperator(driverContext)) {
+            operator.addInput(rowPagesBuilder(BIGINT).row(3L).build().get(0));
+            assertFalse(filter.hasBoundary());
+
+            operator.addInput(rowPagesBuilder(BIGINT).row(5L).row(1L).row(7L).build().get(0));
+            assertTrue(filter.hasBoundary());
+            // the top 2 rows are 7 and 5, so only larger values than 5 can enter
+            assertEquals(filterPositions(filter, createLongsBlock(4L, 5L, 6L, null, 8L)), ImmutableList.of(2, 4));
+        }
+        // the filter of the driver is released with the operator
+        assertFalse(scanFilterFactory.getFilter(driverContext).hasBoundary());
+    }
+
     @Test
     public void testLimitZero()
             throws Exception
@@ -212,4 +283,14 @@ public class TestTopNOperator
         catch (ExceededMemoryLimitException ignore) {
         }
     }
+
+    private static List<Integer> filterPositions(DynamicTopNFilter filter, Block block)
+    {
+        int[] positions = new int[block.getPositionCount()];
+        for (int position = 0; position < positions.length; position++) {
+            positions[position] = position;
+        }
+        int selectedCount = filter.filterPositions(block, positions, positions.length);
+        return Arrays.stream(positions, 0, selectedCount).boxed().collect(toImmutableList());
+    }
 }
@@ -16,6 +16,7 @@ package com.facebook.presto.operator.exchange;
 import com.facebook.presto.SequencePageBuilder;
 import com.facebook.presto.Session;
 import com.facebook.presto.common.Page;
+import com.facebook.presto.common.block.DictionaryBlock;
 import com.facebook.presto.common.type.Type;
 import com.facebook.presto.execution.Lifespan;
 import com.facebook.presto.operator.InterpretedHashGenerator;
@@ -48,9 +49,12 @@ import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static com.facebook.airlift.testing.Assertions.assertContains;
+import static com.facebook.presto.SystemSessionProperties.LOCAL_EXCHANGE_PARTITION_VIEWS_ENABLED;
+import static com.facebook.presto.block.BlockAssertions.createLongsBlock;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
 import static com.facebook.presto.operator.PipelineExecutionStrategy.GROUPED_EXECUTION;
 import static com.facebook.presto.operator.PipelineExecutionStrategy.UNGROUPED_EXECUTION;
@@ -69,6 +73,7 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -451,6 +456,246 @@ public class TestLocalExchange
         });
     }
 
+    @Test
+    public void testPartitionViews()
+    {
+        Session viewsSession = testSessionBuilder()
+                .setSystemProperty(LOCAL_EXCHANGE_PARTITION_VIEWS_ENABLED, "true")
+                .build();
+        LocalExchangeFactory localExchangeFactory = new LocalExchangeFactory(
+                partitioningProviderManager,
+                viewsSession,
+                FIXED_HASH_DISTRIBUTION,
+                2,
+                TYPES,
+                ImmutableList.of(0),
+                Optional.empty(),
+                UNGROUPED_EXECUTION,
+                LOCAL_EXCHANGE_MAX_BUFFERED_BYTES);
+        LocalExchangeSinkFactoryId localExchangeSinkFactoryId = localExchangeFactory.newSinkFactoryId();
+        localExchangeFactory.noMoreSinkFactories();
+
+        run(localExchangeFactory, UNGROUPED_EXECUTION, exchange -> {
+            LocalExchangeSinkFactory sinkFactory = exchange.getSinkFactory(localExchangeSinkFactoryId);
+            LocalExchangeSink sink = sinkFactory.createSink();
+            sinkFactory.close();
+            sinkFactory.noMoreSinkFactories();
+
+            LocalExchangeSource sourceA = exchange.getSource(0);
+            LocalExchangeSource sourceB = exchange.getSource(1);
+
+            // both partitions get a view over the page, which is accounted for once
+            sink.addPage(createPage(0));
+            assertSource(sourceA, 1);
+            assertSource(sourceB, 1);
+            assertTrue(exchange.getBufferedBytes() > retainedSizeOfPages(1));
+            assertTrue(exchange.getBufferedBytes() < retainedSizeOfPages(2));
+
+            Page pageA = assertPartitionedRemovePage(sourceA, 0, 2);
+            assertTrue(pageA.getBlock(0) instanceof DictionaryBlock);
+            // the page is retained until the last view is consumed
+            assertTrue(exchange.getBufferedBytes() > retainedSizeOfPages(1));
+
+            Page pageB = assertPartitionedRemovePage(sourceB, 1, 2);
+            assertTrue(pageB.getBlock(0) instanceof DictionaryBlock);
+            assertEquals(pageA.getPositionCount() + pageB.getPositionCount(), createPage(0).getPositionCount());
+            assertExchangeTotalBufferedBytes(exchange, 0);
+
+            // a partition with few rows gets a copy of them
+            LocalPartitionGenerator partitionGenerator = new LocalPartitionGenerator(new InterpretedHashGenerator(TYPES, new int[] {0}), 2);
+            long otherValue = 1;
+            while (partitionGenerator.getPartition(new Page(createLongsBlock(otherValue)), 0) == partitionGenerator.getPartition(new Page(createLongsBlock(0L)), 0)) {
+                otherValue++;
+            }
+            ImmutableList.Builder<Long> values = ImmutableList.builder();
+            for (int i = 0; i < 99; i++) {
+                values.add(0L);
+            }
+            values.add(otherValue);
+            sink.addPage(new Page(createLongsBlock(values.build())));
+
+            int skewedPartition = partitionGenerator.getPartition(new Page(createLongsBlock(0L)), 0);
+            Page skewedPage = assertPartitionedRemovePage(exchange.getSource(skewedPartition), skewedPartition, 2);
+            assertEquals(skewedPage.getPositionCount(), 99);
+            assertTrue(skewedPage.getBlock(0) instanceof DictionaryBlock);
+            Page compactedPage = assertPartitionedRemovePage(exchange.getSource(1 - skewedPartition), 1 - skewedPartition, 2);
+            assertEquals(compactedPage.getPositionCount(), 1);
+            assertFalse(compactedPage.getBlock(0) instanceof DictionaryBlock);
+            assertExchangeTotalBufferedBytes(exchange, 0);
+
+            // a page going to a single partition is passed as is
+            Page singlePartitionPage = new Page(createLongsBlock(0L, 0L, 0L));
+            sink.addPage(singlePartitionPage);
+            assertSame(exchange.getSource(skewedPartition).removePage(), singlePartitionPage);
+            assertExchangeTotalBufferedBytes(exchange, 0);
+
+            sink.finish();
+            assertSourceFinished(sourceA);
+            assertSourceFinished(sourceB);
+        });
+    }
+
+    @Test
+    public void testPartitionViewsMemoryAccounting()
+    {
+        Session viewsSession = testSessionBuilder()
+                .setSystemProperty(LOCAL_EXCHANGE_PARTITION_VIEWS_ENABLED, "true")
+                .build();
+        int partitionCount = 4;
+        LocalExchangeFactory localExchangeFactory = new LocalExchangeFactory(
+                partitioningProviderManager,
+                viewsSession,
+                FIXED_HASH_DISTRIBUTION,
+                partitionCount,
+                TYPES,
+                ImmutableList.of(0),
+                Optional.empty(),
+                UNGROUPED_EXECUTION,
+                LOCAL_EXCHANGE_MAX_BUFFERED_BYTES);
+        LocalExchangeSinkFactoryId localExchangeSinkFactoryId = localExchangeFactory.newSinkFactoryId();
+        localExchangeFactory.noMoreSinkFactories();
+
+        run(localExchangeFactory, UNGROUPED_EXECUTION, exchange -> {
+            LocalExchangeSinkFactory sinkFactory = exchange.getSinkFactory(localExchangeSinkFactoryId);
+            LocalExchangeSink sink = sinkFactory.createSink();
+            sinkFactory.close();
+            sinkFactory.noMoreSinkFactories();
+
+            long[] partitionValues = findPartitionValues(partitionCount);
+
+            // the partitions get 40%, 30%, 20% and 10% of the rows, for a fair share of 25%
+            int[] partitionRowCounts = {40, 30, 20, 10};
+            ImmutableList.Builder<Long> values = ImmutableList.builder();
+            for (int partition = 0; partition < partitionCount; partition++) {
+                for (int i = 0; i < partitionRowCounts[partition]; i++) {
+                    values.add(partitionValues[partition]);
+                }
+            }
+            Page page = new Page(createLongsBlock(values.build()));
+            sink.addPage(page);
+
+            // the first three partitions get views, which share the page and only account for what they add to it,
+            // while the partition with less than half of its fair share of the rows gets a copy
+            long pageSize = page.getRetainedSizeInBytes();
+            long firstViewSize = viewSizeInBytes(page, IntStream.range(0, 40).toArray());
+            long secondViewSize = viewSizeInBytes(page, IntStream.range(40, 70).toArray());
+            long thirdViewSize = viewSizeInBytes(page, IntStream.range(70, 90).toArray());
+            long copySize = page.copyPositions(IntStream.range(90, 100).toArray(), 0, 10).getRetainedSizeInBytes();
+            assertEquals(exchange.getBufferedBytes(), pageSize + firstViewSize + secondViewSize + thirdViewSize + copySize);
+
+            Page view = assertPartitionedRemovePage(exchange.getSource(0), 0, partitionCount);
+            assertEquals(view.getPositionCount(), 40);
+            assertTrue(view.getBlock(0) instanceof DictionaryBlock);
+            assertEquals(exchange.getBufferedBytes(), pageSize + secondViewSize + thirdViewSize + copySize);
+
+            Page copy = assertPartitionedRemovePage(exchange.getSource(3), 3, partitionCount);
+            assertEquals(copy.getPositionCount(), 10);
+            assertFalse(copy.getBlock(0) instanceof DictionaryBlock);
+            assertEquals(exchange.getBufferedBytes(), pageSize + secondViewSize + thirdViewSize);
+
+            view = assertPartitionedRemovePage(exchange.getSource(1), 1, partitionCount);
+            assertEquals(view.getPositionCount(), 30);
+            assertTrue(view.getBlock(0) instanceof DictionaryBlock);
+            assertEquals(exchange.getBufferedBytes(), pageSize + thirdViewSize);
+
+            // the page is released with the last view sharing it
+            view = assertPartitionedRemovePage(exchange.getSource(2), 2, partitionCount);
+            assertEquals(view.getPositionCount(), 20);
+            assertTrue(view.getBlock(0) instanceof DictionaryBlock);
+            assertExchangeTotalBufferedBytes(exchange, 0);
+
+            sink.finish();
+        });
+    }
+
+    @Test
+    public void testPartitionViewsManyPartitions()
+    {
+        Session viewsSession = testSessionBuilder()
+                .setSystemProperty(LOCAL_EXCHANGE_PARTITION_VIEWS_ENABLED, "true")
+                .build();
+        int partitionCount = 8;
+        LocalExchangeFactory localExchangeFactory = new LocalExchangeFactory(
+                partitioningProviderManager,
+                viewsSession,
+                FIXED_HASH_DISTRIBUTION,
+                partitionCount,
+                TYPES,
+                ImmutableList.of(0),
+                Optional.empty(),
+                UNGROUPED_EXECUTION,
+                LOCAL_EXCHANGE_MAX_BUFFERED_BYTES);
+        LocalExchangeSinkFactoryId localExchangeSinkFactoryId = localExchangeFactory.newSinkFactoryId();
+        localExchangeFactory.noMoreSinkFactories();
+
+        run(localExchangeFactory, UNGROUPED_EXECUTION, exchange -> {
+            LocalExchangeSinkFactory sinkFactory = exchange.getSinkFactory(localExchangeSinkFactoryId);
+            LocalExchangeSink sink = sinkFactory.createSink();
+            sinkFactory.close();
+            sinkFactory.noMoreSinkFactories();
+
+            // every partition gets its fair share of the rows
+            long[] partitionValues = findPartitionValues(partitionCount);
+            int rowsPerPartition = 128;
+            ImmutableList.Builder<Long> values = ImmutableList.builder();
+            for (int i = 0; i < rowsPerPartition; i++) {
+                for (int partition = 0; partition < partitionCount; partition++) {
+                    values.add(partitionValues[partition]);
+                }
+            }
+            Page page = new Page(createLongsBlock(values.build()));
+            sink.addPage(page);
+
+            // every partition gets a view, and the page is accounted for once
+            long expectedBufferedBytes = page.getRetainedSizeInBytes();
+            for (int partition = 0; partition < partitionCount; partition++) {
+                int firstPosition = partition;
+                int[] positions = IntStream.range(0, rowsPerPartition)
+                        .map(i -> i * partitionCount + firstPosition)
+                        .toArray();
+                expectedBufferedBytes += viewSizeInBytes(page, positions);
+            }
+            assertEquals(exchange.getBufferedBytes(), expectedBufferedBytes);
+            assertTrue(exchange.getBufferedBytes() < page.getRetainedSizeInBytes() * 2);
+
+            for (int partition = 0; partition < partitionCount; partition++) {
+                Page view = assertPartitionedRemovePage(exchange.getSource(partition), partition, partitionCount);
+                assertEquals(view.getPositionCount(), rowsPerPartition);
+                assertTrue(view.getBlock(0) instanceof DictionaryBlock);
+                if (partition < partitionCount - 1) {
+                    assertTrue(exchange.getBufferedBytes() > page.getRetainedSizeInBytes());
+                }
+            }
+            assertExchangeTotalBufferedBytes(exchange, 0);
+
+            sink.finish();
+        });
+    }
+
+    private static long[] findPartitionValues(int partitionCount)
+    {
+        LocalPartitionGenerator partitionGenerator = new LocalPartitionGenerator(new InterpretedHashGenerator(TYPES, new int[] {0}), partitionCount);
+        long[] partitionValues = new long[partitionCount];
+        boolean[] found = new boolean[partitionCount];
+        int foundCount = 0;
+        for (long value = 0; foundCount < partitionCount; value++) {
+            int partition = partitionGenerator.getPartition(new Page(createLongsBlock(value)), 0);
+            if (!found[partition]) {
+                found[partition] = true;
+                partitionValues[partition] = value;
+                foundCount++;
+            }
+        }
+        return partitionValues;
+    }
+
+    // the retained size a view adds to the single channel page it is a view of
+    private static long viewSizeInBytes(Page page, int[] positions)
+    {
+        Page view = page.getPositions(positions, 0, positions.length);
+        return view.getBlock(0).getRetainedSizeInBytes() - page.getBlock(0).getRetainedSizeInBytes();
+    }
+
     @Test
     public void testCreatePartitionFunction()
     {
@@ -723,7 +968,7 @@ public class TestLocalExchange
         PageAssertions.assertPageEquals(TYPES, actualPage, expectedPage);
     }
 
-    private static void assertPartitionedRemovePage(LocalExchangeSource source, int partition, int partitionCount)
+    private static Page assertPartitionedRemovePage(LocalExchangeSource source, int partition, int partitionCount)
     {
         assertTrue(source.waitForReading().isDone());
         Page page = source.removePage();
@@ -733,6 +978,7 @@ public class TestLocalExchange
         for (int position = 0; position < page.getPositionCount(); position++) {
             assertEquals(partitionGenerator.getPartition(page, position), partition);
         }
+        return page;
     }
 
     private static void assertSinkCanWrite(LocalExchangeSink sink)
@@ -17,6 +17,8 @@ import com.facebook.presto.Session;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.common.block.Block;
 import com.facebook.presto.common.block.BlockEncodingManager;
+import com.facebook.presto.common.block.DictionaryBlock;
+import com.facebook.presto.common.block.DictionaryId;
 import com.facebook.presto.common.block.RunLengthEncodedBlock;
 import com.facebook.presto.common.block.VariableWidthBlock;
 import com.facebook.presto.common.type.ArrayType;
@@ -43,6 +45,7 @@ import com.facebook.presto.spi.page.SerializedPage;
 import com.facebook.presto.spi.plan.PlanNodeId;
 import com.facebook.presto.sql.planner.OutputPartitioning;
 import com.facebook.presto.testing.TestingTaskContext;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import io.airlift.slice.DynamicSliceOutput;
@@ -74,7 +77,9 @@ import static com.facebook.presto.block.BlockAssertions.createMapType;
 import static com.facebook.presto.block.BlockAssertions.createRLEBlock;
 import static com.facebook.presto.block.BlockAssertions.createRandomLongsBlock;
 import static com.facebook.presto.block.BlockAssertions.createRandomStringBlock;
+import static com.facebook.presto.block.BlockAssertions.createStringsBlock;
 import static com.facebook.presto.block.BlockAssertions.wrapBlock;
+import static com.facebook.presto.common.block.DictionaryId.randomDictionaryId;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
 import static com.facebook.presto.common.type.BooleanType.BOOLEAN;
 import static com.facebook.presto.common.type.DecimalType.createDecimalType;
@@ -98,9 +103,12 @@ import static io.airlift.units.DataSize.Unit.BYTE;
 import static io.airlift.units.DataSize.Unit.GIGABYTE;
 import static io.airlift.units.DataSize.Unit.KILOBYTE;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.lang.String.format;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestOptimizedPartitionedOutputOperator
 {
@@ -112,6 +120,8 @@ public class TestOptimizedPartitionedOutputOperator
     private static final int PARTITION_COUNT = 16;
     private static final int PAGE_COUNT = 50;
     private static final int POSITION_COUNT = 100;
+    // enough rows for each partition to get more rows of a page than the 10 entries of its dictionary
+    private static final int DICTIONARY_PAGE_POSITION_COUNT = POSITION_COUNT * PARTITION_COUNT;
 
     private static final Random RANDOM = new Random(0);
 
@@ -620,6 +630,65 @@ public class TestOptimizedPartitionedOutputOperator
         testPartitioned(types, ImmutableList.of(page), new DataSize(1, KILOBYTE));
     }
 
+    @Test
+    public void testPartitionedWithDictionaryEncoding()
+    {
+        // Consecutive pages over the same dictionary, as read from one ORC stripe
+        Block dictionary = createRandomStringBlock(10, 0.2f, 10);
+        DictionaryId dictionaryId = randomDictionaryId();
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            pages.add(createPageWithDictionary(dictionary, dictionaryId, DICTIONARY_PAGE_POSITION_COUNT));
+        }
+
+        // A page over another dictionary, a flat page and a page whose dictionary has more entries than its rows in each partition
+        pages.add(createPageWithDictionary(createRandomStringBlock(10, 0.2f, 10), randomDictionaryId(), DICTIONARY_PAGE_POSITION_COUNT));
+        pages.add(new Page(createRandomLongsBlock(POSITION_COUNT, 0.0f), createRandomStringBlock(POSITION_COUNT, 0.2f, 10)));
+        pages.add(createPageWithDictionary(createRandomStringBlock(10_000, 0.2f, 10), randomDictionaryId(), DICTIONARY_PAGE_POSITION_COUNT));
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            pages.add(createPageWithDictionary(dictionary, dictionaryId, DICTIONARY_PAGE_POSITION_COUNT));
+        }
+
+        List<Type> types = ImmutableList.of(BIGINT, VARCHAR);
+        Map<Integer, List<Page>> outputPages = testPartitioned(types, pages, new DataSize(128, MEGABYTE), true).getPages();
+        for (List<Page> partitionPages : outputPages.values()) {
+            assertTrue(partitionPages.get(0).getBlock(1) instanceof DictionaryBlock);
+            assertFalse(partitionPages.get(0).getBlock(0) instanceof DictionaryBlock);
+        }
+
+        testPartitioned(types, pages, new DataSize(64, KILOBYTE), true);
+        testPartitioned(types, pages, new DataSize(1, KILOBYTE), true);
+    }
+
+    @Test
+    public void testDictionaryEncodingShrinksSerializedPages()
+    {
+        // Every page has its own dictionary, as with the per-page dictionaries of ORC
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            List<String> values = new ArrayList<>();
+            for (int value = 0; value < 10; value++) {
+                values.add(Strings.repeat(String.valueOf((char) ('a' + value)), 100) + i);
+            }
+            pages.add(createPageWithDictionary(createStringsBlock(values), randomDictionaryId(), DICTIONARY_PAGE_POSITION_COUNT));
+        }
+
+        List<Type> types = ImmutableList.of(BIGINT, VARCHAR);
+        for (DataSize maxMemory : ImmutableList.of(new DataSize(128, MEGABYTE), new DataSize(64, KILOBYTE))) {
+            TestingPartitionedOutputBuffer flatOutput = testPartitioned(types, pages, maxMemory, false);
+            TestingPartitionedOutputBuffer dictionaryOutput = testPartitioned(types, pages, maxMemory, true);
+
+            // each row takes a long, a value of more than 100 bytes when flattened, and an id and a share of the 10 entries of each page otherwise
+            assertTrue(dictionaryOutput.getSerializedSizeInBytes() * 3 < flatOutput.getSerializedSizeInBytes(),
+                    format("dictionary encoded size %s, flattened size %s", dictionaryOutput.getSerializedSizeInBytes(), flatOutput.getSerializedSizeInBytes()));
+            for (List<Page> partitionPages : dictionaryOutput.getPages().values()) {
+                for (Page page : partitionPages) {
+                    assertTrue(page.getBlock(1) instanceof DictionaryBlock);
+                }
+            }
+        }
+    }
+
     private void testPartitionedSinglePage(List<Type> targetTypes)
     {
         List<Type> types = updateBlockTypesWithHashBlockAndNullBlock(targetTypes, true, false);
@@ -688,15 +757,26 @@ public class TestOptimizedPartitionedOutputOperator
 
     private void testPartitionedForZeroBlocks(List<Type> types, List<Page> pages, DataSize maxMemory)
     {
-        testPartitioned(types, pages, maxMemory, ImmutableList.of(), new InterpretedHashGenerator(ImmutableList.of(), new int[0]));
+        testPartitioned(types, pages, maxMemory, ImmutableList.of(), new InterpretedHashGenerator(ImmutableList.of(), new int[0]), false);
     }
 
     private void testPartitioned(List<Type> types, List<Page> pages, DataSize maxMemory)
     {
-        testPartitioned(types, pages, maxMemory, ImmutableList.of(0), new PrecomputedHashGenerator(0));
+        testPartitioned(types, pages, maxMemory, false);
+    }
+
+    private TestingPartitionedOutputBuffer testPartitioned(List<Type> types, List<Page> pages, DataSize maxMemory, boolean dictionaryEncodingEnabled)
+    {
+        return testPartitioned(types, pages, maxMemory, ImmutableList.of(0), new PrecomputedHashGenerator(0), dictionaryEncodingEnabled);
     }
 
-    private void testPartitioned(List<Type> types, List<Page> pages, DataSize maxMemory, List<Integer> partitionChannel, HashGenerator hashGenerator)
+    private TestingPartitionedOutputBuffer testPartitioned(
+            List<Type> types,
+            List<Page> pages,
+            DataSize maxMemory,
+            List<Integer> partitionChannel,
+            HashGenerator hashGenerator,
+            boolean dictionaryEncodingEnabled)
     {
         TestingPartitionedOutputBuffer outputBuffer = createPartitionedOutputBuffer();
         PartitionFunction partitionFunction = new LocalPartitionGenerator(hashGenerator, PARTITION_COUNT);
@@ -706,7 +786,8 @@ public class TestOptimizedPartitionedOutputOperator
                 partitionFunction,
                 outputBuffer,
                 OptionalInt.empty(),
-                maxMemory);
+                maxMemory,
+                dictionaryEncodingEnabled);
 
         Map<Integer, List<Page>> expectedPageList = new HashMap<>();
 
@@ -738,6 +819,8 @@ public class TestOptimizedPartitionedOutputOperator
             int key = entry.getKey();
             assertPageEquals(types, actualPages.get(key), entry.getValue());
         }
+
+        return outputBuffer;
     }
 
     private void testReplicated(List<Type> types, List<Page> pages, DataSize maxMemory)
@@ -750,7 +833,8 @@ public class TestOptimizedPartitionedOutputOperator
                 partitionFunction,
                 outputBuffer,
                 OptionalInt.of(types.size() - 1),
-                maxMemory);
+                maxMemory,
+                false);
 
         for (Page page : pages) {
             operator.addInput(page);
@@ -876,7 +960,8 @@ public class TestOptimizedPartitionedOutputOperator
                     partitionFunction,
                     outputBuffer,
                     OptionalInt.of(replicatedTypes.size() - 1),
-                    MAX_MEMORY);
+                    MAX_MEMORY,
+                    false);
         }
         else {
             return createOptimizedPartitionedOutputOperator(
@@ -885,7 +970,8 @@ public class TestOptimizedPartitionedOutputOperator
                     partitionFunction,
                     outputBuffer,
                     OptionalInt.empty(),
-                    MAX_MEMORY);
+                    MAX_MEMORY,
+                    false);
         }
     }
 
@@ -895,7 +981,8 @@ public class TestOptimizedPartitionedOutputOperator
             PartitionFunction partitionFunction,
             PartitionedOutputBuffer buffer,
             OptionalInt nullChannel,
-            DataSize maxMemory)
+            DataSize maxMemory,
+            boolean dictionaryEncodingEnabled)
     {
         PagesSerdeFactory serdeFactory = new PagesSerdeFactory(new BlockEncodingManager(), false);
 
@@ -906,7 +993,7 @@ public class TestOptimizedPartitionedOutputOperator
                 false,
                 nullChannel);
 
-        OptimizedPartitionedOutputFactory operatorFactory = new OptimizedPartitionedOutputFactory(buffer, maxMemory);
+        OptimizedPartitionedOutputFactory operatorFactory = new OptimizedPartitionedOutputFactory(buffer, maxMemory, dictionaryEncodingEnabled);
 
         return (OptimizedPartitionedOutputOperator) operatorFactory
                 .createOutputOperator(0, new PlanNodeId("plan-node-0"), types, Function.identity(), Optional.of(outputPartitioning), serdeFactory)
@@ -938,6 +1025,15 @@ public class TestOptimizedPartitionedOutputOperator
                 SCHEDULER);
     }
 
+    private static Page createPageWithDictionary(Block dictionary, DictionaryId dictionaryId, int positionCount)
+    {
+        int[] ids = new int[positionCount];
+        for (int i = 0; i < positionCount; i++) {
+            ids[i] = RANDOM.nextInt(dictionary.getPositionCount());
+        }
+        return new Page(createRandomLongsBlock(positionCount, 0.0f), new DictionaryBlock(positionCount, dictionary, ids, dictionaryId));
+    }
+
     private static Block createVariableWidthBlockOverSliceView(int entries)
     {
         // Create a slice view whose address starts in the middle of the original slice, and length is half of original slice
@@ -955,6 +1051,7 @@ public class TestOptimizedPartitionedOutputOperator
             extends PartitionedOutputBuffer
     {
         private final Map<Integer, List<Page>> pages = new HashMap<>();
+        private long serializedSizeInBytes;
 
         public TestingPartitionedOutputBuffer(
                 String taskInstanceId,
@@ -971,6 +1068,7 @@ public class TestOptimizedPartitionedOutputOperator
         public void enqueue(Lifespan lifespan, int partitionNumber, List<SerializedPage> pages)
         {
             this.pages.computeIfAbsent(partitionNumber, k -> new ArrayList<>());
+            pages.forEach(page -> serializedSizeInBytes += page.getSizeInBytes());
             pages.stream().map(PAGES_SERDE::deserialize).forEach(this.pages.get(partitionNumber)::add);
         }
 
@@ -978,5 +1076,10 @@ public class TestOptimizedPartitionedOutputOperator
         {
             return pages;
         }
+
+        public long getSerializedSizeInBytes()
+        {
+            return serializedSizeInBytes;
+        }
     }
 }
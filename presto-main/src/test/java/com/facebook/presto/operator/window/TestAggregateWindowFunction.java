@@ -13,12 +13,15 @@
  */
 package com.facebook.presto.operator.window;
 
+import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.testing.MaterializedResult;
 import org.intellij.lang.annotations.Language;
 import org.testng.annotations.Test;
 
+import static com.facebook.airlift.testing.Assertions.assertEqualsIgnoreOrder;
 import static com.facebook.presto.SessionTestUtils.TEST_SESSION;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
+import static com.facebook.presto.common.type.DoubleType.DOUBLE;
 import static com.facebook.presto.common.type.IntegerType.INTEGER;
 import static com.facebook.presto.common.type.VarcharType.VARCHAR;
 import static com.facebook.presto.testing.MaterializedResult.resultBuilder;
@@ -530,4 +533,147 @@ public class TestAggregateWindowFunction
                         .row(null, null, null)
                         .build());
     }
+
+    @Test
+    public void testSumBigintRolling()
+    {
+        assertWindowQueryWithNulls("sum(orderkey) OVER (PARTITION BY orderstatus ORDER BY orderkey " +
+                        "ROWS 1 PRECEDING)",
+                resultBuilder(TEST_SESSION, BIGINT, VARCHAR, BIGINT)
+                        .row(3L, "F", 3L)
+                        .row(5L, "F", 8L)
+                        .row(6L, "F", 11L)
+                        .row(null, "F", 6L)
+                        .row(34L, "O", 34L)
+                        .row(null, "O", 34L)
+                        .row(1L, null, 1L)
+                        .row(7L, null, 8L)
+                        .row(null, null, 7L)
+                        .row(null, null, null)
+                        .build());
+
+        assertWindowQueryWithNulls("sum(orderkey) OVER (PARTITION BY orderstatus ORDER BY orderkey " +
+                        "ROWS BETWEEN 1 PRECEDING AND 1 FOLLOWING)",
+                resultBuilder(TEST_SESSION, BIGINT, VARCHAR, BIGINT)
+                        .row(3L, "F", 8L)
+                        .row(5L, "F", 14L)
+                        .row(6L, "F", 11L)
+                        .row(null, "F", 6L)
+                        .row(34L, "O", 34L)
+                        .row(null, "O", 34L)
+                        .row(1L, null, 8L)
+                        .row(7L, null, 8L)
+                        .row(null, null, 7L)
+                        .row(null, null, null)
+                        .build());
+    }
+
+    @Test
+    public void testSumBigintRollingNearOverflow()
+    {
+        // the running sum removes the rows that leave the frame before it adds the new ones, so it stays within the range of bigint
+        MaterializedResult actual = queryRunner.execute("SELECT id, sum(value) OVER (ORDER BY id ROWS 1 PRECEDING) " +
+                "FROM (VALUES (1, BIGINT '9223372036854775807'), (2, BIGINT '-1'), (3, BIGINT '-9223372036854775807')) t(id, value)");
+        MaterializedResult expected = resultBuilder(TEST_SESSION, INTEGER, BIGINT)
+                .row(1, Long.MAX_VALUE)
+                .row(2, Long.MAX_VALUE - 1)
+                .row(3, Long.MIN_VALUE)
+                .build();
+        assertEqualsIgnoreOrder(actual.getMaterializedRows(), expected.getMaterializedRows());
+    }
+
+    @Test(expectedExceptions = PrestoException.class, expectedExceptionsMessageRegExp = "bigint addition overflow: 1 \\+ 9223372036854775807")
+    public void testSumBigintRollingOverflow()
+    {
+        // the frame is evaluated by a fresh accumulator, which fails the same way as without the running sum
+        queryRunner.execute("SELECT sum(value) OVER (ORDER BY value ROWS 1 PRECEDING) " +
+                "FROM (VALUES BIGINT '1', BIGINT '9223372036854775807') t(value)");
+    }
+
+    @Test
+    public void testCountValuesRolling()
+    {
+        assertWindowQueryWithNulls("count(orderkey) OVER (PARTITION BY orderstatus ORDER BY orderkey " +
+                        "ROWS 1 PRECEDING)",
+                resultBuilder(TEST_SESSION, BIGINT, VARCHAR, BIGINT)
+                        .row(3L, "F", 1L)
+                        .row(5L, "F", 2L)
+                        .row(6L, "F", 2L)
+                        .row(null, "F", 1L)
+                        .row(34L, "O", 1L)
+                        .row(null, "O", 1L)
+                        .row(1L, null, 1L)
+                        .row(7L, null, 2L)
+                        .row(null, null, 1L)
+                        .row(null, null, 0L)
+                        .build());
+    }
+
+    @Test
+    public void testMinMaxRolling()
+    {
+        assertWindowQuery("min(orderkey) OVER (PARTITION BY orderstatus ORDER BY orderkey " +
+                        "ROWS 2 PRECEDING)",
+                resultBuilder(TEST_SESSION, INTEGER, VARCHAR, INTEGER)
+                        .row(3, "F", 3)
+                        .row(5, "F", 3)
+                        .row(6, "F", 3)
+                        .row(33, "F", 5)
+                        .row(1, "O", 1)
+                        .row(2, "O", 1)
+                        .row(4, "O", 1)
+                        .row(7, "O", 2)
+                        .row(32, "O", 4)
+                        .row(34, "O", 7)
+                        .build());
+
+        assertWindowQuery("min(orderkey) OVER (PARTITION BY orderstatus ORDER BY orderkey " +
+                        "ROWS BETWEEN 1 PRECEDING AND 1 FOLLOWING)",
+                resultBuilder(TEST_SESSION, INTEGER, VARCHAR, INTEGER)
+                        .row(3, "F", 3)
+                        .row(5, "F", 3)
+                        .row(6, "F", 5)
+                        .row(33, "F", 6)
+                        .row(1, "O", 1)
+                        .row(2, "O", 1)
+                        .row(4, "O", 2)
+                        .row(7, "O", 4)
+                        .row(32, "O", 7)
+                        .row(34, "O", 32)
+                        .build());
+
+        assertWindowQuery("max(orderkey) OVER (PARTITION BY orderstatus ORDER BY orderkey DESC " +
+                        "ROWS BETWEEN 2 FOLLOWING AND 4 FOLLOWING)",
+                resultBuilder(TEST_SESSION, INTEGER, VARCHAR, INTEGER)
+                        .row(33, "F", 5)
+                        .row(6, "F", 3)
+                        .row(5, "F", null)
+                        .row(3, "F", null)
+                        .row(34, "O", 7)
+                        .row(32, "O", 4)
+                        .row(7, "O", 2)
+                        .row(4, "O", 1)
+                        .row(2, "O", null)
+                        .row(1, "O", null)
+                        .build());
+    }
+
+    @Test
+    public void testAvgRolling()
+    {
+        assertWindowQuery("avg(orderkey) OVER (PARTITION BY orderstatus ORDER BY orderkey " +
+                        "ROWS 1 PRECEDING)",
+                resultBuilder(TEST_SESSION, INTEGER, VARCHAR, DOUBLE)
+                        .row(3, "F", 3.0)
+                        .row(5, "F", 4.0)
+                        .row(6, "F", 5.5)
+                        .row(33, "F", 19.5)
+                        .row(1, "O", 1.0)
+                        .row(2, "O", 1.5)
+                        .row(4, "O", 3.0)
+                        .row(7, "O", 5.5)
+                        .row(32, "O", 19.5)
+                        .row(34, "O", 33.0)
+                        .build());
+    }
 }
@@ -13,9 +13,11 @@
  */
 package com.facebook.presto.spiller;
 
+import com.facebook.presto.Session;
 import com.facebook.presto.common.Page;
 import com.facebook.presto.common.block.BlockBuilder;
 import com.facebook.presto.common.block.BlockEncodingManager;
+import com.facebook.presto.common.block.VariableWidthBlock;
 import com.facebook.presto.common.type.Type;
 import com.facebook.presto.memory.context.LocalMemoryContext;
 import com.facebook.presto.operator.PageAssertions;
@@ -27,6 +29,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import io.airlift.slice.InputStreamSliceInput;
+import io.airlift.slice.Slice;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.Test;
 
@@ -36,10 +39,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
+import static com.facebook.presto.SystemSessionProperties.SPILL_MEMORY_MAPPED_READ_ENABLED;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
 import static com.facebook.presto.common.type.DoubleType.DOUBLE;
 import static com.facebook.presto.common.type.VarbinaryType.VARBINARY;
 import static com.facebook.presto.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
+import static com.facebook.presto.testing.TestingSession.testSessionBuilder;
 import static com.google.common.io.MoreFiles.deleteRecursively;
 import static com.google.common.io.MoreFiles.listFiles;
 import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
@@ -48,6 +53,7 @@ import static java.lang.Double.doubleToLongBits;
 import static java.nio.file.Files.newInputStream;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 public class TestFileSingleStreamSpiller
@@ -69,14 +75,14 @@ public class TestFileSingleStreamSpiller
     public void testSpill()
             throws Exception
     {
-        assertSpill(false, false);
+        assertSpill(false, false, false);
     }
 
     @Test
     public void testSpillCompression()
             throws Exception
     {
-        assertSpill(true, false);
+        assertSpill(true, false, false);
     }
 
     @Test
@@ -84,17 +90,108 @@ public class TestFileSingleStreamSpiller
             throws Exception
     {
         // Both with compression enabled and disabled
-        assertSpill(false, true);
+        assertSpill(false, true, false);
     }
 
     @Test
     public void testSpillEncryptionWithCompression()
             throws Exception
     {
-        assertSpill(true, true);
+        assertSpill(true, true, false);
     }
 
-    private void assertSpill(boolean compression, boolean encryption)
+    @Test
+    public void testSpillMemoryMappedRead()
+            throws Exception
+    {
+        assertSpill(false, false, true);
+    }
+
+    @Test
+    public void testSpillMemoryMappedReadWithCompressionAndEncryption()
+            throws Exception
+    {
+        assertSpill(true, true, true);
+    }
+
+    @Test
+    public void testRepeatedReads()
+            throws Exception
+    {
+        File spillPath = new File(tempDirectory, UUID.randomUUID().toString());
+        FileSingleStreamSpillerFactory spillerFactory = new FileSingleStreamSpillerFactory(
+                executor, // executor won't be closed, because we don't call destroy() on the spiller factory
+                new BlockEncodingManager(),
+                new SpillerStats(),
+                ImmutableList.of(spillPath.toPath()),
+                1.0,
+                false,
+                false);
+        LocalMemoryContext memoryContext = newSimpleAggregatedMemoryContext().newLocalMemoryContext("test");
+        FileSingleStreamSpiller spiller = (FileSingleStreamSpiller) spillerFactory.create(TYPES, new TestingSpillContext(createSession(false)), memoryContext);
+
+        Page page = buildPage();
+        spiller.spill(Iterators.forArray(page, page)).get();
+
+        // every read has its own stream, which is released once the read is finished
+        Iterator<Page> firstRead = spiller.getSpilledPages();
+        Iterator<Page> secondRead = spiller.getSpilledPages();
+        assertEquals(spiller.getOpenReaderCount(), 2);
+        PageAssertions.assertPageEquals(TYPES, page, firstRead.next());
+        PageAssertions.assertPageEquals(TYPES, page, secondRead.next());
+        PageAssertions.assertPageEquals(TYPES, page, firstRead.next());
+        assertFalse(firstRead.hasNext());
+        assertEquals(spiller.getOpenReaderCount(), 1);
+
+        // the stream of an unfinished read is released when the spiller is closed
+        spiller.close();
+        assertEquals(spiller.getOpenReaderCount(), 0);
+        assertEquals(listFiles(spillPath.toPath()).size(), 0);
+        assertEquals(memoryContext.getBytes(), 0);
+    }
+
+    @Test
+    public void testMemoryMappedReadPagesOutliveSpiller()
+            throws Exception
+    {
+        File spillPath = new File(tempDirectory, UUID.randomUUID().toString());
+        FileSingleStreamSpillerFactory spillerFactory = new FileSingleStreamSpillerFactory(
+                executor, // executor won't be closed, because we don't call destroy() on the spiller factory
+                new BlockEncodingManager(),
+                new SpillerStats(),
+                ImmutableList.of(spillPath.toPath()),
+                1.0,
+                false,
+                false);
+        LocalMemoryContext memoryContext = newSimpleAggregatedMemoryContext().newLocalMemoryContext("test");
+        FileSingleStreamSpiller spiller = (FileSingleStreamSpiller) spillerFactory.create(TYPES, new TestingSpillContext(createSession(true)), memoryContext);
+
+        Page page = buildPage();
+        spiller.spill(Iterators.forArray(page, page)).get();
+        long fileSize = listFiles(spillPath.toPath()).get(0).toFile().length();
+
+        // the mapped reads are tracked like the streamed ones
+        Iterator<Page> unfinishedRead = spiller.getSpilledPages();
+        unfinishedRead.next();
+        assertEquals(spiller.getOpenReaderCount(), 1);
+        List<Page> spilledPages = ImmutableList.copyOf(spiller.getSpilledPages());
+        assertEquals(spiller.getOpenReaderCount(), 1);
+        spiller.close();
+        assertEquals(spiller.getOpenReaderCount(), 0);
+        assertEquals(listFiles(spillPath.toPath()).size(), 0);
+
+        // the pages reference the mapped file rather than a copy of it, which keeps it mapped once it is deleted,
+        // and each of them only retains the size of its own data
+        assertEquals(spilledPages.size(), 2);
+        for (Page spilledPage : spilledPages) {
+            PageAssertions.assertPageEquals(TYPES, page, spilledPage);
+            Slice rawSlice = ((VariableWidthBlock) spilledPage.getBlock(2)).getRawSlice(0);
+            assertFalse(rawSlice.hasByteArray());
+            assertTrue(rawSlice.getRetainedSize() < fileSize);
+        }
+    }
+
+    private void assertSpill(boolean compression, boolean encryption, boolean memoryMappedRead)
             throws Exception
     {
         File spillPath = new File(tempDirectory, UUID.randomUUID().toString());
@@ -107,14 +204,14 @@ public class TestFileSingleStreamSpiller
                 compression,
                 encryption);
         LocalMemoryContext memoryContext = newSimpleAggregatedMemoryContext().newLocalMemoryContext("test");
-        SingleStreamSpiller singleStreamSpiller = spillerFactory.create(TYPES, new TestingSpillContext(), memoryContext);
+        SingleStreamSpiller singleStreamSpiller = spillerFactory.create(TYPES, new TestingSpillContext(createSession(memoryMappedRead)), memoryContext);
         assertTrue(singleStreamSpiller instanceof FileSingleStreamSpiller);
         FileSingleStreamSpiller spiller = (FileSingleStreamSpiller) singleStreamSpiller;
 
         Page page = buildPage();
 
         // The spillers will reserve memory in their constructors
-        assertEquals(memoryContext.getBytes(), 4096);
+        assertEquals(memoryContext.getBytes(), FileSingleStreamSpiller.RESERVED_BYTES);
         spiller.spill(page).get();
         spiller.spill(Iterators.forArray(page, page, page)).get();
         assertEquals(listFiles(spillPath.toPath()).size(), 1);
@@ -133,7 +230,7 @@ public class TestFileSingleStreamSpiller
         // assertEquals(memoryContext.getBytes(), 0);
 
         Iterator<Page> spilledPagesIterator = spiller.getSpilledPages();
-        assertEquals(memoryContext.getBytes(), FileSingleStreamSpiller.BUFFER_SIZE);
+        assertEquals(memoryContext.getBytes(), FileSingleStreamSpiller.RESERVED_BYTES);
         ImmutableList<Page> spilledPages = ImmutableList.copyOf(spilledPagesIterator);
         // The spillers release their memory reservations when they are closed, therefore at this point
         // they will have non-zero memory reservation.
@@ -144,11 +241,21 @@ public class TestFileSingleStreamSpiller
             PageAssertions.assertPageEquals(TYPES, page, spilledPages.get(i));
         }
 
+        // the spilled pages can be read again
+        assertEquals(ImmutableList.copyOf(spiller.getSpilledPages()).size(), 4);
+
         spiller.close();
         assertEquals(listFiles(spillPath.toPath()).size(), 0);
         assertEquals(memoryContext.getBytes(), 0);
     }
 
+    private static Session createSession(boolean memoryMappedRead)
+    {
+        return testSessionBuilder()
+                .setSystemProperty(SPILL_MEMORY_MAPPED_READ_ENABLED, String.valueOf(memoryMappedRead))
+                .build();
+    }
+
     private Page buildPage()
     {
         BlockBuilder col1 = BIGINT.createBlockBuilder(null, 1);
@@ -104,6 +104,69 @@ public class TestFileSingleStreamSpillerFactory
         assertEquals(listFiles(spillPath2.toPath()).size(), 0);
     }
 
+    @Test
+    public void testPrefersFasterSpillPath()
+            throws Exception
+    {
+        FileSingleStreamSpillerFactory spillerFactory = createSpillerFactory();
+        // the first path writes 1 byte per nanosecond, the second one 4 bytes per nanosecond
+        spillerFactory.getSpillPathLoad(spillPath1.toPath()).recordWrite(64 * 1024 * 1024, 64 * 1024 * 1024);
+        spillerFactory.getSpillPathLoad(spillPath2.toPath()).recordWrite(64 * 1024 * 1024, 16 * 1024 * 1024);
+
+        List<SingleStreamSpiller> spillers = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            spillers.add(spillerFactory.create(ImmutableList.of(BIGINT), new TestingSpillContext(), newSimpleAggregatedMemoryContext().newLocalMemoryContext("test")));
+        }
+        assertEquals(listFiles(spillPath1.toPath()).size(), 0);
+        assertEquals(listFiles(spillPath2.toPath()).size(), 4);
+
+        // with four spills queued on the faster path, it is expected to finish a new spill later than the idle slower path
+        spillerFactory.getSpillPathLoad(spillPath2.toPath()).spillStarted();
+        spillerFactory.getSpillPathLoad(spillPath2.toPath()).spillStarted();
+        spillerFactory.getSpillPathLoad(spillPath2.toPath()).spillStarted();
+        spillerFactory.getSpillPathLoad(spillPath2.toPath()).spillStarted();
+        spillers.add(spillerFactory.create(ImmutableList.of(BIGINT), new TestingSpillContext(), newSimpleAggregatedMemoryContext().newLocalMemoryContext("test")));
+        assertEquals(listFiles(spillPath1.toPath()).size(), 1);
+        assertEquals(listFiles(spillPath2.toPath()).size(), 4);
+
+        spillers.forEach(SingleStreamSpiller::close);
+    }
+
+    @Test
+    public void testPrefersLessBusySpillPath()
+            throws Exception
+    {
+        FileSingleStreamSpillerFactory spillerFactory = createSpillerFactory();
+        // without throughput observed, only the spills in progress are compared
+        spillerFactory.getSpillPathLoad(spillPath1.toPath()).spillStarted();
+
+        List<SingleStreamSpiller> spillers = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            spillers.add(spillerFactory.create(ImmutableList.of(BIGINT), new TestingSpillContext(), newSimpleAggregatedMemoryContext().newLocalMemoryContext("test")));
+        }
+        assertEquals(listFiles(spillPath1.toPath()).size(), 0);
+        assertEquals(listFiles(spillPath2.toPath()).size(), 3);
+
+        spillerFactory.getSpillPathLoad(spillPath1.toPath()).spillFinished();
+        spillers.add(spillerFactory.create(ImmutableList.of(BIGINT), new TestingSpillContext(), newSimpleAggregatedMemoryContext().newLocalMemoryContext("test")));
+        assertEquals(listFiles(spillPath1.toPath()).size(), 1);
+        assertEquals(listFiles(spillPath2.toPath()).size(), 3);
+
+        spillers.forEach(SingleStreamSpiller::close);
+    }
+
+    private FileSingleStreamSpillerFactory createSpillerFactory()
+    {
+        return new FileSingleStreamSpillerFactory(
+                executor, // executor won't be closed, because we don't call destroy() on the spiller factory
+                new BlockEncodingManager(),
+                new SpillerStats(),
+                ImmutableList.of(spillPath1.toPath(), spillPath2.toPath()),
+                1.0,
+                false,
+                false);
+    }
+
     private Page buildPage()
     {
         BlockBuilder col1 = BIGINT.createBlockBuilder(null, 1);
@@ -37,6 +37,7 @@ public class TestNodeSpillConfig
                 .setQueryMaxSpillPerNode(new DataSize(100, GIGABYTE))
                 .setSpillCompressionEnabled(false)
                 .setSpillEncryptionEnabled(false)
+                .setSpillMemoryMappedReadEnabled(false)
                 .setTempStorageBufferSize(new DataSize(4, KILOBYTE)));
     }
 
@@ -49,6 +50,7 @@ public class TestNodeSpillConfig
                 .put("experimental.query-max-spill-per-node", "15 MB")
                 .put("experimental.spill-compression-enabled", "true")
                 .put("experimental.spill-encryption-enabled", "true")
+                .put("experimental.spill-memory-mapped-read-enabled", "true")
                 .put("experimental.temp-storage-buffer-size", "24MB")
                 .build();
 
@@ -58,6 +60,7 @@ public class TestNodeSpillConfig
                 .setQueryMaxSpillPerNode(new DataSize(15, MEGABYTE))
                 .setSpillCompressionEnabled(true)
                 .setSpillEncryptionEnabled(true)
+                .setSpillMemoryMappedReadEnabled(true)
                 .setTempStorageBufferSize(new DataSize(24, MEGABYTE));
 
         assertFullMapping(properties, expected);
@@ -17,10 +17,23 @@ import com.facebook.presto.Session;
 import com.facebook.presto.operator.SpillContext;
 
 import static com.facebook.presto.testing.TestingSession.testSessionBuilder;
+import static java.util.Objects.requireNonNull;
 
 public class TestingSpillContext
         implements SpillContext
 {
+    private final Session session;
+
+    public TestingSpillContext()
+    {
+        this(testSessionBuilder().build());
+    }
+
+    public TestingSpillContext(Session session)
+    {
+        this.session = requireNonNull(session, "session is null");
+    }
+
     @Override
     public void updateBytes(long bytes)
     {
@@ -29,6 +42,6 @@ public class TestingSpillContext
     @Override
     public Session getSession()
     {
-        return testSessionBuilder().build();
+        return session;
     }
 }
@@ -15,6 +15,7 @@ package com.facebook.presto.sql.analyzer;
 
 import com.facebook.airlift.configuration.ConfigurationFactory;
 import com.facebook.airlift.configuration.testing.ConfigAssertions;
+import com.facebook.presto.execution.buffer.ExchangeCompressionCodec;
 import com.facebook.presto.sql.analyzer.FeaturesConfig.AggregationIfToFilterRewriteStrategy;
 import com.facebook.presto.sql.analyzer.FeaturesConfig.CteMaterializationStrategy;
 import com.facebook.presto.sql.analyzer.FeaturesConfig.JoinDistributionType;
@@ -46,6 +47,7 @@ import static com.facebook.presto.sql.analyzer.FeaturesConfig.TaskSpillingStrate
 import static com.facebook.presto.sql.analyzer.FeaturesConfig.TaskSpillingStrategy.PER_TASK_MEMORY_THRESHOLD;
 import static com.facebook.presto.sql.tree.CreateView.Security.DEFINER;
 import static com.facebook.presto.sql.tree.CreateView.Security.INVOKER;
+import static io.airlift.units.DataSize.Unit.BYTE;
 import static io.airlift.units.DataSize.Unit.GIGABYTE;
 import static io.airlift.units.DataSize.Unit.KILOBYTE;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
@@ -70,6 +72,7 @@ public class TestFeaturesConfig
                 .setMaxFailedTaskPercentage(0.3)
                 .setConcurrentLifespansPerTask(0)
                 .setFastInequalityJoins(true)
+                .setBigintJoinHashEnabled(true)
                 .setColocatedJoinsEnabled(true)
                 .setSpatialJoinsEnabled(true)
                 .setJoinReorderingStrategy(JoinReorderingStrategy.AUTOMATIC)
@@ -96,6 +99,7 @@ public class TestFeaturesConfig
                 .setOptimizeHashGeneration(true)
                 .setPushTableWriteThroughUnion(true)
                 .setDictionaryAggregation(false)
+                .setFlatGroupByHashEnabled(true)
                 .setConfidenceBasedBroadcastEnabled(false)
                 .setRetryQueryWithHistoryBasedOptimizationEnabled(false)
                 .setTreatLowConfidenceZeroEstimationAsUnknownEnabled(false)
@@ -109,10 +113,13 @@ public class TestFeaturesConfig
                 .setDistinctAggregationLargeBlockSizeThreshold(DataSize.valueOf("50MB"))
                 .setOrderByAggregationSpillEnabled(true)
                 .setWindowSpillEnabled(true)
+                .setSemiJoinSpillEnabled(true)
+                .setMarkDistinctSpillEnabled(true)
                 .setOrderBySpillEnabled(true)
                 .setTopNSpillEnabled(true)
                 .setAggregationOperatorUnspillMemoryLimit(DataSize.valueOf("4MB"))
                 .setTopNOperatorUnspillMemoryLimit(DataSize.valueOf("4MB"))
+                .setNestedLoopJoinSpillProbeBlockSize(DataSize.valueOf("16MB"))
                 .setSpillerSpillPaths("")
                 .setSpillerThreads(4)
                 .setSpillMaxUsedSpaceThreshold(0.9)
@@ -131,6 +138,7 @@ public class TestFeaturesConfig
                 .setDynamicFilteringMaxPerDriverRowCount(100)
                 .setDynamicFilteringMaxPerDriverSize(new DataSize(10, KILOBYTE))
                 .setDynamicFilteringRangeRowLimitPerDriver(0)
+                .setDynamicFilteringBloomFilterSizePerDriver(new DataSize(0, BYTE))
                 .setFragmentResultCachingEnabled(false)
                 .setEnableStatsCalculator(true)
                 .setEnableStatsCollectionForTemporaryTable(false)
@@ -139,10 +147,14 @@ public class TestFeaturesConfig
                 .setDefaultFilterFactorEnabled(false)
                 .setExchangeCompressionEnabled(false)
                 .setExchangeChecksumEnabled(false)
+                .setExchangeCompressionCodec(ExchangeCompressionCodec.LZ4)
+                .setExchangeAdaptiveCompressionNetworkThroughput(new DataSize(128, MEGABYTE))
+                .setLocalExchangePartitionViewsEnabled(false)
                 .setEnableIntermediateAggregations(false)
                 .setPushAggregationThroughJoin(true)
                 .setForceSingleNodeOutput(true)
                 .setPagesIndexEagerCompactionEnabled(false)
+                .setPagesIndexNormalizedKeySortEnabled(true)
                 .setFilterAndProjectMinOutputPageSize(new DataSize(500, KILOBYTE))
                 .setFilterAndProjectMinOutputPageRowCount(256)
                 .setUseMarkDistinct(true)
@@ -152,9 +164,12 @@ public class TestFeaturesConfig
                 .setPartialAggregationByteReductionThreshold(0.5)
                 .setAdaptivePartialAggregationEnabled(false)
                 .setAdaptivePartialAggregationRowsReductionRatioThreshold(0.8)
+                .setAdaptivePartialAggregationContinuousTrackingEnabled(false)
                 .setOptimizeTopNRowNumber(true)
                 .setOptimizeCaseExpressionPredicate(false)
                 .setDistributedSortEnabled(true)
+                .setLocalParallelSortEnabled(true)
+                .setTopNScanFilterEnabled(true)
                 .setMaxGroupingSets(2048)
                 .setLegacyUnnestArrayRows(false)
                 .setJsonSerdeCodeGenerationEnabled(false)
@@ -167,6 +182,7 @@ public class TestFeaturesConfig
                 .setTableWriterMergeOperatorEnabled(true)
                 .setIndexLoaderTimeout(new Duration(20, SECONDS))
                 .setOptimizedRepartitioningEnabled(false)
+                .setOptimizedRepartitioningDictionaryEncodingEnabled(false)
                 .setListBuiltInFunctionsOnly(true)
                 .setPartitioningPrecisionStrategy(PartitioningPrecisionStrategy.AUTOMATIC)
                 .setExperimentalFunctionsEnabled(false)
@@ -193,6 +209,12 @@ public class TestFeaturesConfig
                 .setPartialResultsCompletionRatioThreshold(0.5)
                 .setOffsetClauseEnabled(false)
                 .setPartialResultsMaxExecutionTimeMultiplier(2.0)
+                .setSpeculativeExecutionEnabled(false)
+                .setSpeculativeExecutionStragglerMultiplier(3.0)
+                .setAdaptivePartitionCountEnabled(false)
+                .setMinHashPartitionCount(4)
+                .setTargetPartitionInputSize(new DataSize(512, MEGABYTE))
+                .setAdaptiveJoinDistributionEnabled(false)
                 .setMaterializedViewDataConsistencyEnabled(true)
                 .setMaterializedViewPartitionFilteringEnabled(true)
                 .setQueryOptimizationWithMaterializedViewEnabled(false)
@@ -219,6 +241,7 @@ public class TestFeaturesConfig
                 .setRandomizeOuterJoinNullKeyStrategy(RandomizeOuterJoinNullKeyStrategy.DISABLED)
                 .setShardedJoinStrategy(FeaturesConfig.ShardedJoinStrategy.DISABLED)
                 .setJoinShardCount(100)
+                .setJoinShardHotKeyMinFrequency(0.01)
                 .setOptimizeConditionalAggregationEnabled(false)
                 .setRemoveRedundantDistinctAggregationEnabled(true)
                 .setInPredicatesAsInnerJoinsEnabled(false)
@@ -272,6 +295,7 @@ public class TestFeaturesConfig
                 .put("dynamic-filtering-max-per-driver-row-count", "256")
                 .put("dynamic-filtering-max-per-driver-size", "64kB")
                 .put("dynamic-filtering-range-row-limit-per-driver", "1000")
+                .put("dynamic-filtering-bloom-filter-size-per-driver", "4MB")
                 .put("fragment-result-cache.enabled", "true")
                 .put("experimental.enable-stats-calculator", "false")
                 .put("experimental.enable-stats-collection-for-temporary-table", "true")
@@ -287,6 +311,7 @@ public class TestFeaturesConfig
                 .put("max-failed-task-percentage", "0.8")
                 .put("concurrent-lifespans-per-task", "1")
                 .put("fast-inequality-joins", "false")
+                .put("bigint-join-hash-enabled", "false")
                 .put("colocated-joins-enabled", "false")
                 .put("spatial-joins-enabled", "false")
                 .put("optimizer.join-reordering-strategy", "NONE")
@@ -314,6 +339,7 @@ public class TestFeaturesConfig
                 .put("optimizer.optimize-mixed-distinct-aggregations", "true")
                 .put("optimizer.push-table-write-through-union", "false")
                 .put("optimizer.dictionary-aggregation", "true")
+                .put("flat-group-by-hash-enabled", "false")
                 .put("optimizer.confidence-based-broadcast", "true")
                 .put("optimizer.retry-query-with-history-based-optimization", "true")
                 .put("optimizer.treat-low-confidence-zero-estimation-as-unknown", "true")
@@ -328,10 +354,13 @@ public class TestFeaturesConfig
                 .put("experimental.distinct-aggregation-large-block-size-threshold", "10MB")
                 .put("experimental.order-by-aggregation-spill-enabled", "false")
                 .put("experimental.window-spill-enabled", "false")
+                .put("experimental.semi-join-spill-enabled", "false")
+                .put("experimental.mark-distinct-spill-enabled", "false")
                 .put("experimental.order-by-spill-enabled", "false")
                 .put("experimental.topn-spill-enabled", "false")
                 .put("experimental.aggregation-operator-unspill-memory-limit", "100MB")
                 .put("experimental.topn-operator-unspill-memory-limit", "100MB")
+                .put("experimental.nested-loop-join-spill-probe-block-size", "64MB")
                 .put("experimental.spiller-spill-path", "/tmp/custom/spill/path1,/tmp/custom/spill/path2")
                 .put("experimental.spiller-threads", "42")
                 .put("experimental.spiller-max-used-space-threshold", "0.8")
@@ -344,9 +373,13 @@ public class TestFeaturesConfig
                 .put("experimental.spiller.max-revocable-task-memory", "1GB")
                 .put("exchange.compression-enabled", "true")
                 .put("exchange.checksum-enabled", "true")
+                .put("exchange.compression-codec", "ADAPTIVE")
+                .put("exchange.adaptive-compression-network-throughput", "1GB")
+                .put("local-exchange.partition-views-enabled", "true")
                 .put("optimizer.enable-intermediate-aggregations", "true")
                 .put("optimizer.force-single-node-output", "false")
                 .put("pages-index.eager-compaction-enabled", "true")
+                .put("pages-index.normalized-key-sort-enabled", "false")
                 .put("experimental.filter-and-project-min-output-page-size", "1MB")
                 .put("experimental.filter-and-project-min-output-page-row-count", "2048")
                 .put("optimizer.use-mark-distinct", "false")
@@ -356,9 +389,12 @@ public class TestFeaturesConfig
                 .put("optimizer.partial-aggregation-byte-reduction-threshold", "0.8")
                 .put("experimental.adaptive-partial-aggregation", "true")
                 .put("experimental.adaptive-partial-aggregation-rows-reduction-ratio-threshold", "0.9")
+                .put("experimental.adaptive-partial-aggregation-continuous-tracking", "true")
                 .put("optimizer.optimize-top-n-row-number", "false")
                 .put("optimizer.optimize-case-expression-predicate", "true")
                 .put("distributed-sort", "false")
+                .put("local-parallel-sort", "false")
+                .put("top-n-scan-filter-enabled", "false")
                 .put("analyzer.max-grouping-sets", "2047")
                 .put("deprecated.legacy-unnest-array-rows", "true")
                 .put("experimental.json-serde-codegen-enabled", "true")
@@ -371,6 +407,7 @@ public class TestFeaturesConfig
                 .put("experimental.table-writer-merge-operator-enabled", "false")
                 .put("index-loader-timeout", "10s")
                 .put("experimental.optimized-repartitioning", "true")
+                .put("experimental.optimized-repartitioning-dictionary-encoding-enabled", "true")
                 .put("list-built-in-functions-only", "false")
                 .put("partitioning-precision-strategy", "PREFER_EXACT_PARTITIONING")
                 .put("experimental-functions-enabled", "true")
@@ -396,6 +433,12 @@ public class TestFeaturesConfig
                 .put("partial-results-enabled", "true")
                 .put("partial-results-completion-ratio-threshold", "0.9")
                 .put("partial-results-max-execution-time-multiplier", "1.5")
+                .put("speculative-execution-enabled", "true")
+                .put("speculative-execution-straggler-multiplier", "2.0")
+                .put("optimizer.adaptive-partition-count-enabled", "true")
+                .put("optimizer.min-hash-partition-count", "8")
+                .put("optimizer.target-partition-input-size", "1GB")
+                .put("optimizer.adaptive-join-distribution-enabled", "true")
                 .put("offset-clause-enabled", "true")
                 .put("materialized-view-data-consistency-enabled", "false")
                 .put("consider-query-filters-for-materialized-view-partitions", "false")
@@ -423,6 +466,7 @@ public class TestFeaturesConfig
                 .put("optimizer.randomize-outer-join-null-key-strategy", "key_from_outer_join")
                 .put("optimizer.sharded-join-strategy", "cost_based")
                 .put("optimizer.join-shard-count", "200")
+                .put("optimizer.join-shard-hot-key-min-frequency", "0.05")
                 .put("optimizer.optimize-conditional-aggregation-enabled", "true")
                 .put("optimizer.remove-redundant-distinct-aggregation-enabled", "false")
                 .put("optimizer.in-predicates-as-inner-joins-enabled", "true")
@@ -473,6 +517,7 @@ public class TestFeaturesConfig
                 .setDynamicFilteringMaxPerDriverRowCount(256)
                 .setDynamicFilteringMaxPerDriverSize(new DataSize(64, KILOBYTE))
                 .setDynamicFilteringRangeRowLimitPerDriver(1000)
+                .setDynamicFilteringBloomFilterSizePerDriver(new DataSize(4, MEGABYTE))
                 .setFragmentResultCachingEnabled(true)
                 .setEnableStatsCalculator(false)
                 .setEnableStatsCollectionForTemporaryTable(true)
@@ -487,6 +532,7 @@ public class TestFeaturesConfig
                 .setMaxFailedTaskPercentage(0.8)
                 .setConcurrentLifespansPerTask(1)
                 .setFastInequalityJoins(false)
+                .setBigintJoinHashEnabled(false)
                 .setColocatedJoinsEnabled(false)
                 .setSpatialJoinsEnabled(false)
                 .setJoinReorderingStrategy(NONE)
@@ -514,6 +560,7 @@ public class TestFeaturesConfig
                 .setOptimizeMixedDistinctAggregations(true)
                 .setPushTableWriteThroughUnion(false)
                 .setDictionaryAggregation(true)
+                .setFlatGroupByHashEnabled(false)
                 .setConfidenceBasedBroadcastEnabled(true)
                 .setRetryQueryWithHistoryBasedOptimizationEnabled(true)
                 .setTreatLowConfidenceZeroEstimationAsUnknownEnabled(true)
@@ -528,10 +575,13 @@ public class TestFeaturesConfig
                 .setDistinctAggregationLargeBlockSizeThreshold(DataSize.valueOf("10MB"))
                 .setOrderByAggregationSpillEnabled(false)
                 .setWindowSpillEnabled(false)
+                .setSemiJoinSpillEnabled(false)
+                .setMarkDistinctSpillEnabled(false)
                 .setOrderBySpillEnabled(false)
                 .setTopNSpillEnabled(false)
                 .setAggregationOperatorUnspillMemoryLimit(DataSize.valueOf("100MB"))
                 .setTopNOperatorUnspillMemoryLimit(DataSize.valueOf("100MB"))
+                .setNestedLoopJoinSpillProbeBlockSize(DataSize.valueOf("64MB"))
                 .setSpillerSpillPaths("/tmp/custom/spill/path1,/tmp/custom/spill/path2")
                 .setSpillerThreads(42)
                 .setSpillMaxUsedSpaceThreshold(0.8)
@@ -544,9 +594,13 @@ public class TestFeaturesConfig
                 .setMaxRevocableMemoryPerTask(new DataSize(1, GIGABYTE))
                 .setExchangeCompressionEnabled(true)
                 .setExchangeChecksumEnabled(true)
+                .setExchangeCompressionCodec(ExchangeCompressionCodec.ADAPTIVE)
+                .setExchangeAdaptiveCompressionNetworkThroughput(new DataSize(1, GIGABYTE))
+                .setLocalExchangePartitionViewsEnabled(true)
                 .setEnableIntermediateAggregations(true)
                 .setForceSingleNodeOutput(false)
                 .setPagesIndexEagerCompactionEnabled(true)
+                .setPagesIndexNormalizedKeySortEnabled(false)
                 .setFilterAndProjectMinOutputPageSize(new DataSize(1, MEGABYTE))
                 .setFilterAndProjectMinOutputPageRowCount(2048)
                 .setUseMarkDistinct(false)
@@ -556,9 +610,12 @@ public class TestFeaturesConfig
                 .setPartialAggregationByteReductionThreshold(0.8)
                 .setAdaptivePartialAggregationEnabled(true)
                 .setAdaptivePartialAggregationRowsReductionRatioThreshold(0.9)
+                .setAdaptivePartialAggregationContinuousTrackingEnabled(true)
                 .setOptimizeTopNRowNumber(false)
                 .setOptimizeCaseExpressionPredicate(true)
                 .setDistributedSortEnabled(false)
+                .setLocalParallelSortEnabled(false)
+                .setTopNScanFilterEnabled(false)
                 .setMaxGroupingSets(2047)
                 .setLegacyUnnestArrayRows(true)
                 .setDefaultFilterFactorEnabled(true)
@@ -572,6 +629,7 @@ public class TestFeaturesConfig
                 .setTableWriterMergeOperatorEnabled(false)
                 .setIndexLoaderTimeout(new Duration(10, SECONDS))
                 .setOptimizedRepartitioningEnabled(true)
+                .setOptimizedRepartitioningDictionaryEncodingEnabled(true)
                 .setListBuiltInFunctionsOnly(false)
                 .setPartitioningPrecisionStrategy(PartitioningPrecisionStrategy.PREFER_EXACT_PARTITIONING)
                 .setExperimentalFunctionsEnabled(true)
@@ -599,6 +657,12 @@ public class TestFeaturesConfig
                 .setPartialResultsCompletionRatioThreshold(0.9)
                 .setOffsetClauseEnabled(true)
                 .setPartialResultsMaxExecutionTimeMultiplier(1.5)
+                .setSpeculativeExecutionEnabled(true)
+                .setSpeculativeExecutionStragglerMultiplier(2.0)
+                .setAdaptivePartitionCountEnabled(true)
+                .setMinHashPartitionCount(8)
+                .setTargetPartitionInputSize(new DataSize(1, GIGABYTE))
+                .setAdaptiveJoinDistributionEnabled(true)
                 .setMaterializedViewDataConsistencyEnabled(false)
                 .setMaterializedViewPartitionFilteringEnabled(false)
                 .setQueryOptimizationWithMaterializedViewEnabled(true)
@@ -625,6 +689,7 @@ public class TestFeaturesConfig
                 .setRandomizeOuterJoinNullKeyStrategy(RandomizeOuterJoinNullKeyStrategy.KEY_FROM_OUTER_JOIN)
                 .setShardedJoinStrategy(FeaturesConfig.ShardedJoinStrategy.COST_BASED)
                 .setJoinShardCount(200)
+                .setJoinShardHotKeyMinFrequency(0.05)
                 .setOptimizeConditionalAggregationEnabled(true)
                 .setRemoveRedundantDistinctAggregationEnabled(false)
                 .setInPredicatesAsInnerJoinsEnabled(true)
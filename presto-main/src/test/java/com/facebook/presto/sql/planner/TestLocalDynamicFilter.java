@@ -18,6 +18,8 @@ import com.facebook.presto.Session;
 import com.facebook.presto.common.predicate.Domain;
 import com.facebook.presto.common.predicate.TupleDomain;
 import com.facebook.presto.expressions.DynamicFilters.DynamicFilterPlaceholder;
+import com.facebook.presto.memory.context.AggregatedMemoryContext;
+import com.facebook.presto.operator.SplitBlockBloomFilter;
 import com.facebook.presto.spi.relation.VariableReferenceExpression;
 import com.facebook.presto.sql.Optimizer;
 import com.facebook.presto.sql.planner.assertions.BasePlanTest;
@@ -27,6 +29,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.testng.annotations.Test;
 
@@ -40,12 +43,15 @@ import java.util.function.Consumer;
 import static com.facebook.presto.SystemSessionProperties.ENABLE_DYNAMIC_FILTERING;
 import static com.facebook.presto.SystemSessionProperties.FORCE_SINGLE_NODE_OUTPUT;
 import static com.facebook.presto.SystemSessionProperties.JOIN_DISTRIBUTION_TYPE;
+import static com.facebook.presto.block.BlockAssertions.createLongsBlock;
 import static com.facebook.presto.common.function.OperatorType.EQUAL;
 import static com.facebook.presto.common.type.BigintType.BIGINT;
 import static com.facebook.presto.common.type.IntegerType.INTEGER;
+import static com.facebook.presto.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
 import static com.facebook.presto.testing.assertions.Assert.assertEquals;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestLocalDynamicFilter
         extends BasePlanTest
@@ -123,6 +129,47 @@ public class TestLocalDynamicFilter
                 new VariableReferenceExpression(Optional.empty(), "a", INTEGER), Domain.multipleValues(INTEGER, ImmutableList.of(10L, 20L)))));
     }
 
+    @Test
+    public void testMultiplePartitionsWithBloomFilters()
+            throws ExecutionException, InterruptedException
+    {
+        VariableReferenceExpression probeVariable = new VariableReferenceExpression(Optional.empty(), "a", BIGINT);
+        AggregatedMemoryContext memoryContext = newSimpleAggregatedMemoryContext();
+        LocalDynamicFilter filter = new LocalDynamicFilter(
+                ImmutableMultimap.of("123", new DynamicFilterPlaceholder("123", probeVariable, EQUAL)),
+                ImmutableMap.of("123", 0),
+                2,
+                true,
+                memoryContext.newLocalMemoryContext("test"));
+        Consumer<TupleDomain<String>> consumer = filter.getTupleDomainConsumer();
+        Consumer<Map<String, SplitBlockBloomFilter>> bloomFilterConsumer = filter.getBloomFilterConsumer().orElseThrow(NoSuchElementException::new);
+        ListenableFuture<TupleDomain<VariableReferenceExpression>> result = filter.getResultFuture();
+        ListenableFuture<Multimap<VariableReferenceExpression, SplitBlockBloomFilter>> bloomFilters = filter.getBloomFiltersFuture();
+
+        // the first partition was too large for an exact predicate
+        SplitBlockBloomFilter bloomFilter = new SplitBlockBloomFilter(BIGINT, 1024);
+        bloomFilter.add(createLongsBlock(1000L), 0);
+        consumer.accept(TupleDomain.all());
+        bloomFilterConsumer.accept(ImmutableMap.of("123", bloomFilter));
+        assertFalse(result.isDone());
+
+        // the second partition has an exact predicate, and no Bloom filter
+        consumer.accept(TupleDomain.withColumnDomains(ImmutableMap.of("123", Domain.singleValue(BIGINT, 20L))));
+        assertFalse(result.isDone());
+        assertFalse(bloomFilters.isDone());
+        bloomFilterConsumer.accept(ImmutableMap.of());
+
+        assertEquals(result.get(), TupleDomain.all());
+        SplitBlockBloomFilter merged = Iterables.getOnlyElement(bloomFilters.get().get(probeVariable));
+        assertTrue(merged.mightContain(createLongsBlock(1000L), 0));
+        assertTrue(merged.mightContain(createLongsBlock(20L), 0));
+
+        // the merged Bloom filter is held until the filter is closed
+        assertEquals(memoryContext.getBytes(), merged.getRetainedSizeInBytes());
+        filter.close();
+        assertEquals(memoryContext.getBytes(), 0);
+    }
+
     @Test
     public void testNone()
             throws ExecutionException, InterruptedException
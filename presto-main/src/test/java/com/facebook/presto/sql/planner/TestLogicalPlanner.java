@@ -65,6 +65,7 @@ import static com.facebook.presto.SystemSessionProperties.FORCE_SINGLE_NODE_OUTP
 import static com.facebook.presto.SystemSessionProperties.JOIN_DISTRIBUTION_TYPE;
 import static com.facebook.presto.SystemSessionProperties.JOIN_REORDERING_STRATEGY;
 import static com.facebook.presto.SystemSessionProperties.LEAF_NODE_LIMIT_ENABLED;
+import static com.facebook.presto.SystemSessionProperties.LOCAL_PARALLEL_SORT;
 import static com.facebook.presto.SystemSessionProperties.MAX_LEAF_NODES_IN_PLAN;
 import static com.facebook.presto.SystemSessionProperties.OFFSET_CLAUSE_ENABLED;
 import static com.facebook.presto.SystemSessionProperties.OPTIMIZE_HASH_GENERATION;
@@ -1168,6 +1169,19 @@ public class TestLogicalPlanner
                 Session.builder(this.getQueryRunner().getDefaultSession())
                         .setSystemProperty(DISTRIBUTED_SORT, Boolean.toString(false))
                         .build(),
+                output(
+                        exchange(LOCAL, GATHER, orderBy,
+                                sort(orderBy,
+                                        exchange(REMOTE_STREAMING, GATHER,
+                                                tableScan("orders", ImmutableMap.of(
+                                                        "ORDERKEY", "orderkey")))))));
+
+        assertDistributedPlan(
+                "SELECT orderkey FROM orders ORDER BY orderkey DESC",
+                Session.builder(this.getQueryRunner().getDefaultSession())
+                        .setSystemProperty(DISTRIBUTED_SORT, Boolean.toString(false))
+                        .setSystemProperty(LOCAL_PARALLEL_SORT, Boolean.toString(false))
+                        .build(),
                 output(
                         sort(orderBy,
                                 exchange(LOCAL, GATHER,
@@ -14,14 +14,30 @@
 package com.facebook.presto.sql.planner.optimizations;
 
 import com.facebook.presto.Session;
+import com.facebook.presto.cost.PlanNodeStatsEstimate;
+import com.facebook.presto.cost.StatsCalculator;
+import com.facebook.presto.cost.UniformDistributionHistogram;
+import com.facebook.presto.cost.VariableStatsEstimate;
+import com.facebook.presto.spi.relation.VariableReferenceExpression;
+import com.facebook.presto.spi.statistics.ConnectorHistogram;
+import com.facebook.presto.spi.statistics.Estimate;
 import com.facebook.presto.sql.analyzer.FeaturesConfig;
 import com.facebook.presto.sql.planner.assertions.BasePlanTest;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
 import org.testng.annotations.Test;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+
 import static com.facebook.presto.SystemSessionProperties.JOIN_DISTRIBUTION_TYPE;
 import static com.facebook.presto.SystemSessionProperties.JOIN_REORDERING_STRATEGY;
+import static com.facebook.presto.SystemSessionProperties.JOIN_SHARD_HOT_KEY_MIN_FREQUENCY;
 import static com.facebook.presto.SystemSessionProperties.SHARDED_JOINS_STRATEGY;
+import static com.facebook.presto.sql.Optimizer.PlanStage.OPTIMIZED_AND_VALIDATED;
 import static com.facebook.presto.sql.planner.assertions.PlanMatchPattern.anyTree;
 import static com.facebook.presto.sql.planner.assertions.PlanMatchPattern.exchange;
 import static com.facebook.presto.sql.planner.assertions.PlanMatchPattern.expression;
@@ -29,6 +45,9 @@ import static com.facebook.presto.sql.planner.assertions.PlanMatchPattern.join;
 import static com.facebook.presto.sql.planner.assertions.PlanMatchPattern.project;
 import static com.facebook.presto.sql.planner.assertions.PlanMatchPattern.tableScan;
 import static com.facebook.presto.sql.planner.assertions.PlanMatchPattern.unnest;
+import static com.facebook.presto.sql.planner.optimizations.ShardJoins.getHotKeys;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static org.testng.Assert.assertEquals;
 
 public class TestShardJoins
         extends BasePlanTest
@@ -131,4 +150,113 @@ public class TestShardJoins
                                                 tableScan("orders", ImmutableMap.of("rightOrderKey", "orderkey")))))),
                 false);
     }
+
+    @Test
+    public void testJoinHotKeys()
+    {
+        Session session = Session.builder(this.getQueryRunner().getDefaultSession())
+                .setSystemProperty(SHARDED_JOINS_STRATEGY, "HOT_KEYS")
+                .setSystemProperty(JOIN_SHARD_HOT_KEY_MIN_FREQUENCY, "0.3")
+                .setSystemProperty(JOIN_REORDERING_STRATEGY, "NONE")
+                .setSystemProperty(JOIN_DISTRIBUTION_TYPE, FeaturesConfig.JoinDistributionType.PARTITIONED.name())
+                .build();
+
+        // only the order key 7 has at least 0.3 of the rows
+        ConnectorHistogram histogram = new DiscreteHistogram(ImmutableSortedMap.of(7L, 0.5, 8L, 0.25, 9L, 0.25));
+        StatsCalculator delegate = getQueryRunner().getStatsCalculator();
+        StatsCalculator statsCalculator = (node, sourceStats, lookup, statsSession, types) -> {
+            PlanNodeStatsEstimate stats = delegate.calculateStats(node, sourceStats, lookup, statsSession, types);
+            for (VariableReferenceExpression variable : node.getOutputVariables()) {
+                if (variable.getName().startsWith("orderkey")) {
+                    stats = stats.mapVariableColumnStatistics(variable, estimate -> VariableStatsEstimate.builder()
+                            .setLowValue(7)
+                            .setHighValue(9)
+                            .setNullsFraction(0)
+                            .setDistinctValuesCount(3)
+                            .setHistogram(Optional.of(histogram))
+                            .build());
+                }
+            }
+            return stats;
+        };
+        List<PlanOptimizer> optimizers = getQueryRunner().getPlanOptimizers(false).stream()
+                .map(optimizer -> optimizer instanceof ShardJoins ? new ShardJoins(getMetadata(), getMetadata().getFunctionAndTypeManager(), statsCalculator) : optimizer)
+                .collect(toImmutableList());
+
+        assertPlan("SELECT * FROM lineitem JOIN orders ON lineitem.orderkey = orders.orderkey",
+                session,
+                OPTIMIZED_AND_VALIDATED,
+                anyTree(
+                        join(
+                                anyTree(
+                                        project(
+                                                ImmutableMap.of("leftOrderKey", expression("leftOrderKey"), "leftShard", expression("IF(leftOrderKey IN (7), random(100), 0)")),
+                                                tableScan("lineitem", ImmutableMap.of("leftOrderKey", "orderkey")))),
+                                anyTree(
+                                        unnest(
+                                                project(
+                                                        ImmutableMap.of("rightOrderKey", expression("rightOrderKey"), "rightShards", expression("sequence(0, IF(rightOrderKey IN (7), 99, 0))")),
+                                                        tableScan("orders", ImmutableMap.of("rightOrderKey", "orderkey"))))))),
+                optimizers);
+    }
+
+    @Test
+    public void testHotKeys()
+    {
+        ConnectorHistogram histogram = new DiscreteHistogram(ImmutableSortedMap.of(1L, 0.5, 2L, 0.0078125, 3L, 0.0625, 4L, 0.4296875));
+        assertEquals(getHotKeys(histogram, 1, 0.1), ImmutableList.of(1L, 4L));
+        assertEquals(getHotKeys(histogram, 1, 0.0625), ImmutableList.of(1L, 3L, 4L));
+        assertEquals(getHotKeys(histogram, 1, 0.6), ImmutableList.of());
+
+        // half of the rows are null, so the frequencies of the values among all the rows are halved
+        assertEquals(getHotKeys(histogram, 0.5, 0.24), ImmutableList.of(1L));
+    }
+
+    @Test
+    public void testNoHotKeysInUniformDistribution()
+    {
+        assertEquals(getHotKeys(new UniformDistributionHistogram(0, 1_000_000), 1, 0.01), ImmutableList.of());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "minFrequency must be in \\(0, 1]: 0.0")
+    public void testHotKeysRequirePositiveFrequency()
+    {
+        getHotKeys(new UniformDistributionHistogram(0, 1_000_000), 1, 0);
+    }
+
+    private static class DiscreteHistogram
+            implements ConnectorHistogram
+    {
+        private final SortedMap<Long, Double> frequencies;
+
+        public DiscreteHistogram(SortedMap<Long, Double> frequencies)
+        {
+            this.frequencies = frequencies;
+        }
+
+        @Override
+        public Estimate cumulativeProbability(double value, boolean inclusive)
+        {
+            double cumulative = 0;
+            for (Map.Entry<Long, Double> entry : frequencies.entrySet()) {
+                if (entry.getKey() < value || (inclusive && entry.getKey() == value)) {
+                    cumulative += entry.getValue();
+                }
+            }
+            return Estimate.of(cumulative);
+        }
+
+        @Override
+        public Estimate inverseCumulativeProbability(double percentile)
+        {
+            double cumulative = 0;
+            for (Map.Entry<Long, Double> entry : frequencies.entrySet()) {
+                cumulative += entry.getValue();
+                if (percentile <= cumulative) {
+                    return Estimate.of(entry.getKey());
+                }
+            }
+            return Estimate.of(frequencies.lastKey());
+        }
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.sql.planner.optimizations;
+
+import com.facebook.presto.Session;
+import com.facebook.presto.metadata.Metadata;
+import com.facebook.presto.spi.LocalProperty;
+import com.facebook.presto.spi.plan.PlanNode;
+import com.facebook.presto.spi.plan.PlanNodeIdAllocator;
+import com.facebook.presto.spi.relation.VariableReferenceExpression;
+import com.facebook.presto.sql.planner.iterative.rule.test.PlanBuilder;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import java.util.Optional;
+
+import static com.facebook.presto.SystemSessionProperties.MARK_DISTINCT_SPILL_ENABLED;
+import static com.facebook.presto.SystemSessionProperties.SEMI_JOIN_SPILL_ENABLED;
+import static com.facebook.presto.SystemSessionProperties.SPILL_ENABLED;
+import static com.facebook.presto.common.type.BooleanType.BOOLEAN;
+import static com.facebook.presto.metadata.MetadataManager.createTestMetadataManager;
+import static com.facebook.presto.testing.TestingSession.testSessionBuilder;
+import static org.testng.Assert.assertEquals;
+
+public class TestSpillPropertyDerivations
+{
+    private final Metadata metadata = createTestMetadataManager();
+
+    @Test
+    public void testSemiJoin()
+    {
+        PlanBuilder p = new PlanBuilder(testSessionBuilder().build(), new PlanNodeIdAllocator(), metadata);
+        VariableReferenceExpression probe = p.variable("probe");
+        VariableReferenceExpression build = p.variable("build");
+        PlanNode plan = p.semiJoin(
+                probe,
+                build,
+                p.variable("match"),
+                Optional.empty(),
+                Optional.empty(),
+                p.sort(ImmutableList.of(probe), p.values(probe)),
+                p.values(build));
+
+        assertOrdered(plan, SEMI_JOIN_SPILL_ENABLED, false, true);
+        assertOrdered(plan, SEMI_JOIN_SPILL_ENABLED, true, false);
+    }
+
+    @Test
+    public void testMarkDistinct()
+    {
+        PlanBuilder p = new PlanBuilder(testSessionBuilder().build(), new PlanNodeIdAllocator(), metadata);
+        VariableReferenceExpression value = p.variable("value");
+        PlanNode plan = p.markDistinct(
+                p.variable("marker", BOOLEAN),
+                ImmutableList.of(value),
+                p.sort(ImmutableList.of(value), p.values(value)));
+
+        assertOrdered(plan, MARK_DISTINCT_SPILL_ENABLED, false, true);
+        assertOrdered(plan, MARK_DISTINCT_SPILL_ENABLED, true, false);
+    }
+
+    private void assertOrdered(PlanNode plan, String spillProperty, boolean spillEnabled, boolean expectedOrdered)
+    {
+        Session session = testSessionBuilder()
+                .setSystemProperty(SPILL_ENABLED, "true")
+                .setSystemProperty(spillProperty, String.valueOf(spillEnabled))
+                .build();
+
+        ActualProperties properties = PropertyDerivations.derivePropertiesRecursively(plan, metadata, session);
+        assertEquals(properties.getLocalProperties().stream().anyMatch(LocalProperty::isOrderSensitive), expectedOrdered);
+        assertEquals(StreamPropertyDerivations.derivePropertiesRecursively(plan, metadata, session).isOrdered(), expectedOrdered);
+    }
+}
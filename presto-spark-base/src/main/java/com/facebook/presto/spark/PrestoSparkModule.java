@@ -64,6 +64,7 @@ import com.facebook.presto.execution.warnings.WarningCollectorConfig;
 import com.facebook.presto.index.IndexManager;
 import com.facebook.presto.memory.MemoryManagerConfig;
 import com.facebook.presto.memory.NodeMemoryConfig;
+import com.facebook.presto.memory.NumaNodeMemoryTracker;
 import com.facebook.presto.metadata.AnalyzePropertyManager;
 import com.facebook.presto.metadata.CatalogManager;
 import com.facebook.presto.metadata.ColumnPropertyManager;
@@ -400,6 +401,7 @@ public class PrestoSparkModule
         // task executor
         binder.bind(EmbedVersion.class).in(Scopes.SINGLETON);
         binder.bind(MultilevelSplitQueue.class).in(Scopes.SINGLETON);
+        binder.bind(NumaNodeMemoryTracker.class).in(Scopes.SINGLETON);
         binder.bind(TaskExecutor.class).in(Scopes.SINGLETON);
 
         // data stream provider
@@ -64,4 +64,14 @@ public interface ConnectorSplit
     {
         return SplitWeight.standard();
     }
+
+    /**
+     * Whether reading this split mostly waits on synchronous remote reads, e.g. a JDBC result set,
+     * rather than using the CPU. The engine may run such splits on dedicated threads, so that the
+     * blocked reads do not hold the threads processing the other splits.
+     */
+    default boolean isBlockingIo()
+    {
+        return false;
+    }
 }
@@ -18,6 +18,7 @@ public enum ConnectorCapabilities
     NOT_NULL_COLUMN_CONSTRAINT,
     SUPPORTS_REWINDABLE_SPLIT_SOURCE,
     SUPPORTS_PAGE_SINK_COMMIT,
+    SUPPORTS_DETERMINISTIC_SPLITS,
     PRIMARY_KEY_CONSTRAINT,
     UNIQUE_CONSTRAINT,
     ENFORCE_CONSTRAINTS,
@@ -26,7 +26,15 @@ public enum PageCodecMarker
 {
     COMPRESSED(1),
     ENCRYPTED(2),
-    CHECKSUMMED(3);
+    CHECKSUMMED(3),
+    /**
+     * Set with {@link #COMPRESSED} on pages compressed with {@link PageCompressionCodec#ZSTD}
+     */
+    ZSTD(4),
+    /**
+     * Set with {@link #COMPRESSED} on pages compressed with {@link PageCompressionCodec#SNAPPY}
+     */
+    SNAPPY(5);
 
     private final int mask;
 
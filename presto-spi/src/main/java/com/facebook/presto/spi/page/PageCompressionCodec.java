@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.spi.page;
+
+import java.util.Optional;
+
+import static com.facebook.presto.spi.page.PageCodecMarker.COMPRESSED;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compression codec of a {@link SerializedPage}, recorded in its {@link PageCodecMarker}s. Pages marked only as
+ * {@link PageCodecMarker#COMPRESSED} use {@link #LZ4}, so that they can be read by serdes that only support it.
+ */
+public enum PageCompressionCodec
+{
+    LZ4(Optional.empty()),
+    ZSTD(Optional.of(PageCodecMarker.ZSTD)),
+    SNAPPY(Optional.of(PageCodecMarker.SNAPPY));
+
+    private final Optional<PageCodecMarker> marker;
+
+    PageCompressionCodec(Optional<PageCodecMarker> marker)
+    {
+        this.marker = requireNonNull(marker, "marker is null");
+    }
+
+    /**
+     * Marks the page as compressed with this codec
+     */
+    public byte setMarkers(byte markers)
+    {
+        markers = COMPRESSED.set(markers);
+        if (marker.isPresent()) {
+            markers = marker.get().set(markers);
+        }
+        return markers;
+    }
+
+    /**
+     * Returns the codec of a page marked as {@link PageCodecMarker#COMPRESSED}
+     */
+    public static PageCompressionCodec fromMarkers(byte markers)
+    {
+        for (PageCompressionCodec codec : values()) {
+            if (codec.marker.isPresent() && codec.marker.get().isSet(markers)) {
+                return codec;
+            }
+        }
+        return LZ4;
+    }
+}
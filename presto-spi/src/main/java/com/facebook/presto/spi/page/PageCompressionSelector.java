@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.spi.page;
+
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Chooses how {@link PagesSerde} compresses each page it serializes.
+ */
+public interface PageCompressionSelector
+{
+    /**
+     * Returns the codec to compress the next page with, or empty to leave it uncompressed.
+     */
+    Optional<PageCompressionCodec> selectCodec(int uncompressedSize);
+
+    /**
+     * Records the outcome of compressing a page with {@code codec}. {@code serializedSize} is the size
+     * of the page as sent, which is its uncompressed size if compressing it did not save enough.
+     */
+    void recordCompression(PageCompressionCodec codec, int uncompressedSize, int serializedSize, long compressionNanos);
+
+    static PageCompressionSelector fixed(PageCompressionCodec codec)
+    {
+        requireNonNull(codec, "codec is null");
+        Optional<PageCompressionCodec> selectedCodec = Optional.of(codec);
+        return new PageCompressionSelector()
+        {
+            @Override
+            public Optional<PageCompressionCodec> selectCodec(int uncompressedSize)
+            {
+                return selectedCodec;
+            }
+
+            @Override
+            public void recordCompression(PageCompressionCodec codec, int uncompressedSize, int serializedSize, long compressionNanos)
+            {
+            }
+        };
+    }
+}
@@ -25,11 +25,14 @@ import javax.annotation.concurrent.NotThreadSafe;
 
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Optional;
 
 import static com.facebook.presto.spi.page.PageCodecMarker.CHECKSUMMED;
 import static com.facebook.presto.spi.page.PageCodecMarker.COMPRESSED;
 import static com.facebook.presto.spi.page.PageCodecMarker.ENCRYPTED;
+import static com.facebook.presto.spi.page.PageCompressionCodec.LZ4;
 import static com.facebook.presto.spi.page.PagesSerdeUtil.computeSerializedPageChecksum;
 import static com.facebook.presto.spi.page.PagesSerdeUtil.readRawPage;
 import static com.facebook.presto.spi.page.PagesSerdeUtil.writeRawPage;
@@ -44,8 +47,9 @@ public class PagesSerde
     private static final double MINIMUM_COMPRESSION_RATIO = 0.8;
 
     private final BlockEncodingSerde blockEncodingSerde;
-    private final Optional<PageCompressor> compressor;
-    private final Optional<PageDecompressor> decompressor;
+    private final Map<PageCompressionCodec, PageCompressor> compressors;
+    private final Map<PageCompressionCodec, PageDecompressor> decompressors;
+    private final Optional<PageCompressionSelector> compressionSelector;
     private final Optional<SpillCipher> spillCipher;
     private final boolean checksumEnabled;
 
@@ -56,12 +60,39 @@ public class PagesSerde
         this(blockEncodingSerde, compressor, decompressor, spillCipher, false);
     }
 
+    /**
+     * Creates a serde compressing pages with {@code compressor}, whatever its codec is. The pages are only marked
+     * as {@link PageCodecMarker#COMPRESSED} and can only be read by a serde using the same codec.
+     */
     public PagesSerde(BlockEncodingSerde blockEncodingSerde, Optional<PageCompressor> compressor, Optional<PageDecompressor> decompressor, Optional<SpillCipher> spillCipher, boolean checksumEnabled)
     {
-        this.blockEncodingSerde = requireNonNull(blockEncodingSerde, "blockEncodingSerde is null");
+        this(
+                blockEncodingSerde,
+                singleCodec(requireNonNull(compressor, "compressor is null")),
+                singleCodec(requireNonNull(decompressor, "decompressor is null")),
+                compressor.map(ignored -> PageCompressionSelector.fixed(LZ4)),
+                spillCipher,
+                checksumEnabled);
         checkArgument(compressor.isPresent() == decompressor.isPresent(), "compressor and decompressor must both be present or both be absent");
-        this.compressor = requireNonNull(compressor, "compressor is null");
-        this.decompressor = requireNonNull(decompressor, "decompressor is null");
+    }
+
+    /**
+     * Creates a serde compressing pages with the codecs chosen by {@code compressionSelector}, which must be
+     * present if any compressor is, and reading pages compressed with any of the codecs of {@code decompressors}.
+     */
+    public PagesSerde(
+            BlockEncodingSerde blockEncodingSerde,
+            Map<PageCompressionCodec, PageCompressor> compressors,
+            Map<PageCompressionCodec, PageDecompressor> decompressors,
+            Optional<PageCompressionSelector> compressionSelector,
+            Optional<SpillCipher> spillCipher,
+            boolean checksumEnabled)
+    {
+        this.blockEncodingSerde = requireNonNull(blockEncodingSerde, "blockEncodingSerde is null");
+        this.compressors = copyOf(requireNonNull(compressors, "compressors is null"));
+        this.decompressors = copyOf(requireNonNull(decompressors, "decompressors is null"));
+        this.compressionSelector = requireNonNull(compressionSelector, "compressionSelector is null");
+        checkArgument(compressors.isEmpty() || compressionSelector.isPresent(), "compressionSelector must be present when compressors are");
         this.spillCipher = requireNonNull(spillCipher, "spillCipher is null");
         checkState(!spillCipher.isPresent() || !spillCipher.get().isDestroyed(), "spillCipher is already destroyed");
         this.checksumEnabled = checksumEnabled;
@@ -93,12 +124,14 @@ public class PagesSerde
         }
 
         if (COMPRESSED.isSet(serializedPage.getPageCodecMarkers())) {
-            checkState(decompressor.isPresent(), "Page is compressed, but decompressor is missing");
+            PageCompressionCodec codec = PageCompressionCodec.fromMarkers(serializedPage.getPageCodecMarkers());
+            PageDecompressor decompressor = decompressors.get(codec);
+            checkState(decompressor != null, "Page is compressed, but decompressor is missing");
 
             int uncompressedSize = serializedPage.getUncompressedSizeInBytes();
             ByteBuffer decompressionBuffer = ByteBuffer.allocate(uncompressedSize);
 
-            decompressor.get().decompress(slice.toByteBuffer(), decompressionBuffer);
+            decompressor.decompress(slice.toByteBuffer(), decompressionBuffer);
             ((Buffer) decompressionBuffer).flip();
             checkState(decompressionBuffer.remaining() == uncompressedSize, "page size changed after decompression into decompressionBuffer");
 
@@ -123,21 +156,30 @@ public class PagesSerde
         int uncompressedSize = slice.length();
         byte markers = PageCodecMarker.none();
 
-        if (compressor.isPresent()) {
-            int maxCompressedSize = compressor.get().maxCompressedLength(uncompressedSize);
+        Optional<PageCompressionCodec> codec = compressionSelector.flatMap(selector -> selector.selectCodec(uncompressedSize));
+        if (codec.isPresent()) {
+            PageCompressor compressor = compressors.get(codec.get());
+            checkState(compressor != null, "Compressor is missing for the selected codec");
+
+            long start = System.nanoTime();
+            int maxCompressedSize = compressor.maxCompressedLength(uncompressedSize);
             compressionBuffer = ensureCapacity(compressionBuffer, maxCompressedSize);
-            int compressedSize = compressor.get().compress(
+            int compressedSize = compressor.compress(
                     (byte[]) slice.getBase(),
                     (int) (slice.getAddress() - ARRAY_BYTE_BASE_OFFSET),
                     uncompressedSize,
                     compressionBuffer,
                     0,
                     maxCompressedSize);
+            long compressionNanos = System.nanoTime() - start;
 
+            int serializedSize = uncompressedSize;
             if (compressedSize / (double) uncompressedSize <= MINIMUM_COMPRESSION_RATIO) {
                 slice = Slices.copyOf(Slices.wrappedBuffer(compressionBuffer, 0, compressedSize));
-                markers = COMPRESSED.set(markers);
+                markers = codec.get().setMarkers(markers);
+                serializedSize = compressedSize;
             }
+            compressionSelector.get().recordCompression(codec.get(), uncompressedSize, serializedSize, compressionNanos);
         }
 
         if (spillCipher.isPresent()) {
@@ -157,6 +199,20 @@ public class PagesSerde
         return new SerializedPage(slice, markers, positionCount, uncompressedSize, checksum);
     }
 
+    private static <T> Map<PageCompressionCodec, T> singleCodec(Optional<T> value)
+    {
+        Map<PageCompressionCodec, T> map = new EnumMap<>(PageCompressionCodec.class);
+        value.ifPresent(present -> map.put(LZ4, present));
+        return map;
+    }
+
+    private static <T> Map<PageCompressionCodec, T> copyOf(Map<PageCompressionCodec, T> map)
+    {
+        Map<PageCompressionCodec, T> copy = new EnumMap<>(PageCompressionCodec.class);
+        copy.putAll(map);
+        return copy;
+    }
+
     private static void checkArgument(boolean condition, String message)
     {
         if (!condition) {